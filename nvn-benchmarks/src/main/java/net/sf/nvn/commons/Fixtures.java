@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Reads the fixtures the benchmarks are run against. The fixtures are the
+ * test resources of nvn-commons and the files in this module's
+ * <em>fixtures</em> directory.
+ * 
+ * @author akutz
+ * 
+ */
+public final class Fixtures
+{
+    private Fixtures()
+    {
+    }
+
+    /**
+     * Reads a fixture.
+     * 
+     * @param name The fixture's name, for example <em>MyProject.csproj</em>.
+     * @return The fixture's contents.
+     * @throws IOException When the fixture cannot be read.
+     */
+    public static String read(String name) throws IOException
+    {
+        InputStream in =
+            Fixtures.class.getResourceAsStream("/fixtures/" + name);
+
+        if (in == null)
+        {
+            throw new IOException(String.format("Missing fixture '%s'", name));
+        }
+
+        try
+        {
+            return IOUtils.toString(in, "UTF-8");
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * Creates a temporary directory.
+     * 
+     * @return The directory.
+     * @throws IOException When the directory cannot be created.
+     */
+    public static File createTempDir() throws IOException
+    {
+        File dir = File.createTempFile("nvn-benchmarks", "");
+
+        if (!dir.delete() || !dir.mkdir())
+        {
+            throw new IOException(String.format(
+                "Error creating directory '%s'",
+                dir));
+        }
+
+        return dir;
+    }
+
+    /**
+     * Deletes a temporary directory.
+     * 
+     * @param dir The directory. May be null.
+     * @throws IOException When the directory cannot be deleted.
+     */
+    public static void deleteTempDir(File dir) throws IOException
+    {
+        if (dir != null)
+        {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+}
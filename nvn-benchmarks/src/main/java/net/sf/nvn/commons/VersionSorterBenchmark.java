@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures sorting the versions of a repository metadata listing with
+ * {@link VersionSorter} and with a comparison sort.
+ * 
+ * @author akutz
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VersionSorterBenchmark
+{
+    /**
+     * The number of versions.
+     */
+    @Param(
+    {
+        "100", "10000", "100000"
+    })
+    public int size;
+
+    private Version[] versions;
+
+    private static final Comparator<Version> ORDER = new Comparator<Version>()
+    {
+        @Override
+        public int compare(Version o1, Version o2)
+        {
+            return VersionSorter.compare(o1, o2);
+        }
+    };
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        Random r = new Random(this.size);
+        this.versions = new Version[this.size];
+
+        for (int x = 0; x < this.size; ++x)
+        {
+            this.versions[x] =
+                Version.parse(String.format(
+                    "%s.%s.%s.%s%s",
+                    r.nextInt(5),
+                    r.nextInt(20),
+                    r.nextInt(100),
+                    r.nextInt(5000),
+                    r.nextInt(4) == 0 ? "-SNAPSHOT" : ""));
+        }
+    }
+
+    @Benchmark
+    public Version[] radixSort()
+    {
+        return VersionSorter.sort(this.versions);
+    }
+
+    @Benchmark
+    public Version[] comparisonSort()
+    {
+        Version[] sorted = this.versions.clone();
+        Arrays.sort(sorted, ORDER);
+        return sorted;
+    }
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons.msbuild;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import net.sf.nvn.commons.Fixtures;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures reading and evaluating a project file with
+ * {@link MSBuildProject#instance(File)}. The fixtures may be grown with a
+ * number of generated source items.
+ * 
+ * @author akutz
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MSBuildProjectBenchmark
+{
+    /**
+     * The C#, VB and C++ fixtures.
+     */
+    @Param(
+    {
+        "MyProject2.csproj", "MyProject.vbproj", "MyProjectDll2.vcxproj"
+    })
+    public String fixture;
+
+    /**
+     * The number of source items added to the fixture.
+     */
+    @Param(
+    {
+        "0", "1000"
+    })
+    public int items;
+
+    private File dir;
+
+    private File projectFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        String text = Fixtures.read(this.fixture);
+        boolean cpp = this.fixture.endsWith(".vcxproj");
+
+        StringBuilder buff = new StringBuilder("  <ItemGroup>\n");
+
+        for (int x = 0; x < this.items; ++x)
+        {
+            buff.append(String.format(
+                "    <%s Include=\"Generated\\File%s.%s\" />\n",
+                cpp ? "ClCompile" : "Compile",
+                x,
+                cpp ? "cpp" : "src"));
+        }
+
+        buff.append("  </ItemGroup>\n</Project>");
+
+        int end = text.lastIndexOf("</Project>");
+        text = text.substring(0, end) + buff;
+
+        this.dir = Fixtures.createTempDir();
+        this.projectFile = new File(this.dir, this.fixture);
+        FileUtils.writeStringToFile(this.projectFile, text, "UTF-8");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+        Fixtures.deleteTempDir(this.dir);
+    }
+
+    @Benchmark
+    public MSBuildProject instance() throws IOException
+    {
+        return MSBuildProject.instance(this.projectFile);
+    }
+}
@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.plugin;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugin.logging.Log;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the debug logging of building a command line, once with the
+ * messages formatted before the level is checked and once with
+ * {@link NvnLog}. Run with <em>-prof gc</em> to compare the allocations.
+ * 
+ * @author akutz
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NvnLogBenchmark
+{
+    @Param(
+    {
+        "false", "true"
+    })
+    public boolean debugEnabled;
+
+    private Log log;
+
+    private NvnLog nvnLog;
+
+    private File[] files;
+
+    @Setup
+    public void setup()
+    {
+        this.log = new DiscardingLog(this.debugEnabled);
+        this.nvnLog = new NvnLog(this.log, "msbuild");
+        this.files = new File[16];
+
+        for (int x = 0; x < this.files.length; ++x)
+        {
+            this.files[x] = new File("src\\Reference" + x + ".dll");
+        }
+    }
+
+    @Benchmark
+    public int formatFirst()
+    {
+        StringBuilder cmd = new StringBuilder();
+
+        for (File f : this.files)
+        {
+            String fp = f.getPath();
+            this.log.debug(String.format(
+                "NVN-%s: %s",
+                "msbuild",
+                "getPath(" + fp + ")"));
+            String path = "C:\\project\\" + fp;
+            this.log.debug(String.format(
+                "NVN-%s: %s",
+                "msbuild",
+                String.format("getPath returned \"%s\"", path)));
+            cmd.append(" /reference:").append(path);
+        }
+
+        return cmd.length();
+    }
+
+    @Benchmark
+    public int checkFirst()
+    {
+        StringBuilder cmd = new StringBuilder();
+
+        for (File f : this.files)
+        {
+            String fp = f.getPath();
+            String path = "C:\\project\\" + fp;
+            this.nvnLog.debug("getPath(%s) returned \"%s\"", fp, path);
+            cmd.append(" /reference:").append(path);
+        }
+
+        return cmd.length();
+    }
+
+    /**
+     * A logger that discards its messages.
+     */
+    private static final class DiscardingLog implements Log
+    {
+        private final boolean debugEnabled;
+
+        DiscardingLog(boolean debugEnabled)
+        {
+            this.debugEnabled = debugEnabled;
+        }
+
+        public boolean isDebugEnabled()
+        {
+            return this.debugEnabled;
+        }
+
+        public boolean isInfoEnabled()
+        {
+            return true;
+        }
+
+        public boolean isWarnEnabled()
+        {
+            return true;
+        }
+
+        public boolean isErrorEnabled()
+        {
+            return true;
+        }
+
+        public void debug(CharSequence content)
+        {
+        }
+
+        public void debug(CharSequence content, Throwable error)
+        {
+        }
+
+        public void debug(Throwable error)
+        {
+        }
+
+        public void info(CharSequence content)
+        {
+        }
+
+        public void info(CharSequence content, Throwable error)
+        {
+        }
+
+        public void info(Throwable error)
+        {
+        }
+
+        public void warn(CharSequence content)
+        {
+        }
+
+        public void warn(CharSequence content, Throwable error)
+        {
+        }
+
+        public void warn(Throwable error)
+        {
+        }
+
+        public void error(CharSequence content)
+        {
+        }
+
+        public void error(CharSequence content, Throwable error)
+        {
+        }
+
+        public void error(Throwable error)
+        {
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons;
+
+/**
+ * <p>
+ * A budget of processors shared by the build processes that run at the same
+ * time, for example the msbuild processes of a configuration matrix or of the
+ * modules of a parallel reactor build. A process leases processors from the
+ * budget before it starts and returns them when it exits.
+ * </p>
+ * 
+ * <p>
+ * A lease gets a fair share of the budget: the budget divided by the number of
+ * processes that hold a lease, including the new one, but no more than the
+ * processors that are free and no more than the caller asks for. A caller that
+ * knows how many processes will run at the same time should ask for no more
+ * than its share of them, so that the first process does not take the whole
+ * budget. A lease always gets at least one processor. When every processor is
+ * leased, a new lease waits for one to be returned, so the leases never add
+ * up to more than the budget.
+ * </p>
+ * 
+ * @author akutz
+ * 
+ */
+public class CpuBudget
+{
+    /**
+     * The system property that overrides the size of the session's budget.
+     */
+    public static final String SIZE_PROPERTY = "nvn.cpuBudget";
+
+    /**
+     * The budget shared by the session.
+     */
+    private static CpuBudget instance;
+
+    /**
+     * The number of processors in the budget.
+     */
+    private final int size;
+
+    /**
+     * The number of processors that are leased.
+     */
+    private int leased;
+
+    /**
+     * The number of leases that have not been released.
+     */
+    private int leases;
+
+    /**
+     * Initializes a new instance of the CpuBudget class.
+     * 
+     * @param size The number of processors in the budget.
+     */
+    public CpuBudget(int size)
+    {
+        if (size < 1)
+        {
+            throw new IllegalArgumentException("size must be at least 1");
+        }
+
+        this.size = size;
+    }
+
+    /**
+     * Gets the budget shared by the session. Its size is the value of the
+     * nvn.cpuBudget system property or, if that is not set, the number of
+     * processors.
+     * 
+     * @return The budget shared by the session.
+     */
+    public static synchronized CpuBudget getInstance()
+    {
+        if (instance == null)
+        {
+            int size = Runtime.getRuntime().availableProcessors();
+            String s = System.getProperty(SIZE_PROPERTY);
+
+            if (s != null)
+            {
+                try
+                {
+                    size = Math.max(1, Integer.parseInt(s.trim()));
+                }
+                catch (NumberFormatException e)
+                {
+                    // Use the number of processors.
+                }
+            }
+
+            instance = new CpuBudget(size);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Gets the number of processors in the budget.
+     * 
+     * @return The number of processors in the budget.
+     */
+    public int getSize()
+    {
+        return this.size;
+    }
+
+    /**
+     * Leases processors, waiting for one to be returned when every processor
+     * is leased.
+     * 
+     * @param max The largest number of processors the process can use.
+     * @return The lease.
+     * @throws InterruptedException When the thread is interrupted while it
+     *         waits.
+     */
+    public synchronized Lease acquire(int max) throws InterruptedException
+    {
+        while (this.leased >= this.size)
+        {
+            wait();
+        }
+
+        int share = (this.size + this.leases) / (this.leases + 1);
+        int free = this.size - this.leased;
+        int count = Math.max(1, Math.min(max, Math.min(share, free)));
+
+        Lease lease = new Lease(count, this.leases == 0);
+
+        this.leased += count;
+        ++this.leases;
+
+        return lease;
+    }
+
+    /**
+     * Gets the number of leases that have not been released.
+     * 
+     * @return The number of leases that have not been released.
+     */
+    public synchronized int getLeases()
+    {
+        return this.leases;
+    }
+
+    private synchronized void release(Lease lease)
+    {
+        this.leased -= lease.count;
+        --this.leases;
+        notifyAll();
+    }
+
+    /**
+     * Processors leased from a budget.
+     */
+    public class Lease
+    {
+        private final int count;
+
+        private final boolean exclusive;
+
+        private boolean released;
+
+        Lease(int count, boolean exclusive)
+        {
+            this.count = count;
+            this.exclusive = exclusive;
+        }
+
+        /**
+         * Gets the number of leased processors.
+         * 
+         * @return The number of leased processors.
+         */
+        public int getCount()
+        {
+            return this.count;
+        }
+
+        /**
+         * Gets a flag indicating whether or not no other lease was held when
+         * this lease was acquired.
+         * 
+         * @return A flag indicating whether or not no other lease was held
+         *         when this lease was acquired.
+         */
+        public boolean isExclusive()
+        {
+            return this.exclusive;
+        }
+
+        /**
+         * Returns the processors to the budget. Releasing a lease more than
+         * once has no effect.
+         */
+        public void release()
+        {
+            synchronized (CpuBudget.this)
+            {
+                if (!this.released)
+                {
+                    this.released = true;
+                    CpuBudget.this.release(this);
+                }
+            }
+        }
+    }
+}
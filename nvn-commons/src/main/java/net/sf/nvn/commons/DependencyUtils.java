@@ -86,7 +86,7 @@ public class DependencyUtils
 
         try
         {
-            FileUtils.copyFile(depFile, depFile2);
+            copyFile(depFile, depFile2);
         }
         catch (IOException e)
         {
@@ -103,7 +103,7 @@ public class DependencyUtils
         {
             try
             {
-                FileUtils.copyFile(pdbFile, pdbFile2);
+                copyFile(pdbFile, pdbFile2);
             }
             catch (IOException e)
             {
@@ -121,7 +121,7 @@ public class DependencyUtils
         {
             try
             {
-                FileUtils.copyFile(docFile, docFile2);
+                copyFile(docFile, docFile2);
             }
             catch (IOException e)
             {
@@ -135,6 +135,32 @@ public class DependencyUtils
         return true;
     }
 
+    /**
+     * Copies a file.
+     * 
+     * @param src The file to copy.
+     * @param dest The copy.
+     * @throws IOException When an error occurs.
+     */
+    private static void copyFile(File src, File dest) throws IOException
+    {
+        FlightEvents.Event fe =
+            FlightEvents.begin(
+                FlightEvents.FILE_COPY,
+                src.getPath(),
+                dest.getPath());
+
+        try
+        {
+            FileUtils.copyFile(src, dest);
+            Metrics.BYTES_COPIED.inc(dest.length());
+        }
+        finally
+        {
+            fe.end();
+        }
+    }
+
     /**
      * Gets the dependency's artifact file.
      * 
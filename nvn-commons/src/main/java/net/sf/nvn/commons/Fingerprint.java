@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * A SHA-1 digest of the inputs of a build step. Inputs are added as named
+ * values and files, and two fingerprints are equal when the same inputs were
+ * added in the same order. A file contributes its name and content but not its
+ * location or timestamps, so the same sources checked out in two different
+ * workspaces have the same fingerprint as long as the names are given relative
+ * to the workspace.
+ * 
+ * @author akutz
+ * 
+ */
+public class Fingerprint
+{
+    /**
+     * The size of the buffer files are read with.
+     */
+    private static final int BUFFER_SIZE = 32 * 1024;
+
+    /**
+     * The digest of the inputs added so far.
+     */
+    private final MessageDigest digest;
+
+    /**
+     * The buffer files are read with.
+     */
+    private byte[] buffer;
+
+    /**
+     * The fingerprint's value, computed on demand.
+     */
+    private String value;
+
+    /**
+     * Initializes a new instance of the Fingerprint class.
+     */
+    public Fingerprint()
+    {
+        try
+        {
+            this.digest = MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException("SHA-1 is not supported", e);
+        }
+    }
+
+    /**
+     * Adds a named value.
+     * 
+     * @param name The value's name.
+     * @param value The value. May be null.
+     * @return This fingerprint.
+     */
+    public Fingerprint add(String name, String value)
+    {
+        update("v");
+        update(name);
+        update(value == null ? "\u0000" : value);
+        return this;
+    }
+
+    /**
+     * Adds a file's content. A file that does not exist is added as missing.
+     * 
+     * @param name The file's name, usually its path relative to the project.
+     * @param file The file.
+     * @return This fingerprint.
+     * @throws IOException When the file cannot be read.
+     */
+    public Fingerprint add(String name, File file) throws IOException
+    {
+        update("f");
+        update(name);
+
+        if (!file.isFile())
+        {
+            update("\u0000");
+            return this;
+        }
+
+        update(String.valueOf(file.length()));
+
+        if (this.buffer == null)
+        {
+            this.buffer = new byte[BUFFER_SIZE];
+        }
+
+        InputStream in = new FileInputStream(file);
+
+        try
+        {
+            int read;
+
+            while ((read = in.read(this.buffer)) != -1)
+            {
+                this.digest.update(this.buffer, 0, read);
+            }
+        }
+        finally
+        {
+            IOUtils.closeQuietly(in);
+        }
+
+        return this;
+    }
+
+    /**
+     * Gets the fingerprint's value as a hexadecimal string. No more inputs can
+     * be added once the value has been read.
+     * 
+     * @return The fingerprint's value.
+     */
+    public String getValue()
+    {
+        if (this.value == null)
+        {
+            this.value = toHex(this.digest.digest());
+        }
+
+        return this.value;
+    }
+
+    @Override
+    public String toString()
+    {
+        return getValue();
+    }
+
+    /**
+     * Formats bytes as a lower-case hexadecimal string.
+     * 
+     * @param bytes The bytes.
+     * @return The hexadecimal string.
+     */
+    public static String toHex(byte[] bytes)
+    {
+        StringBuilder buff = new StringBuilder(bytes.length * 2);
+
+        for (byte b : bytes)
+        {
+            buff.append(Character.forDigit((b >> 4) & 0xf, 16));
+            buff.append(Character.forDigit(b & 0xf, 16));
+        }
+
+        return buff.toString();
+    }
+
+    /**
+     * Adds a string and its length, so adjacent strings cannot run together.
+     * 
+     * @param s The string.
+     */
+    private void update(String s)
+    {
+        if (this.value != null)
+        {
+            throw new IllegalStateException(
+                "The fingerprint's value has already been read");
+        }
+
+        try
+        {
+            byte[] bytes = s.getBytes("UTF-8");
+            this.digest.update(String.valueOf(bytes.length).getBytes("UTF-8"));
+            this.digest.update((byte) ':');
+            this.digest.update(bytes);
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,427 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * Emits JDK Flight Recorder events for the work nvn does, such as MOJO
+ * phases, project parses, registry probes, processes and file copies. The
+ * events are recorded when Maven runs with <em>-XX:StartFlightRecording</em>
+ * or when a recording is started with <em>jcmd</em>.
+ * </p>
+ * 
+ * <p>
+ * nvn is built for Java 6, so the event types are created through
+ * <em>jdk.jfr.EventFactory</em> with reflection. When the JVM has no Flight
+ * Recorder, or when no recording enables an event type, {@link #begin} returns
+ * a shared event whose {@link Event#end()} does nothing, so an event costs a
+ * check.
+ * </p>
+ * 
+ * <p>
+ * Each event has the fields <em>module</em> and <em>mojo</em>, which are taken
+ * from the calling thread's context (see {@link #setContext(String, String)}),
+ * followed by the fields of its type.
+ * </p>
+ * 
+ * @author akutz
+ * 
+ */
+public final class FlightEvents
+{
+    /**
+     * A MOJO's execution.
+     */
+    public static final Type MOJO_EXECUTE =
+        new Type("MojoExecute", "Mojo Execute");
+
+    /**
+     * A phase of a MOJO's execution: pre, exec or post.
+     */
+    public static final Type MOJO_PHASE =
+        new Type("MojoPhase", "Mojo Phase", "phase");
+
+    /**
+     * The parse of an MSBuild project file.
+     */
+    public static final Type PROJECT_PARSE =
+        new Type("ProjectParse", "Project Parse", "file");
+
+    /**
+     * A registry probe.
+     */
+    public static final Type REGISTRY_PROBE =
+        new Type("RegistryProbe", "Registry Probe", "key", "valueName");
+
+    /**
+     * The start of a process.
+     */
+    public static final Type PROCESS_SPAWN =
+        new Type("ProcessSpawn", "Process Spawn", "command");
+
+    /**
+     * The wait for a process to exit.
+     */
+    public static final Type PROCESS_WAIT =
+        new Type("ProcessWait", "Process Wait", "tool");
+
+    /**
+     * A file copy or install.
+     */
+    public static final Type FILE_COPY =
+        new Type("FileCopy", "File Copy", "source", "destination");
+
+    private static final ThreadLocal<String[]> context =
+        new ThreadLocal<String[]>();
+
+    private FlightEvents()
+    {
+    }
+
+    /**
+     * Gets a flag indicating whether or not the JVM has a Flight Recorder
+     * nvn can emit events to.
+     * 
+     * @return A flag indicating whether or not the JVM has a Flight Recorder.
+     */
+    public static boolean isAvailable()
+    {
+        return Jfr.AVAILABLE;
+    }
+
+    /**
+     * Sets the module and MOJO of the events the calling thread emits.
+     * 
+     * @param module The module.
+     * @param mojo The MOJO.
+     */
+    public static void setContext(String module, String mojo)
+    {
+        context.set(new String[]
+        {
+            module, mojo
+        });
+    }
+
+    /**
+     * Clears the module and MOJO of the events the calling thread emits.
+     */
+    public static void clearContext()
+    {
+        context.remove();
+    }
+
+    /**
+     * Begins an event.
+     * 
+     * @param type The event's type.
+     * @return The event.
+     */
+    public static Event begin(Type type)
+    {
+        return type.isEnabled() ? type.begin(null, null) : Event.NONE;
+    }
+
+    /**
+     * Begins an event.
+     * 
+     * @param type The event's type.
+     * @param value The value of the type's first field.
+     * @return The event.
+     */
+    public static Event begin(Type type, String value)
+    {
+        return type.isEnabled() ? type.begin(value, null) : Event.NONE;
+    }
+
+    /**
+     * Begins an event.
+     * 
+     * @param type The event's type.
+     * @param value1 The value of the type's first field.
+     * @param value2 The value of the type's second field.
+     * @return The event.
+     */
+    public static Event begin(Type type, String value1, String value2)
+    {
+        return type.isEnabled() ? type.begin(value1, value2) : Event.NONE;
+    }
+
+    /**
+     * A type of event.
+     */
+    public static final class Type
+    {
+        private final int fields;
+
+        private final Object factory;
+
+        private final Object eventType;
+
+        /**
+         * Initializes a new instance of the Type class.
+         * 
+         * @param name The type's name, without the net.sf.nvn. prefix.
+         * @param label The type's label.
+         * @param fields The names of the type's String fields.
+         */
+        Type(String name, String label, String... fields)
+        {
+            this.fields = fields.length;
+
+            Object f = null;
+            Object et = null;
+
+            if (Jfr.AVAILABLE)
+            {
+                try
+                {
+                    f = Jfr.createFactory("net.sf.nvn." + name, label, fields);
+                    et = Jfr.GET_EVENT_TYPE.invoke(f);
+                }
+                catch (Exception e)
+                {
+                    f = null;
+                    et = null;
+                }
+            }
+
+            this.factory = f;
+            this.eventType = et;
+        }
+
+        /**
+         * Gets a flag indicating whether or not a recording enables this type.
+         * Callers check it before they compute costly field values.
+         * 
+         * @return A flag indicating whether or not a recording enables this
+         *         type.
+         */
+        public boolean isEnabled()
+        {
+            if (this.eventType == null)
+            {
+                return false;
+            }
+
+            try
+            {
+                return (Boolean) Jfr.IS_ENABLED.invoke(this.eventType);
+            }
+            catch (Exception e)
+            {
+                return false;
+            }
+        }
+
+        private Event begin(String value1, String value2)
+        {
+            try
+            {
+                Object e = Jfr.NEW_EVENT.invoke(this.factory);
+                String[] ctx = context.get();
+
+                if (ctx != null)
+                {
+                    Jfr.SET.invoke(e, 0, ctx[0]);
+                    Jfr.SET.invoke(e, 1, ctx[1]);
+                }
+
+                if (this.fields > 0)
+                {
+                    Jfr.SET.invoke(e, 2, value1);
+                }
+
+                if (this.fields > 1)
+                {
+                    Jfr.SET.invoke(e, 3, value2);
+                }
+
+                Jfr.BEGIN.invoke(e);
+                return new Event(e);
+            }
+            catch (Exception e)
+            {
+                return Event.NONE;
+            }
+        }
+    }
+
+    /**
+     * An event that has begun.
+     */
+    public static final class Event
+    {
+        static final Event NONE = new Event(null);
+
+        private final Object event;
+
+        private Event(Object event)
+        {
+            this.event = event;
+        }
+
+        /**
+         * Gets a flag indicating whether or not this event is recorded.
+         * 
+         * @return A flag indicating whether or not this event is recorded.
+         */
+        public boolean isRecorded()
+        {
+            return this.event != null;
+        }
+
+        /**
+         * Ends and commits this event.
+         */
+        public void end()
+        {
+            if (this.event == null)
+            {
+                return;
+            }
+
+            try
+            {
+                Jfr.END.invoke(this.event);
+                Jfr.COMMIT.invoke(this.event);
+            }
+            catch (Exception e)
+            {
+                // An event is never worth failing a build over.
+            }
+        }
+    }
+
+    /**
+     * The reflected Flight Recorder API.
+     */
+    private static final class Jfr
+    {
+        static final boolean AVAILABLE;
+
+        static Method CREATE;
+
+        static Method GET_EVENT_TYPE;
+
+        static Method IS_ENABLED;
+
+        static Method NEW_EVENT;
+
+        static Method SET;
+
+        static Method BEGIN;
+
+        static Method END;
+
+        static Method COMMIT;
+
+        static Constructor<?> ANNOTATION;
+
+        static Constructor<?> VALUE;
+
+        static Class<?> NAME;
+
+        static Class<?> LABEL;
+
+        static Class<?> CATEGORY;
+
+        static
+        {
+            boolean available;
+
+            try
+            {
+                Class<?> factory = Class.forName("jdk.jfr.EventFactory");
+                Class<?> event = Class.forName("jdk.jfr.Event");
+                Class<?> eventType = Class.forName("jdk.jfr.EventType");
+
+                CREATE = factory.getMethod("create", List.class, List.class);
+                GET_EVENT_TYPE = factory.getMethod("getEventType");
+                NEW_EVENT = factory.getMethod("newEvent");
+                IS_ENABLED = eventType.getMethod("isEnabled");
+                SET = event.getMethod("set", int.class, Object.class);
+                BEGIN = event.getMethod("begin");
+                END = event.getMethod("end");
+                COMMIT = event.getMethod("commit");
+
+                ANNOTATION =
+                    Class.forName("jdk.jfr.AnnotationElement").getConstructor(
+                        Class.class,
+                        Object.class);
+                VALUE =
+                    Class.forName("jdk.jfr.ValueDescriptor").getConstructor(
+                        Class.class,
+                        String.class);
+
+                NAME = Class.forName("jdk.jfr.Name");
+                LABEL = Class.forName("jdk.jfr.Label");
+                CATEGORY = Class.forName("jdk.jfr.Category");
+
+                available = true;
+            }
+            catch (Throwable e)
+            {
+                available = false;
+            }
+
+            AVAILABLE = available;
+        }
+
+        static Object createFactory(String name, String label, String[] fields)
+            throws Exception
+        {
+            List<Object> annotations = new ArrayList<Object>();
+            annotations.add(ANNOTATION.newInstance(NAME, name));
+            annotations.add(ANNOTATION.newInstance(LABEL, label));
+            annotations.add(ANNOTATION.newInstance(CATEGORY, new String[]
+            {
+                "nvn"
+            }));
+
+            List<Object> values = new ArrayList<Object>();
+            values.add(VALUE.newInstance(String.class, "module"));
+            values.add(VALUE.newInstance(String.class, "mojo"));
+
+            for (String f : fields)
+            {
+                values.add(VALUE.newInstance(String.class, f));
+            }
+
+            return CREATE.invoke(null, annotations, values);
+        }
+    }
+}
@@ -0,0 +1,563 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * <p>
+ * A registry of counters, timers and histograms that describe the work nvn
+ * does, such as the processes it spawns, the bytes it copies and the time it
+ * spends parsing projects. The registry can be written in the Prometheus text
+ * format and as JSON.
+ * </p>
+ * 
+ * <p>
+ * A metric is identified by its name and labels. Labels are given as
+ * alternating names and values. Updating a metric takes no lock, so the
+ * metrics can be updated from hot paths and from several threads at once.
+ * </p>
+ * 
+ * @author akutz
+ * 
+ */
+public class Metrics
+{
+    /**
+     * The buckets of timers, in seconds.
+     */
+    public static final double[] TIMER_BUCKETS =
+    {
+        0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 300
+    };
+
+    /**
+     * The registry shared by the session.
+     */
+    private static final Metrics instance = new Metrics();
+
+    /**
+     * The bytes nvn copied, such as dependencies and installed artifacts.
+     */
+    public static final Counter BYTES_COPIED =
+        instance.counter("nvn_bytes_copied_total", "Bytes copied by nvn");
+
+    private final ConcurrentMap<String, Metric> metrics =
+        new ConcurrentHashMap<String, Metric>();
+
+    /**
+     * Gets the registry shared by the session.
+     * 
+     * @return The registry shared by the session.
+     */
+    public static Metrics getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * Gets or creates a counter.
+     * 
+     * @param name The counter's name.
+     * @param help The counter's description.
+     * @param labels The counter's label names and values.
+     * @return The counter.
+     */
+    public Counter counter(String name, String help, String... labels)
+    {
+        Metric m = this.metrics.get(getKey(name, labels));
+        return m != null ? cast(m, Counter.class) : register(new Counter(
+            name,
+            help,
+            labels));
+    }
+
+    /**
+     * Gets or creates a histogram.
+     * 
+     * @param name The histogram's name.
+     * @param help The histogram's description.
+     * @param buckets The upper bounds of the histogram's buckets in ascending
+     *        order.
+     * @param labels The histogram's label names and values.
+     * @return The histogram.
+     */
+    public Histogram histogram(
+        String name,
+        String help,
+        double[] buckets,
+        String... labels)
+    {
+        Metric m = this.metrics.get(getKey(name, labels));
+        return m != null ? cast(m, Histogram.class) : register(new Histogram(
+            name,
+            help,
+            buckets,
+            labels));
+    }
+
+    /**
+     * Gets or creates a timer, a histogram of durations in seconds.
+     * 
+     * @param name The timer's name.
+     * @param help The timer's description.
+     * @param labels The timer's label names and values.
+     * @return The timer.
+     */
+    public Timer timer(String name, String help, String... labels)
+    {
+        Metric m = this.metrics.get(getKey(name, labels));
+        return m != null ? cast(m, Timer.class) : register(new Timer(
+            name,
+            help,
+            labels));
+    }
+
+    /**
+     * Formats the metrics in the Prometheus text format.
+     * 
+     * @return The metrics in the Prometheus text format.
+     */
+    public String toPrometheus()
+    {
+        StringBuilder buff = new StringBuilder();
+        String lastName = null;
+
+        for (Metric m : getSorted().values())
+        {
+            if (!m.name.equals(lastName))
+            {
+                buff.append("# HELP ").append(m.name).append(' ');
+                buff.append(m.help.replace("\\", "\\\\").replace("\n", "\\n"));
+                buff.append("\n# TYPE ").append(m.name).append(' ');
+                buff.append(m.getType()).append('\n');
+                lastName = m.name;
+            }
+
+            m.appendPrometheus(buff);
+        }
+
+        return buff.toString();
+    }
+
+    /**
+     * Formats the metrics as a JSON object with the array <em>metrics</em>.
+     * 
+     * @return The metrics as JSON.
+     */
+    public String toJson()
+    {
+        StringBuilder buff = new StringBuilder();
+        buff.append("{\"metrics\":[");
+
+        boolean first = true;
+
+        for (Metric m : getSorted().values())
+        {
+            if (!first)
+            {
+                buff.append(",");
+            }
+
+            first = false;
+            buff.append("{\"name\":");
+            StringUtils.appendJsonString(buff, m.name);
+            buff.append(",\"type\":\"").append(m.getType());
+            buff.append("\",\"help\":");
+            StringUtils.appendJsonString(buff, m.help);
+            buff.append(",\"labels\":{");
+
+            for (int x = 0; x + 1 < m.labels.length; x += 2)
+            {
+                if (x > 0)
+                {
+                    buff.append(",");
+                }
+
+                StringUtils.appendJsonString(buff, m.labels[x]);
+                buff.append(":");
+                StringUtils.appendJsonString(buff, m.labels[x + 1]);
+            }
+
+            buff.append("},");
+            m.appendJson(buff);
+            buff.append("}");
+        }
+
+        buff.append("]}");
+        return buff.toString();
+    }
+
+    /**
+     * Writes the metrics to <em>nvn-metrics.prom</em> in the Prometheus text
+     * format and to <em>nvn-metrics.json</em> as JSON.
+     * 
+     * @param dir The directory the files are written to.
+     * @throws IOException When an error occurs.
+     */
+    public void write(File dir) throws IOException
+    {
+        FileUtils.writeStringToFile(
+            new File(dir, "nvn-metrics.prom"),
+            toPrometheus(),
+            "UTF-8");
+        FileUtils.writeStringToFile(
+            new File(dir, "nvn-metrics.json"),
+            toJson(),
+            "UTF-8");
+    }
+
+    private Map<String, Metric> getSorted()
+    {
+        return new TreeMap<String, Metric>(this.metrics);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Metric> T register(T metric)
+    {
+        Metric m = this.metrics.putIfAbsent(metric.key, metric);
+        return m == null ? metric : (T) cast(m, metric.getClass());
+    }
+
+    private static <T extends Metric> T cast(Metric m, Class<T> type)
+    {
+        if (m.getClass() != type)
+        {
+            throw new IllegalArgumentException(String.format(
+                "%s is a %s",
+                m.key,
+                m.getClass().getSimpleName()));
+        }
+
+        return type.cast(m);
+    }
+
+    private static String getKey(String name, String[] labels)
+    {
+        if (labels.length == 0)
+        {
+            return name;
+        }
+
+        StringBuilder buff = new StringBuilder(name);
+        appendLabels(buff, labels, null);
+        return buff.toString();
+    }
+
+    private static void appendLabels(
+        StringBuilder buff,
+        String[] labels,
+        String le)
+    {
+        if (labels.length < 2 && le == null)
+        {
+            return;
+        }
+
+        buff.append('{');
+
+        for (int x = 0; x + 1 < labels.length; x += 2)
+        {
+            if (x > 0)
+            {
+                buff.append(',');
+            }
+
+            buff.append(labels[x]).append("=\"");
+            buff.append(labels[x + 1]
+                .replace("\\", "\\\\")
+                .replace("\"", "\\\"")
+                .replace("\n", "\\n"));
+            buff.append('"');
+        }
+
+        if (le != null)
+        {
+            if (labels.length > 1)
+            {
+                buff.append(',');
+            }
+
+            buff.append("le=\"").append(le).append('"');
+        }
+
+        buff.append('}');
+    }
+
+    /**
+     * A metric.
+     */
+    public abstract static class Metric
+    {
+        final String name;
+
+        final String help;
+
+        final String[] labels;
+
+        final String key;
+
+        Metric(String name, String help, String[] labels)
+        {
+            if (labels.length % 2 != 0)
+            {
+                throw new IllegalArgumentException(String.format(
+                    "the labels of %s are not name/value pairs",
+                    name));
+            }
+
+            this.name = name;
+            this.help = help;
+            this.labels = labels;
+            this.key = getKey(name, labels);
+        }
+
+        abstract String getType();
+
+        abstract void appendPrometheus(StringBuilder buff);
+
+        abstract void appendJson(StringBuilder buff);
+    }
+
+    /**
+     * A counter.
+     */
+    public static final class Counter extends Metric
+    {
+        private final AtomicLong value = new AtomicLong();
+
+        Counter(String name, String help, String[] labels)
+        {
+            super(name, help, labels);
+        }
+
+        /**
+         * Adds one to the counter.
+         */
+        public void inc()
+        {
+            this.value.incrementAndGet();
+        }
+
+        /**
+         * Adds to the counter.
+         * 
+         * @param delta The amount to add.
+         */
+        public void inc(long delta)
+        {
+            this.value.addAndGet(delta);
+        }
+
+        /**
+         * Gets the counter's value.
+         * 
+         * @return The counter's value.
+         */
+        public long get()
+        {
+            return this.value.get();
+        }
+
+        @Override
+        String getType()
+        {
+            return "counter";
+        }
+
+        @Override
+        void appendPrometheus(StringBuilder buff)
+        {
+            buff.append(this.name);
+            appendLabels(buff, this.labels, null);
+            buff.append(' ').append(this.value.get()).append('\n');
+        }
+
+        @Override
+        void appendJson(StringBuilder buff)
+        {
+            buff.append("\"value\":").append(this.value.get());
+        }
+    }
+
+    /**
+     * A histogram.
+     */
+    public static class Histogram extends Metric
+    {
+        private final double[] bounds;
+
+        private final AtomicLongArray counts;
+
+        private final AtomicLong sum = new AtomicLong();
+
+        Histogram(String name, String help, double[] bounds, String[] labels)
+        {
+            super(name, help, labels);
+            this.bounds = bounds.clone();
+            this.counts = new AtomicLongArray(bounds.length + 1);
+        }
+
+        /**
+         * Records a value.
+         * 
+         * @param value The value.
+         */
+        public void observe(double value)
+        {
+            int x = 0;
+
+            while (x < this.bounds.length && value > this.bounds[x])
+            {
+                ++x;
+            }
+
+            this.counts.incrementAndGet(x);
+
+            // The sum is kept as the bits of a double.
+            long old;
+            long nu;
+
+            do
+            {
+                old = this.sum.get();
+                nu =
+                    Double.doubleToLongBits(Double.longBitsToDouble(old)
+                        + value);
+            }
+            while (!this.sum.compareAndSet(old, nu));
+        }
+
+        /**
+         * Gets the number of values that were recorded.
+         * 
+         * @return The number of values that were recorded.
+         */
+        public long getCount()
+        {
+            long n = 0;
+
+            for (int x = 0; x < this.counts.length(); ++x)
+            {
+                n += this.counts.get(x);
+            }
+
+            return n;
+        }
+
+        /**
+         * Gets the sum of the values that were recorded.
+         * 
+         * @return The sum of the values that were recorded.
+         */
+        public double getSum()
+        {
+            return Double.longBitsToDouble(this.sum.get());
+        }
+
+        @Override
+        String getType()
+        {
+            return "histogram";
+        }
+
+        @Override
+        void appendPrometheus(StringBuilder buff)
+        {
+            long n = 0;
+
+            for (int x = 0; x <= this.bounds.length; ++x)
+            {
+                n += this.counts.get(x);
+                buff.append(this.name).append("_bucket");
+                appendLabels(buff, this.labels, x < this.bounds.length
+                    ? Double.toString(this.bounds[x]) : "+Inf");
+                buff.append(' ').append(n).append('\n');
+            }
+
+            buff.append(this.name).append("_sum");
+            appendLabels(buff, this.labels, null);
+            buff.append(' ').append(getSum()).append('\n');
+            buff.append(this.name).append("_count");
+            appendLabels(buff, this.labels, null);
+            buff.append(' ').append(n).append('\n');
+        }
+
+        @Override
+        void appendJson(StringBuilder buff)
+        {
+            buff.append("\"count\":").append(getCount());
+            buff.append(",\"sum\":").append(getSum());
+            buff.append(",\"buckets\":[");
+
+            long n = 0;
+
+            for (int x = 0; x < this.bounds.length; ++x)
+            {
+                n += this.counts.get(x);
+                buff.append(x > 0 ? "," : "");
+                buff.append("{\"le\":").append(this.bounds[x]);
+                buff.append(",\"count\":").append(n).append("}");
+            }
+
+            buff.append("]");
+        }
+    }
+
+    /**
+     * A timer, a histogram of durations in seconds.
+     */
+    public static final class Timer extends Histogram
+    {
+        Timer(String name, String help, String[] labels)
+        {
+            super(name, help, TIMER_BUCKETS, labels);
+        }
+
+        /**
+         * Records the time since a start time.
+         * 
+         * @param startNanos The start time from {@link System#nanoTime()}.
+         */
+        public void stop(long startNanos)
+        {
+            observe((System.nanoTime() - startNanos) / 1e9);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Deletes files and directory trees with a pool of threads. Each directory is
+ * listed by its own task, so the files of a large tree, such as an
+ * intermediate directory, are deleted by several threads at once. Once the
+ * files are gone the directories are deleted, the deepest first.
+ * </p>
+ * 
+ * <p>
+ * Symbolic links are deleted but not followed.
+ * </p>
+ * 
+ * @author akutz
+ * 
+ */
+public class ParallelDeleter
+{
+    private final int threads;
+
+    /**
+     * Initializes a new instance of the ParallelDeleter class.
+     * 
+     * @param threads The number of threads that delete files.
+     */
+    public ParallelDeleter(int threads)
+    {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Deletes files and directory trees. Files that do not exist are ignored.
+     * 
+     * @param files The files and directories to delete.
+     * @return The number of files and directories that were deleted.
+     * @throws IOException When a file or directory cannot be deleted. The
+     *         other files are still deleted.
+     * @throws InterruptedException When the calling thread is interrupted.
+     */
+    public int delete(Collection<File> files)
+        throws IOException,
+        InterruptedException
+    {
+        final Queue<File> dirs = new ConcurrentLinkedQueue<File>();
+        final Queue<File> failed = new ConcurrentLinkedQueue<File>();
+        final AtomicInteger deleted = new AtomicInteger();
+        final AtomicInteger pending = new AtomicInteger(1);
+        final CountDownLatch done = new CountDownLatch(1);
+
+        final ExecutorService executor =
+            Executors.newFixedThreadPool(this.threads);
+
+        try
+        {
+            for (File f : files)
+            {
+                submit(executor, f, dirs, failed, deleted, pending, done);
+            }
+
+            // The initial count keeps the latch closed while the roots are
+            // being submitted.
+            if (pending.decrementAndGet() == 0)
+            {
+                done.countDown();
+            }
+
+            done.await();
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        List<File> sorted = new ArrayList<File>(dirs);
+
+        Collections.sort(sorted, new Comparator<File>()
+        {
+            @Override
+            public int compare(File o1, File o2)
+            {
+                return o2.getPath().length() - o1.getPath().length();
+            }
+        });
+
+        for (File d : sorted)
+        {
+            if (d.delete())
+            {
+                deleted.incrementAndGet();
+            }
+            else if (d.exists())
+            {
+                failed.add(d);
+            }
+        }
+
+        if (!failed.isEmpty())
+        {
+            throw new IOException(String.format(
+                "Error deleting %s file(s), including %s",
+                failed.size(),
+                failed.peek()));
+        }
+
+        return deleted.get();
+    }
+
+    private static void submit(
+        final ExecutorService executor,
+        final File file,
+        final Queue<File> dirs,
+        final Queue<File> failed,
+        final AtomicInteger deleted,
+        final AtomicInteger pending,
+        final CountDownLatch done)
+    {
+        pending.incrementAndGet();
+
+        executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    File[] children =
+                        isSymlink(file) ? null : file.listFiles();
+
+                    if (children == null)
+                    {
+                        if (file.delete())
+                        {
+                            deleted.incrementAndGet();
+                        }
+                        else if (file.exists())
+                        {
+                            failed.add(file);
+                        }
+
+                        return;
+                    }
+
+                    dirs.add(file);
+
+                    for (File c : children)
+                    {
+                        submit(executor, c, dirs, failed, deleted, pending,
+                            done);
+                    }
+                }
+                catch (IOException e)
+                {
+                    failed.add(file);
+                }
+                finally
+                {
+                    if (pending.decrementAndGet() == 0)
+                    {
+                        done.countDown();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Gets a flag indicating whether or not a file is a symbolic link. A file
+     * is a link if its canonical path differs from the path of the file with
+     * the same name in its parent's canonical directory.
+     * 
+     * @param file The file.
+     * @return A flag indicating whether or not the file is a symbolic link.
+     * @throws IOException When an error occurs.
+     */
+    static boolean isSymlink(File file) throws IOException
+    {
+        File parent = file.getAbsoluteFile().getParentFile();
+
+        if (parent == null)
+        {
+            return false;
+        }
+
+        File f = new File(parent.getCanonicalFile(), file.getName());
+        return !f.getCanonicalFile().equals(f.getAbsoluteFile());
+    }
+}
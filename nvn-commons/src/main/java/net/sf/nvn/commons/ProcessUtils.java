@@ -30,9 +30,12 @@
 
 package net.sf.nvn.commons;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.PrintStream;
 import java.util.Map;
 import org.apache.commons.io.IOUtils;
 
@@ -112,7 +115,24 @@ public final class ProcessUtils
     {
         String[] envVarsArr = getEnvVarArray(envVars);
 
-        Process p = Runtime.getRuntime().exec(cmd, envVarsArr);
+        FlightEvents.Event fe =
+            FlightEvents.begin(FlightEvents.PROCESS_SPAWN, cmd);
+        Process p;
+
+        try
+        {
+            p = Runtime.getRuntime().exec(cmd, envVarsArr);
+        }
+        finally
+        {
+            fe.end();
+        }
+
+        Metrics.getInstance().counter(
+            "nvn_processes_spawned_total",
+            "Processes spawned by nvn",
+            "tool",
+            getToolName(cmd)).inc();
 
         if (copyStdOutAndStdErrToParentProcess)
         {
@@ -183,6 +203,70 @@ public final class ProcessUtils
         }).start();
     }
 
+    /**
+     * Pipes the lines of an input stream to the given print stream and passes
+     * each line to a handler. The handler is only called by one pipe at a
+     * time, so the same handler can be given to the pipes of a process's
+     * stdout and stderr. A line the handler fails on is still piped to the
+     * print stream.
+     * 
+     * @param in The input stream.
+     * @param out The print stream.
+     * @param handler The handler.
+     * @return The thread that pipes the stream. It ends when the input stream
+     *         does.
+     */
+    public static Thread pipe(
+        final InputStream in,
+        final PrintStream out,
+        final LineHandler handler)
+    {
+        Thread t = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                BufferedReader reader =
+                    new BufferedReader(new InputStreamReader(in));
+
+                try
+                {
+                    String line;
+
+                    while ((line = reader.readLine()) != null)
+                    {
+                        out.println(line);
+
+                        synchronized (handler)
+                        {
+                            try
+                            {
+                                handler.handle(line);
+                            }
+                            catch (RuntimeException e)
+                            {
+                                // A handler that fails on a line must not stop
+                                // the pipe, or the process blocks on a full
+                                // output buffer.
+                            }
+                        }
+                    }
+                }
+                catch (IOException e)
+                {
+                    // Do nothing
+                }
+                finally
+                {
+                    IOUtils.closeQuietly(reader);
+                }
+            }
+        });
+
+        t.start();
+        return t;
+    }
+
     /**
      * Gets the environment variable map as an array of strings with the format
      * "KEY=VALUE".
@@ -211,4 +295,43 @@ public final class ProcessUtils
 
         return arr;
     }
+
+    /**
+     * Gets the name of the tool a command line runs: the file name of its
+     * first token without the extension, in lower case.
+     * 
+     * @param cmd The command line.
+     * @return The name of the tool.
+     */
+    static String getToolName(String cmd)
+    {
+        String s = cmd.trim();
+        int end;
+
+        if (s.startsWith("\""))
+        {
+            s = s.substring(1);
+            end = s.indexOf('"');
+        }
+        else
+        {
+            end = s.indexOf(' ');
+        }
+
+        if (end >= 0)
+        {
+            s = s.substring(0, end);
+        }
+
+        s = s.substring(Math.max(s.lastIndexOf('\\'), s.lastIndexOf('/')) + 1);
+
+        int dot = s.lastIndexOf('.');
+
+        if (dot > 0)
+        {
+            s = s.substring(0, dot);
+        }
+
+        return s.toLowerCase();
+    }
 }
@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>
+ * Stores values for the projects of a build. The values of each project are
+ * indexed by typed keys, and the projects are indexed by their
+ * groupId:artifactId:version. Values are stored and read without locking, so
+ * the projects of a parallel build do not contend with each other, and any
+ * thread that builds a project sees the values stored by the others.
+ * </p>
+ * 
+ * @author akutz
+ * 
+ */
+public class ProjectStore
+{
+    /**
+     * A key of a value in the store. Keys are compared by identity and are
+     * meant to be declared as constants.
+     * 
+     * @param <T> The type of the key's value.
+     */
+    public static final class Key<T>
+    {
+        private final String name;
+
+        private final Class<T> type;
+
+        /**
+         * Initializes a new instance of the Key class.
+         * 
+         * @param name The key's name.
+         * @param type The type of the key's value.
+         */
+        public Key(String name, Class<T> type)
+        {
+            this.name = name;
+            this.type = type;
+        }
+
+        /**
+         * Gets the key's name.
+         * 
+         * @return The key's name.
+         */
+        public String getName()
+        {
+            return this.name;
+        }
+
+        /**
+         * Gets the type of the key's value.
+         * 
+         * @return The type of the key's value.
+         */
+        public Class<T> getType()
+        {
+            return this.type;
+        }
+
+        @Override
+        public String toString()
+        {
+            return this.name;
+        }
+    }
+
+    private final ConcurrentMap<String, ConcurrentMap<Key<?>, Object>> projects;
+
+    /**
+     * Initializes a new instance of the ProjectStore class.
+     */
+    public ProjectStore()
+    {
+        this.projects =
+            new ConcurrentHashMap<String, ConcurrentMap<Key<?>, Object>>();
+    }
+
+    /**
+     * Gets the key of a project.
+     * 
+     * @param groupId The project's groupId.
+     * @param artifactId The project's artifactId.
+     * @param version The project's version.
+     * @return The key of the project.
+     */
+    public static String getProjectKey(
+        String groupId,
+        String artifactId,
+        String version)
+    {
+        return groupId + ":" + artifactId + ":" + version;
+    }
+
+    /**
+     * Stores a project's value.
+     * 
+     * @param <T> The type of the value.
+     * @param project The key of the project.
+     * @param key The key of the value.
+     * @param value The value.
+     */
+    public <T> void put(String project, Key<T> key, T value)
+    {
+        ConcurrentMap<Key<?>, Object> values = this.projects.get(project);
+
+        if (values == null)
+        {
+            ConcurrentMap<Key<?>, Object> nv =
+                new ConcurrentHashMap<Key<?>, Object>();
+            values = this.projects.putIfAbsent(project, nv);
+
+            if (values == null)
+            {
+                values = nv;
+            }
+        }
+
+        values.put(key, key.getType().cast(value));
+    }
+
+    /**
+     * Gets a project's value.
+     * 
+     * @param <T> The type of the value.
+     * @param project The key of the project.
+     * @param key The key of the value.
+     * @return The value or null if it is not stored.
+     */
+    public <T> T get(String project, Key<T> key)
+    {
+        ConcurrentMap<Key<?>, Object> values = this.projects.get(project);
+        return values == null ? null : key.getType().cast(values.get(key));
+    }
+
+    /**
+     * Removes the values of a project.
+     * 
+     * @param project The key of the project.
+     */
+    public void remove(String project)
+    {
+        this.projects.remove(project);
+    }
+
+    /**
+     * Removes the values of all of the projects.
+     */
+    public void clear()
+    {
+        this.projects.clear();
+    }
+
+    /**
+     * Gets the number of projects with stored values.
+     * 
+     * @return The number of projects with stored values.
+     */
+    public int size()
+    {
+        return this.projects.size();
+    }
+}
@@ -43,6 +43,14 @@ import java.util.regex.Pattern;
  */
 public final class RegistryUtils
 {
+    /**
+     * The number of registry probes.
+     */
+    private static final Metrics.Counter PROBES =
+        Metrics.getInstance().counter(
+            "nvn_registry_probes_total",
+            "Registry keys and values queried with reg query");
+
     /**
      * Returns a flag indicating whether or not the specified registry key
      * exists.
@@ -57,18 +65,16 @@ public final class RegistryUtils
         throws IOException,
         InterruptedException
     {
-        String cmd = "reg query " + quote(key);
-        Process p = ProcessUtils.exec(cmd, false);
-        int exitCode = p.waitFor();
+        Process p = query(key, null);
+        int exitCode = p.exitValue();
 
         if (exitCode != 0)
         {
             if (key.contains("SOFTWARE\\"))
             {
                 key = key.replace("SOFTWARE\\", "SOFTWARE\\Wow6432Node\\");
-                cmd = String.format("reg query %s", quote(key));
-                p = ProcessUtils.exec(cmd, false);
-                exitCode = p.waitFor();
+                p = query(key, null);
+                exitCode = p.exitValue();
 
                 if (exitCode != 0)
                 {
@@ -99,23 +105,16 @@ public final class RegistryUtils
         throws IOException,
         InterruptedException
     {
-        String cmd =
-            String.format("reg query %s /v %s", quote(key), quote(valueName));
-        Process p = ProcessUtils.exec(cmd, false);
-        int exitCode = p.waitFor();
+        Process p = query(key, valueName);
+        int exitCode = p.exitValue();
 
         if (exitCode != 0)
         {
             if (key.contains("SOFTWARE\\"))
             {
                 key = key.replace("SOFTWARE\\", "SOFTWARE\\Wow6432Node\\");
-                cmd =
-                    String.format(
-                        "reg query %s /v %s",
-                        quote(key),
-                        quote(valueName));
-                p = ProcessUtils.exec(cmd, false);
-                exitCode = p.waitFor();
+                p = query(key, valueName);
+                exitCode = p.exitValue();
 
                 if (exitCode != 0)
                 {
@@ -146,23 +145,16 @@ public final class RegistryUtils
         InterruptedException,
         Exception
     {
-        String cmd =
-            String.format("reg query %s /v %s", quote(key), quote(valueName));
-        Process p = ProcessUtils.exec(cmd, false);
-        int exitCode = p.waitFor();
+        Process p = query(key, valueName);
+        int exitCode = p.exitValue();
 
         if (exitCode != 0)
         {
             if (key.contains("SOFTWARE\\"))
             {
                 key = key.replace("SOFTWARE\\", "SOFTWARE\\Wow6432Node\\");
-                cmd =
-                    String.format(
-                        "reg query %s /v %s",
-                        quote(key),
-                        quote(valueName));
-                p = ProcessUtils.exec(cmd, false);
-                exitCode = p.waitFor();
+                p = query(key, valueName);
+                exitCode = p.exitValue();
 
                 if (exitCode != 0)
                 {
@@ -179,8 +171,66 @@ public final class RegistryUtils
             }
         }
 
-        String stdout = ProcessUtils.getStdOut(p);
+        return parseValue(ProcessUtils.getStdOut(p), valueName);
+    }
+
+    /**
+     * Runs <em>reg query</em> and waits for it to exit.
+     * 
+     * @param key The registry key.
+     * @param valueName The value's name or null to query the key.
+     * @return The exited process.
+     * @throws IOException When an error occurs.
+     * @throws InterruptedException When an error occurs.
+     */
+    private static Process query(String key, String valueName)
+        throws IOException,
+        InterruptedException
+    {
+        PROBES.inc();
+
+        FlightEvents.Event probe =
+            FlightEvents.begin(FlightEvents.REGISTRY_PROBE, key, valueName);
+
+        try
+        {
+            String cmd =
+                valueName == null ? "reg query " + quote(key) : String.format(
+                    "reg query %s /v %s",
+                    quote(key),
+                    quote(valueName));
+            Process p = ProcessUtils.exec(cmd, false);
+
+            FlightEvents.Event wait =
+                FlightEvents.begin(FlightEvents.PROCESS_WAIT, "reg");
 
+            try
+            {
+                p.waitFor();
+            }
+            finally
+            {
+                wait.end();
+            }
+
+            return p;
+        }
+        finally
+        {
+            probe.end();
+        }
+    }
+
+    /**
+     * Parses a registry value from the output of <em>reg query</em>.
+     * 
+     * @param stdout The output of <em>reg query</em>.
+     * @param valueName The value's name.
+     * @return A registry value.
+     * @throws Exception When the output does not contain the value.
+     */
+    static String parseValue(String stdout, String valueName) throws Exception
+    {
         String spatt =
             String.format("\\s+%s\\s+REG_[^\\s]+\\s+([^\\s].+)", valueName);
         Pattern patt = Pattern.compile(spatt, Pattern.MULTILINE);
@@ -102,4 +102,50 @@ public class StringUtils
 
         return toReturn;
     }
+
+    /**
+     * Appends a string to a buffer as a quoted and escaped JSON string.
+     * 
+     * @param buff The buffer.
+     * @param s The string.
+     */
+    public static void appendJsonString(StringBuilder buff, String s)
+    {
+        buff.append('"');
+
+        for (int x = 0; x < s.length(); ++x)
+        {
+            char c = s.charAt(x);
+
+            switch (c)
+            {
+                case '"' :
+                    buff.append("\\\"");
+                    break;
+                case '\\' :
+                    buff.append("\\\\");
+                    break;
+                case '\n' :
+                    buff.append("\\n");
+                    break;
+                case '\r' :
+                    buff.append("\\r");
+                    break;
+                case '\t' :
+                    buff.append("\\t");
+                    break;
+                default :
+                    if (c < 0x20)
+                    {
+                        buff.append(String.format("\\u%04x", (int) c));
+                    }
+                    else
+                    {
+                        buff.append(c);
+                    }
+            }
+        }
+
+        buff.append('"');
+    }
 }
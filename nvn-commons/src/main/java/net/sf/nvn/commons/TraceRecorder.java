@@ -0,0 +1,297 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * <p>
+ * Records spans of time in memory and writes them as a Chrome trace, a JSON
+ * file in the Trace Event Format that opens in Perfetto or
+ * chrome://tracing.
+ * </p>
+ * 
+ * <p>
+ * Each span belongs to a process, such as a module, and to the thread that
+ * began it. A trace viewer shows a group of lanes per process and a lane per
+ * thread. Recording a span costs an object and a queue insert, and the spans
+ * are only formatted when the trace is written.
+ * </p>
+ * 
+ * @author akutz
+ * 
+ */
+public class TraceRecorder
+{
+    private final long origin = System.nanoTime();
+
+    private final Queue<Span> spans = new ConcurrentLinkedQueue<Span>();
+
+    /**
+     * Begins a span on the calling thread.
+     * 
+     * @param process The span's process.
+     * @param name The span's name.
+     * @param category The span's category.
+     * @return The span.
+     */
+    public Span begin(String process, String name, String category)
+    {
+        return begin(process, name, category, null, null);
+    }
+
+    /**
+     * Begins a span on the calling thread.
+     * 
+     * @param process The span's process.
+     * @param name The span's name.
+     * @param category The span's category.
+     * @param argName The name of the span's argument.
+     * @param argValue The value of the span's argument.
+     * @return The span.
+     */
+    public Span begin(
+        String process,
+        String name,
+        String category,
+        String argName,
+        String argValue)
+    {
+        Thread t = Thread.currentThread();
+        Span s = new Span(this, process, name, category, argName, argValue);
+        s.threadId = t.getId();
+        s.threadName = t.getName();
+        s.start = System.nanoTime();
+        return s;
+    }
+
+    /**
+     * Gets the number of spans that have ended.
+     * 
+     * @return The number of spans that have ended.
+     */
+    public int size()
+    {
+        return this.spans.size();
+    }
+
+    /**
+     * Formats the spans that have ended as a Chrome trace.
+     * 
+     * @return The trace.
+     */
+    public String toJson()
+    {
+        List<Span> list = new ArrayList<Span>(this.spans);
+
+        Collections.sort(list, new Comparator<Span>()
+        {
+            @Override
+            public int compare(Span o1, Span o2)
+            {
+                return o1.start < o2.start ? -1 : o1.start == o2.start ? 0 : 1;
+            }
+        });
+
+        Map<String, Integer> pids = new LinkedHashMap<String, Integer>();
+        Set<String> threads = new HashSet<String>();
+        StringBuilder buff = new StringBuilder(list.size() * 160 + 64);
+        buff.append("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+
+        boolean first = true;
+
+        for (Span s : list)
+        {
+            String process = s.process == null ? "nvn" : s.process;
+            Integer pid = pids.get(process);
+
+            if (pid == null)
+            {
+                pid = Integer.valueOf(pids.size() + 1);
+                pids.put(process, pid);
+                first = appendSeparator(buff, first);
+                appendName(buff, "process_name", pid, null, process);
+            }
+
+            if (threads.add(pid + ":" + s.threadId))
+            {
+                first = appendSeparator(buff, first);
+                appendName(buff, "thread_name", pid, s.threadId, s.threadName);
+            }
+
+            first = appendSeparator(buff, first);
+            buff.append("{\"name\":");
+            StringUtils.appendJsonString(buff, s.name);
+            buff.append(",\"cat\":");
+            StringUtils.appendJsonString(buff, s.category);
+            buff.append(",\"ph\":\"X\",\"ts\":");
+            buff.append((s.start - this.origin) / 1000);
+            buff.append(",\"dur\":");
+            buff.append(s.duration / 1000);
+            buff.append(",\"pid\":");
+            buff.append(pid);
+            buff.append(",\"tid\":");
+            buff.append(s.threadId);
+
+            if (s.argName != null && s.argValue != null)
+            {
+                buff.append(",\"args\":{");
+                StringUtils.appendJsonString(buff, s.argName);
+                buff.append(":");
+                StringUtils.appendJsonString(buff, s.argValue);
+                buff.append("}");
+            }
+
+            buff.append("}");
+        }
+
+        buff.append("]}");
+        return buff.toString();
+    }
+
+    /**
+     * Writes the spans that have ended to a file as a Chrome trace.
+     * 
+     * @param file The file.
+     * @throws IOException When an error occurs.
+     */
+    public void write(File file) throws IOException
+    {
+        FileUtils.writeStringToFile(file, toJson(), "UTF-8");
+    }
+
+    private static boolean appendSeparator(StringBuilder buff, boolean first)
+    {
+        if (!first)
+        {
+            buff.append(",");
+        }
+
+        return false;
+    }
+
+    private static void appendName(
+        StringBuilder buff,
+        String kind,
+        Integer pid,
+        Long tid,
+        String name)
+    {
+        buff.append("{\"name\":\"");
+        buff.append(kind);
+        buff.append("\",\"ph\":\"M\",\"pid\":");
+        buff.append(pid);
+
+        if (tid != null)
+        {
+            buff.append(",\"tid\":");
+            buff.append(tid);
+        }
+
+        buff.append(",\"args\":{\"name\":");
+        StringUtils.appendJsonString(buff, name);
+        buff.append("}}");
+    }
+
+    /**
+     * A span of time.
+     */
+    public static final class Span
+    {
+        /**
+         * A span that is not recorded.
+         */
+        public static final Span NONE = new Span(null, null, null, null, null,
+            null);
+
+        private final TraceRecorder recorder;
+
+        private final String process;
+
+        private final String name;
+
+        private final String category;
+
+        private final String argName;
+
+        private final String argValue;
+
+        private long threadId;
+
+        private String threadName;
+
+        private long start;
+
+        private long duration = -1;
+
+        private Span(
+            TraceRecorder recorder,
+            String process,
+            String name,
+            String category,
+            String argName,
+            String argValue)
+        {
+            this.recorder = recorder;
+            this.process = process;
+            this.name = name;
+            this.category = category;
+            this.argName = argName;
+            this.argValue = argValue;
+        }
+
+        /**
+         * Ends the span. A span is only recorded once.
+         */
+        public void end()
+        {
+            if (this.recorder == null || this.duration >= 0)
+            {
+                return;
+            }
+
+            this.duration = System.nanoTime() - this.start;
+            this.recorder.spans.add(this);
+        }
+    }
+}
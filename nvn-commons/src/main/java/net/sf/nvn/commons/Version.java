@@ -31,13 +31,26 @@
 package net.sf.nvn.commons;
 
 import java.io.Serializable;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import org.apache.commons.lang.StringUtils;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
+ * <p>
  * The Version class can be used to parse a standard version string into its
  * four components, MAJOR.MINOR.BUILD.REVISION.
+ * </p>
+ * 
+ * <p>
+ * The components are stored as integers together with the number of digits
+ * they were given with, so leading zeros are kept when a version is printed.
+ * The prefix and suffix are kept as offsets into the string that was parsed.
+ * Comparing and hashing versions does not allocate.
+ * </p>
+ * 
+ * <p>
+ * Code that parses the same version strings again and again should use
+ * {@link #valueOf(String)}, which returns shared immutable instances.
+ * </p>
  * 
  * @author akutz
  * 
@@ -47,15 +60,45 @@ public class Version implements Serializable, Cloneable, Comparable<Version>
     /**
      * A serial version UID.
      */
-    private static final long serialVersionUID = -4316270526722986552L;
+    private static final long serialVersionUID = 7652104871563319268L;
+
+    /**
+     * The index of the MAJOR component.
+     */
+    private static final int MAJOR = 0;
+
+    /**
+     * The index of the MINOR component.
+     */
+    private static final int MINOR = 1;
+
+    /**
+     * The index of the BUILD component.
+     */
+    private static final int BUILD = 2;
+
+    /**
+     * The index of the REVISION component.
+     */
+    private static final int REVISION = 3;
+
+    /**
+     * The largest number of versions that are kept by
+     * {@link #valueOf(String)}.
+     */
+    private static final int CACHE_SIZE = 4096;
+
+    /**
+     * The immutable versions that have already been parsed, indexed by the
+     * strings they were parsed from.
+     */
+    private static final ConcurrentMap<String, Version> CACHE =
+        new ConcurrentHashMap<String, Version>();
 
     /**
-     * A pattern to match the standard version format
-     * MAJOR.MINOR.BUILD.REVISION.
+     * A flag indicating whether or not the version may be modified.
      */
-    private static Pattern STD_VERSION_PATT =
-        Pattern
-            .compile("^([^\\d]*?)(\\d+)(?:\\.(\\d+))?(?:\\.(\\d+))?(?:\\.(\\d+))?(.*)$");
+    private boolean immutable;
 
     /**
      * Initialize a new Version object that is set to "0.0.0.0".
@@ -65,14 +108,14 @@ public class Version implements Serializable, Cloneable, Comparable<Version>
     }
 
     /**
-     * Everything before the version in the string that was parsed.
+     * The length of the prefix in the string that was parsed.
      */
-    private String prefix;
+    private int prefixEnd;
 
     /**
-     * Everything after the version in the string that was parsed.
+     * The index in the string that was parsed where the suffix begins.
      */
-    private String suffix;
+    private int suffixStart;
 
     /**
      * The String that was parsed to create this version object.
@@ -100,7 +143,12 @@ public class Version implements Serializable, Cloneable, Comparable<Version>
      */
     public String getPrefix()
     {
-        return this.prefix;
+        if (this.rawVersion == null)
+        {
+            return null;
+        }
+
+        return this.rawVersion.substring(0, this.prefixEnd);
     }
 
     /**
@@ -110,11 +158,64 @@ public class Version implements Serializable, Cloneable, Comparable<Version>
      */
     public String getSuffix()
     {
-        return this.suffix;
+        if (this.rawVersion == null)
+        {
+            return null;
+        }
+
+        return this.rawVersion.substring(this.suffixStart);
     }
 
     /**
-     * Parses a new Version object from a String.
+     * Gets a flag indicating whether or not the version's prefix equals a
+     * string. A version that was not parsed has an empty prefix.
+     * 
+     * @param prefix The string.
+     * @return A flag indicating whether or not the prefix equals the string.
+     */
+    public boolean prefixEquals(String prefix)
+    {
+        if (this.rawVersion == null)
+        {
+            return prefix.length() == 0;
+        }
+
+        return this.prefixEnd == prefix.length()
+            && this.rawVersion.regionMatches(0, prefix, 0, this.prefixEnd);
+    }
+
+    /**
+     * Gets a flag indicating whether or not the version's suffix equals a
+     * string. A version that was not parsed has an empty suffix.
+     * 
+     * @param suffix The string.
+     * @return A flag indicating whether or not the suffix equals the string.
+     */
+    public boolean suffixEquals(String suffix)
+    {
+        if (this.rawVersion == null)
+        {
+            return suffix.length() == 0;
+        }
+
+        int len = this.rawVersion.length() - this.suffixStart;
+
+        return len == suffix.length()
+            && this.rawVersion.regionMatches(this.suffixStart, suffix, 0, len);
+    }
+
+    /**
+     * <p>
+     * Parses a new Version object from a String. Everything before the first
+     * digit is the prefix. Up to four components separated by dots follow,
+     * and everything after them is the suffix. For example,
+     * <em>PM-3.0.1.0-SNAPSHOT</em> has the prefix <em>PM-</em> and the suffix
+     * <em>-SNAPSHOT</em>.
+     * </p>
+     * 
+     * <p>
+     * The string is scanned once.
+     * </p>
      * 
      * @param toParse The String object to parse.
      * @return A new Version object.
@@ -122,9 +223,15 @@ public class Version implements Serializable, Cloneable, Comparable<Version>
      */
     public static Version parse(String toParse) throws Exception
     {
-        Matcher m = STD_VERSION_PATT.matcher(toParse);
+        int len = toParse.length();
+        int pos = 0;
 
-        if (!m.find())
+        while (pos < len && !isDigit(toParse.charAt(pos)))
+        {
+            ++pos;
+        }
+
+        if (pos == len)
         {
             throw new Exception(String.format(
                 "Error parsing version from '%s'",
@@ -133,97 +240,362 @@ public class Version implements Serializable, Cloneable, Comparable<Version>
 
         Version v = new Version();
         v.rawVersion = toParse;
-        v.prefix = m.group(1);
+        v.prefixEnd = pos;
 
-        if (StringUtils.isNotEmpty(m.group(2)))
+        for (int x = MAJOR; x <= REVISION; ++x)
         {
-            v.setMajor(m.group(2));
+            if (x > MAJOR)
+            {
+                // A component follows a dot, otherwise the dot begins the
+                // suffix.
+                if (pos + 1 >= len || toParse.charAt(pos) != '.'
+                    || !isDigit(toParse.charAt(pos + 1)))
+                {
+                    break;
+                }
+
+                ++pos;
+            }
+
+            int start = pos;
+            long value = 0;
+
+            while (pos < len && isDigit(toParse.charAt(pos)))
+            {
+                value = value * 10 + (toParse.charAt(pos++) - '0');
+
+                if (value > Integer.MAX_VALUE)
+                {
+                    throw new Exception(String.format(
+                        "Error parsing version from '%s', component %s is "
+                            + "too large",
+                        toParse,
+                        x + 1));
+                }
+            }
+
+            v.set(x, (int) value, pos - start);
         }
 
-        if (StringUtils.isNotEmpty(m.group(3)))
+        v.suffixStart = pos;
+
+        return v;
+    }
+
+    /**
+     * Gets the immutable version parsed from a String. Versions are cached by
+     * the strings they are parsed from, so parsing the same string again
+     * returns the same instance. Once the cache is full it is emptied, so a
+     * scan of more distinct versions than the cache holds does not keep all
+     * of them.
+     * 
+     * @param toParse The String object to parse.
+     * @return An immutable Version object. Use {@link #toMutable()} to get a
+     *         copy that may be modified.
+     * @throws Exception When there is an error parsing the String.
+     */
+    public static Version valueOf(String toParse) throws Exception
+    {
+        Version v = CACHE.get(toParse);
+
+        if (v != null)
+        {
+            return v;
+        }
+
+        v = parse(toParse);
+        v.immutable = true;
+
+        if (CACHE.size() >= CACHE_SIZE)
         {
-            v.setMinor(m.group(3));
+            CACHE.clear();
         }
 
-        if (StringUtils.isNotEmpty(m.group(4)))
+        Version existing = CACHE.putIfAbsent(toParse, v);
+
+        return existing == null ? v : existing;
+    }
+
+    /**
+     * Gets a flag indicating whether or not the version may be modified.
+     * Versions returned by {@link #valueOf(String)} are immutable.
+     * 
+     * @return A flag indicating whether or not the version may be modified.
+     */
+    public boolean isImmutable()
+    {
+        return this.immutable;
+    }
+
+    /**
+     * Gets a copy of the version that may be modified.
+     * 
+     * @return A copy of the version that may be modified.
+     */
+    public Version toMutable()
+    {
+        try
         {
-            v.setBuild(m.group(4));
+            return (Version) clone();
         }
+        catch (CloneNotSupportedException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
 
-        if (StringUtils.isNotEmpty(m.group(5)))
+    private void checkMutable()
+    {
+        if (this.immutable)
         {
-            v.setRevision(m.group(5));
+            throw new UnsupportedOperationException(String.format(
+                "Version %s is immutable, use toMutable to modify a copy",
+                this));
         }
+    }
 
-        v.suffix = m.group(6);
+    private static boolean isDigit(char c)
+    {
+        return c >= '0' && c <= '9';
+    }
 
-        return v;
+    /**
+     * The values of the MAJOR, MINOR, BUILD and REVISION components.
+     */
+    private int major, minor, build, revision;
+
+    /**
+     * The number of digits the MAJOR, MINOR, BUILD and REVISION components
+     * are printed with. A component with fewer digits is padded with zeros at
+     * the left side.
+     */
+    private int majorDigits = 1, minorDigits = 1, buildDigits = 1,
+        revisionDigits = 1;
+
+    /**
+     * Gets a component.
+     * 
+     * @param component The index of the component.
+     * @return The component's value.
+     */
+    private int get(int component)
+    {
+        switch (component)
+        {
+            case MAJOR :
+                return this.major;
+            case MINOR :
+                return this.minor;
+            case BUILD :
+                return this.build;
+            default :
+                return this.revision;
+        }
     }
 
     /**
-     * The version's MAJOR component.
+     * Gets the number of digits a component is printed with.
+     * 
+     * @param component The index of the component.
+     * @return The number of digits.
      */
-    private String major = "0";
+    private int getDigits(int component)
+    {
+        switch (component)
+        {
+            case MAJOR :
+                return this.majorDigits;
+            case MINOR :
+                return this.minorDigits;
+            case BUILD :
+                return this.buildDigits;
+            default :
+                return this.revisionDigits;
+        }
+    }
 
     /**
-     * Gets the version's MAJOR component.
+     * Sets a component. The number of components grows to include it.
      * 
-     * @return The version's MAJOR component.
+     * @param component The index of the component.
+     * @param value The component's value.
+     * @param digits The number of digits the component is printed with.
      */
-    public String getMajor()
+    private void set(int component, int value, int digits)
     {
-        return this.major;
+        checkMutable();
+
+        switch (component)
+        {
+            case MAJOR :
+                this.major = value;
+                this.majorDigits = digits;
+                break;
+            case MINOR :
+                this.minor = value;
+                this.minorDigits = digits;
+                break;
+            case BUILD :
+                this.build = value;
+                this.buildDigits = digits;
+                break;
+            default :
+                this.revision = value;
+                this.revisionDigits = digits;
+                break;
+        }
+
+        if (this.numberOfComponents < component + 1)
+        {
+            this.numberOfComponents = component + 1;
+        }
     }
 
     /**
-     * Sets the version's MAJOR component.
+     * Sets a component from a string of digits.
      * 
-     * @param toSet The version's MAJOR component.
-     * @throws IllegalArgumentException When a null or non-numeric value is
-     *         given.
+     * @param component The index of the component.
+     * @param toSet The component.
+     * @throws IllegalArgumentException When a null, non-numeric or too large
+     *         value is given.
      */
-    public void setMajor(String toSet) throws IllegalArgumentException
+    private void set(int component, String toSet)
+        throws IllegalArgumentException
     {
-        if (StringUtils.isEmpty(toSet))
+        if (toSet == null || toSet.length() == 0)
         {
             throw new IllegalArgumentException("Argument is null");
         }
 
-        if (!toSet.matches("\\d+"))
+        long value = 0;
+
+        for (int x = 0; x < toSet.length(); ++x)
+        {
+            char c = toSet.charAt(x);
+
+            if (!isDigit(c))
+            {
+                throw new IllegalArgumentException("Argument is not numeric");
+            }
+
+            value = value * 10 + (c - '0');
+
+            if (value > Integer.MAX_VALUE)
+            {
+                throw new IllegalArgumentException("Argument is too large");
+            }
+        }
+
+        set(component, (int) value, toSet.length());
+    }
+
+    /**
+     * Sets a component from an integer.
+     * 
+     * @param component The index of the component.
+     * @param toSet The component.
+     * @throws IllegalArgumentException When a negative value is given.
+     */
+    private void set(int component, int toSet) throws IllegalArgumentException
+    {
+        if (toSet < 0)
         {
             throw new IllegalArgumentException("Argument is not numeric");
         }
 
-        if (this.numberOfComponents < 1)
+        set(component, toSet, digits(toSet));
+    }
+
+    /**
+     * Gets the number of digits in a non-negative integer.
+     * 
+     * @param value The integer.
+     * @return The number of digits.
+     */
+    private static int digits(int value)
+    {
+        int d = 1;
+
+        while (value >= 10)
+        {
+            value /= 10;
+            ++d;
+        }
+
+        return d;
+    }
+
+    /**
+     * Gets a component as a string padded with zeros.
+     * 
+     * @param component The index of the component.
+     * @return The component as a string.
+     */
+    private String format(int component)
+    {
+        return append(new StringBuilder(), component).toString();
+    }
+
+    /**
+     * Appends a component padded with zeros.
+     * 
+     * @param buff The buffer to append to.
+     * @param component The index of the component.
+     * @return The buffer.
+     */
+    private StringBuilder append(StringBuilder buff, int component)
+    {
+        int value = get(component);
+
+        for (int x = digits(value); x < getDigits(component); ++x)
         {
-            this.numberOfComponents = 1;
+            buff.append('0');
         }
 
-        this.major = toSet;
+        return buff.append(value);
+    }
+
+    /**
+     * Gets the version's MAJOR component.
+     * 
+     * @return The version's MAJOR component.
+     */
+    public String getMajor()
+    {
+        return format(MAJOR);
     }
 
     /**
      * Sets the version's MAJOR component.
      * 
      * @param toSet The version's MAJOR component.
+     * @throws IllegalArgumentException When a null or non-numeric value is
+     *         given.
      */
-    public void setMajor(int toSet)
+    public void setMajor(String toSet) throws IllegalArgumentException
     {
-        setMajor(String.valueOf(toSet));
+        set(MAJOR, toSet);
     }
 
     /**
-     * The version's MAJOR component as an integer.
+     * Sets the version's MAJOR component.
+     * 
+     * @param toSet The version's MAJOR component.
      */
-    private int getMajorAsInt()
+    public void setMajor(int toSet)
     {
-        return Integer.parseInt(this.major);
+        set(MAJOR, toSet);
     }
 
     /**
-     * The version's MINOR component.
+     * Gets the version's MAJOR component as an integer.
+     * 
+     * @return The version's MAJOR component as an integer.
      */
-    private String minor = "0";
+    public int getMajorAsInt()
+    {
+        return this.major;
+    }
 
     /**
      * Gets the version's MINOR component.
@@ -232,7 +604,7 @@ public class Version implements Serializable, Cloneable, Comparable<Version>
      */
     public String getMinor()
     {
-        return this.minor;
+        return format(MINOR);
     }
 
     /**
@@ -244,22 +616,7 @@ public class Version implements Serializable, Cloneable, Comparable<Version>
      */
     public void setMinor(String toSet) throws IllegalArgumentException
     {
-        if (StringUtils.isEmpty(toSet))
-        {
-            throw new IllegalArgumentException("Argument is null");
-        }
-
-        if (!toSet.matches("\\d+"))
-        {
-            throw new IllegalArgumentException("Argument is not numeric");
-        }
-
-        if (this.numberOfComponents < 2)
-        {
-            this.numberOfComponents = 2;
-        }
-
-        this.minor = toSet;
+        set(MINOR, toSet);
     }
 
     /**
@@ -269,28 +626,27 @@ public class Version implements Serializable, Cloneable, Comparable<Version>
      */
     public void setMinor(int toSet)
     {
-        setMinor(String.valueOf(toSet));
+        set(MINOR, toSet);
     }
 
     /**
-     * The version's MINOR component as an integer.
+     * Gets the version's MINOR component as an integer.
+     * 
+     * @return The version's MINOR component as an integer.
      */
-    private int getMinorAsInt()
+    public int getMinorAsInt()
     {
-        return Integer.parseInt(this.minor);
+        return this.minor;
     }
 
     /**
-     * The version's BUILD component.
-     */
-    private String build = "0";
-
-    /**
-     * The version's BUILD component as an integer.
+     * Gets the version's BUILD component as an integer.
+     * 
+     * @return The version's BUILD component as an integer.
      */
-    private int getBuildAsInt()
+    public int getBuildAsInt()
     {
-        return Integer.parseInt(this.build);
+        return this.build;
     }
 
     /**
@@ -300,7 +656,7 @@ public class Version implements Serializable, Cloneable, Comparable<Version>
      */
     public String getBuild()
     {
-        return this.build;
+        return format(BUILD);
     }
 
     /**
@@ -312,22 +668,7 @@ public class Version implements Serializable, Cloneable, Comparable<Version>
      */
     public void setBuild(String toSet) throws IllegalArgumentException
     {
-        if (StringUtils.isEmpty(toSet))
-        {
-            throw new IllegalArgumentException("Argument is null");
-        }
-
-        if (!toSet.matches("\\d+"))
-        {
-            throw new IllegalArgumentException("Argument is not numeric");
-        }
-
-        if (this.numberOfComponents < 3)
-        {
-            this.numberOfComponents = 3;
-        }
-
-        this.build = toSet;
+        set(BUILD, toSet);
     }
 
     /**
@@ -337,20 +678,17 @@ public class Version implements Serializable, Cloneable, Comparable<Version>
      */
     public void setBuild(int toSet)
     {
-        setBuild(String.valueOf(toSet));
+        set(BUILD, toSet);
     }
 
     /**
-     * The version's REVISION component.
-     */
-    private String revision = "0";
-
-    /**
-     * The version's REVISION component as an integer.
+     * Gets the version's REVISION component as an integer.
+     * 
+     * @return The version's REVISION component as an integer.
      */
-    private int getRevisionAsInt()
+    public int getRevisionAsInt()
     {
-        return Integer.parseInt(this.revision);
+        return this.revision;
     }
 
     /**
@@ -360,7 +698,7 @@ public class Version implements Serializable, Cloneable, Comparable<Version>
      */
     public String getRevision()
     {
-        return this.revision;
+        return format(REVISION);
     }
 
     /**
@@ -372,22 +710,7 @@ public class Version implements Serializable, Cloneable, Comparable<Version>
      */
     public void setRevision(String toSet) throws IllegalArgumentException
     {
-        if (StringUtils.isEmpty(toSet))
-        {
-            throw new IllegalArgumentException("Argument is null");
-        }
-
-        if (!toSet.matches("\\d+"))
-        {
-            throw new IllegalArgumentException("Argument is not numeric");
-        }
-
-        if (this.numberOfComponents < 4)
-        {
-            this.numberOfComponents = 4;
-        }
-
-        this.revision = toSet;
+        set(REVISION, toSet);
     }
 
     /**
@@ -397,7 +720,7 @@ public class Version implements Serializable, Cloneable, Comparable<Version>
      */
     public void setRevision(int toSet)
     {
-        setRevision(String.valueOf(toSet));
+        set(REVISION, toSet);
     }
 
     /**
@@ -427,6 +750,8 @@ public class Version implements Serializable, Cloneable, Comparable<Version>
      */
     public void setNumberOfComponents(int toSet)
     {
+        checkMutable();
+
         if (toSet < 1)
         {
             toSet = 1;
@@ -442,19 +767,9 @@ public class Version implements Serializable, Cloneable, Comparable<Version>
     @Override
     public Object clone() throws CloneNotSupportedException
     {
-        Version v = new Version();
-
-        v.rawVersion = this.rawVersion;
-        v.prefix = this.prefix;
-        v.suffix = this.suffix;
-
-        v.numberOfComponents = this.numberOfComponents;
-
-        v.major = this.major;
-        v.minor = this.minor;
-        v.build = this.build;
-        v.revision = this.revision;
-
+        // All of the other fields are primitives or immutable.
+        Version v = (Version) super.clone();
+        v.immutable = false;
         return v;
     }
 
@@ -479,18 +794,16 @@ public class Version implements Serializable, Cloneable, Comparable<Version>
     @Override
     public int hashCode()
     {
-        return toString().hashCode();
+        int h = this.major;
+        h = 31 * h + this.minor;
+        h = 31 * h + this.build;
+        return 31 * h + this.revision;
     }
 
     @Override
     public String toString()
     {
-        return String.format(
-            "%s.%s.%s.%s",
-            this.major,
-            this.minor,
-            this.build,
-            this.revision);
+        return toString(4);
     }
 
     /**
@@ -500,14 +813,7 @@ public class Version implements Serializable, Cloneable, Comparable<Version>
      */
     public String toStringWithPrefixAndSuffix()
     {
-        return String.format(
-            "%s%s.%s.%s.%s%s",
-            this.prefix == null ? "" : this.prefix,
-            this.major,
-            this.minor,
-            this.build,
-            this.revision,
-            this.suffix == null ? "" : this.suffix);
+        return toStringWithPrefixAndSuffix(4);
     }
 
     /**
@@ -519,38 +825,7 @@ public class Version implements Serializable, Cloneable, Comparable<Version>
      */
     public String toString(int components)
     {
-        StringBuilder buff = new StringBuilder();
-        buff.append(this.major);
-
-        if (components > 4)
-        {
-            components = 4;
-        }
-
-        switch (components)
-        {
-            case 2 :
-            {
-                buff.append(String.format(".%s", this.minor));
-                break;
-            }
-            case 3 :
-            {
-                buff.append(String.format(".%s.%s", this.minor, this.build));
-                break;
-            }
-            case 4 :
-            {
-                buff.append(String.format(
-                    ".%s.%s.%s",
-                    this.minor,
-                    this.build,
-                    this.revision));
-                break;
-            }
-        }
-
-        return buff.toString();
+        return appendComponents(new StringBuilder(), components).toString();
     }
 
     /**
@@ -566,128 +841,93 @@ public class Version implements Serializable, Cloneable, Comparable<Version>
     {
         StringBuilder buff = new StringBuilder();
 
-        if (StringUtils.isNotEmpty(this.prefix))
+        if (this.rawVersion != null)
         {
-            buff.append(this.prefix);
+            buff.append(this.rawVersion, 0, this.prefixEnd);
         }
 
-        buff.append(this.major);
+        appendComponents(buff, components);
 
-        if (components > 4)
+        if (this.rawVersion != null)
         {
-            components = 4;
-        }
-
-        switch (components)
-        {
-            case 2 :
-            {
-                buff.append(String.format(".%s", this.minor));
-                break;
-            }
-            case 3 :
-            {
-                buff.append(String.format(".%s.%s", this.minor, this.build));
-                break;
-            }
-            case 4 :
-            {
-                buff.append(String.format(
-                    ".%s.%s.%s",
-                    this.minor,
-                    this.build,
-                    this.revision));
-                break;
-            }
-        }
-
-        if (StringUtils.isNotEmpty(this.suffix))
-        {
-            buff.append(this.suffix);
+            buff.append(this.rawVersion, this.suffixStart, this.rawVersion
+                .length());
         }
 
         return buff.toString();
     }
 
-    private int compareInts(int x, int y)
+    /**
+     * Appends the components separated by dots.
+     * 
+     * @param buff The buffer to append to.
+     * @param components The number of components. Values less than 1 will be
+     *        treated as 1 and values greater than 4 will be treated as 4.
+     * @return The buffer.
+     */
+    private StringBuilder appendComponents(StringBuilder buff, int components)
     {
-        if (x == y)
-        {
-            return 0;
-        }
+        append(buff, MAJOR);
 
-        if (x < y)
+        for (int x = MINOR; x < components && x <= REVISION; ++x)
         {
-            return -1;
+            append(buff.append('.'), x);
         }
 
-        return 1;
+        return buff;
+    }
+
+    private static int compareInts(int x, int y)
+    {
+        return x < y ? -1 : (x == y ? 0 : 1);
     }
 
     @Override
     public int compareTo(Version toCompare)
     {
-        int result = toString().compareTo(toCompare.toString());
-
-        if (result == 0)
-        {
-            return result;
-        }
-
-        result = compareInts(getMajorAsInt(), toCompare.getMajorAsInt());
+        int result = compareInts(this.major, toCompare.major);
 
         if (result != 0)
         {
             return result;
         }
 
-        result = compareInts(getMinorAsInt(), toCompare.getMinorAsInt());
+        result = compareInts(this.minor, toCompare.minor);
 
         if (result != 0)
         {
             return result;
         }
 
-        result = compareInts(getBuildAsInt(), toCompare.getBuildAsInt());
+        result = compareInts(this.build, toCompare.build);
 
         if (result != 0)
         {
             return result;
         }
 
-        result = compareInts(getRevisionAsInt(), toCompare.getRevisionAsInt());
-
-        if (result != 0)
-        {
-            return result;
-        }
-
-        return result;
+        return compareInts(this.revision, toCompare.revision);
     }
 
     /**
-     * Adds a whole integer (positive or negative) to a version component.
+     * Adds a whole integer (positive or negative) to a version component. The
+     * sum contains at least the same number of digits (padded at the left
+     * side) as the original version component.
      * 
      * @param toAdd The whole integer (positive or negative) to add.
-     * @param toAddTo The version component to add the integer to.
-     * @return A string representing the sum that contains at least the same
-     *         number of digits (padded at the left side) as the original
-     *         version component.
+     * @param component The index of the version component to add the integer
+     *        to.
      */
-    private static String add(final int toAdd, final String toAddTo)
+    private void add(final int toAdd, final int component)
     {
-        int l = toAddTo.length();
-        int i = Integer.parseInt(toAddTo);
-        i += toAdd;
-
-        if (i < 0)
-        {
-            i = 0;
-        }
+        long sum = (long) get(component) + toAdd;
+        int i = (int) Math.min(Math.max(sum, 0), Integer.MAX_VALUE);
+        int digits = Math.max(getDigits(component), digits(i));
 
-        String f = String.format("%%0%sd", l);
-        String s = String.format(f, i);
-        return s;
+        // Unlike the setters, adding does not change the number of components.
+        int noc = this.numberOfComponents;
+        set(component, i, digits);
+        this.numberOfComponents = noc;
     }
 
     /**
@@ -699,7 +939,7 @@ public class Version implements Serializable, Cloneable, Comparable<Version>
      */
     public void addMajor(int toAdd)
     {
-        this.major = add(toAdd, this.major);
+        add(toAdd, MAJOR);
     }
 
     /**
@@ -711,7 +951,7 @@ public class Version implements Serializable, Cloneable, Comparable<Version>
      */
     public void addMinor(int toAdd)
     {
-        this.minor = add(toAdd, this.minor);
+        add(toAdd, MINOR);
     }
 
     /**
@@ -723,7 +963,7 @@ public class Version implements Serializable, Cloneable, Comparable<Version>
      */
     public void addBuild(int toAdd)
     {
-        this.build = add(toAdd, this.build);
+        add(toAdd, BUILD);
     }
 
     /**
@@ -735,6 +975,6 @@ public class Version implements Serializable, Cloneable, Comparable<Version>
      */
     public void addRevision(int toAdd)
     {
-        this.revision = add(toAdd, this.revision);
+        add(toAdd, REVISION);
     }
 }
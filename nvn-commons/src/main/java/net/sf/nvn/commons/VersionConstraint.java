@@ -0,0 +1,365 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * A constraint on the versions of an artifact. A constraint is one or more
+ * ranges, for example <em>[1.2,2.0)</em>, <em>[1.0,1.5],[2.0,)</em> or
+ * <em>1.4.*</em>, and a version that is not a range is a constraint that only
+ * matches that version. See {@link VersionRange}.
+ * </p>
+ * 
+ * <p>
+ * Text before or after the ranges is the prefix or suffix a version must
+ * have, for example <em>PM-[3.0,4.0)</em> or <em>1.4.*-SNAPSHOT</em>. When a
+ * constraint does not name a prefix or suffix the versions may have any.
+ * </p>
+ * 
+ * <p>
+ * A constraint is parsed once and matching a version does not allocate.
+ * </p>
+ * 
+ * @author akutz
+ * 
+ */
+public class VersionConstraint
+{
+    /**
+     * The prefix a version must have or null if it may have any.
+     */
+    private final String prefix;
+
+    /**
+     * The suffix a version must have or null if it may have any.
+     */
+    private final String suffix;
+
+    /**
+     * The ranges. A version matches if it is in any of them.
+     */
+    private final VersionRange[] ranges;
+
+    /**
+     * Initializes a new instance of the VersionConstraint class.
+     * 
+     * @param prefix The prefix a version must have or null if it may have any.
+     * @param suffix The suffix a version must have or null if it may have any.
+     * @param ranges The ranges. A version matches if it is in any of them.
+     */
+    public VersionConstraint(
+        String prefix,
+        String suffix,
+        VersionRange... ranges)
+    {
+        if (ranges.length == 0)
+        {
+            throw new IllegalArgumentException("No ranges were given");
+        }
+
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.ranges = ranges.clone();
+    }
+
+    /**
+     * Parses a constraint.
+     * 
+     * @param toParse The string to parse.
+     * @return The constraint.
+     * @throws IllegalArgumentException When the string is not a constraint.
+     */
+    public static VersionConstraint parse(String toParse)
+        throws IllegalArgumentException
+    {
+        String s = toParse.trim();
+        int start = indexOfAny(s, "[(");
+
+        if (start < 0)
+        {
+            return parseVersionOrWildcard(s, toParse);
+        }
+
+        int end = Math.max(s.lastIndexOf(']'), s.lastIndexOf(')'));
+
+        if (end < start)
+        {
+            throw new IllegalArgumentException(String.format(
+                "Constraint '%s' is not closed",
+                toParse));
+        }
+
+        List<VersionRange> ranges = new ArrayList<VersionRange>();
+        int x = start;
+
+        while (x <= end)
+        {
+            int close = indexOfAny(s.substring(x), "])");
+
+            if (close < 0)
+            {
+                break;
+            }
+
+            ranges.add(VersionRange.parse(s.substring(x, x + close + 1)));
+            x += close + 1;
+
+            // Skip the comma that separates the ranges.
+            while (x <= end && (s.charAt(x) == ',' || s.charAt(x) == ' '))
+            {
+                ++x;
+            }
+        }
+
+        return new VersionConstraint(
+            emptyToNull(s.substring(0, start)),
+            emptyToNull(s.substring(end + 1)),
+            ranges.toArray(new VersionRange[ranges.size()]));
+    }
+
+    private static VersionConstraint parseVersionOrWildcard(
+        String s,
+        String toParse)
+    {
+        int star = s.indexOf('*');
+
+        if (star < 0)
+        {
+            Version v;
+
+            try
+            {
+                v = Version.parse(s);
+            }
+            catch (Exception e)
+            {
+                throw new IllegalArgumentException(String.format(
+                    "Error parsing constraint '%s'",
+                    toParse), e);
+            }
+
+            return new VersionConstraint(
+                emptyToNull(v.getPrefix()),
+                emptyToNull(v.getSuffix()),
+                new VersionRange(v, true, v, true));
+        }
+
+        int begin = 0;
+
+        while (begin < star && !Character.isDigit(s.charAt(begin)))
+        {
+            ++begin;
+        }
+
+        return new VersionConstraint(
+            emptyToNull(s.substring(0, begin)),
+            emptyToNull(s.substring(star + 1)),
+            VersionRange.parse(s.substring(begin, star + 1)));
+    }
+
+    private static int indexOfAny(String s, String chars)
+    {
+        for (int x = 0; x < s.length(); ++x)
+        {
+            if (chars.indexOf(s.charAt(x)) >= 0)
+            {
+                return x;
+            }
+        }
+
+        return -1;
+    }
+
+    private static String emptyToNull(String s)
+    {
+        return s == null || s.length() == 0 ? null : s;
+    }
+
+    /**
+     * Gets the prefix a version must have.
+     * 
+     * @return The prefix a version must have or null if it may have any.
+     */
+    public String getPrefix()
+    {
+        return this.prefix;
+    }
+
+    /**
+     * Gets the suffix a version must have.
+     * 
+     * @return The suffix a version must have or null if it may have any.
+     */
+    public String getSuffix()
+    {
+        return this.suffix;
+    }
+
+    /**
+     * Gets the ranges. A version matches if it is in any of them.
+     * 
+     * @return The ranges.
+     */
+    public VersionRange[] getRanges()
+    {
+        return this.ranges.clone();
+    }
+
+    /**
+     * Gets a flag indicating whether or not a version has the prefix and
+     * suffix of the constraint.
+     * 
+     * @param version The version.
+     * @return A flag indicating whether or not the version has the prefix and
+     *         suffix of the constraint.
+     */
+    private boolean matchesAffixes(Version version)
+    {
+        return (this.prefix == null || version.prefixEquals(this.prefix))
+            && (this.suffix == null || version.suffixEquals(this.suffix));
+    }
+
+    /**
+     * Gets a flag indicating whether or not a version matches the constraint.
+     * 
+     * @param version The version.
+     * @return A flag indicating whether or not the version matches the
+     *         constraint.
+     */
+    public boolean matches(Version version)
+    {
+        if (!matchesAffixes(version))
+        {
+            return false;
+        }
+
+        for (VersionRange r : this.ranges)
+        {
+            if (r.contains(version))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Finds the newest version that matches the constraint. The position
+     * after the last version below each range's upper bound is found with a
+     * binary search, and the versions below it are checked from the newest
+     * until one has the constraint's prefix and suffix.
+     * 
+     * @param sorted The versions, sorted from the oldest to the newest.
+     * @return The index of the newest version that matches the constraint or
+     *         -1 if none match.
+     */
+    public int findBest(Version[] sorted)
+    {
+        int best = -1;
+
+        for (VersionRange r : this.ranges)
+        {
+            int lo = best + 1;
+            int hi = sorted.length;
+
+            while (lo < hi)
+            {
+                int mid = (lo + hi) >>> 1;
+
+                if (r.isBelowUpper(sorted[mid]))
+                {
+                    lo = mid + 1;
+                }
+                else
+                {
+                    hi = mid;
+                }
+            }
+
+            for (int x = lo - 1; x > best && r.isAboveLower(sorted[x]); --x)
+            {
+                if (matchesAffixes(sorted[x]))
+                {
+                    best = x;
+                    break;
+                }
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Gets the newest version that matches the constraint.
+     * 
+     * @param sorted The versions, sorted from the oldest to the newest.
+     * @return The newest version that matches the constraint or null if none
+     *         match.
+     * @see #findBest(Version[])
+     */
+    public Version selectBest(Version[] sorted)
+    {
+        int x = findBest(sorted);
+        return x < 0 ? null : sorted[x];
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder buff = new StringBuilder();
+
+        if (this.prefix != null)
+        {
+            buff.append(this.prefix);
+        }
+
+        for (int x = 0; x < this.ranges.length; ++x)
+        {
+            if (x > 0)
+            {
+                buff.append(',');
+            }
+
+            buff.append(this.ranges[x]);
+        }
+
+        if (this.suffix != null)
+        {
+            buff.append(this.suffix);
+        }
+
+        return buff.toString();
+    }
+}
@@ -0,0 +1,354 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons;
+
+/**
+ * <p>
+ * An interval of versions, for example <em>[1.2,2.0)</em>. A square bracket
+ * includes the bound and a parenthesis excludes it. A missing bound leaves the
+ * interval open, as in <em>[1.0,)</em>, and <em>[1.5]</em> contains only
+ * 1.5.0.0.
+ * </p>
+ * 
+ * <p>
+ * A range may also be written with a wildcard, for example <em>1.4.*</em>,
+ * which contains the versions from 1.4.0.0 up to but not including 1.5.0.0.
+ * </p>
+ * 
+ * <p>
+ * Only the four components of the versions are compared. The prefixes and
+ * suffixes are matched by {@link VersionConstraint}.
+ * </p>
+ * 
+ * @author akutz
+ * 
+ */
+public class VersionRange
+{
+    /**
+     * The lower bound. Null if the range has no lower bound.
+     */
+    private final Version lower;
+
+    /**
+     * A flag indicating whether or not the lower bound is in the range.
+     */
+    private final boolean lowerInclusive;
+
+    /**
+     * The upper bound. Null if the range has no upper bound.
+     */
+    private final Version upper;
+
+    /**
+     * A flag indicating whether or not the upper bound is in the range.
+     */
+    private final boolean upperInclusive;
+
+    /**
+     * Initializes a new instance of the VersionRange class.
+     * 
+     * @param lower The lower bound or null if there is no lower bound.
+     * @param lowerInclusive True if the lower bound is in the range.
+     * @param upper The upper bound or null if there is no upper bound.
+     * @param upperInclusive True if the upper bound is in the range.
+     */
+    public VersionRange(
+        Version lower,
+        boolean lowerInclusive,
+        Version upper,
+        boolean upperInclusive)
+    {
+        this.lower = lower;
+        this.lowerInclusive = lowerInclusive && lower != null;
+        this.upper = upper;
+        this.upperInclusive = upperInclusive && upper != null;
+    }
+
+    /**
+     * Parses a range such as <em>[1.2,2.0)</em>, <em>[1.5]</em> or
+     * <em>1.4.*</em>. A version without brackets or a wildcard is a range
+     * that contains only that version.
+     * 
+     * @param toParse The string to parse.
+     * @return The range.
+     * @throws IllegalArgumentException When the string is not a range.
+     */
+    public static VersionRange parse(String toParse)
+        throws IllegalArgumentException
+    {
+        String s = toParse.trim();
+
+        if (s.length() == 0)
+        {
+            throw new IllegalArgumentException("Range is empty");
+        }
+
+        char first = s.charAt(0);
+
+        if (first != '[' && first != '(')
+        {
+            if (s.equals("*"))
+            {
+                return new VersionRange(null, false, null, false);
+            }
+
+            if (s.endsWith(".*"))
+            {
+                return parseWildcard(s.substring(0, s.length() - 2), toParse);
+            }
+
+            Version v = parseBound(s, toParse);
+            return new VersionRange(v, true, v, true);
+        }
+
+        char last = s.charAt(s.length() - 1);
+
+        if (s.length() < 2 || (last != ']' && last != ')'))
+        {
+            throw new IllegalArgumentException(String.format(
+                "Range '%s' is not closed",
+                toParse));
+        }
+
+        String body = s.substring(1, s.length() - 1);
+        int comma = body.indexOf(',');
+
+        if (comma < 0)
+        {
+            if (first != '[' || last != ']')
+            {
+                throw new IllegalArgumentException(String.format(
+                    "Range '%s' must include its single version",
+                    toParse));
+            }
+
+            Version v = parseBound(body, toParse);
+            return new VersionRange(v, true, v, true);
+        }
+
+        String l = body.substring(0, comma).trim();
+        String u = body.substring(comma + 1).trim();
+
+        return new VersionRange(
+            l.length() == 0 ? null : parseBound(l, toParse),
+            first == '[',
+            u.length() == 0 ? null : parseBound(u, toParse),
+            last == ']');
+    }
+
+    private static VersionRange parseWildcard(String prefix, String toParse)
+    {
+        Version l = parseBound(prefix, toParse);
+        int noc = l.getNumberOfComponents();
+
+        if (noc > 3)
+        {
+            throw new IllegalArgumentException(String.format(
+                "Range '%s' has too many components",
+                toParse));
+        }
+
+        Version u = new Version();
+        u.setMajor(l.getMajorAsInt());
+        u.setMinor(l.getMinorAsInt());
+        u.setBuild(l.getBuildAsInt());
+
+        // The last component that is given is incremented. A component that
+        // cannot be incremented leaves the range without an upper bound.
+        switch (noc)
+        {
+            case 1 :
+                if (l.getMajorAsInt() == Integer.MAX_VALUE)
+                {
+                    u = null;
+                    break;
+                }
+                u.addMajor(1);
+                u.setMinor(0);
+                u.setBuild(0);
+                break;
+            case 2 :
+                if (l.getMinorAsInt() == Integer.MAX_VALUE)
+                {
+                    u = null;
+                    break;
+                }
+                u.addMinor(1);
+                u.setBuild(0);
+                break;
+            default :
+                if (l.getBuildAsInt() == Integer.MAX_VALUE)
+                {
+                    u = null;
+                    break;
+                }
+                u.addBuild(1);
+                break;
+        }
+
+        return new VersionRange(l, true, u, false);
+    }
+
+    private static Version parseBound(String bound, String toParse)
+    {
+        try
+        {
+            Version v = Version.parse(bound.trim());
+
+            if (v.getPrefix().length() != 0 || v.getSuffix().length() != 0)
+            {
+                throw new IllegalArgumentException(String.format(
+                    "Bound '%s' of range '%s' is not a version",
+                    bound,
+                    toParse));
+            }
+
+            return v;
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw e;
+        }
+        catch (Exception e)
+        {
+            throw new IllegalArgumentException(String.format(
+                "Error parsing bound '%s' of range '%s'",
+                bound,
+                toParse), e);
+        }
+    }
+
+    /**
+     * Gets the lower bound.
+     * 
+     * @return The lower bound or null if the range has no lower bound.
+     */
+    public Version getLower()
+    {
+        return this.lower;
+    }
+
+    /**
+     * Gets a flag indicating whether or not the lower bound is in the range.
+     * 
+     * @return A flag indicating whether or not the lower bound is in the
+     *         range.
+     */
+    public boolean isLowerInclusive()
+    {
+        return this.lowerInclusive;
+    }
+
+    /**
+     * Gets the upper bound.
+     * 
+     * @return The upper bound or null if the range has no upper bound.
+     */
+    public Version getUpper()
+    {
+        return this.upper;
+    }
+
+    /**
+     * Gets a flag indicating whether or not the upper bound is in the range.
+     * 
+     * @return A flag indicating whether or not the upper bound is in the
+     *         range.
+     */
+    public boolean isUpperInclusive()
+    {
+        return this.upperInclusive;
+    }
+
+    /**
+     * Gets a flag indicating whether or not a version is above the lower
+     * bound.
+     * 
+     * @param version The version.
+     * @return True if the version is not below the range.
+     */
+    boolean isAboveLower(Version version)
+    {
+        if (this.lower == null)
+        {
+            return true;
+        }
+
+        int c = version.compareTo(this.lower);
+        return c > 0 || (c == 0 && this.lowerInclusive);
+    }
+
+    /**
+     * Gets a flag indicating whether or not a version is below the upper
+     * bound.
+     * 
+     * @param version The version.
+     * @return True if the version is not above the range.
+     */
+    boolean isBelowUpper(Version version)
+    {
+        if (this.upper == null)
+        {
+            return true;
+        }
+
+        int c = version.compareTo(this.upper);
+        return c < 0 || (c == 0 && this.upperInclusive);
+    }
+
+    /**
+     * Gets a flag indicating whether or not a version is in the range.
+     * 
+     * @param version The version.
+     * @return A flag indicating whether or not the version is in the range.
+     */
+    public boolean contains(Version version)
+    {
+        return isAboveLower(version) && isBelowUpper(version);
+    }
+
+    @Override
+    public String toString()
+    {
+        if (this.lower != null && this.lower == this.upper)
+        {
+            return "[" + this.lower + "]";
+        }
+
+        return String.format(
+            "%s%s,%s%s",
+            this.lowerInclusive ? "[" : "(",
+            this.lower == null ? "" : this.lower,
+            this.upper == null ? "" : this.upper,
+            this.upperInclusive ? "]" : ")");
+    }
+}
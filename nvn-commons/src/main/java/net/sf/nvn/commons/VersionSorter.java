@@ -0,0 +1,304 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * Sorts large numbers of versions, for example the versions of an artifact
+ * listed in repository metadata. Each version is encoded once into integer
+ * keys, its four components and the ranks of its prefix and suffix, and the
+ * keys are sorted with a least significant digit radix sort. The time the
+ * sort takes grows linearly with the number of versions.
+ * </p>
+ * 
+ * <p>
+ * Versions are sorted by their components. Versions with the same components
+ * are sorted by their prefixes and then by their suffixes, and a version with
+ * a suffix, such as <em>1.0-SNAPSHOT</em>, comes before the same version
+ * without one. See {@link #compare(Version, Version)}.
+ * </p>
+ * 
+ * @author akutz
+ * 
+ */
+public final class VersionSorter
+{
+    /**
+     * The number of bits sorted by each pass of the radix sort.
+     */
+    private static final int RADIX_BITS = 8;
+
+    /**
+     * The number of buckets of each pass of the radix sort.
+     */
+    private static final int RADIX = 1 << RADIX_BITS;
+
+    /**
+     * Orders suffixes. An empty suffix comes after all other suffixes.
+     */
+    private static final Comparator<String> SUFFIX_ORDER =
+        new Comparator<String>()
+        {
+            @Override
+            public int compare(String o1, String o2)
+            {
+                boolean e1 = o1.length() == 0;
+                boolean e2 = o2.length() == 0;
+
+                if (e1 || e2)
+                {
+                    return e1 == e2 ? 0 : (e1 ? 1 : -1);
+                }
+
+                return o1.compareTo(o2);
+            }
+        };
+
+    private VersionSorter()
+    {
+    }
+
+    /**
+     * Compares two versions in the order they are sorted in.
+     * 
+     * @param v1 The first version.
+     * @param v2 The second version.
+     * @return A negative integer, zero, or a positive integer as the first
+     *         version comes before, with or after the second.
+     */
+    public static int compare(Version v1, Version v2)
+    {
+        int c = v1.compareTo(v2);
+
+        if (c == 0)
+        {
+            c = affix(v1.getPrefix()).compareTo(affix(v2.getPrefix()));
+        }
+
+        if (c == 0)
+        {
+            c =
+                SUFFIX_ORDER.compare(
+                    affix(v1.getSuffix()),
+                    affix(v2.getSuffix()));
+        }
+
+        return c;
+    }
+
+    /**
+     * Sorts versions.
+     * 
+     * @param versions The versions. The array is not modified.
+     * @return The indices of the versions in sorted order.
+     */
+    public static int[] sortIndices(Version[] versions)
+    {
+        int n = versions.length;
+        int[] order = new int[n];
+
+        for (int x = 0; x < n; ++x)
+        {
+            order[x] = x;
+        }
+
+        if (n < 2)
+        {
+            return order;
+        }
+
+        // The keys, from the least significant to the most significant.
+        int[][] keys = new int[6][n];
+        Map<String, Integer> prefixes = new HashMap<String, Integer>();
+        Map<String, Integer> suffixes = new HashMap<String, Integer>();
+
+        for (int x = 0; x < n; ++x)
+        {
+            Version v = versions[x];
+            keys[0][x] = index(suffixes, affix(v.getSuffix()));
+            keys[1][x] = index(prefixes, affix(v.getPrefix()));
+            keys[2][x] = v.getRevisionAsInt();
+            keys[3][x] = v.getBuildAsInt();
+            keys[4][x] = v.getMinorAsInt();
+            keys[5][x] = v.getMajorAsInt();
+        }
+
+        // The prefixes and suffixes were numbered in the order they were
+        // seen. They are few, so they are sorted and then renumbered.
+        rank(keys[0], suffixes, SUFFIX_ORDER);
+        rank(keys[1], prefixes, null);
+
+        int[] buff = new int[n];
+        int[] counts = new int[RADIX];
+
+        for (int[] key : keys)
+        {
+            int bits = 0;
+
+            for (int k : key)
+            {
+                bits |= k;
+            }
+
+            // Passes over bits that are zero in all of the keys are skipped.
+            for (int shift = 0; (bits >>> shift) != 0; shift += RADIX_BITS)
+            {
+                int[] tmp = order;
+                order = pass(key, order, buff, counts, shift);
+                buff = tmp;
+            }
+        }
+
+        return order;
+    }
+
+    /**
+     * Sorts versions.
+     * 
+     * @param versions The versions. The array is not modified.
+     * @return The versions in sorted order.
+     */
+    public static Version[] sort(Version[] versions)
+    {
+        int[] order = sortIndices(versions);
+        Version[] sorted = new Version[order.length];
+
+        for (int x = 0; x < order.length; ++x)
+        {
+            sorted[x] = versions[order[x]];
+        }
+
+        return sorted;
+    }
+
+    /**
+     * Performs one stable counting sort pass over eight bits of a key.
+     * 
+     * @param key The key of each version.
+     * @param order The indices of the versions in their current order.
+     * @param buff The array the indices are written to.
+     * @param counts The buckets' counts.
+     * @param shift The position of the bits.
+     * @return The indices in their new order.
+     */
+    private static int[] pass(
+        int[] key,
+        int[] order,
+        int[] buff,
+        int[] counts,
+        int shift)
+    {
+        int mask = RADIX - 1;
+
+        for (int x = 0; x < RADIX; ++x)
+        {
+            counts[x] = 0;
+        }
+
+        for (int i : order)
+        {
+            ++counts[(key[i] >>> shift) & mask];
+        }
+
+        for (int x = 0, sum = 0; x < RADIX; ++x)
+        {
+            int c = counts[x];
+            counts[x] = sum;
+            sum += c;
+        }
+
+        for (int i : order)
+        {
+            buff[counts[(key[i] >>> shift) & mask]++] = i;
+        }
+
+        return buff;
+    }
+
+    private static String affix(String s)
+    {
+        return s == null ? "" : s;
+    }
+
+    private static int index(Map<String, Integer> indices, String s)
+    {
+        Integer x = indices.get(s);
+
+        if (x == null)
+        {
+            x = indices.size();
+            indices.put(s, x);
+        }
+
+        return x;
+    }
+
+    /**
+     * Replaces the numbers strings were given in the order they were seen
+     * with their ranks in sorted order.
+     * 
+     * @param key The numbers of the strings.
+     * @param indices The numbers, indexed by the strings.
+     * @param order The order of the strings or null for their natural order.
+     */
+    private static void rank(
+        int[] key,
+        Map<String, Integer> indices,
+        Comparator<String> order)
+    {
+        if (indices.size() < 2)
+        {
+            return;
+        }
+
+        List<String> sorted = new ArrayList<String>(indices.keySet());
+        Collections.sort(sorted, order);
+
+        int[] ranks = new int[sorted.size()];
+
+        for (int x = 0; x < ranks.length; ++x)
+        {
+            ranks[indices.get(sorted.get(x))] = x;
+        }
+
+        for (int x = 0; x < key.length; ++x)
+        {
+            key[x] = ranks[key[x]];
+        }
+    }
+}
@@ -0,0 +1,752 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import net.sf.nvn.commons.Fingerprint;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * An output cache on an HTTP server that is shared by many build agents. The
+ * server only has to store and return opaque resources with GET, HEAD and PUT.
+ * 
+ * <p>
+ * An entry's outputs are stored as gzip files at
+ * <em>&lt;url&gt;/&lt;key&gt;/&lt;name&gt;</em> and the entry's manifest is
+ * stored as <em>&lt;url&gt;/&lt;key&gt;/manifest</em>. The compression is part
+ * of the stored resource, not of the HTTP exchange, so the server does not
+ * have to keep or return a Content-Encoding header. The manifest lists the
+ * SHA-1 checksum of each output's uncompressed content and is written last,
+ * so an entry without a manifest does not exist. Outputs are downloaded and
+ * uploaded in parallel and each download is verified against the manifest.
+ * </p>
+ * 
+ * <p>
+ * Restoring an entry must complete within a latency budget. When the server
+ * is slower than that the restore fails, and the build should fall back to
+ * building the project locally. Storing an entry must complete within an
+ * upload timeout, after which the entry is abandoned. Connections are reused
+ * between requests to the same server.
+ * </p>
+ * 
+ * @author akutz
+ * 
+ */
+public class HttpOutputCache implements OutputCache
+{
+    /**
+     * The name of an entry's manifest.
+     */
+    private static final String MANIFEST_NAME = "manifest";
+
+    /**
+     * The time in milliseconds that storing an entry may take when the cache
+     * is not given an upload timeout.
+     */
+    public static final long DEFAULT_UPLOAD_TIMEOUT = 60 * 1000;
+
+    /**
+     * The executor shared by the caches that are not given one.
+     */
+    private static ExecutorService sharedExecutor;
+
+    /**
+     * The URL of the cache. Entries are stored below it.
+     */
+    private final String url;
+
+    /**
+     * The time in milliseconds that restoring an entry may take.
+     */
+    private final long latencyBudget;
+
+    /**
+     * The time in milliseconds that storing an entry may take.
+     */
+    private final long uploadTimeout;
+
+    /**
+     * The executor that transfers the outputs.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Initializes a new instance of the HttpOutputCache class that transfers
+     * outputs with a shared pool of daemon threads.
+     * 
+     * @param url The URL of the cache.
+     * @param latencyBudget The time in milliseconds that restoring an entry
+     *        may take.
+     */
+    public HttpOutputCache(URL url, long latencyBudget)
+    {
+        this(url, latencyBudget, DEFAULT_UPLOAD_TIMEOUT);
+    }
+
+    /**
+     * Initializes a new instance of the HttpOutputCache class that transfers
+     * outputs with a shared pool of daemon threads.
+     * 
+     * @param url The URL of the cache.
+     * @param latencyBudget The time in milliseconds that restoring an entry
+     *        may take.
+     * @param uploadTimeout The time in milliseconds that storing an entry may
+     *        take.
+     */
+    public HttpOutputCache(URL url, long latencyBudget, long uploadTimeout)
+    {
+        this(url, latencyBudget, uploadTimeout, getSharedExecutor());
+    }
+
+    /**
+     * Initializes a new instance of the HttpOutputCache class.
+     * 
+     * @param url The URL of the cache.
+     * @param latencyBudget The time in milliseconds that restoring an entry
+     *        may take.
+     * @param uploadTimeout The time in milliseconds that storing an entry may
+     *        take.
+     * @param executor The executor that transfers the outputs.
+     */
+    public HttpOutputCache(
+        URL url,
+        long latencyBudget,
+        long uploadTimeout,
+        ExecutorService executor)
+    {
+        String s = url.toString();
+        this.url = s.endsWith("/") ? s : s + "/";
+        this.latencyBudget = latencyBudget;
+        this.uploadTimeout = uploadTimeout;
+        this.executor = executor;
+    }
+
+    @Override
+    public boolean restore(String key, Map<String, File> outputs)
+        throws IOException
+    {
+        long deadline = System.currentTimeMillis() + this.latencyBudget;
+
+        Properties manifest = getManifest(key, deadline);
+
+        if (manifest == null)
+        {
+            return false;
+        }
+
+        Map<File, Future<File>> downloads =
+            new LinkedHashMap<File, Future<File>>();
+
+        for (Map.Entry<String, File> o : outputs.entrySet())
+        {
+            String checksum = manifest.getProperty(o.getKey());
+
+            if (checksum != null)
+            {
+                downloads.put(o.getValue(), this.executor.submit(new Download(
+                    getUrl(key, o.getKey()),
+                    LocalOutputCache.getTempFile(o.getValue()),
+                    checksum,
+                    deadline)));
+            }
+        }
+
+        if (downloads.isEmpty())
+        {
+            return false;
+        }
+
+        Map<File, File> staged = new LinkedHashMap<File, File>();
+
+        try
+        {
+            for (Map.Entry<File, Future<File>> d : downloads.entrySet())
+            {
+                staged.put(
+                    await(d.getValue(), deadline, "restoring"),
+                    d.getKey());
+            }
+        }
+        catch (IOException e)
+        {
+            for (Map.Entry<File, Future<File>> d : downloads.entrySet())
+            {
+                d.getValue().cancel(true);
+                staged.put(LocalOutputCache.getTempFile(d.getKey()), d
+                    .getKey());
+            }
+
+            LocalOutputCache.deleteAll(staged.keySet());
+            throw e;
+        }
+
+        for (Map.Entry<File, File> s : staged.entrySet())
+        {
+            LocalOutputCache.replace(s.getKey(), s.getValue());
+        }
+
+        return true;
+    }
+
+    @Override
+    public void store(String key, Map<String, File> outputs)
+        throws IOException
+    {
+        long deadline = System.currentTimeMillis() + this.uploadTimeout;
+
+        HttpURLConnection head =
+            open(getUrl(key, MANIFEST_NAME), "HEAD", deadline);
+
+        if (getResponseCode(head) == HttpURLConnection.HTTP_OK)
+        {
+            return;
+        }
+
+        Map<String, Future<String>> uploads =
+            new LinkedHashMap<String, Future<String>>();
+
+        for (Map.Entry<String, File> o : outputs.entrySet())
+        {
+            if (o.getValue().isFile())
+            {
+                uploads.put(o.getKey(), this.executor.submit(new Upload(
+                    getUrl(key, o.getKey()),
+                    o.getValue(),
+                    deadline)));
+            }
+        }
+
+        if (uploads.isEmpty())
+        {
+            return;
+        }
+
+        Properties manifest = new Properties();
+
+        try
+        {
+            for (Map.Entry<String, Future<String>> u : uploads.entrySet())
+            {
+                String checksum = await(u.getValue(), deadline, "storing");
+                manifest.setProperty(u.getKey(), checksum);
+            }
+        }
+        catch (IOException e)
+        {
+            for (Future<String> u : uploads.values())
+            {
+                u.cancel(true);
+            }
+
+            throw e;
+        }
+
+        ByteArrayOutputStream buff = new ByteArrayOutputStream();
+        manifest.store(buff, null);
+        put(getUrl(key, MANIFEST_NAME), new ByteArrayInputStream(buff
+            .toByteArray()), false, deadline);
+    }
+
+    /**
+     * Gets an entry's manifest. The manifest is downloaded by the executor so
+     * that a server that responds slowly cannot hold the caller past the
+     * deadline.
+     * 
+     * @param key The entry's key.
+     * @param deadline The time by which the manifest must be received.
+     * @return The entry's manifest or null if the entry does not exist.
+     * @throws IOException When an error occurs.
+     */
+    private Properties getManifest(String key, long deadline)
+        throws IOException
+    {
+        Future<Properties> f =
+            this.executor.submit(new ManifestDownload(getUrl(
+                key,
+                MANIFEST_NAME), deadline));
+
+        try
+        {
+            return await(f, deadline, "restoring");
+        }
+        catch (IOException e)
+        {
+            f.cancel(true);
+            throw e;
+        }
+    }
+
+    /**
+     * Uploads a resource.
+     * 
+     * @param url The resource's URL.
+     * @param content The resource's content. The stream is closed.
+     * @param compress Whether or not to store the content as a gzip file.
+     * @param deadline The time by which the response must be received.
+     * @return The SHA-1 checksum of the uncompressed content.
+     * @throws IOException When an error occurs.
+     */
+    private static String put(
+        URL url,
+        InputStream content,
+        boolean compress,
+        long deadline) throws IOException
+    {
+        HttpURLConnection c = open(url, "PUT", deadline);
+        c.setDoOutput(true);
+        c.setChunkedStreamingMode(64 * 1024);
+        c.setRequestProperty("Content-Type", compress
+            ? "application/gzip"
+            : "text/plain");
+
+        DigestInputStream in = new DigestInputStream(content, newSha1());
+        OutputStream out = null;
+
+        try
+        {
+            out = c.getOutputStream();
+
+            if (compress)
+            {
+                out = new GZIPOutputStream(out, 64 * 1024);
+            }
+
+            copy(in, out, url, deadline);
+            out.close();
+        }
+        finally
+        {
+            IOUtils.closeQuietly(in);
+            IOUtils.closeQuietly(out);
+        }
+
+        int code = getResponseCode(c);
+
+        if (code / 100 != 2)
+        {
+            throw new IOException(String.format(
+                "Error storing '%s'. The server responded with %s",
+                url,
+                code));
+        }
+
+        return Fingerprint.toHex(in.getMessageDigest().digest());
+    }
+
+    /**
+     * Opens a connection.
+     * 
+     * @param url The URL.
+     * @param method The request method.
+     * @param deadline The time by which the response must be received.
+     * @return The connection.
+     * @throws IOException When the deadline has passed or an error occurs.
+     */
+    private static HttpURLConnection open(
+        URL url,
+        String method,
+        long deadline) throws IOException
+    {
+        HttpURLConnection c = (HttpURLConnection) url.openConnection();
+        c.setRequestMethod(method);
+        c.setUseCaches(false);
+
+        long timeout = deadline - System.currentTimeMillis();
+
+        if (timeout <= 0)
+        {
+            throw new IOException(String.format(
+                "Timed out before requesting '%s'",
+                url));
+        }
+
+        c.setConnectTimeout((int) Math.min(timeout, Integer.MAX_VALUE));
+        c.setReadTimeout((int) Math.min(timeout, Integer.MAX_VALUE));
+
+        return c;
+    }
+
+    /**
+     * Gets a response's code. The body of an unsuccessful response is read
+     * and discarded so that the connection can be reused.
+     * 
+     * @param c The connection.
+     * @return The response's code.
+     * @throws IOException When an error occurs.
+     */
+    private static int getResponseCode(HttpURLConnection c) throws IOException
+    {
+        int code = c.getResponseCode();
+
+        if (code / 100 != 2 || c.getRequestMethod().equals("HEAD")
+            || c.getRequestMethod().equals("PUT"))
+        {
+            InputStream in =
+                code / 100 == 2 ? c.getInputStream() : c.getErrorStream();
+
+            if (in != null)
+            {
+                try
+                {
+                    while (in.read() != -1)
+                    {
+                        // Drain the stream.
+                    }
+                }
+                finally
+                {
+                    IOUtils.closeQuietly(in);
+                }
+            }
+        }
+
+        return code;
+    }
+
+    /**
+     * Gets a response's body. A server or proxy may still compress the body
+     * for the exchange, in which case that encoding is removed.
+     * 
+     * @param c The connection.
+     * @return The response's body.
+     * @throws IOException When an error occurs.
+     */
+    private static InputStream getInputStream(HttpURLConnection c)
+        throws IOException
+    {
+        InputStream in = c.getInputStream();
+
+        if ("gzip".equalsIgnoreCase(c.getContentEncoding()))
+        {
+            in = new GZIPInputStream(in, 64 * 1024);
+        }
+
+        return in;
+    }
+
+    /**
+     * Copies a resource's content in chunks. The transfer is abandoned
+     * between chunks when its thread is interrupted, for example because the
+     * transfer was cancelled, or when the deadline has passed.
+     * 
+     * @param in The stream to read.
+     * @param out The stream to write.
+     * @param url The resource's URL.
+     * @param deadline The time by which the transfer must complete.
+     * @throws IOException When the transfer is abandoned or an error occurs.
+     */
+    private static void copy(
+        InputStream in,
+        OutputStream out,
+        URL url,
+        long deadline) throws IOException
+    {
+        byte[] buff = new byte[64 * 1024];
+        int read;
+
+        while ((read = in.read(buff)) != -1)
+        {
+            if (Thread.currentThread().isInterrupted())
+            {
+                throw new InterruptedIOException(String.format(
+                    "Cancelled transferring '%s'",
+                    url));
+            }
+
+            if (System.currentTimeMillis() > deadline)
+            {
+                throw new IOException(String.format(
+                    "Timed out transferring '%s'",
+                    url));
+            }
+
+            out.write(buff, 0, read);
+        }
+    }
+
+    private static <T> T await(Future<T> future, long deadline, String action)
+        throws IOException
+    {
+        try
+        {
+            return future.get(
+                Math.max(0, deadline - System.currentTimeMillis()),
+                TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException(String.format(
+                "Interrupted while %s outputs",
+                action), e);
+        }
+        catch (TimeoutException e)
+        {
+            throw new IOException(String.format(
+                "Timed out %s outputs",
+                action), e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+            {
+                throw (IOException) e.getCause();
+            }
+
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private URL getUrl(String key, String name) throws IOException
+    {
+        return new URL(this.url + LocalOutputCache.checkName(key) + "/"
+            + LocalOutputCache.checkName(name));
+    }
+
+    private static MessageDigest newSha1()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException("SHA-1 is not supported", e);
+        }
+    }
+
+    private static synchronized ExecutorService getSharedExecutor()
+    {
+        if (sharedExecutor == null)
+        {
+            final AtomicInteger count = new AtomicInteger();
+
+            sharedExecutor =
+                Executors.newCachedThreadPool(new ThreadFactory()
+                {
+                    @Override
+                    public Thread newThread(Runnable r)
+                    {
+                        Thread t =
+                            new Thread(r, String.format(
+                                "nvn-output-cache-%s",
+                                count.incrementAndGet()));
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        }
+
+        return sharedExecutor;
+    }
+
+    /**
+     * Downloads an entry's manifest. The result is null if the entry does not
+     * exist.
+     */
+    private static class ManifestDownload implements Callable<Properties>
+    {
+        private final URL url;
+
+        private final long deadline;
+
+        ManifestDownload(URL url, long deadline)
+        {
+            this.url = url;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public Properties call() throws IOException
+        {
+            HttpURLConnection c = open(this.url, "GET", this.deadline);
+
+            if (getResponseCode(c) != HttpURLConnection.HTTP_OK)
+            {
+                return null;
+            }
+
+            Properties manifest = new Properties();
+            InputStream in = getInputStream(c);
+
+            try
+            {
+                manifest.load(in);
+            }
+            finally
+            {
+                IOUtils.closeQuietly(in);
+            }
+
+            return manifest;
+        }
+    }
+
+    /**
+     * Downloads an output to a file, decompresses it and verifies its
+     * checksum. The file is deleted when the download fails, including when
+     * it is cancelled after the restore it belongs to has been abandoned.
+     */
+    private static class Download implements Callable<File>
+    {
+        private final URL url;
+
+        private final File file;
+
+        private final String checksum;
+
+        private final long deadline;
+
+        Download(URL url, File file, String checksum, long deadline)
+        {
+            this.url = url;
+            this.file = file;
+            this.checksum = checksum;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public File call() throws IOException
+        {
+            HttpURLConnection c = open(this.url, "GET", this.deadline);
+            int code = getResponseCode(c);
+
+            if (code != HttpURLConnection.HTTP_OK)
+            {
+                throw new IOException(String.format(
+                    "Error restoring '%s'. The server responded with %s",
+                    this.url,
+                    code));
+            }
+
+            this.file.getParentFile().mkdirs();
+
+            DigestInputStream in = null;
+            OutputStream out = null;
+            boolean downloaded = false;
+
+            try
+            {
+                in =
+                    new DigestInputStream(new GZIPInputStream(
+                        getInputStream(c),
+                        64 * 1024), newSha1());
+                out = new FileOutputStream(this.file);
+                copy(in, out, this.url, this.deadline);
+                out.close();
+
+                String actual =
+                    Fingerprint.toHex(in.getMessageDigest().digest());
+
+                if (!actual.equals(this.checksum))
+                {
+                    throw new IOException(String.format(
+                        "Checksum mismatch for '%s'. Expected %s but was %s",
+                        this.url,
+                        this.checksum,
+                        actual));
+                }
+
+                downloaded = true;
+                return this.file;
+            }
+            finally
+            {
+                IOUtils.closeQuietly(in);
+                IOUtils.closeQuietly(out);
+
+                if (!downloaded)
+                {
+                    // The rest of the response is not read, so the connection
+                    // cannot be reused.
+                    c.disconnect();
+                    this.file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Uploads an output as a gzip file and returns its checksum.
+     */
+    private static class Upload implements Callable<String>
+    {
+        private final URL url;
+
+        private final File file;
+
+        private final long deadline;
+
+        Upload(URL url, File file, long deadline)
+        {
+            this.url = url;
+            this.file = file;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public String call() throws IOException
+        {
+            return put(
+                this.url,
+                new FileInputStream(this.file),
+                true,
+                this.deadline);
+        }
+    }
+}
@@ -0,0 +1,664 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons.cache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * An output cache in a local directory. The directory may be shared by any
+ * number of concurrent builds, in this process or in others.
+ * 
+ * <p>
+ * Each entry is a directory named after its key that holds one file per
+ * output. An entry is assembled in a temporary directory and renamed into
+ * place, so a build either sees a complete entry or none at all. Entries are
+ * committed and evicted while holding an exclusive lock on the cache's lock
+ * file, while restoring an entry needs no lock.
+ * </p>
+ * 
+ * <p>
+ * The cache is bounded in size. When a new entry pushes it over its bound,
+ * the least recently used entries are evicted. An entry's timestamp records
+ * when it was last stored or restored. The size of each entry is recorded in
+ * the cache's index file when the entry is committed, so the cache's size is
+ * known without walking its entries. The index is rebuilt from the entries
+ * if it is missing.
+ * </p>
+ * 
+ * @author akutz
+ * 
+ */
+public class LocalOutputCache implements OutputCache
+{
+    /**
+     * The name of the file that is locked while the cache is modified.
+     */
+    private static final String LOCK_FILE_NAME = ".lock";
+
+    /**
+     * The name of the file that records the size of each entry.
+     */
+    private static final String INDEX_FILE_NAME = ".index";
+
+    /**
+     * The name of the directory entries are assembled in.
+     */
+    private static final String TEMP_DIR_NAME = ".tmp";
+
+    /**
+     * Temporary directories older than this are left over from builds that
+     * did not finish and are deleted.
+     */
+    private static final long STALE_TEMP_AGE = 60 * 60 * 1000;
+
+    /**
+     * Keys and output names are used as file names, so they are limited to
+     * characters that are safe in a path segment.
+     */
+    private static final Pattern NAME_PATT =
+        Pattern.compile("^[\\w\\-][\\w\\-\\.]*$");
+
+    /**
+     * The locks that serialize access to a cache's lock file within this
+     * process. A JVM may only hold one lock on a file at a time.
+     */
+    private static final ConcurrentMap<String, ReentrantLock> LOCKS =
+        new ConcurrentHashMap<String, ReentrantLock>();
+
+    /**
+     * The cache directory.
+     */
+    private final File directory;
+
+    /**
+     * The maximum size of the cache in bytes.
+     */
+    private final long maxSize;
+
+    /**
+     * The lock that serializes access to this cache's lock file within this
+     * process.
+     */
+    private final ReentrantLock processLock;
+
+    /**
+     * Initializes a new instance of the LocalOutputCache class.
+     * 
+     * @param directory The cache directory. It is created if it does not
+     *        exist.
+     * @param maxSize The maximum size of the cache in bytes.
+     * @throws IOException When the cache directory cannot be created.
+     */
+    public LocalOutputCache(File directory, long maxSize) throws IOException
+    {
+        this.directory = directory.getCanonicalFile();
+        this.maxSize = maxSize;
+
+        if (!this.directory.isDirectory() && !this.directory.mkdirs())
+        {
+            throw new IOException(String.format(
+                "Error creating cache directory '%s'",
+                this.directory));
+        }
+
+        ReentrantLock lock = new ReentrantLock();
+        ReentrantLock existing =
+            LOCKS.putIfAbsent(this.directory.getPath(), lock);
+        this.processLock = existing == null ? lock : existing;
+    }
+
+    /**
+     * Gets the cache directory.
+     * 
+     * @return The cache directory.
+     */
+    public File getDirectory()
+    {
+        return this.directory;
+    }
+
+    @Override
+    public boolean restore(String key, Map<String, File> outputs)
+        throws IOException
+    {
+        File entry = getEntryDir(key);
+
+        if (!entry.isDirectory())
+        {
+            return false;
+        }
+
+        // The outputs are copied next to their destinations first so that
+        // either all of them are replaced or none of them are.
+        Map<File, File> staged = new LinkedHashMap<File, File>();
+
+        try
+        {
+            for (Map.Entry<String, File> o : outputs.entrySet())
+            {
+                File src = new File(entry, checkName(o.getKey()));
+
+                if (!src.isFile())
+                {
+                    continue;
+                }
+
+                File dest = o.getValue();
+                File tmp = getTempFile(dest);
+                FileUtils.copyFile(src, tmp);
+                staged.put(tmp, dest);
+            }
+        }
+        catch (IOException e)
+        {
+            deleteAll(staged.keySet());
+
+            // The entry was evicted while it was being restored.
+            if (!entry.exists())
+            {
+                return false;
+            }
+
+            throw e;
+        }
+
+        if (staged.isEmpty())
+        {
+            return false;
+        }
+
+        for (Map.Entry<File, File> s : staged.entrySet())
+        {
+            replace(s.getKey(), s.getValue());
+        }
+
+        entry.setLastModified(System.currentTimeMillis());
+
+        return true;
+    }
+
+    @Override
+    public void store(String key, Map<String, File> outputs)
+        throws IOException
+    {
+        File entry = getEntryDir(key);
+
+        if (entry.isDirectory())
+        {
+            entry.setLastModified(System.currentTimeMillis());
+            return;
+        }
+
+        File tmpDir =
+            new File(getTempDir(), String.format("%s-%s", key, UUID
+                .randomUUID()));
+
+        try
+        {
+            int count = 0;
+            long size = 0;
+
+            for (Map.Entry<String, File> o : outputs.entrySet())
+            {
+                if (o.getValue().isFile())
+                {
+                    File dest = new File(tmpDir, checkName(o.getKey()));
+                    FileUtils.copyFile(o.getValue(), dest);
+                    size += dest.length();
+                    ++count;
+                }
+            }
+
+            if (count == 0)
+            {
+                return;
+            }
+
+            FileLock lock = lock();
+
+            try
+            {
+                entry.getParentFile().mkdirs();
+
+                // Another build may have stored the same entry in the
+                // meantime, in which case this one is discarded.
+                if (entry.exists())
+                {
+                    entry.setLastModified(System.currentTimeMillis());
+                    return;
+                }
+
+                if (!tmpDir.renameTo(entry))
+                {
+                    throw new IOException(String.format(
+                        "Error renaming '%s' to '%s'",
+                        tmpDir,
+                        entry));
+                }
+
+                entry.setLastModified(System.currentTimeMillis());
+                commit(key, size);
+            }
+            finally
+            {
+                unlock(lock);
+            }
+        }
+        finally
+        {
+            FileUtils.deleteQuietly(tmpDir);
+        }
+    }
+
+    /**
+     * Records a committed entry in the index and evicts the least recently
+     * used entries if the cache is larger than its bound. Must be called while
+     * holding the cache's lock.
+     * 
+     * @param key The entry's key.
+     * @param size The entry's size in bytes.
+     * @throws IOException When the index cannot be read or written.
+     */
+    private void commit(String key, long size) throws IOException
+    {
+        deleteStaleTempDirs();
+
+        File indexFile = getIndexFile();
+        boolean rebuilt = !indexFile.isFile();
+        Map<String, Long> index = rebuilt ? scanEntries() : readIndex();
+
+        index.put(key, Long.valueOf(size));
+
+        long total = 0;
+
+        for (Long s : index.values())
+        {
+            total += s.longValue();
+        }
+
+        if (total > this.maxSize)
+        {
+            evict(index, total);
+        }
+        else if (!rebuilt)
+        {
+            appendIndex(key, size);
+            return;
+        }
+
+        writeIndex(index);
+    }
+
+    /**
+     * Evicts the least recently used entries until the cache is no larger
+     * than its bound. Must be called while holding the cache's lock.
+     * 
+     * @param index The sizes of the cache's entries keyed by their keys. The
+     *        evicted entries are removed from it.
+     * @param total The cache's size in bytes.
+     */
+    private void evict(Map<String, Long> index, long total)
+    {
+        List<String> keys = new ArrayList<String>(index.size());
+        final Map<String, Long> times = new HashMap<String, Long>();
+
+        for (Iterator<String> it = index.keySet().iterator(); it.hasNext();)
+        {
+            String key = it.next();
+            File entry = getEntryDir(key);
+
+            // An entry that was deleted by hand no longer counts.
+            if (!entry.isDirectory())
+            {
+                total -= index.get(key).longValue();
+                it.remove();
+                continue;
+            }
+
+            keys.add(key);
+            times.put(key, entry.lastModified());
+        }
+
+        Collections.sort(keys, new Comparator<String>()
+        {
+            @Override
+            public int compare(String k1, String k2)
+            {
+                return times.get(k1).compareTo(times.get(k2));
+            }
+        });
+
+        for (String key : keys)
+        {
+            if (total <= this.maxSize)
+            {
+                break;
+            }
+
+            File entry = getEntryDir(key);
+
+            // The entry is renamed before it is deleted so that no build can
+            // restore a partially deleted entry. The rename fails while the
+            // entry is being restored on Windows, in which case it is kept.
+            File trash =
+                new File(getTempDir(), String.format(
+                    "%s-%s",
+                    entry.getName(),
+                    UUID.randomUUID()));
+
+            if (entry.renameTo(trash))
+            {
+                FileUtils.deleteQuietly(trash);
+                total -= index.remove(key).longValue();
+            }
+        }
+    }
+
+    /**
+     * Deletes the temporary directories left over from builds that did not
+     * finish.
+     */
+    private void deleteStaleTempDirs()
+    {
+        long now = System.currentTimeMillis();
+
+        for (File tmp : listDirs(getTempDir()))
+        {
+            if (now - tmp.lastModified() > STALE_TEMP_AGE)
+            {
+                FileUtils.deleteQuietly(tmp);
+            }
+        }
+    }
+
+    /**
+     * Gets the sizes of the cache's entries by walking them. This is only
+     * done when the index is missing.
+     * 
+     * @return The sizes of the cache's entries keyed by their keys.
+     */
+    private Map<String, Long> scanEntries()
+    {
+        Map<String, Long> index = new LinkedHashMap<String, Long>();
+
+        for (File shard : listDirs(this.directory))
+        {
+            if (shard.getName().startsWith("."))
+            {
+                continue;
+            }
+
+            for (File entry : listDirs(shard))
+            {
+                index.put(entry.getName(), Long.valueOf(FileUtils
+                    .sizeOfDirectory(entry)));
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Reads the index. Each line holds the key and size of an entry. When a
+     * key appears more than once the last line wins.
+     * 
+     * @return The sizes of the cache's entries keyed by their keys.
+     * @throws IOException When the index cannot be read.
+     */
+    private Map<String, Long> readIndex() throws IOException
+    {
+        Map<String, Long> index = new LinkedHashMap<String, Long>();
+
+        for (Object o : FileUtils.readLines(getIndexFile(), "UTF-8"))
+        {
+            String[] parts = StringUtils.split((String) o, ' ');
+
+            if (parts.length != 2 || !NAME_PATT.matcher(parts[0]).matches())
+            {
+                continue;
+            }
+
+            try
+            {
+                index.put(parts[0], Long.valueOf(parts[1]));
+            }
+            catch (NumberFormatException e)
+            {
+                // A line that was cut short by a crash is ignored.
+            }
+        }
+
+        return index;
+    }
+
+    private void appendIndex(String key, long size) throws IOException
+    {
+        Writer out = null;
+
+        try
+        {
+            out =
+                new OutputStreamWriter(new FileOutputStream(
+                    getIndexFile(),
+                    true), "UTF-8");
+            out.write(String.format("%s %s\n", key, size));
+        }
+        finally
+        {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    private void writeIndex(Map<String, Long> index) throws IOException
+    {
+        StringBuilder buff = new StringBuilder();
+
+        for (Map.Entry<String, Long> e : index.entrySet())
+        {
+            buff.append(e.getKey()).append(' ').append(e.getValue()).append(
+                '\n');
+        }
+
+        File indexFile = getIndexFile();
+        File tmp = getTempFile(indexFile);
+        FileUtils.writeStringToFile(tmp, buff.toString(), "UTF-8");
+        replace(tmp, indexFile);
+    }
+
+    private File getIndexFile()
+    {
+        return new File(this.directory, INDEX_FILE_NAME);
+    }
+
+    private File getEntryDir(String key)
+    {
+        checkName(key);
+
+        String shard = key.length() > 2 ? key.substring(0, 2) : key;
+        return new File(new File(this.directory, shard), key);
+    }
+
+    private File getTempDir()
+    {
+        return new File(this.directory, TEMP_DIR_NAME);
+    }
+
+    private FileLock lock() throws IOException
+    {
+        this.processLock.lock();
+
+        RandomAccessFile raf = null;
+
+        try
+        {
+            raf =
+                new RandomAccessFile(
+                    new File(this.directory, LOCK_FILE_NAME),
+                    "rw");
+            return raf.getChannel().lock();
+        }
+        catch (IOException e)
+        {
+            if (raf != null)
+            {
+                raf.close();
+            }
+
+            this.processLock.unlock();
+            throw e;
+        }
+    }
+
+    private void unlock(FileLock lock)
+    {
+        try
+        {
+            lock.release();
+            lock.channel().close();
+        }
+        catch (IOException e)
+        {
+            // The lock is released when its channel is closed.
+        }
+        finally
+        {
+            this.processLock.unlock();
+        }
+    }
+
+    /**
+     * Validates a key or output name.
+     *
+     * @param name The key or output name.
+     * @return The key or output name.
+     * @throws IllegalArgumentException When the name is not valid.
+     */
+    static String checkName(String name) throws IllegalArgumentException
+    {
+        if (name == null || !NAME_PATT.matcher(name).matches())
+        {
+            throw new IllegalArgumentException(String.format(
+                "Invalid cache key or output name '%s'",
+                name));
+        }
+
+        return name;
+    }
+
+    /**
+     * Gets the file an output is copied to before it replaces its
+     * destination.
+     * 
+     * @param dest The destination.
+     * @return The file an output is copied to before it replaces its
+     *         destination.
+     */
+    static File getTempFile(File dest)
+    {
+        return new File(dest.getParentFile(), dest.getName() + ".nvn-tmp");
+    }
+
+    /**
+     * Replaces a file with another one.
+     * 
+     * @param src The file to move.
+     * @param dest The file to replace.
+     * @throws IOException When an error occurs.
+     */
+    static void replace(File src, File dest) throws IOException
+    {
+        // Windows cannot rename a file over an existing one.
+        if (!src.renameTo(dest) && !(dest.delete() && src.renameTo(dest)))
+        {
+            throw new IOException(String.format(
+                "Error renaming '%s' to '%s'",
+                src,
+                dest));
+        }
+    }
+
+    /**
+     * Deletes files, ignoring errors.
+     * 
+     * @param files The files to delete.
+     */
+    static void deleteAll(Iterable<File> files)
+    {
+        for (File f : files)
+        {
+            FileUtils.deleteQuietly(f);
+        }
+    }
+
+    private static File[] listDirs(File dir)
+    {
+        File[] children = dir.listFiles();
+
+        if (children == null)
+        {
+            return new File[0];
+        }
+
+        List<File> dirs = new ArrayList<File>(children.length);
+
+        for (File c : children)
+        {
+            if (c.isDirectory())
+            {
+                dirs.add(c);
+            }
+        }
+
+        return dirs.toArray(new File[dirs.size()]);
+    }
+}
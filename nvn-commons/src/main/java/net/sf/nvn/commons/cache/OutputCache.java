@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * A cache of build outputs keyed by the fingerprint of the inputs that
+ * produced them. An entry holds a set of named output files, ex. a project's
+ * binary, symbols and documentation artifacts.
+ * 
+ * <p>
+ * Implementations must be safe for use by concurrent builds. An entry is
+ * either restored completely or not at all.
+ * </p>
+ * 
+ * @author akutz
+ * 
+ */
+public interface OutputCache
+{
+    /**
+     * Restores an entry's outputs.
+     * 
+     * @param key The fingerprint of the inputs that produced the outputs.
+     * @param outputs The files to restore the outputs to, keyed by the
+     *        outputs' names. Outputs that are not part of the entry are left
+     *        alone.
+     * @return True if the entry was found and restored, otherwise false.
+     * @throws IOException When an error occurs.
+     */
+    boolean restore(String key, Map<String, File> outputs) throws IOException;
+
+    /**
+     * Stores an entry's outputs. Nothing is stored if the entry already
+     * exists.
+     * 
+     * @param key The fingerprint of the inputs that produced the outputs.
+     * @param outputs The output files, keyed by the outputs' names. Files that
+     *        do not exist are not stored.
+     * @throws IOException When an error occurs.
+     */
+    void store(String key, Map<String, File> outputs) throws IOException;
+}
@@ -0,0 +1,364 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons.dag;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <p>
+ * Runs the nodes of a directed acyclic graph on a pool of threads. A node runs
+ * once all of the nodes it depends on have completed, so independent nodes
+ * run at the same time.
+ * </p>
+ * 
+ * <p>
+ * When more nodes are ready than there are idle threads, the node with the
+ * longest critical path runs first. A node's critical path is the cost of the
+ * most expensive chain of nodes that starts with it and follows the nodes that
+ * depend on it. Starting those nodes early keeps the threads busy at the end
+ * of the run, when only a few long chains are left.
+ * </p>
+ * 
+ * @author akutz
+ * 
+ * @param <T> The node type.
+ */
+public class DagScheduler<T>
+{
+    /**
+     * The work done for each node.
+     * 
+     * @param <T> The node type.
+     */
+    public interface Task<T>
+    {
+        /**
+         * Runs a node.
+         * 
+         * @param node The node.
+         * @throws Exception When the node fails. The nodes that depend on it
+         *         are not run.
+         */
+        void run(T node) throws Exception;
+    }
+
+    /**
+     * The nodes and their costs, in the order they were added.
+     */
+    private final Map<T, Long> costs = new LinkedHashMap<T, Long>();
+
+    /**
+     * The nodes that each node depends on.
+     */
+    private final Map<T, Set<T>> dependencies = new HashMap<T, Set<T>>();
+
+    /**
+     * The nodes that depend on each node.
+     */
+    private final Map<T, Set<T>> dependents = new HashMap<T, Set<T>>();
+
+    /**
+     * Adds a node.
+     * 
+     * @param node The node.
+     * @param cost The node's estimated cost, for example the time it took to
+     *        run the last time. Must not be negative.
+     */
+    public void add(T node, long cost)
+    {
+        if (cost < 0)
+        {
+            throw new IllegalArgumentException("cost must not be negative");
+        }
+
+        this.costs.put(node, cost);
+        this.dependencies.put(node, new LinkedHashSet<T>());
+        this.dependents.put(node, new LinkedHashSet<T>());
+    }
+
+    /**
+     * Adds an edge between two nodes that have already been added.
+     * 
+     * @param node The node.
+     * @param dependency The node that must complete before the node runs.
+     */
+    public void addDependency(T node, T dependency)
+    {
+        if (!this.costs.containsKey(node))
+        {
+            throw new IllegalArgumentException("unknown node: " + node);
+        }
+
+        if (!this.costs.containsKey(dependency))
+        {
+            throw new IllegalArgumentException("unknown node: " + dependency);
+        }
+
+        if (node.equals(dependency))
+        {
+            throw new IllegalArgumentException("node depends on itself: "
+                + node);
+        }
+
+        this.dependencies.get(node).add(dependency);
+        this.dependents.get(dependency).add(node);
+    }
+
+    /**
+     * Gets the nodes that a node depends on.
+     * 
+     * @param node The node.
+     * @return The nodes that the node depends on.
+     */
+    public Set<T> getDependencies(T node)
+    {
+        return this.dependencies.get(node);
+    }
+
+    /**
+     * Gets the nodes in an order that runs each node after the nodes it
+     * depends on.
+     * 
+     * @return The nodes in dependency order.
+     * @throws IllegalStateException When the graph has a cycle.
+     */
+    public List<T> getTopologicalOrder()
+    {
+        Map<T, Integer> remaining = getDependencyCounts();
+        List<T> order = new ArrayList<T>(this.costs.size());
+
+        for (T node : this.costs.keySet())
+        {
+            if (remaining.get(node) == 0)
+            {
+                order.add(node);
+            }
+        }
+
+        for (int x = 0; x < order.size(); ++x)
+        {
+            for (T d : this.dependents.get(order.get(x)))
+            {
+                if (remaining.put(d, remaining.get(d) - 1) == 1)
+                {
+                    order.add(d);
+                }
+            }
+        }
+
+        if (order.size() != this.costs.size())
+        {
+            Set<T> cycle = new LinkedHashSet<T>(this.costs.keySet());
+            cycle.removeAll(order);
+            throw new IllegalStateException(
+                "The dependency graph has a cycle among " + cycle);
+        }
+
+        return order;
+    }
+
+    /**
+     * Gets the cost of each node's critical path: the node's own cost plus the
+     * cost of the most expensive chain of nodes that depend on it.
+     * 
+     * @return The cost of each node's critical path.
+     * @throws IllegalStateException When the graph has a cycle.
+     */
+    public Map<T, Long> getCriticalPaths()
+    {
+        List<T> order = getTopologicalOrder();
+        Map<T, Long> paths = new HashMap<T, Long>();
+
+        for (int x = order.size() - 1; x >= 0; --x)
+        {
+            T node = order.get(x);
+            long longest = 0;
+
+            for (T d : this.dependents.get(node))
+            {
+                longest = Math.max(longest, paths.get(d));
+            }
+
+            paths.put(node, this.costs.get(node) + longest);
+        }
+
+        return paths;
+    }
+
+    /**
+     * Runs the nodes. When a node fails no more nodes are started, the nodes
+     * that are running are allowed to complete and the first failure is
+     * thrown.
+     * 
+     * @param threads The number of nodes that may run at the same time. A
+     *        number less than one is treated as one.
+     * @param task The work done for each node.
+     * @throws ExecutionException When a node fails. The cause is the node's
+     *         exception.
+     * @throws InterruptedException When the calling thread is interrupted.
+     * @throws IllegalStateException When the graph has a cycle.
+     */
+    public void run(int threads, final Task<T> task)
+        throws ExecutionException,
+        InterruptedException
+    {
+        final Map<T, Long> paths = getCriticalPaths();
+        final Map<T, Integer> order = new HashMap<T, Integer>();
+
+        for (T node : this.costs.keySet())
+        {
+            order.put(node, order.size());
+        }
+
+        // The ready node with the longest critical path comes first. Ties are
+        // broken by the order the nodes were added in.
+        PriorityQueue<T> ready =
+            new PriorityQueue<T>(Math.max(1, this.costs.size()),
+                new Comparator<T>()
+                {
+                    @Override
+                    public int compare(T o1, T o2)
+                    {
+                        int c = paths.get(o2).compareTo(paths.get(o1));
+                        return c != 0 ? c : order.get(o1).compareTo(
+                            order.get(o2));
+                    }
+                });
+
+        Map<T, Integer> remaining = getDependencyCounts();
+
+        for (T node : this.costs.keySet())
+        {
+            if (remaining.get(node) == 0)
+            {
+                ready.add(node);
+            }
+        }
+
+        final int poolSize = Math.max(1, threads);
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+        CompletionService<T> completion =
+            new ExecutorCompletionService<T>(executor);
+
+        ExecutionException failure = null;
+        int running = 0;
+
+        try
+        {
+            while (true)
+            {
+                // Nodes are only handed to the pool when a thread is idle so
+                // that the priority of the ready nodes is always respected.
+                while (failure == null && running < poolSize
+                    && !ready.isEmpty())
+                {
+                    final T node = ready.poll();
+
+                    completion.submit(new Callable<T>()
+                    {
+                        @Override
+                        public T call() throws Exception
+                        {
+                            task.run(node);
+                            return node;
+                        }
+                    });
+
+                    ++running;
+                }
+
+                if (running == 0)
+                {
+                    break;
+                }
+
+                try
+                {
+                    T node = completion.take().get();
+
+                    for (T d : this.dependents.get(node))
+                    {
+                        if (remaining.put(d, remaining.get(d) - 1) == 1)
+                        {
+                            ready.add(d);
+                        }
+                    }
+                }
+                catch (ExecutionException e)
+                {
+                    if (failure == null)
+                    {
+                        failure = e;
+                    }
+                }
+                finally
+                {
+                    --running;
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        if (failure != null)
+        {
+            throw failure;
+        }
+    }
+
+    private Map<T, Integer> getDependencyCounts()
+    {
+        Map<T, Integer> counts = new HashMap<T, Integer>();
+
+        for (T node : this.costs.keySet())
+        {
+            counts.put(node, this.dependencies.get(node).size());
+        }
+
+        return counts;
+    }
+}
@@ -0,0 +1,842 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons.msbuild;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * The parts of an MSBuild file that are needed to evaluate a project. A build
+ * file is either a project or a file that is imported by a project, such as a
+ * shared .props or .targets file.
+ * 
+ * <p>
+ * Build files are read with a single streaming pass rather than with the
+ * classes generated from the MSBuild schema because the generated classes
+ * discard properties that are not declared by the schema, such as the custom
+ * properties that shared .props files exist to define.
+ * </p>
+ * 
+ * <p>
+ * Imported files are read once and shared through a cache by every project
+ * that imports them. A cached file is read again only if it has been modified
+ * since it was cached.
+ * </p>
+ * 
+ * @author akutz
+ * 
+ */
+final class BuildFile
+{
+    /**
+     * The imported files that have already been read, indexed by their
+     * canonical file.
+     */
+    private static final ConcurrentMap<File, BuildFile> IMPORTS =
+        new ConcurrentHashMap<File, BuildFile>();
+
+    /**
+     * The factory used to create the readers that parse build files.
+     */
+    private static XMLInputFactory xmlInputFactory;
+
+    /**
+     * The kinds of definitions.
+     */
+    enum Kind
+    {
+        /**
+         * A property definition.
+         */
+        PROPERTY,
+
+        /**
+         * An Import element. The definition's value is the imported project
+         * path.
+         */
+        IMPORT,
+
+        /**
+         * The OutputFile metadata of a Link or Lib item definition (CPP only).
+         */
+        OUTPUT_FILE,
+
+        /**
+         * An item whose type is not one of the
+         * {@link BuildFile#IGNORED_ITEM_TYPES}. The definition's name is the
+         * item type, its value is the Include attribute and its exclude is the
+         * Exclude attribute.
+         */
+        ITEM
+    }
+
+    /**
+     * The keys, as returned by {@link EvaluationContext#key(String)}, of the
+     * types of the items whose Include attributes name files the build reads.
+     */
+    static final Set<String> INPUT_ITEM_TYPES = keys(
+        "Compile",
+        "Content",
+        "EmbeddedResource",
+        "None",
+        "Page",
+        "Resource",
+        "ApplicationDefinition",
+        "SplashScreen",
+        "EntityDeploy",
+        "AdditionalFiles",
+        "Analyzer",
+        "CodeAnalysisDictionary",
+        "ClCompile",
+        "ClInclude",
+        "ResourceCompile",
+        "Midl",
+        "CustomBuild",
+        "FxCompile",
+        "MASM",
+        "Manifest",
+        "Library",
+        "Object",
+        "Text",
+        "Image",
+        "Xml",
+        "Xsd");
+
+    /**
+     * The keys of the types of the items that are not recorded because they
+     * do not name files the build reads or the files are accounted for
+     * elsewhere. Project configurations and project references are read into
+     * their own collections.
+     */
+    static final Set<String> IGNORED_ITEM_TYPES = keys(
+        "ProjectConfiguration",
+        "ProjectReference",
+        "Reference",
+        "PackageReference",
+        "DotNetCliToolReference",
+        "Folder",
+        "Service",
+        "BootstrapperPackage",
+        "WCFMetadata",
+        "WCFMetadataStorage",
+        "WebReferences",
+        "WebReferenceUrl");
+
+    /**
+     * The build file.
+     */
+    private final File file;
+
+    /**
+     * The time at which the build file was last modified when it was read.
+     */
+    private final long lastModified;
+
+    /**
+     * The build file's definitions in document order.
+     */
+    private final List<Definition> definitions = new ArrayList<Definition>();
+
+    /**
+     * The build file's project references.
+     */
+    private final Map<String, String> projectReferences =
+        new HashMap<String, String>();
+
+    /**
+     * The Include values of the build file's ProjectConfiguration items, ex.
+     * Debug|Win32.
+     */
+    private final List<String> projectConfigurations = new ArrayList<String>();
+
+    /**
+     * The names of the targets the build file defines and of the targets it
+     * hooks with the BeforeTargets and AfterTargets attributes.
+     */
+    private final List<String> targets = new ArrayList<String>();
+
+    /**
+     * The names of the unsupported functions the build file's conditions call.
+     */
+    private final Set<String> unknownFunctions = new TreeSet<String>(
+        String.CASE_INSENSITIVE_ORDER);
+
+    private BuildFile(File file)
+    {
+        this.file = file;
+        this.lastModified = file.lastModified();
+    }
+
+    /**
+     * Gets the build file.
+     * 
+     * @return The build file.
+     */
+    File getFile()
+    {
+        return this.file;
+    }
+
+    /**
+     * Gets the build file's definitions in document order.
+     * 
+     * @return The build file's definitions in document order.
+     */
+    List<Definition> getDefinitions()
+    {
+        return Collections.unmodifiableList(this.definitions);
+    }
+
+    /**
+     * Gets the build file's project references. The map's key is the
+     * referenced project's path and its value is the reference's name.
+     * 
+     * @return The build file's project references.
+     */
+    Map<String, String> getProjectReferences()
+    {
+        return this.projectReferences;
+    }
+
+    /**
+     * Gets the Include values of the build file's ProjectConfiguration items,
+     * ex. Debug|Win32.
+     * 
+     * @return The Include values of the build file's ProjectConfiguration
+     *         items.
+     */
+    List<String> getProjectConfigurations()
+    {
+        return this.projectConfigurations;
+    }
+
+    /**
+     * Gets the names of the targets the build file defines and of the targets
+     * it hooks with the BeforeTargets and AfterTargets attributes.
+     * 
+     * @return The names of the targets.
+     */
+    List<String> getTargets()
+    {
+        return this.targets;
+    }
+
+    /**
+     * Gets the names of the unsupported functions the build file's conditions
+     * call. The conditions that call them evaluate to false.
+     * 
+     * @return The names of the unsupported functions.
+     */
+    Set<String> getUnknownFunctions()
+    {
+        return this.unknownFunctions;
+    }
+
+    /**
+     * Reads a build file. The result is not cached.
+     * 
+     * @param file The build file.
+     * @return The build file's definitions.
+     * @throws IOException When the file cannot be read.
+     * @throws IllegalArgumentException When a condition cannot be parsed.
+     */
+    static BuildFile read(File file)
+        throws IOException,
+        IllegalArgumentException
+    {
+        return read(file, true);
+    }
+
+    /**
+     * Gets an imported file from the cache, reading it if it has not been read
+     * yet or if it has been modified since it was read.
+     * 
+     * <p>
+     * The conditions of an imported file are parsed leniently: a definition
+     * whose condition cannot be parsed is treated as if its condition were
+     * false. This keeps the syntax used by the stock Microsoft targets files
+     * from failing the evaluation of every project.
+     * </p>
+     * 
+     * @param file The imported file.
+     * @return The imported file's definitions or null if the file does not
+     *         exist.
+     * @throws IllegalArgumentException When the file exists but cannot be
+     *         read.
+     */
+    static BuildFile getImport(File file) throws IllegalArgumentException
+    {
+        File key;
+
+        try
+        {
+            key = file.getCanonicalFile();
+        }
+        catch (IOException e)
+        {
+            key = file.getAbsoluteFile();
+        }
+
+        BuildFile bf = IMPORTS.get(key);
+
+        if (bf != null && bf.lastModified == key.lastModified())
+        {
+            return bf;
+        }
+
+        if (!key.isFile())
+        {
+            return null;
+        }
+
+        try
+        {
+            bf = read(key, false);
+        }
+        catch (IOException e)
+        {
+            throw new IllegalArgumentException(String.format(
+                "Error reading imported file '%s'. %s",
+                key,
+                e.getMessage()), e);
+        }
+
+        IMPORTS.put(key, bf);
+
+        return bf;
+    }
+
+    /**
+     * Reads a build file.
+     * 
+     * @param file The build file.
+     * @param strict Whether or not a condition that cannot be parsed is an
+     *        error.
+     * @return The build file's definitions.
+     * @throws IOException When the file cannot be read.
+     * @throws IllegalArgumentException When a condition cannot be parsed and
+     *         strict is true.
+     */
+    private static BuildFile read(File file, boolean strict)
+        throws IOException,
+        IllegalArgumentException
+    {
+        BuildFile bf = new BuildFile(file);
+        InputStream in = new FileInputStream(file);
+
+        try
+        {
+            XMLStreamReader xr =
+                getXMLInputFactory().createXMLStreamReader(in);
+
+            try
+            {
+                if (!nextChild(xr) || !xr.getLocalName().equals("Project"))
+                {
+                    throw new IOException("The root element is not Project.");
+                }
+
+                while (nextChild(xr))
+                {
+                    String name = xr.getLocalName();
+
+                    if (name.equals("PropertyGroup"))
+                    {
+                        bf.readPropertyGroup(xr, strict);
+                    }
+                    else if (name.equals("ItemGroup"))
+                    {
+                        bf.readItemGroup(xr, strict);
+                    }
+                    else if (name.equals("ItemDefinitionGroup"))
+                    {
+                        bf.readItemDefinitionGroup(xr, strict);
+                    }
+                    else if (name.equals("Import"))
+                    {
+                        bf.readImport(xr, Condition.TRUE, strict);
+                    }
+                    else if (name.equals("Target"))
+                    {
+                        bf.readTarget(xr);
+                    }
+                    else if (name.equals("ImportGroup"))
+                    {
+                        Condition groupCond =
+                            bf.compile(getAttribute(xr, "Condition"), strict);
+
+                        while (nextChild(xr))
+                        {
+                            if (xr.getLocalName().equals("Import"))
+                            {
+                                bf.readImport(xr, groupCond, strict);
+                            }
+                            else
+                            {
+                                skipElement(xr);
+                            }
+                        }
+                    }
+                    else
+                    {
+                        skipElement(xr);
+                    }
+                }
+            }
+            finally
+            {
+                xr.close();
+            }
+        }
+        catch (XMLStreamException e)
+        {
+            throw new IOException(e.getMessage(), e);
+        }
+        finally
+        {
+            IOUtils.closeQuietly(in);
+        }
+
+        return bf;
+    }
+
+    private static synchronized XMLInputFactory getXMLInputFactory()
+    {
+        if (xmlInputFactory == null)
+        {
+            XMLInputFactory xif = XMLInputFactory.newInstance();
+            xif.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+            xif.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+            xmlInputFactory = xif;
+        }
+
+        return xmlInputFactory;
+    }
+
+    /**
+     * Advances the reader to the next child of the current element.
+     * 
+     * @param xr The reader.
+     * @return True if the reader is positioned at the start of a child element
+     *         or false if the reader is positioned at the end of the current
+     *         element.
+     * @throws XMLStreamException When an error occurs.
+     */
+    private static boolean nextChild(XMLStreamReader xr)
+        throws XMLStreamException
+    {
+        while (xr.hasNext())
+        {
+            int event = xr.next();
+
+            if (event == XMLStreamConstants.START_ELEMENT)
+            {
+                return true;
+            }
+            else if (event == XMLStreamConstants.END_ELEMENT)
+            {
+                return false;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Advances the reader to the end of the current element.
+     * 
+     * @param xr The reader.
+     * @throws XMLStreamException When an error occurs.
+     */
+    private static void skipElement(XMLStreamReader xr)
+        throws XMLStreamException
+    {
+        readElement(xr, null);
+    }
+
+    /**
+     * Reads the text of the current element and advances the reader to the
+     * end of the element. The text of any child elements is included.
+     * 
+     * @param xr The reader.
+     * @return The element's text.
+     * @throws XMLStreamException When an error occurs.
+     */
+    private static String readText(XMLStreamReader xr)
+        throws XMLStreamException
+    {
+        StringBuilder buff = new StringBuilder();
+        readElement(xr, buff);
+        return buff.toString();
+    }
+
+    /**
+     * Advances the reader to the end of the current element.
+     * 
+     * @param xr The reader.
+     * @param buff The buffer that receives the element's text. May be null.
+     * @throws XMLStreamException When an error occurs.
+     */
+    private static void readElement(XMLStreamReader xr, StringBuilder buff)
+        throws XMLStreamException
+    {
+        int depth = 1;
+
+        while (depth > 0)
+        {
+            switch (xr.next())
+            {
+                case XMLStreamConstants.START_ELEMENT :
+                {
+                    ++depth;
+                    break;
+                }
+                case XMLStreamConstants.END_ELEMENT :
+                {
+                    --depth;
+                    break;
+                }
+                case XMLStreamConstants.CHARACTERS :
+                case XMLStreamConstants.CDATA :
+                case XMLStreamConstants.SPACE :
+                {
+                    if (buff != null)
+                    {
+                        buff.append(xr.getText());
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    private static String getAttribute(XMLStreamReader xr, String name)
+    {
+        return xr.getAttributeValue(null, name);
+    }
+
+    /**
+     * Gets an unmodifiable set of the keys of names.
+     * 
+     * @param names The names.
+     * @return The keys, as returned by {@link EvaluationContext#key(String)},
+     *         of the names.
+     */
+    private static Set<String> keys(String... names)
+    {
+        Set<String> keys = new HashSet<String>();
+
+        for (String n : names)
+        {
+            keys.add(EvaluationContext.key(n));
+        }
+
+        return Collections.unmodifiableSet(keys);
+    }
+
+    /**
+     * Compiles a condition.
+     * 
+     * @param text The condition's source text.
+     * @param strict Whether or not a condition that cannot be parsed is an
+     *        error.
+     * @return The compiled condition or, if the condition cannot be parsed and
+     *         strict is false, a condition that is always false.
+     */
+    private Condition compile(String text, boolean strict)
+    {
+        try
+        {
+            Condition cond = Condition.compile(text);
+            cond.collectUnknownFunctions(this.unknownFunctions);
+            return cond;
+        }
+        catch (IllegalArgumentException e)
+        {
+            if (strict)
+            {
+                throw e;
+            }
+
+            return Condition.FALSE;
+        }
+    }
+
+    private void readPropertyGroup(XMLStreamReader xr, boolean strict)
+        throws XMLStreamException
+    {
+        Condition groupCond = compile(getAttribute(xr, "Condition"), strict);
+
+        while (nextChild(xr))
+        {
+            String name = xr.getLocalName();
+            Condition cond =
+                Condition.and(groupCond, compile(
+                    getAttribute(xr, "Condition"),
+                    strict));
+
+            this.definitions.add(new Definition(
+                Kind.PROPERTY,
+                cond,
+                name,
+                readText(xr)));
+        }
+    }
+
+    private void readItemDefinitionGroup(XMLStreamReader xr, boolean strict)
+        throws XMLStreamException
+    {
+        Condition groupCond = compile(getAttribute(xr, "Condition"), strict);
+
+        while (nextChild(xr))
+        {
+            String name = xr.getLocalName();
+
+            if (!name.equals("Link") && !name.equals("Lib"))
+            {
+                skipElement(xr);
+                continue;
+            }
+
+            Condition libCond =
+                Condition.and(groupCond, compile(
+                    getAttribute(xr, "Condition"),
+                    strict));
+
+            while (nextChild(xr))
+            {
+                if (xr.getLocalName().equals("OutputFile"))
+                {
+                    this.definitions.add(new Definition(
+                        Kind.OUTPUT_FILE,
+                        libCond,
+                        "OutputFile",
+                        readText(xr)));
+                }
+                else
+                {
+                    skipElement(xr);
+                }
+            }
+        }
+    }
+
+    private void readImport(
+        XMLStreamReader xr,
+        Condition groupCond,
+        boolean strict) throws XMLStreamException
+    {
+        Condition cond =
+            Condition.and(groupCond, compile(
+                getAttribute(xr, "Condition"),
+                strict));
+
+        this.definitions.add(new Definition(Kind.IMPORT, cond, "Project", xr
+            .getAttributeValue(null, "Project")));
+
+        skipElement(xr);
+    }
+
+    private void readTarget(XMLStreamReader xr) throws XMLStreamException
+    {
+        String[] attrs = new String[]
+        {
+            "Name", "BeforeTargets", "AfterTargets"
+        };
+
+        for (String attr : attrs)
+        {
+            String value = getAttribute(xr, attr);
+
+            if (value == null)
+            {
+                continue;
+            }
+
+            for (String target : value.split(";"))
+            {
+                target = target.trim();
+
+                if (target.length() > 0)
+                {
+                    this.targets.add(target);
+                }
+            }
+        }
+
+        skipElement(xr);
+    }
+
+    private void readItemGroup(XMLStreamReader xr, boolean strict)
+        throws XMLStreamException
+    {
+        Condition groupCond = compile(getAttribute(xr, "Condition"), strict);
+
+        while (nextChild(xr))
+        {
+            String itemName = xr.getLocalName();
+
+            if (itemName.equals("ProjectConfiguration"))
+            {
+                this.projectConfigurations.add(getAttribute(xr, "Include"));
+                skipElement(xr);
+                continue;
+            }
+
+            if (!itemName.equals("ProjectReference"))
+            {
+                if (IGNORED_ITEM_TYPES.contains(EvaluationContext
+                    .key(itemName)))
+                {
+                    skipElement(xr);
+                }
+                else
+                {
+                    readItem(xr, groupCond, strict);
+                }
+
+                continue;
+            }
+
+            String include = getAttribute(xr, "Include");
+            String name = "";
+
+            while (nextChild(xr))
+            {
+                if (xr.getLocalName().equals("Name"))
+                {
+                    name = readText(xr);
+                }
+                else
+                {
+                    skipElement(xr);
+                }
+            }
+
+            this.projectReferences.put(include, name);
+        }
+    }
+
+    private void readItem(
+        XMLStreamReader xr,
+        Condition groupCond,
+        boolean strict) throws XMLStreamException
+    {
+        String include = getAttribute(xr, "Include");
+
+        // Items that update or remove other items are not recorded.
+        if (include != null)
+        {
+            Condition cond =
+                Condition.and(groupCond, compile(
+                    getAttribute(xr, "Condition"),
+                    strict));
+
+            this.definitions.add(new Definition(
+                Kind.ITEM,
+                cond,
+                xr.getLocalName(),
+                include,
+                getAttribute(xr, "Exclude")));
+        }
+
+        skipElement(xr);
+    }
+
+    /**
+     * A property definition, an Import element, an item definition's
+     * metadata definition or an item.
+     */
+    static class Definition
+    {
+        /**
+         * The kind of definition.
+         */
+        final Kind kind;
+
+        /**
+         * The definition's condition combined with the conditions of its
+         * enclosing group.
+         */
+        final Condition condition;
+
+        /**
+         * The name of the property or metadata.
+         */
+        final String name;
+
+        /**
+         * The unevaluated value.
+         */
+        final Expression value;
+
+        /**
+         * The unevaluated Exclude attribute of an item.
+         */
+        final Expression exclude;
+
+        Definition(Kind kind, Condition condition, String name, String value)
+        {
+            this(kind, condition, name, value, null);
+        }
+
+        Definition(
+            Kind kind,
+            Condition condition,
+            String name,
+            String value,
+            String exclude)
+        {
+            this.kind = kind;
+            this.condition = condition;
+            this.name = name;
+            this.value = Expression.compile(value);
+            this.exclude = Expression.compile(exclude);
+        }
+    }
+}
@@ -0,0 +1,904 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons.msbuild;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A compiled MSBuild condition such as
+ * <em>'$(Configuration)|$(Platform)' == 'Debug|AnyCPU'</em>. A condition is
+ * compiled once into an abstract syntax tree and may then be evaluated against
+ * any number of {@link EvaluationContext}s.
+ * 
+ * <p>
+ * The supported grammar is the one documented for MSBuild conditions: the
+ * comparison operators ==, !=, &lt;, &gt;, &lt;= and &gt;=, the logical
+ * operators And, Or and !, parentheses, quoted and unquoted operands and the
+ * Exists and HasTrailingSlash functions. A call to any other function
+ * evaluates to false.
+ * </p>
+ * 
+ * @author akutz
+ * 
+ */
+public abstract class Condition
+{
+    /**
+     * The conditions that have already been compiled, indexed by their source
+     * text.
+     */
+    private static final ConcurrentMap<String, Condition> CACHE =
+        new ConcurrentHashMap<String, Condition>();
+
+    /**
+     * A condition that is always true. This is the condition of an element
+     * without a Condition attribute.
+     */
+    public static final Condition TRUE = new Constant(true);
+
+    /**
+     * A condition that is always false.
+     */
+    public static final Condition FALSE = new Constant(false);
+
+    /**
+     * Evaluates the condition.
+     * 
+     * @param context The evaluation context.
+     * @return The result of the condition.
+     */
+    public abstract boolean evaluate(EvaluationContext context);
+
+    /**
+     * Collects the property values this condition compares against. Every
+     * equality or inequality comparison between an expression and a constant
+     * contributes the property values that make the expression equal to the
+     * constant, as returned by {@link Expression#match(String)}. This is how
+     * the configuration and platform pairs a project declares are discovered.
+     * 
+     * @param bindings The list that receives the property values.
+     */
+    void collectBindings(List<Map<String, String>> bindings)
+    {
+        // Most conditions do not compare a property against a constant.
+    }
+
+    /**
+     * Collects the names of the functions this condition calls that are not
+     * supported. Calls to unsupported functions evaluate to false.
+     * 
+     * @param names The set that receives the function names.
+     */
+    void collectUnknownFunctions(Set<String> names)
+    {
+        // Most conditions do not call an unsupported function.
+    }
+
+    /**
+     * Compiles a condition. Conditions are cached by their source text so each
+     * distinct condition is only compiled once.
+     * 
+     * @param text The condition's source text.
+     * @return The compiled condition.
+     * @throws IllegalArgumentException When the condition cannot be parsed.
+     */
+    public static Condition compile(String text)
+        throws IllegalArgumentException
+    {
+        if (text == null || text.trim().length() == 0)
+        {
+            return TRUE;
+        }
+
+        Condition cond = CACHE.get(text);
+
+        if (cond != null)
+        {
+            return cond;
+        }
+
+        cond = new Parser(text).parse();
+
+        Condition existing = CACHE.putIfAbsent(text, cond);
+
+        return existing == null ? cond : existing;
+    }
+
+    /**
+     * Combines two conditions with a logical and.
+     * 
+     * @param left The left condition.
+     * @param right The right condition.
+     * @return A condition that is true when both conditions are true.
+     */
+    public static Condition and(Condition left, Condition right)
+    {
+        if (left == TRUE)
+        {
+            return right;
+        }
+
+        if (right == TRUE)
+        {
+            return left;
+        }
+
+        return new And(left, right);
+    }
+
+    /**
+     * Converts a string to a boolean the way MSBuild does.
+     * 
+     * @param value The string.
+     * @return True for "true", "on" and "yes" (case-insensitive), otherwise
+     *         false.
+     */
+    static boolean toBoolean(String value)
+    {
+        return value.equalsIgnoreCase("true") || value.equalsIgnoreCase("on")
+            || value.equalsIgnoreCase("yes");
+    }
+
+    /**
+     * Converts a string to a number the way MSBuild does. Decimal and
+     * hexadecimal (0x) numbers are recognized.
+     * 
+     * @param value The string.
+     * @return The number or NaN if the string is not a number.
+     */
+    static double toNumber(String value)
+    {
+        int len = value.length();
+
+        if (len == 0)
+        {
+            return Double.NaN;
+        }
+
+        if (len > 2 && value.charAt(0) == '0'
+            && (value.charAt(1) == 'x' || value.charAt(1) == 'X'))
+        {
+            long hex = 0;
+
+            for (int x = 2; x < len; ++x)
+            {
+                int d = Character.digit(value.charAt(x), 16);
+
+                if (d == -1 || x > 17)
+                {
+                    return Double.NaN;
+                }
+
+                hex = (hex << 4) | d;
+            }
+
+            return hex;
+        }
+
+        int x = 0;
+        char c = value.charAt(0);
+
+        if (c == '-' || c == '+')
+        {
+            ++x;
+        }
+
+        boolean digits = false;
+        boolean dot = false;
+
+        for (; x < len; ++x)
+        {
+            c = value.charAt(x);
+
+            if (c >= '0' && c <= '9')
+            {
+                digits = true;
+            }
+            else if (c == '.' && !dot)
+            {
+                dot = true;
+            }
+            else
+            {
+                return Double.NaN;
+            }
+        }
+
+        return digits ? Double.parseDouble(value) : Double.NaN;
+    }
+
+    /**
+     * A condition with a constant result.
+     */
+    private static final class Constant extends Condition
+    {
+        private final boolean value;
+
+        Constant(boolean value)
+        {
+            this.value = value;
+        }
+
+        @Override
+        public boolean evaluate(EvaluationContext context)
+        {
+            return this.value;
+        }
+    }
+
+    /**
+     * A logical and.
+     */
+    private static final class And extends Condition
+    {
+        private final Condition left;
+
+        private final Condition right;
+
+        And(Condition left, Condition right)
+        {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean evaluate(EvaluationContext context)
+        {
+            return this.left.evaluate(context) && this.right.evaluate(context);
+        }
+
+        @Override
+        void collectBindings(List<Map<String, String>> bindings)
+        {
+            this.left.collectBindings(bindings);
+            this.right.collectBindings(bindings);
+        }
+
+        @Override
+        void collectUnknownFunctions(Set<String> names)
+        {
+            this.left.collectUnknownFunctions(names);
+            this.right.collectUnknownFunctions(names);
+        }
+    }
+
+    /**
+     * A logical or.
+     */
+    private static final class Or extends Condition
+    {
+        private final Condition left;
+
+        private final Condition right;
+
+        Or(Condition left, Condition right)
+        {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean evaluate(EvaluationContext context)
+        {
+            return this.left.evaluate(context) || this.right.evaluate(context);
+        }
+
+        @Override
+        void collectBindings(List<Map<String, String>> bindings)
+        {
+            this.left.collectBindings(bindings);
+            this.right.collectBindings(bindings);
+        }
+
+        @Override
+        void collectUnknownFunctions(Set<String> names)
+        {
+            this.left.collectUnknownFunctions(names);
+            this.right.collectUnknownFunctions(names);
+        }
+    }
+
+    /**
+     * A logical not.
+     */
+    private static final class Not extends Condition
+    {
+        private final Condition operand;
+
+        Not(Condition operand)
+        {
+            this.operand = operand;
+        }
+
+        @Override
+        public boolean evaluate(EvaluationContext context)
+        {
+            return !this.operand.evaluate(context);
+        }
+
+        @Override
+        void collectBindings(List<Map<String, String>> bindings)
+        {
+            this.operand.collectBindings(bindings);
+        }
+
+        @Override
+        void collectUnknownFunctions(Set<String> names)
+        {
+            this.operand.collectUnknownFunctions(names);
+        }
+    }
+
+    /**
+     * A single operand used as a boolean, ex. '$(SignAssembly)'.
+     */
+    private static final class BooleanOperand extends Condition
+    {
+        private final Expression operand;
+
+        BooleanOperand(Expression operand)
+        {
+            this.operand = operand;
+        }
+
+        @Override
+        public boolean evaluate(EvaluationContext context)
+        {
+            return toBoolean(this.operand.evaluate(context));
+        }
+    }
+
+    /**
+     * The comparison operators.
+     */
+    enum Operator
+    {
+        EQ, NE, LT, LE, GT, GE
+    }
+
+    /**
+     * A comparison of two operands.
+     */
+    private static final class Comparison extends Condition
+    {
+        private final Operator op;
+
+        private final Expression left;
+
+        private final Expression right;
+
+        Comparison(Operator op, Expression left, Expression right)
+        {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean evaluate(EvaluationContext context)
+        {
+            String l = this.left.evaluate(context);
+            String r = this.right.evaluate(context);
+
+            double ln = toNumber(l);
+            double rn = toNumber(r);
+            boolean numeric = !Double.isNaN(ln) && !Double.isNaN(rn);
+
+            switch (this.op)
+            {
+                case EQ :
+                {
+                    return numeric ? ln == rn : l.equalsIgnoreCase(r);
+                }
+                case NE :
+                {
+                    return numeric ? ln != rn : !l.equalsIgnoreCase(r);
+                }
+                case LT :
+                {
+                    return numeric && ln < rn;
+                }
+                case LE :
+                {
+                    return numeric && ln <= rn;
+                }
+                case GT :
+                {
+                    return numeric && ln > rn;
+                }
+                case GE :
+                {
+                    return numeric && ln >= rn;
+                }
+                default :
+                {
+                    return false;
+                }
+            }
+        }
+
+        @Override
+        void collectBindings(List<Map<String, String>> bindings)
+        {
+            if (this.op != Operator.EQ && this.op != Operator.NE)
+            {
+                return;
+            }
+
+            Map<String, String> map = null;
+
+            if (this.left.isConstant() && !this.right.isConstant())
+            {
+                map = this.right.match(this.left.toString());
+            }
+            else if (this.right.isConstant() && !this.left.isConstant())
+            {
+                map = this.left.match(this.right.toString());
+            }
+
+            if (map != null)
+            {
+                bindings.add(map);
+            }
+        }
+    }
+
+    /**
+     * The Exists function.
+     */
+    private static final class Exists extends Condition
+    {
+        private final Expression path;
+
+        Exists(Expression path)
+        {
+            this.path = path;
+        }
+
+        @Override
+        public boolean evaluate(EvaluationContext context)
+        {
+            String p = this.path.evaluate(context).trim();
+
+            if (p.length() == 0)
+            {
+                return false;
+            }
+
+            return context.resolveFile(p).exists();
+        }
+    }
+
+    /**
+     * The HasTrailingSlash function.
+     */
+    private static final class HasTrailingSlash extends Condition
+    {
+        private final Expression path;
+
+        HasTrailingSlash(Expression path)
+        {
+            this.path = path;
+        }
+
+        @Override
+        public boolean evaluate(EvaluationContext context)
+        {
+            String p = this.path.evaluate(context);
+
+            if (p.length() == 0)
+            {
+                return false;
+            }
+
+            char c = p.charAt(p.length() - 1);
+
+            return c == '\\' || c == '/';
+        }
+    }
+
+    /**
+     * A call to a function that is not supported, for example a property
+     * function used as a condition. It evaluates to false.
+     */
+    private static final class UnknownFunction extends Condition
+    {
+        private final String name;
+
+        UnknownFunction(String name)
+        {
+            this.name = name;
+        }
+
+        @Override
+        public boolean evaluate(EvaluationContext context)
+        {
+            return false;
+        }
+
+        @Override
+        void collectUnknownFunctions(Set<String> names)
+        {
+            names.add(this.name);
+        }
+    }
+
+    /**
+     * A recursive descent parser for conditions.
+     */
+    private static final class Parser
+    {
+        private final String text;
+
+        private int pos;
+
+        Parser(String text)
+        {
+            this.text = text;
+        }
+
+        Condition parse()
+        {
+            Condition cond = parseOr();
+            skipWhitespace();
+
+            if (this.pos != this.text.length())
+            {
+                throw error("unexpected character");
+            }
+
+            return cond;
+        }
+
+        private Condition parseOr()
+        {
+            Condition cond = parseAnd();
+
+            while (acceptKeyword("or"))
+            {
+                cond = new Or(cond, parseAnd());
+            }
+
+            return cond;
+        }
+
+        private Condition parseAnd()
+        {
+            Condition cond = parseUnary();
+
+            while (acceptKeyword("and"))
+            {
+                cond = new And(cond, parseUnary());
+            }
+
+            return cond;
+        }
+
+        private Condition parseUnary()
+        {
+            skipWhitespace();
+
+            if (peek() == '!' && peek(1) != '=')
+            {
+                ++this.pos;
+                return new Not(parseUnary());
+            }
+
+            if (peek() == '(')
+            {
+                ++this.pos;
+                Condition cond = parseOr();
+                expect(')');
+                return cond;
+            }
+
+            int start = this.pos;
+            String word = readWord();
+
+            if (word != null)
+            {
+                skipWhitespace();
+
+                if (peek() == '(')
+                {
+                    return parseFunction(word);
+                }
+
+                this.pos = start;
+            }
+
+            Expression left = parseOperand();
+            Operator op = readOperator();
+
+            if (op == null)
+            {
+                return new BooleanOperand(left);
+            }
+
+            return new Comparison(op, left, parseOperand());
+        }
+
+        private Condition parseFunction(String name)
+        {
+            if (!name.equalsIgnoreCase("exists")
+                && !name.equalsIgnoreCase("hastrailingslash"))
+            {
+                skipArguments();
+                return new UnknownFunction(name);
+            }
+
+            expect('(');
+            Expression arg = parseOperand();
+            expect(')');
+
+            if (name.equalsIgnoreCase("exists"))
+            {
+                return new Exists(arg);
+            }
+
+            return new HasTrailingSlash(arg);
+        }
+
+        private Expression parseOperand()
+        {
+            skipWhitespace();
+
+            char c = peek();
+
+            if (c == '\'')
+            {
+                int end = this.text.indexOf('\'', this.pos + 1);
+
+                if (end == -1)
+                {
+                    throw error("unterminated string");
+                }
+
+                Expression expr =
+                    Expression.compile(this.text.substring(this.pos + 1, end));
+                this.pos = end + 1;
+                return expr;
+            }
+
+            int start = this.pos;
+
+            while (this.pos < this.text.length())
+            {
+                c = this.text.charAt(this.pos);
+
+                if (c == '$' && peek(1) == '(')
+                {
+                    skipParens();
+                    continue;
+                }
+
+                if (Character.isWhitespace(c) || c == '(' || c == ')'
+                    || c == '=' || c == '!' || c == '<' || c == '>'
+                    || c == '\'')
+                {
+                    break;
+                }
+
+                ++this.pos;
+            }
+
+            if (start == this.pos)
+            {
+                throw error("expected an operand");
+            }
+
+            String operand = this.text.substring(start, this.pos);
+
+            if (operand.equalsIgnoreCase("and") || operand.equalsIgnoreCase("or"))
+            {
+                this.pos = start;
+                throw error("expected an operand");
+            }
+
+            return Expression.compile(operand);
+        }
+
+        private Operator readOperator()
+        {
+            skipWhitespace();
+
+            char c = peek();
+            char n = peek(1);
+
+            if (c == '=' && n == '=')
+            {
+                this.pos += 2;
+                return Operator.EQ;
+            }
+            else if (c == '!' && n == '=')
+            {
+                this.pos += 2;
+                return Operator.NE;
+            }
+            else if (c == '<')
+            {
+                this.pos += n == '=' ? 2 : 1;
+                return n == '=' ? Operator.LE : Operator.LT;
+            }
+            else if (c == '>')
+            {
+                this.pos += n == '=' ? 2 : 1;
+                return n == '=' ? Operator.GE : Operator.GT;
+            }
+
+            return null;
+        }
+
+        private String readWord()
+        {
+            int start = this.pos;
+
+            while (this.pos < this.text.length()
+                && Expression.isNameChar(
+                    this.text.charAt(this.pos),
+                    this.pos == start))
+            {
+                ++this.pos;
+            }
+
+            return start == this.pos ? null : this.text.substring(
+                start,
+                this.pos);
+        }
+
+        private boolean acceptKeyword(String keyword)
+        {
+            skipWhitespace();
+
+            int end = this.pos + keyword.length();
+
+            if (end > this.text.length()
+                || !this.text.regionMatches(
+                    true,
+                    this.pos,
+                    keyword,
+                    0,
+                    keyword.length()))
+            {
+                return false;
+            }
+
+            if (end < this.text.length()
+                && Expression.isNameChar(this.text.charAt(end), false))
+            {
+                return false;
+            }
+
+            this.pos = end;
+            return true;
+        }
+
+        private void skipParens()
+        {
+            int depth = 0;
+
+            while (this.pos < this.text.length())
+            {
+                char c = this.text.charAt(this.pos++);
+
+                if (c == '(')
+                {
+                    ++depth;
+                }
+                else if (c == ')' && --depth == 0)
+                {
+                    return;
+                }
+            }
+
+            throw error("unterminated property reference");
+        }
+
+        /**
+         * Skips the argument list of a function call, including any quoted
+         * arguments that contain parentheses.
+         */
+        private void skipArguments()
+        {
+            int depth = 0;
+            boolean quoted = false;
+
+            while (this.pos < this.text.length())
+            {
+                char c = this.text.charAt(this.pos++);
+
+                if (c == '\'')
+                {
+                    quoted = !quoted;
+                }
+                else if (quoted)
+                {
+                    continue;
+                }
+                else if (c == '(')
+                {
+                    ++depth;
+                }
+                else if (c == ')' && --depth == 0)
+                {
+                    return;
+                }
+            }
+
+            throw error("unterminated function call");
+        }
+
+        private void expect(char c)
+        {
+            skipWhitespace();
+
+            if (peek() != c)
+            {
+                throw error("expected '" + c + "'");
+            }
+
+            ++this.pos;
+        }
+
+        private void skipWhitespace()
+        {
+            while (this.pos < this.text.length()
+                && Character.isWhitespace(this.text.charAt(this.pos)))
+            {
+                ++this.pos;
+            }
+        }
+
+        private char peek()
+        {
+            return peek(0);
+        }
+
+        private char peek(int offset)
+        {
+            int x = this.pos + offset;
+            return x < this.text.length() ? this.text.charAt(x) : '\0';
+        }
+
+        private IllegalArgumentException error(String message)
+        {
+            return new IllegalArgumentException(String.format(
+                "Error parsing condition \"%s\" at position %s: %s",
+                this.text,
+                this.pos,
+                message));
+        }
+    }
+}
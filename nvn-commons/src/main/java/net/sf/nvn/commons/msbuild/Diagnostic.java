@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons.msbuild;
+
+/**
+ * An error or warning msbuild reported in the canonical format
+ * <em>origin(line,column): error|warning code: message</em>.
+ * 
+ * @author akutz
+ * 
+ */
+public class Diagnostic
+{
+    private final boolean error;
+
+    private final String code;
+
+    private final String file;
+
+    private final int line;
+
+    private final int column;
+
+    private final String message;
+
+    private int count = 1;
+
+    /**
+     * Initializes a new instance of the Diagnostic class.
+     * 
+     * @param error True if this is an error, false if it is a warning.
+     * @param code The code, for example CS0168. May be empty.
+     * @param file The file or tool that reported the diagnostic.
+     * @param line The line or 0 if there is no line.
+     * @param column The column or 0 if there is no column.
+     * @param message The message.
+     */
+    public Diagnostic(
+        boolean error,
+        String code,
+        String file,
+        int line,
+        int column,
+        String message)
+    {
+        this.error = error;
+        this.code = code;
+        this.file = file;
+        this.line = line;
+        this.column = column;
+        this.message = message;
+    }
+
+    /**
+     * Gets a flag indicating whether this is an error or a warning.
+     * 
+     * @return True if this is an error, false if it is a warning.
+     */
+    public boolean isError()
+    {
+        return this.error;
+    }
+
+    /**
+     * Gets the code, for example CS0168.
+     * 
+     * @return The code. May be empty.
+     */
+    public String getCode()
+    {
+        return this.code;
+    }
+
+    /**
+     * Gets the file or tool that reported the diagnostic.
+     * 
+     * @return The file or tool that reported the diagnostic.
+     */
+    public String getFile()
+    {
+        return this.file;
+    }
+
+    /**
+     * Gets the line.
+     * 
+     * @return The line or 0 if there is no line.
+     */
+    public int getLine()
+    {
+        return this.line;
+    }
+
+    /**
+     * Gets the column.
+     * 
+     * @return The column or 0 if there is no column.
+     */
+    public int getColumn()
+    {
+        return this.column;
+    }
+
+    /**
+     * Gets the message.
+     * 
+     * @return The message.
+     */
+    public String getMessage()
+    {
+        return this.message;
+    }
+
+    /**
+     * Gets the number of times the diagnostic was reported, for example by
+     * each project that compiles the same file.
+     * 
+     * @return The number of times the diagnostic was reported.
+     */
+    public int getCount()
+    {
+        return this.count;
+    }
+
+    void increment()
+    {
+        ++this.count;
+    }
+
+    /**
+     * Gets the key that identifies the same diagnostic reported more than
+     * once.
+     * 
+     * @return The key.
+     */
+    String getKey()
+    {
+        return String.format(
+            "%s|%s|%s|%s|%s|%s",
+            this.error,
+            this.code,
+            this.file.toLowerCase(),
+            this.line,
+            this.column,
+            this.message);
+    }
+
+    /**
+     * Gets the location of the diagnostic in the canonical format, for example
+     * <em>Program.cs(10,17)</em>.
+     * 
+     * @return The location.
+     */
+    public String getLocation()
+    {
+        if (this.line == 0)
+        {
+            return this.file;
+        }
+
+        if (this.column == 0)
+        {
+            return String.format("%s(%s)", this.file, this.line);
+        }
+
+        return String.format("%s(%s,%s)", this.file, this.line, this.column);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format(
+            "%s: %s%s: %s",
+            getLocation(),
+            this.error ? "error" : "warning",
+            this.code.length() == 0 ? "" : " " + this.code,
+            this.message);
+    }
+}
@@ -0,0 +1,398 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons.msbuild;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import net.sf.nvn.commons.LineHandler;
+
+/**
+ * <p>
+ * Collects the errors and warnings from msbuild's output as it is written.
+ * Lines in the canonical format are parsed, for example:
+ * </p>
+ * 
+ * <pre>
+ * Program.cs(10,17): warning CS0168: The variable 'e' ... [C:\src\Foo.csproj]
+ * CSC : error CS2001: Source file 'Bar.cs' could not be found
+ * </pre>
+ * 
+ * <p>
+ * A diagnostic that is reported more than once, for example by each project
+ * that compiles a shared file or by the summary at the end of the build, is
+ * only kept once. At most a fixed number of diagnostics are kept so that the
+ * memory used does not grow with the output. Diagnostics beyond that are
+ * counted but not kept.
+ * </p>
+ * 
+ * <p>
+ * A collector may be given the output of several processes at once.
+ * </p>
+ * 
+ * @author akutz
+ * 
+ */
+public class DiagnosticCollector implements LineHandler
+{
+    /**
+     * Matches a diagnostic in the canonical format: an origin with an
+     * optional location, an optional subcategory, the category, an optional
+     * code and the message. msbuild appends the project to the message when
+     * several projects are built.
+     */
+    private static final Pattern CANONICAL =
+        Pattern.compile("^\\s*(?:\\d+>)?\\s*(.+?)"
+            + "(?:\\((\\d+)(?:-\\d+)?(?:,(\\d+)(?:-\\d+)?)?(?:,\\d+,\\d+)?\\))?"
+            + "\\s*:\\s*(?:[^:]*\\s)?(error|warning)(?:\\s+([A-Za-z]+\\d+))?"
+            + "\\s*:\\s*(.*?)(?:\\s+\\[[^\\[\\]]+\\])?\\s*$");
+
+    /**
+     * The largest number of locations listed for a file in a summary.
+     */
+    private static final int MAX_SUMMARY_LOCATIONS = 10;
+
+    private final int maxDiagnostics;
+
+    /**
+     * The diagnostics that are kept, keyed by {@link Diagnostic#getKey()}.
+     */
+    private final Map<String, Diagnostic> diagnostics =
+        new LinkedHashMap<String, Diagnostic>();
+
+    /**
+     * The diagnostics that have been kept since {@link #drain()} was last
+     * called.
+     */
+    private final List<Diagnostic> undrained = new ArrayList<Diagnostic>();
+
+    private int errors;
+
+    private int warnings;
+
+    private int dropped;
+
+    /**
+     * Initializes a new instance of the DiagnosticCollector class.
+     * 
+     * @param maxDiagnostics The largest number of diagnostics to keep.
+     */
+    public DiagnosticCollector(int maxDiagnostics)
+    {
+        this.maxDiagnostics = maxDiagnostics;
+    }
+
+    /**
+     * Parses a line of output.
+     * 
+     * @param line The line.
+     * @return The diagnostic or null if the line is not a diagnostic.
+     */
+    public static Diagnostic parse(String line)
+    {
+        // Most lines are not diagnostics, so they are not given to the regex.
+        if (line.indexOf("error") < 0 && line.indexOf("warning") < 0)
+        {
+            return null;
+        }
+
+        Matcher m = CANONICAL.matcher(line);
+
+        if (!m.matches())
+        {
+            return null;
+        }
+
+        return new Diagnostic(
+            m.group(4).equals("error"),
+            m.group(5) == null ? "" : m.group(5),
+            m.group(1).trim(),
+            parsePosition(m.group(2)),
+            parsePosition(m.group(3)),
+            m.group(6));
+    }
+
+    /**
+     * Parses a line or column number.
+     * 
+     * @param digits The digits or null if the position was not given.
+     * @return The number or 0 if it was not given or is too large to be a
+     *         position.
+     */
+    private static int parsePosition(String digits)
+    {
+        if (digits == null)
+        {
+            return 0;
+        }
+
+        try
+        {
+            return Integer.parseInt(digits);
+        }
+        catch (NumberFormatException e)
+        {
+            return 0;
+        }
+    }
+
+    @Override
+    public void handle(String line)
+    {
+        Diagnostic d = parse(line);
+
+        if (d != null)
+        {
+            add(d);
+        }
+    }
+
+    /**
+     * Adds a diagnostic.
+     * 
+     * @param diagnostic The diagnostic.
+     * @return True if the diagnostic was not reported before.
+     */
+    public synchronized boolean add(Diagnostic diagnostic)
+    {
+        String key = diagnostic.getKey();
+        Diagnostic d = this.diagnostics.get(key);
+
+        if (d != null)
+        {
+            d.increment();
+            return false;
+        }
+
+        if (diagnostic.isError())
+        {
+            ++this.errors;
+        }
+        else
+        {
+            ++this.warnings;
+        }
+
+        if (this.diagnostics.size() < this.maxDiagnostics)
+        {
+            this.diagnostics.put(key, diagnostic);
+            this.undrained.add(diagnostic);
+        }
+        else
+        {
+            ++this.dropped;
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the diagnostics that were kept since this method was last called.
+     * 
+     * @return The diagnostics.
+     */
+    public synchronized List<Diagnostic> drain()
+    {
+        List<Diagnostic> list = new ArrayList<Diagnostic>(this.undrained);
+        this.undrained.clear();
+        return list;
+    }
+
+    /**
+     * Gets the diagnostics that are kept.
+     * 
+     * @return The diagnostics.
+     */
+    public synchronized List<Diagnostic> getDiagnostics()
+    {
+        return new ArrayList<Diagnostic>(this.diagnostics.values());
+    }
+
+    /**
+     * Gets the number of distinct errors. Diagnostics that were not kept are
+     * counted each time they were reported.
+     * 
+     * @return The number of distinct errors.
+     */
+    public synchronized int getErrors()
+    {
+        return this.errors;
+    }
+
+    /**
+     * Gets the number of distinct warnings. Diagnostics that were not kept
+     * are counted each time they were reported.
+     * 
+     * @return The number of distinct warnings.
+     */
+    public synchronized int getWarnings()
+    {
+        return this.warnings;
+    }
+
+    /**
+     * Gets the number of diagnostics that were not kept because the limit was
+     * reached.
+     * 
+     * @return The number of diagnostics that were not kept.
+     */
+    public synchronized int getDropped()
+    {
+        return this.dropped;
+    }
+
+    /**
+     * Formats a compact summary of diagnostics. The errors come first and the
+     * diagnostics are grouped by code and then by file, for example:
+     * 
+     * <pre>
+     * error CS1002 (2)
+     *   Foo.cs: 1,1 4,2
+     * warning CS0168 (1)
+     *   Bar.cs: 3,3
+     * </pre>
+     * 
+     * @param diagnostics The diagnostics.
+     * @return The lines of the summary.
+     */
+    public static List<String> summarize(Collection<Diagnostic> diagnostics)
+    {
+        List<Diagnostic> sorted = new ArrayList<Diagnostic>(diagnostics);
+
+        Collections.sort(sorted, new Comparator<Diagnostic>()
+        {
+            @Override
+            public int compare(Diagnostic o1, Diagnostic o2)
+            {
+                if (o1.isError() != o2.isError())
+                {
+                    return o1.isError() ? -1 : 1;
+                }
+
+                int c = o1.getCode().compareTo(o2.getCode());
+
+                if (c == 0)
+                {
+                    c = o1.getFile().compareToIgnoreCase(o2.getFile());
+                }
+
+                if (c == 0)
+                {
+                    c = o1.getLine() - o2.getLine();
+                }
+
+                return c != 0 ? c : o1.getColumn() - o2.getColumn();
+            }
+        });
+
+        List<String> lines = new ArrayList<String>();
+        int x = 0;
+
+        while (x < sorted.size())
+        {
+            Diagnostic first = sorted.get(x);
+            int end = x;
+
+            while (end < sorted.size() && sameCode(first, sorted.get(end)))
+            {
+                ++end;
+            }
+
+            lines.add(String.format(
+                "%s %s (%s)",
+                first.isError() ? "error" : "warning",
+                first.getCode().length() == 0 ? "-" : first.getCode(),
+                end - x));
+
+            while (x < end)
+            {
+                String file = sorted.get(x).getFile();
+                StringBuilder buff = new StringBuilder("  ");
+                buff.append(file);
+                buff.append(":");
+
+                int locations = 0;
+
+                for (; x < end && sameFile(sorted.get(x), file); ++x)
+                {
+                    Diagnostic d = sorted.get(x);
+
+                    if (d.getLine() == 0)
+                    {
+                        continue;
+                    }
+
+                    if (++locations > MAX_SUMMARY_LOCATIONS)
+                    {
+                        continue;
+                    }
+
+                    buff.append(" ");
+                    buff.append(d.getLine());
+
+                    if (d.getColumn() != 0)
+                    {
+                        buff.append(",");
+                        buff.append(d.getColumn());
+                    }
+                }
+
+                if (locations > MAX_SUMMARY_LOCATIONS)
+                {
+                    buff.append(String.format(
+                        " and %s more",
+                        locations - MAX_SUMMARY_LOCATIONS));
+                }
+
+                lines.add(buff.toString());
+            }
+        }
+
+        return lines;
+    }
+
+    private static boolean sameFile(Diagnostic d, String file)
+    {
+        return d.getFile().equalsIgnoreCase(file);
+    }
+
+    private static boolean sameCode(Diagnostic d1, Diagnostic d2)
+    {
+        return d1.isError() == d2.isError()
+            && d1.getCode().equals(d2.getCode());
+    }
+}
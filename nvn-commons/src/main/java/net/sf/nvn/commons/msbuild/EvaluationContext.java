@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons.msbuild;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The properties that MSBuild conditions and expressions are evaluated
+ * against. Property names are case-insensitive. A property is resolved by
+ * looking at the global properties first, then at the properties defined by
+ * the project, then at the context's default values and finally at the
+ * environment variables of the current process.
+ * 
+ * @author akutz
+ * 
+ */
+public class EvaluationContext
+{
+    /**
+     * The global properties. Global properties cannot be redefined by the
+     * project.
+     */
+    private final Map<String, String> globals = new HashMap<String, String>();
+
+    /**
+     * The properties defined by the project.
+     */
+    private final Map<String, String> properties =
+        new HashMap<String, String>();
+
+    /**
+     * The directory relative paths are resolved against.
+     */
+    private final File directory;
+
+    /**
+     * Initializes a new instance of the EvaluationContext class.
+     * 
+     * @param directory The directory relative paths are resolved against. A
+     *        null value means the current working directory.
+     */
+    public EvaluationContext(File directory)
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * Gets the directory relative paths are resolved against.
+     * 
+     * @return The directory relative paths are resolved against.
+     */
+    public File getDirectory()
+    {
+        return this.directory;
+    }
+
+    /**
+     * Sets a global property. Null values are ignored.
+     * 
+     * @param name The property's name.
+     * @param value The property's value.
+     */
+    public void setGlobal(String name, String value)
+    {
+        if (value == null)
+        {
+            return;
+        }
+
+        this.globals.put(key(name), value);
+    }
+
+    /**
+     * Sets a property. The value is ignored if a global property with the same
+     * name exists.
+     * 
+     * @param name The property's name.
+     * @param value The property's value.
+     */
+    public void set(String name, String value)
+    {
+        String key = key(name);
+
+        if (this.globals.containsKey(key))
+        {
+            return;
+        }
+
+        this.properties.put(key, value == null ? "" : value);
+    }
+
+    /**
+     * Gets the value of a property that is either global or defined by the
+     * project.
+     * 
+     * @param name The property's name.
+     * @return The property's value or null if it is not defined.
+     */
+    public String getDefined(String name)
+    {
+        return lookup(key(name));
+    }
+
+    /**
+     * Gets the value of a property.
+     * 
+     * @param name The property's name.
+     * @return The property's value. An empty string is returned if the
+     *         property is not defined.
+     */
+    public String get(String name)
+    {
+        return get(name, key(name));
+    }
+
+    /**
+     * Gets the value of a property.
+     * 
+     * @param name The property's name.
+     * @param key The property's key as returned by {@link #key(String)}.
+     * @return The property's value. An empty string is returned if the
+     *         property is not defined.
+     */
+    String get(String name, String key)
+    {
+        String value = lookup(key);
+
+        if (value != null)
+        {
+            return value;
+        }
+
+        value = getDefault(name);
+
+        if (value != null)
+        {
+            return value;
+        }
+
+        value = System.getenv(name);
+
+        return value == null ? "" : value;
+    }
+
+    /**
+     * Looks up a global or project-defined property by its key.
+     * 
+     * @param key The property's key.
+     * @return The property's value or null if it is not defined.
+     */
+    private String lookup(String key)
+    {
+        String value = this.globals.get(key);
+
+        if (value != null)
+        {
+            return value;
+        }
+
+        return this.properties.get(key);
+    }
+
+    /**
+     * Gets the default value of a property that is neither global nor defined
+     * by the project. Subclasses override this method to supply the values of
+     * well-known properties.
+     * 
+     * @param name The property's name.
+     * @return The property's default value or null if there is none.
+     */
+    protected String getDefault(String name)
+    {
+        return null;
+    }
+
+    /**
+     * Resolves a path against this context's directory. Backslashes are
+     * treated as directory separators.
+     * 
+     * @param path The path to resolve.
+     * @return The resolved file.
+     */
+    public File resolveFile(String path)
+    {
+        return resolveFile(this.directory, path);
+    }
+
+    /**
+     * Resolves a path against a directory. Backslashes are treated as
+     * directory separators.
+     * 
+     * @param directory The directory to resolve the path against. A null value
+     *        means the current working directory.
+     * @param path The path to resolve.
+     * @return The resolved file.
+     */
+    public static File resolveFile(File directory, String path)
+    {
+        if (File.separatorChar != '\\')
+        {
+            path = path.replace('\\', File.separatorChar);
+        }
+
+        File file = new File(path);
+
+        if (file.isAbsolute() || directory == null)
+        {
+            return file;
+        }
+
+        return new File(directory, path);
+    }
+
+    /**
+     * Gets the lookup key for a property name.
+     * 
+     * @param name The property's name.
+     * @return The lookup key for a property name.
+     */
+    static String key(String name)
+    {
+        return name.toLowerCase(Locale.ENGLISH);
+    }
+}
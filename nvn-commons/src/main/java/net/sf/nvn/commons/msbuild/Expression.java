@@ -0,0 +1,531 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons.msbuild;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A compiled MSBuild property expression such as
+ * <em>$(OutDir)$(TargetName).dll</em>. An expression is compiled once into a
+ * list of literal and property segments and may then be evaluated against any
+ * number of {@link EvaluationContext}s.
+ * 
+ * <p>
+ * Property references may be nested, for example <em>$(Out$(Suffix))</em>.
+ * Property functions, item lists and item metadata are not evaluated and are
+ * retained as literal text.
+ * </p>
+ * 
+ * @author akutz
+ * 
+ */
+public final class Expression
+{
+    /**
+     * The expressions that have already been compiled, indexed by their source
+     * text.
+     */
+    private static final ConcurrentMap<String, Expression> CACHE =
+        new ConcurrentHashMap<String, Expression>();
+
+    /**
+     * The empty expression.
+     */
+    public static final Expression EMPTY = new Expression("", new Segment[0]);
+
+    /**
+     * The expression's source text.
+     */
+    private final String text;
+
+    /**
+     * The expression's segments.
+     */
+    private final Segment[] segments;
+
+    private Expression(String text, Segment[] segments)
+    {
+        this.text = text;
+        this.segments = segments;
+    }
+
+    /**
+     * Compiles an expression. Expressions are cached by their source text so
+     * each distinct expression is only compiled once.
+     * 
+     * @param text The expression's source text.
+     * @return The compiled expression.
+     */
+    public static Expression compile(String text)
+    {
+        if (text == null || text.length() == 0)
+        {
+            return EMPTY;
+        }
+
+        Expression expr = CACHE.get(text);
+
+        if (expr != null)
+        {
+            return expr;
+        }
+
+        expr = new Expression(text, parse(text, 0, text.length()));
+
+        Expression existing = CACHE.putIfAbsent(text, expr);
+
+        return existing == null ? expr : existing;
+    }
+
+    /**
+     * Evaluates the expression.
+     * 
+     * @param context The evaluation context.
+     * @return The expanded value of the expression.
+     */
+    public String evaluate(EvaluationContext context)
+    {
+        switch (this.segments.length)
+        {
+            case 0 :
+            {
+                return "";
+            }
+            case 1 :
+            {
+                return this.segments[0].evaluate(context);
+            }
+            default :
+            {
+                StringBuilder buff = new StringBuilder(this.text.length());
+
+                for (Segment s : this.segments)
+                {
+                    buff.append(s.evaluate(context));
+                }
+
+                return buff.toString();
+            }
+        }
+    }
+
+    /**
+     * Gets a flag indicating whether or not this expression references any
+     * properties.
+     * 
+     * @return A flag indicating whether or not this expression references any
+     *         properties.
+     */
+    public boolean isConstant()
+    {
+        for (Segment s : this.segments)
+        {
+            if (!(s instanceof Literal))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the names of the properties this expression references directly.
+     * The names of nested property references are not included.
+     * 
+     * @return The names of the properties this expression references directly.
+     */
+    public List<String> getPropertyNames()
+    {
+        List<String> names = new ArrayList<String>();
+
+        for (Segment s : this.segments)
+        {
+            if (s instanceof PropertyRef)
+            {
+                names.add(((PropertyRef) s).name);
+            }
+        }
+
+        return names;
+    }
+
+    /**
+     * Matches a value against this expression and returns the property values
+     * that would make the expression evaluate to the value. For example,
+     * matching <em>Debug|AnyCPU</em> against
+     * <em>$(Configuration)|$(Platform)</em> returns Configuration=Debug and
+     * Platform=AnyCPU.
+     * 
+     * <p>
+     * Only expressions whose property references are separated by literal
+     * text can be matched. The comparison of the literal text is
+     * case-insensitive.
+     * </p>
+     * 
+     * @param value The value.
+     * @return The property values indexed by their keys as returned by
+     *         {@link EvaluationContext#key(String)} or null if the value does
+     *         not match.
+     */
+    Map<String, String> match(String value)
+    {
+        Map<String, String> bindings = new HashMap<String, String>();
+        int pos = 0;
+
+        for (int x = 0; x < this.segments.length; ++x)
+        {
+            Segment s = this.segments[x];
+
+            if (s instanceof Literal)
+            {
+                String lit = ((Literal) s).value;
+
+                if (!value.regionMatches(true, pos, lit, 0, lit.length()))
+                {
+                    return null;
+                }
+
+                pos += lit.length();
+            }
+            else if (s instanceof PropertyRef)
+            {
+                int end;
+
+                if (x + 1 == this.segments.length)
+                {
+                    end = value.length();
+                }
+                else if (this.segments[x + 1] instanceof Literal)
+                {
+                    String lit = ((Literal) this.segments[x + 1]).value;
+                    end = indexOfIgnoreCase(value, lit, pos);
+
+                    if (end == -1)
+                    {
+                        return null;
+                    }
+                }
+                else
+                {
+                    return null;
+                }
+
+                bindings.put(((PropertyRef) s).key, value.substring(pos, end));
+                pos = end;
+            }
+            else
+            {
+                return null;
+            }
+        }
+
+        return pos == value.length() ? bindings : null;
+    }
+
+    private static int indexOfIgnoreCase(String value, String toFind, int start)
+    {
+        for (int x = start; x <= value.length() - toFind.length(); ++x)
+        {
+            if (value.regionMatches(true, x, toFind, 0, toFind.length()))
+            {
+                return x;
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.text;
+    }
+
+    /**
+     * Parses a region of an expression into its segments.
+     * 
+     * @param text The expression's source text.
+     * @param start The start index (inclusive).
+     * @param end The end index (exclusive).
+     * @return The region's segments.
+     */
+    private static Segment[] parse(String text, int start, int end)
+    {
+        List<Segment> segs = new ArrayList<Segment>();
+        int litStart = start;
+        int x = start;
+
+        while (x < end)
+        {
+            if (text.charAt(x) != '$' || x + 1 >= end
+                || text.charAt(x + 1) != '(')
+            {
+                ++x;
+                continue;
+            }
+
+            int close = findClose(text, x + 2, end);
+
+            if (close == -1)
+            {
+                break;
+            }
+
+            Segment ref = parseRef(text, x + 2, close);
+
+            if (ref == null)
+            {
+                x = close + 1;
+                continue;
+            }
+
+            if (litStart < x)
+            {
+                segs.add(new Literal(text.substring(litStart, x)));
+            }
+
+            segs.add(ref);
+            x = close + 1;
+            litStart = x;
+        }
+
+        if (litStart < end)
+        {
+            segs.add(new Literal(text.substring(litStart, end)));
+        }
+
+        return segs.toArray(new Segment[segs.size()]);
+    }
+
+    /**
+     * Parses the body of a property reference.
+     * 
+     * @param text The expression's source text.
+     * @param start The index of the first character after "$(".
+     * @param end The index of the closing parenthesis.
+     * @return A property reference segment or null if the body is not a
+     *         property reference that can be evaluated.
+     */
+    private static Segment parseRef(String text, int start, int end)
+    {
+        while (start < end && Character.isWhitespace(text.charAt(start)))
+        {
+            ++start;
+        }
+
+        while (end > start && Character.isWhitespace(text.charAt(end - 1)))
+        {
+            --end;
+        }
+
+        if (start == end || isPropertyFunction(text, start, end))
+        {
+            return null;
+        }
+
+        int nested = text.indexOf("$(", start);
+
+        if (nested != -1 && nested < end)
+        {
+            return new NestedPropertyRef(parse(text, start, end));
+        }
+
+        for (int x = start; x < end; ++x)
+        {
+            if (!isNameChar(text.charAt(x), x == start))
+            {
+                return null;
+            }
+        }
+
+        return new PropertyRef(text.substring(start, end));
+    }
+
+    /**
+     * Gets a flag indicating whether or not the body of a property reference
+     * is a property function, for example
+     * <em>$([System.IO.Path]::Combine($(A), 'b'))</em> or
+     * <em>$(Name.Replace('a', 'b'))</em>. Property functions may contain
+     * nested property references but are not evaluated.
+     * 
+     * @param text The expression's source text.
+     * @param start The index of the first character of the body.
+     * @param end The index of the closing parenthesis.
+     * @return A flag indicating whether or not the body is a property
+     *         function.
+     */
+    private static boolean isPropertyFunction(String text, int start, int end)
+    {
+        if (text.charAt(start) == '[')
+        {
+            return true;
+        }
+
+        int x = start;
+
+        while (x < end && isNameChar(text.charAt(x), x == start))
+        {
+            ++x;
+        }
+
+        return x > start && x < end && text.charAt(x) == '.';
+    }
+
+    /**
+     * Finds the parenthesis that closes a property reference.
+     * 
+     * @param text The expression's source text.
+     * @param start The index of the first character after "$(".
+     * @param end The end of the region to search (exclusive).
+     * @return The index of the closing parenthesis or -1 if there is none.
+     */
+    private static int findClose(String text, int start, int end)
+    {
+        int depth = 1;
+
+        for (int x = start; x < end; ++x)
+        {
+            char c = text.charAt(x);
+
+            if (c == '(')
+            {
+                ++depth;
+            }
+            else if (c == ')' && --depth == 0)
+            {
+                return x;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Gets a flag indicating whether or not a character may be part of a
+     * property name.
+     * 
+     * @param c The character.
+     * @param first Whether or not this is the first character of the name.
+     * @return A flag indicating whether or not a character may be part of a
+     *         property name.
+     */
+    static boolean isNameChar(char c, boolean first)
+    {
+        if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || c == '_')
+        {
+            return true;
+        }
+
+        return !first && ((c >= '0' && c <= '9') || c == '-');
+    }
+
+    /**
+     * A part of an expression.
+     */
+    private static abstract class Segment
+    {
+        abstract String evaluate(EvaluationContext context);
+    }
+
+    /**
+     * Literal text.
+     */
+    private static final class Literal extends Segment
+    {
+        private final String value;
+
+        Literal(String value)
+        {
+            this.value = value;
+        }
+
+        @Override
+        String evaluate(EvaluationContext context)
+        {
+            return this.value;
+        }
+    }
+
+    /**
+     * A reference to a property, ex. $(Configuration).
+     */
+    private static final class PropertyRef extends Segment
+    {
+        private final String name;
+
+        private final String key;
+
+        PropertyRef(String name)
+        {
+            this.name = name;
+            this.key = EvaluationContext.key(name);
+        }
+
+        @Override
+        String evaluate(EvaluationContext context)
+        {
+            return context.get(this.name, this.key);
+        }
+    }
+
+    /**
+     * A reference to a property whose name is itself an expression, ex.
+     * $(OutDir_$(Platform)).
+     */
+    private static final class NestedPropertyRef extends Segment
+    {
+        private final Segment[] name;
+
+        NestedPropertyRef(Segment[] name)
+        {
+            this.name = name;
+        }
+
+        @Override
+        String evaluate(EvaluationContext context)
+        {
+            StringBuilder buff = new StringBuilder();
+
+            for (Segment s : this.name)
+            {
+                buff.append(s.evaluate(context));
+            }
+
+            return context.get(buff.toString().trim());
+        }
+    }
+}
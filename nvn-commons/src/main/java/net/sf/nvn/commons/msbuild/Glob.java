@@ -0,0 +1,363 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons.msbuild;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A compiled MSBuild wildcard such as <em>src\**\*.cs</em>. The wildcard *
+ * matches any number of characters within a path segment, ? matches a single
+ * character and a ** segment matches any number of path segments. Matching is
+ * case-insensitive and both back and forward slashes separate path segments.
+ * 
+ * <p>
+ * A glob always matches a complete path. Besides matching paths, a glob can
+ * tell whether a directory may contain paths it matches and whether it matches
+ * every path below a directory, which is how directory walks skip whole
+ * subtrees.
+ * </p>
+ * 
+ * @author akutz
+ * 
+ */
+final class Glob
+{
+    /**
+     * The marker for a ** segment.
+     */
+    private static final Object ANY_DIRS = new Object();
+
+    /**
+     * The glob's source text.
+     */
+    private final String text;
+
+    /**
+     * The leading part of the glob that contains no wildcards, including the
+     * trailing separator. Backslashes are used as separators.
+     */
+    private final String root;
+
+    /**
+     * The glob's segments. Each segment is either a String that must be
+     * matched literally, a Pattern or {@link #ANY_DIRS}.
+     */
+    private final Object[] segments;
+
+    /**
+     * The index of the trailing ** segment when the glob matches everything
+     * below a directory (ex. <em>obj\**</em>), otherwise -1.
+     */
+    private final int subtreeIndex;
+
+    private Glob(String text)
+    {
+        this.text = text;
+
+        String normalized = text.replace('/', '\\');
+        int firstWildcard = indexOfWildcard(normalized);
+
+        this.root =
+            firstWildcard == -1 ? "" : normalized.substring(0, normalized
+                .lastIndexOf('\\', firstWildcard) + 1);
+
+        String[] parts = split(normalized);
+        this.segments = new Object[parts.length];
+
+        for (int x = 0; x < parts.length; ++x)
+        {
+            String p = parts[x];
+
+            if (p.equals("**"))
+            {
+                this.segments[x] = ANY_DIRS;
+            }
+            else if (indexOfWildcard(p) != -1)
+            {
+                this.segments[x] = compileSegment(p);
+            }
+            else
+            {
+                this.segments[x] = p;
+            }
+        }
+
+        int tail = this.segments.length - 1;
+
+        // The patterns dir\** and dir\**\* both match every file below dir.
+        if (tail >= 1 && this.segments[tail] instanceof Pattern
+            && parts[tail].equals("*") && this.segments[tail - 1] == ANY_DIRS)
+        {
+            --tail;
+        }
+
+        this.subtreeIndex =
+            tail >= 0 && this.segments[tail] == ANY_DIRS ? tail : -1;
+    }
+
+    /**
+     * Compiles a glob.
+     * 
+     * @param text The glob's source text.
+     * @return The compiled glob.
+     */
+    static Glob compile(String text)
+    {
+        return new Glob(text);
+    }
+
+    /**
+     * Gets a flag indicating whether or not a string contains wildcards.
+     * 
+     * @param text The string.
+     * @return A flag indicating whether or not a string contains wildcards.
+     */
+    static boolean hasWildcards(String text)
+    {
+        return indexOfWildcard(text) != -1;
+    }
+
+    /**
+     * Gets the leading part of the glob that contains no wildcards, including
+     * the trailing separator. This is the directory a walk for the glob's
+     * matches starts in. Backslashes are used as separators.
+     * 
+     * @return The leading part of the glob that contains no wildcards.
+     */
+    String getRoot()
+    {
+        return this.root;
+    }
+
+    /**
+     * Gets a flag indicating whether or not the glob matches a path.
+     * 
+     * @param path The path.
+     * @return A flag indicating whether or not the glob matches a path.
+     */
+    boolean matches(String path)
+    {
+        String[] parts = split(path);
+        return match(parts, 0, parts.length, 0, this.segments.length);
+    }
+
+    /**
+     * Gets a flag indicating whether or not the glob may match paths below a
+     * directory.
+     * 
+     * @param dir The directory's path.
+     * @return A flag indicating whether or not the glob may match paths below
+     *         a directory.
+     */
+    boolean mayMatchBelow(String dir)
+    {
+        String[] parts = split(dir);
+        int si = 0;
+
+        for (String part : parts)
+        {
+            if (si == this.segments.length)
+            {
+                return false;
+            }
+
+            if (this.segments[si] == ANY_DIRS)
+            {
+                return true;
+            }
+
+            if (!matchSegment(this.segments[si], part))
+            {
+                return false;
+            }
+
+            ++si;
+        }
+
+        // A file below the directory needs at least one more segment.
+        return si < this.segments.length;
+    }
+
+    /**
+     * Gets a flag indicating whether or not the glob matches every path below
+     * a directory.
+     * 
+     * @param dir The directory's path.
+     * @return A flag indicating whether or not the glob matches every path
+     *         below a directory.
+     */
+    boolean matchesAllBelow(String dir)
+    {
+        if (this.subtreeIndex == -1)
+        {
+            return false;
+        }
+
+        String[] parts = split(dir);
+
+        for (int len = 0; len <= parts.length; ++len)
+        {
+            if (match(parts, 0, len, 0, this.subtreeIndex))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.text;
+    }
+
+    private boolean match(String[] path, int pi, int pend, int si, int send)
+    {
+        while (si < send)
+        {
+            Object seg = this.segments[si];
+
+            if (seg == ANY_DIRS)
+            {
+                for (int x = pi; x <= pend; ++x)
+                {
+                    if (match(path, x, pend, si + 1, send))
+                    {
+                        return true;
+                    }
+                }
+
+                return false;
+            }
+
+            if (pi == pend || !matchSegment(seg, path[pi]))
+            {
+                return false;
+            }
+
+            ++pi;
+            ++si;
+        }
+
+        return pi == pend;
+    }
+
+    private static boolean matchSegment(Object seg, String part)
+    {
+        if (seg instanceof String)
+        {
+            return ((String) seg).equalsIgnoreCase(part);
+        }
+
+        return ((Pattern) seg).matcher(part).matches();
+    }
+
+    private static Pattern compileSegment(String seg)
+    {
+        StringBuilder buff = new StringBuilder(seg.length() + 8);
+        int start = 0;
+
+        for (int x = 0; x < seg.length(); ++x)
+        {
+            char c = seg.charAt(x);
+
+            if (c != '*' && c != '?')
+            {
+                continue;
+            }
+
+            if (start < x)
+            {
+                buff.append(Pattern.quote(seg.substring(start, x)));
+            }
+
+            buff.append(c == '*' ? ".*" : ".");
+            start = x + 1;
+        }
+
+        if (start < seg.length())
+        {
+            buff.append(Pattern.quote(seg.substring(start)));
+        }
+
+        return Pattern.compile(buff.toString(), Pattern.CASE_INSENSITIVE
+            | Pattern.UNICODE_CASE | Pattern.DOTALL);
+    }
+
+    private static int indexOfWildcard(String text)
+    {
+        for (int x = 0; x < text.length(); ++x)
+        {
+            char c = text.charAt(x);
+
+            if (c == '*' || c == '?')
+            {
+                return x;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Splits a path into its segments. Empty segments and . segments are
+     * omitted.
+     * 
+     * @param path The path.
+     * @return The path's segments.
+     */
+    static String[] split(String path)
+    {
+        List<String> parts = new ArrayList<String>();
+        int start = 0;
+
+        for (int x = 0; x <= path.length(); ++x)
+        {
+            if (x < path.length() && path.charAt(x) != '\\'
+                && path.charAt(x) != '/')
+            {
+                continue;
+            }
+
+            if (x > start && !(x - start == 1 && path.charAt(start) == '.'))
+            {
+                parts.add(path.substring(start, x));
+            }
+
+            start = x + 1;
+        }
+
+        return parts.toArray(new String[parts.size()]);
+    }
+}
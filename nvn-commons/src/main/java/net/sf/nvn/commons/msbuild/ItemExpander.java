@@ -0,0 +1,372 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons.msbuild;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Expands the Include and Exclude attributes of MSBuild items, ex.
+ * <em>&lt;Compile Include="**\*.cs" Exclude="obj\**" /&gt;</em>, into the
+ * items they describe.
+ * 
+ * <p>
+ * Each wildcard include is walked from its root directory. Subdirectories are
+ * walked in parallel, and a subdirectory is skipped when the include cannot
+ * match anything below it or when an exclude matches everything below it.
+ * Includes without wildcards are returned as they are written whether or not
+ * the files exist, which is what MSBuild does.
+ * </p>
+ * 
+ * <p>
+ * Items are returned as paths relative to the project directory, or as
+ * absolute paths for absolute includes, using backslashes as separators. The
+ * returned list is sorted and contains no duplicates.
+ * </p>
+ * 
+ * @author akutz
+ * 
+ */
+public class ItemExpander
+{
+    /**
+     * The executor shared by the expanders that are not given one.
+     */
+    private static ExecutorService sharedExecutor;
+
+    /**
+     * The directory the items are relative to.
+     */
+    private final File projectDir;
+
+    /**
+     * The executor that walks the directories.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Initializes a new instance of the ItemExpander class that walks
+     * directories with a shared pool of daemon threads.
+     * 
+     * @param projectDir The directory the items are relative to.
+     */
+    public ItemExpander(File projectDir)
+    {
+        this(projectDir, getSharedExecutor());
+    }
+
+    /**
+     * Initializes a new instance of the ItemExpander class.
+     * 
+     * @param projectDir The directory the items are relative to.
+     * @param executor The executor that walks the directories. The thread
+     *        calling {@link #expand(String, String)} must not be one of the
+     *        executor's threads.
+     */
+    public ItemExpander(File projectDir, ExecutorService executor)
+    {
+        this.projectDir = projectDir;
+        this.executor = executor;
+    }
+
+    /**
+     * Expands an item's Include and Exclude attributes.
+     * 
+     * @param include The evaluated Include attribute, a semi-colon separated
+     *        list of paths and wildcards.
+     * @param exclude The evaluated Exclude attribute, a semi-colon separated
+     *        list of paths and wildcards. May be null.
+     * @return The items, sorted and without duplicates.
+     * @throws IOException When a directory cannot be walked.
+     */
+    public List<String> expand(String include, String exclude)
+        throws IOException
+    {
+        Set<String> items = new ConcurrentSkipListSet<String>();
+        expand(include, exclude, items);
+        return new ArrayList<String>(items);
+    }
+
+    /**
+     * Expands an item's Include and Exclude attributes.
+     * 
+     * @param include The evaluated Include attribute.
+     * @param exclude The evaluated Exclude attribute. May be null.
+     * @param items The thread-safe collection that receives the items.
+     * @throws IOException When a directory cannot be walked.
+     */
+    void expand(String include, String exclude, Collection<String> items)
+        throws IOException
+    {
+        List<Glob> excludes = new ArrayList<Glob>();
+
+        for (String s : split(exclude))
+        {
+            excludes.add(Glob.compile(s));
+        }
+
+        for (String s : split(include))
+        {
+            if (!Glob.hasWildcards(s))
+            {
+                String item = s.replace('/', '\\');
+
+                if (!isExcluded(excludes, item))
+                {
+                    items.add(item);
+                }
+
+                continue;
+            }
+
+            Glob glob = Glob.compile(s);
+
+            File rootDir =
+                EvaluationContext.resolveFile(this.projectDir, glob.getRoot()
+                    .length() == 0 ? "." : glob.getRoot());
+
+            if (rootDir.isDirectory())
+            {
+                new Walk(glob, excludes, items).run(rootDir, glob.getRoot());
+            }
+        }
+    }
+
+    private static List<String> split(String list)
+    {
+        List<String> parts = new ArrayList<String>();
+
+        if (list == null)
+        {
+            return parts;
+        }
+
+        for (String s : StringUtils.split(list, ';'))
+        {
+            s = s.trim();
+
+            if (s.length() > 0)
+            {
+                parts.add(s);
+            }
+        }
+
+        return parts;
+    }
+
+    private static boolean isExcluded(List<Glob> excludes, String path)
+    {
+        for (Glob g : excludes)
+        {
+            if (g.matches(path))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static synchronized ExecutorService getSharedExecutor()
+    {
+        if (sharedExecutor == null)
+        {
+            final AtomicInteger count = new AtomicInteger();
+
+            sharedExecutor =
+                Executors.newFixedThreadPool(Runtime
+                    .getRuntime()
+                    .availableProcessors(), new ThreadFactory()
+                {
+                    @Override
+                    public Thread newThread(Runnable r)
+                    {
+                        Thread t =
+                            new Thread(r, String.format(
+                                "nvn-item-expander-%s",
+                                count.incrementAndGet()));
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        }
+
+        return sharedExecutor;
+    }
+
+    /**
+     * A parallel walk of the directories below a wildcard's root directory.
+     */
+    private class Walk
+    {
+        private final Glob glob;
+
+        private final List<Glob> excludes;
+
+        private final Collection<String> items;
+
+        /**
+         * The number of directories that have been submitted but not yet
+         * visited.
+         */
+        private final AtomicInteger pending = new AtomicInteger();
+
+        /**
+         * Released when the last directory has been visited.
+         */
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        /**
+         * The first error that occurred.
+         */
+        private volatile IOException error;
+
+        Walk(Glob glob, List<Glob> excludes, Collection<String> items)
+        {
+            this.glob = glob;
+            this.excludes = excludes;
+            this.items = items;
+        }
+
+        /**
+         * Walks the directories and waits for the walk to complete.
+         * 
+         * @param rootDir The root directory.
+         * @param rootPath The root directory's path as it appears in the
+         *        items, including the trailing separator.
+         * @throws IOException When a directory cannot be walked.
+         */
+        void run(File rootDir, String rootPath) throws IOException
+        {
+            submit(rootDir, rootPath);
+
+            try
+            {
+                this.done.await();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IOException(String.format(
+                    "Interrupted while expanding '%s'",
+                    this.glob), e);
+            }
+
+            if (this.error != null)
+            {
+                throw this.error;
+            }
+        }
+
+        private void submit(final File dir, final String path)
+        {
+            this.pending.incrementAndGet();
+
+            ItemExpander.this.executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        visit(dir, path);
+                    }
+                    catch (IOException e)
+                    {
+                        error = e;
+                    }
+                    finally
+                    {
+                        if (pending.decrementAndGet() == 0)
+                        {
+                            done.countDown();
+                        }
+                    }
+                }
+            });
+        }
+
+        private void visit(File dir, String path) throws IOException
+        {
+            File[] children = dir.listFiles();
+
+            if (children == null)
+            {
+                throw new IOException(String.format(
+                    "Error listing directory '%s'",
+                    dir));
+            }
+
+            for (File child : children)
+            {
+                String childPath = path + child.getName();
+
+                if (child.isDirectory())
+                {
+                    if (this.glob.mayMatchBelow(childPath)
+                        && !isSubtreeExcluded(childPath))
+                    {
+                        submit(child, childPath + "\\");
+                    }
+                }
+                else if (this.glob.matches(childPath)
+                    && !isExcluded(this.excludes, childPath))
+                {
+                    this.items.add(childPath);
+                }
+            }
+        }
+
+        private boolean isSubtreeExcluded(String dirPath)
+        {
+            for (Glob g : this.excludes)
+            {
+                if (g.matchesAllBelow(dirPath))
+                {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+}
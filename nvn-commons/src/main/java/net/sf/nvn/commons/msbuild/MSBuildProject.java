@@ -33,41 +33,54 @@ package net.sf.nvn.commons.msbuild;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBElement;
-import javax.xml.bind.JAXBException;
-import javax.xml.bind.Unmarshaller;
-import net.sf.nvn.commons.msbuild.xsd.ItemDefinitionGroupType;
-import net.sf.nvn.commons.msbuild.xsd.ItemGroupType;
-import net.sf.nvn.commons.msbuild.xsd.LinkItem;
-import net.sf.nvn.commons.msbuild.xsd.Project;
-import net.sf.nvn.commons.msbuild.xsd.ProjectReference;
-import net.sf.nvn.commons.msbuild.xsd.PropertyGroupType;
-import net.sf.nvn.commons.msbuild.xsd.SimpleItemType;
-import net.sf.nvn.commons.msbuild.xsd.StringPropertyType;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import net.sf.nvn.commons.Fingerprint;
+import net.sf.nvn.commons.FlightEvents;
+import net.sf.nvn.commons.Metrics;
+import net.sf.nvn.commons.msbuild.BuildFile.Definition;
+import net.sf.nvn.commons.msbuild.BuildFile.Kind;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang.StringUtils;
-import org.w3c.dom.Element;
 
 /**
  * An MSBuild project.
  * 
+ * <p>
+ * An MSBuildProject is a compact descriptor whose observable state does not
+ * change. The project file is read and evaluated when the object is created:
+ * the artifact names and paths of every configuration and platform pair the
+ * project declares are computed then, and only those results are retained. A
+ * pair the project does not declare is evaluated the first time it is asked
+ * for and added to the descriptor, so the descriptor is not strictly
+ * immutable, but it is safe to share between threads.
+ * </p>
+ * 
  * @author akutz
  * 
  */
 public class MSBuildProject
 {
     /**
-     * The pattern to match a property group's configuration attribute value.
+     * The time spent reading and evaluating project files.
      */
-    private static Pattern CONDITION_PATT =
-        Pattern
-            .compile("^\\s?'\\$\\(Configuration\\)\\|\\$\\(Platform\\)'\\s?==\\s?'(.*)\\|(.*)'\\s?$");
+    private static final Metrics.Timer PARSE_TIMER =
+        Metrics.getInstance().timer(
+            "nvn_project_parse_seconds",
+            "Time spent reading and evaluating MSBuild project files");
 
     @Override
     public String toString()
@@ -81,375 +94,625 @@ public class MSBuildProject
      * @param projectFile A MSBuild project file.
      * @return A MSBuild Project object.
      * @throws IOException When an error occurs.
-     * @throws JAXBException When an error occurs.
      */
-    public static MSBuildProject instance(File projectFile)
-        throws IOException,
-        JAXBException
+    public static MSBuildProject instance(File projectFile) throws IOException
     {
-        MSBuildProject msbp = new MSBuildProject();
-        msbp.projectLanguage = ProjectLanguageType.parse(projectFile);
+        ProjectLanguageType projectLanguage =
+            ProjectLanguageType.parse(projectFile);
 
         // If the project language was unrecognized then throw an IOException.
-        if (msbp.projectLanguage == null)
+        if (projectLanguage == null)
         {
             throw new IOException(String.format(
                 "Error reading file '%s'. Unrecognized extension.",
                 projectFile));
         }
 
-        // Deserialize the project file.
-        JAXBContext jc = JAXBContext.newInstance(Project.class);
-        Unmarshaller um = jc.createUnmarshaller();
-        msbp.project = (Project) um.unmarshal(projectFile);
-
-        // Retain a reference to the project file.
-        msbp.file = projectFile;
+        FlightEvents.Event fe =
+            FlightEvents.begin(FlightEvents.PROJECT_PARSE, projectFile
+                .getPath());
+        long start = System.nanoTime();
 
-        switch (msbp.projectLanguage)
+        try
         {
-            case CSharp :
-            case VisualBasic :
-            {
-                processCSharpOrVBProject(msbp);
-                break;
-            }
-            case CPP :
-            {
-                processCppProject(msbp);
-                break;
-            }
+            return new MSBuildProject(
+                projectFile,
+                projectLanguage,
+                BuildFile.read(projectFile));
         }
-
-        return msbp;
-    }
-
-    private static void processCSharpOrVBProject(MSBuildProject msbp)
-    {
-        List<Object> tags =
-            msbp.project.getProjectLevelTagExceptTargetOrImportType();
-
-        for (Object tag : tags)
+        catch (IOException e)
         {
-            if (tag instanceof PropertyGroupType)
-            {
-                PropertyGroupType pg = (PropertyGroupType) tag;
-                processCSharpOrVBProjectPropertyGroup(msbp, pg);
-            }
-            else if (tag instanceof ItemGroupType)
-            {
-                ItemGroupType ig = (ItemGroupType) tag;
-                loadProjectReferences(ig, msbp);
-            }
+            throw new IOException(String.format(
+                "Error reading file '%s'. %s",
+                projectFile,
+                e.getMessage()), e);
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new IOException(String.format(
+                "Error reading file '%s'. %s",
+                projectFile,
+                e.getMessage()), e);
+        }
+        finally
+        {
+            fe.end();
+            PARSE_TIMER.stop(start);
         }
     }
 
-    private static void processCSharpOrVBProjectPropertyGroup(
-        MSBuildProject msbp,
-        PropertyGroupType pg)
+    /**
+     * Initializes a new instance of the MSBuildProject class.
+     * 
+     * @param file The project file.
+     * @param projectLanguage The project's language.
+     * @param bf The project file's definitions. The object does not retain a
+     *        reference to them.
+     * @throws IllegalArgumentException When an imported file cannot be read.
+     */
+    private MSBuildProject(
+        File file,
+        ProjectLanguageType projectLanguage,
+        BuildFile bf) throws IllegalArgumentException
     {
-        if (StringUtils.isEmpty(pg.getCondition()))
+        this.file = file;
+        this.projectLanguage = projectLanguage;
+
+        // Evaluate the project without a configuration or platform in order to
+        // get the values that do not depend on them.
+        List<File> imports = new ArrayList<File>();
+        EvaluationContext ctx =
+            evaluate(
+                bf,
+                null,
+                null,
+                null,
+                new ArrayList<Definition>(),
+                imports);
+        this.type = ProjectType.parse(ctx.getDefined("OutputType"));
+        this.rootNamespace = intern(ctx.getDefined("RootNamespace"));
+        this.assemblyName = intern(ctx.getDefined("AssemblyName"));
+        this.targetFrameworkVersion =
+            intern(ctx.getDefined("TargetFrameworkVersion"));
+
+        // An SDK-style project lists its frameworks in TargetFrameworks. A
+        // project that is built against a single framework names it in
+        // TargetFramework or TargetFrameworkVersion.
+        List<String> tfs = new ArrayList<String>();
+        String tfsText = ctx.getDefined("TargetFrameworks");
+
+        if (StringUtils.isEmpty(tfsText))
         {
-            processCSharpOrVBProjectGlobalProps(pg, msbp);
+            tfsText = ctx.getDefined("TargetFramework");
         }
-        else
+
+        if (StringUtils.isEmpty(tfsText))
         {
-            ProjectInfo pi = msbp.getProjectInfo(pg.getCondition());
+            tfsText = this.targetFrameworkVersion;
+        }
 
-            for (JAXBElement<?> jel : pg.getProperty())
+        if (tfsText != null)
+        {
+            for (String tf : StringUtils.split(tfsText, ';'))
             {
-                String jelName = jel.getName().getLocalPart();
-                String jelValu;
-
-                if (jel.getValue() instanceof StringPropertyType)
-                {
-                    jelValu = ((StringPropertyType) jel.getValue()).getValue();
-                }
-                else if (jel.getValue() instanceof String)
-                {
-                    jelValu = (String) jel.getValue();
-                }
-                else
-                {
-                    jelValu = "";
-                }
+                tf = tf.trim();
 
-                if (jelName.equals("OutputPath"))
-                {
-                    pi.setOutputDirPath(jelValu);
-                }
-                else if (jelName.equals("DocumentationFile"))
+                if (tf.length() > 0 && !tfs.contains(tf))
                 {
-                    pi.setDocFilePath(jelValu);
+                    tfs.add(intern(tf));
                 }
             }
         }
-    }
 
-    private static void processCppProject(MSBuildProject msbp)
-    {
-        List<Object> tags =
-            msbp.project.getProjectLevelTagExceptTargetOrImportType();
+        this.targetFrameworks =
+            tfs.size() < 2 ? (tfs.isEmpty() ? Collections.<String> emptyList()
+                : Collections.singletonList(tfs.get(0))) : Collections
+                .unmodifiableList(tfs);
 
-        for (Object tag : tags)
+        Map<String, String> refs = new HashMap<String, String>();
+
+        for (Map.Entry<String, String> e : bf
+            .getProjectReferences()
+            .entrySet())
         {
-            if (tag instanceof PropertyGroupType)
-            {
-                PropertyGroupType pg = (PropertyGroupType) tag;
+            refs.put(intern(e.getKey()), intern(e.getValue()));
+        }
 
-                String label = pg.getLabel();
+        this.projectReferences = Collections.unmodifiableMap(refs);
 
-                if (StringUtils.isEmpty(label))
-                {
-                    processCppProjectAllConfigs(msbp, pg);
-                }
-                else if (label.equals("Globals"))
-                {
-                    processCppProjectGlobals(msbp, pg);
-                }
-                else if (label.equals("Configuration"))
-                {
-                    processCppProjectConfig(msbp, pg);
-                }
-            }
-            else if (tag instanceof ItemDefinitionGroupType)
+        Set<String> ufs = bf.getUnknownFunctions();
+        this.unknownFunctions =
+            ufs.isEmpty() ? Collections.<String> emptySet() : Collections
+                .unmodifiableSet(new TreeSet<String>(ufs));
+
+        boolean cc = isCleanCustomized(bf);
+
+        for (int x = 0; x < imports.size() && !cc; ++x)
+        {
+            File f = imports.get(x);
+
+            if (!f.getName().regionMatches(true, 0, "Microsoft.", 0, 10))
             {
-                ItemDefinitionGroupType idg = (ItemDefinitionGroupType) tag;
-                processCppProjectLibOutputFile(msbp, idg);
+                BuildFile ibf = BuildFile.getImport(f);
+                cc = ibf != null && isCleanCustomized(ibf);
             }
         }
+
+        this.cleanCustomized = cc;
+
+        // Most projects declare fewer than a handful of pairs and the map is
+        // rarely written after this point, so a single lock segment suffices.
+        this.projectInfos =
+            new ConcurrentHashMap<String, ProjectInfo>(8, .75f, 1);
+
+        for (String[] pair : getConfigurationPlatformPairs(bf))
+        {
+            this.projectInfos.put(
+                getPairKey(pair[0], pair[1], null),
+                newProjectInfo(bf, pair[0], pair[1], null));
+        }
     }
 
-    private static void processCppProjectGlobals(
-        MSBuildProject msbp,
-        PropertyGroupType pg)
+    /**
+     * Gets a flag indicating whether or not a build file defines or hooks one
+     * of the {@link #CLEAN_TARGETS} or redefines the properties that list the
+     * targets they depend on.
+     * 
+     * @param bf The build file.
+     * @return A flag indicating whether or not the build file customizes the
+     *         Clean target.
+     */
+    private static boolean isCleanCustomized(BuildFile bf)
     {
-        for (JAXBElement<?> jel : pg.getProperty())
+        for (String target : bf.getTargets())
+        {
+            if (CLEAN_TARGETS.contains(EvaluationContext.key(target)))
+            {
+                return true;
+            }
+        }
+
+        for (Definition def : bf.getDefinitions())
         {
-            String jelName = jel.getName().getLocalPart();
-            String jelValu = ((StringPropertyType) jel.getValue()).getValue();
+            int len = def.name.length() - 9;
 
-            if (jelName.equals("RootNamespace"))
+            if (def.kind == Kind.PROPERTY && len > 0
+                && def.name.regionMatches(true, len, "DependsOn", 0, 9)
+                && CLEAN_TARGETS.contains(EvaluationContext.key(def.name
+                    .substring(0, len))))
             {
-                msbp.rootNamespace = jelValu;
+                return true;
             }
         }
+
+        return false;
     }
 
-    private static void processCppProjectConfig(
-        MSBuildProject msbp,
-        PropertyGroupType pg)
+    /**
+     * Gets the configuration and platform pairs the project declares. The
+     * pairs are collected from the project's ProjectConfiguration items and
+     * from the conditions that compare the Configuration and Platform
+     * properties against constants, ex.
+     * <em>'$(Configuration)|$(Platform)' == 'Debug|AnyCPU'</em>.
+     * 
+     * @param bf The project file's definitions.
+     * @return The configuration and platform pairs the project declares.
+     */
+    private static Collection<String[]> getConfigurationPlatformPairs(
+        BuildFile bf)
     {
-        ProjectInfo pi = msbp.getProjectInfo(pg.getCondition());
+        Map<String, String[]> pairs = new LinkedHashMap<String, String[]>();
+        Set<String> configs = new LinkedHashSet<String>();
+        Set<String> platforms = new LinkedHashSet<String>();
 
-        for (JAXBElement<?> jel : pg.getProperty())
+        for (String pc : bf.getProjectConfigurations())
         {
-            String jelName = jel.getName().getLocalPart();
-            String jelValu = ((StringPropertyType) jel.getValue()).getValue();
+            String[] parts = StringUtils.split(pc, '|');
 
-            if (jelName.equals("ConfigurationType"))
+            if (parts != null && parts.length == 2)
             {
-                pi.setType(ProjectType.parse(jelValu));
+                addPair(pairs, platforms, parts[0], parts[1]);
             }
         }
-    }
 
-    private static void processCppProjectAllConfigs(
-        MSBuildProject msbp,
-        PropertyGroupType pg)
-    {
-        for (JAXBElement<?> jel : pg.getProperty())
+        // The definitions of a group share their group's condition, so each
+        // distinct condition is only inspected once.
+        Map<Condition, Boolean> seen =
+            new IdentityHashMap<Condition, Boolean>();
+        List<Map<String, String>> bindings =
+            new ArrayList<Map<String, String>>();
+
+        for (Definition def : bf.getDefinitions())
         {
-            if (!(jel.getValue() instanceof StringPropertyType))
+            if (seen.put(def.condition, Boolean.TRUE) == null)
             {
-                continue;
+                def.condition.collectBindings(bindings);
             }
+        }
 
-            StringPropertyType spt = (StringPropertyType) jel.getValue();
+        String configKey = EvaluationContext.key("Configuration");
+        String platformKey = EvaluationContext.key("Platform");
 
-            String jelName = jel.getName().getLocalPart();
-            String jelValu = spt.getValue();
-            String jelCond = spt.getCondition();
+        for (Map<String, String> b : bindings)
+        {
+            String config = StringUtils.trimToNull(b.get(configKey));
+            String platform = StringUtils.trimToNull(b.get(platformKey));
 
-            if (jelName.equals("OutDir"))
+            if (config != null && platform != null)
+            {
+                addPair(pairs, platforms, config, platform);
+            }
+            else if (config != null)
             {
-                msbp.getProjectInfo(jelCond).setOutputDirPath(jelValu);
+                configs.add(config);
             }
-            else if (jelName.equals("TargetName"))
+            else if (platform != null)
             {
-                msbp.getProjectInfo(jelCond).setTargetName(jelValu);
+                platforms.add(platform);
             }
-            else if (jelName.equals("TargetExtension"))
+        }
+
+        // A configuration that is tested on its own is built for every
+        // platform the project mentions.
+        for (String config : configs)
+        {
+            for (String platform : platforms)
             {
-                msbp.getProjectInfo(jelCond).setTargetExtension(jelValu);
+                addPair(pairs, platforms, config, platform);
             }
         }
+
+        return pairs.values();
     }
 
-    private static void processCppProjectLibOutputFile(
-        MSBuildProject msbp,
-        ItemDefinitionGroupType idg)
+    private static void addPair(
+        Map<String, String[]> pairs,
+        Set<String> platforms,
+        String config,
+        String platform)
     {
-        ProjectInfo pi = msbp.getProjectInfo(idg.getCondition());
-
-        List<JAXBElement<? extends SimpleItemType>> tags =
-            idg.getItemOrLinkOrLib();
+        String key = getPairKey(config, platform, null);
 
-        for (JAXBElement<?> tag : tags)
+        if (!pairs.containsKey(key))
         {
-            String jelName = tag.getName().getLocalPart();
-
-            if (jelName.equals("Link") || jelName.equals("Lib"))
+            pairs.put(key, new String[]
             {
-                LinkItem lib = (LinkItem) tag.getValue();
+                config, platform
+            });
+        }
 
-                List<JAXBElement<Object>> libChildTags =
-                    lib.getAdditionalDependenciesOrOutputFileOrAssemblyDebug();
+        platforms.add(platform);
+    }
 
-                for (JAXBElement<Object> libChildTag : libChildTags)
-                {
-                    if (libChildTag
-                        .getName()
-                        .getLocalPart()
-                        .equals("OutputFile"))
-                    {
-                        Element el = (Element) libChildTag.getValue();
-                        String elText = el.getTextContent();
-                        pi.setOutputFilePath(elText);
-                    }
-                }
-            }
+    /**
+     * Gets the key of a configuration and platform pair. MSBuild compares
+     * configuration names and platform types case-insensitively.
+     * 
+     * @param config The configuration name.
+     * @param platform The platform type.
+     * @param framework The target framework or null for the framework the
+     *        project file selects.
+     * @return The key of a configuration and platform pair.
+     */
+    private static String getPairKey(
+        String config,
+        String platform,
+        String framework)
+    {
+        String key = config + "|" + StringUtils.defaultString(platform);
+        return EvaluationContext.key(framework == null ? key : key + "|"
+            + framework);
+    }
+
+    /**
+     * Gets the property that selects a target framework: TargetFrameworkVersion
+     * for a version such as <em>v4.0</em> and TargetFramework for a moniker
+     * such as <em>net45</em>.
+     * 
+     * @param framework The target framework.
+     * @return The property that selects the target framework.
+     */
+    public static String getTargetFrameworkProperty(String framework)
+    {
+        return framework.matches("(?i)v\\d.*") ? "TargetFrameworkVersion"
+            : "TargetFramework";
+    }
+
+    /**
+     * Appends a backslash to a directory path that does not end with a
+     * separator.
+     * 
+     * @param path The path. May be null.
+     * @return The path with a separator at its end or an empty string if the
+     *         path is null or empty.
+     */
+    private static String appendSeparator(String path)
+    {
+        if (StringUtils.isEmpty(path) || path.endsWith("\\")
+            || path.endsWith("/"))
+        {
+            return StringUtils.defaultString(path);
         }
+
+        return path + "\\";
     }
 
-    private ProjectInfo getProjectInfo(String condition)
+    private static String intern(String toIntern)
     {
-        String[] cap = parseConfigAndPlatform(condition);
-        String cfg = cap[0];
-        String pla = cap[1];
-        return getProjectInfo(cfg, pla);
+        return toIntern == null ? null : toIntern.intern();
     }
 
-    private static String[] parseConfigAndPlatform(String toParse)
+    /**
+     * Evaluates the project's definitions and the definitions of the files it
+     * imports. Property definitions are evaluated in document order, with each
+     * Import element replaced by the definitions of the files it imports.
+     * 
+     * @param bf The project file's definitions.
+     * @param config The configuration name (ex. Debug, Release). A null value
+     *        leaves the property undefined.
+     * @param platform The platform type (ex. AnyCPU, x86, Win32). A null value
+     *        leaves the property undefined.
+     * @param framework The target framework. A null value leaves the
+     *        framework the project file selects.
+     * @param itemDefs The list that receives the item definitions and items
+     *        whose conditions must be evaluated once all of the properties
+     *        are known.
+     * @param imports The list that receives the files that are imported.
+     * @return The evaluated properties.
+     * @throws IllegalArgumentException When an imported file cannot be read.
+     */
+    private ProjectContext evaluate(
+        BuildFile bf,
+        String config,
+        String platform,
+        String framework,
+        List<Definition> itemDefs,
+        List<File> imports) throws IllegalArgumentException
     {
-        String[] arr = new String[2];
+        ProjectContext ctx = new ProjectContext(this);
+        ctx.setGlobal("Configuration", config);
+        ctx.setGlobal("Platform", platform);
+
+        if (framework != null)
+        {
+            ctx.setGlobal(getTargetFrameworkProperty(framework), framework);
+        }
 
-        Matcher matt = CONDITION_PATT.matcher(toParse);
-        matt.matches();
+        Set<String> imported = new HashSet<String>();
+        imported.add(normalize(this.file));
 
-        arr[0] = matt.group(1);
-        arr[1] = matt.group(2);
+        evaluate(bf, ctx, itemDefs, imported, imports);
 
-        return arr;
+        return ctx;
     }
 
-    private static void loadProjectReferences(
-        ItemGroupType itemGroup,
-        MSBuildProject msbuildProject)
+    /**
+     * Evaluates the project for a configuration and platform pair.
+     * 
+     * @param bf The project file's definitions.
+     * @param config The configuration name (ex. Debug, Release).
+     * @param platform The platform type (ex. AnyCPU, x86, Win32).
+     * @param framework The target framework or null for the framework the
+     *        project file selects.
+     * @return The project's information object for the pair.
+     * @throws IllegalArgumentException When an imported file cannot be read.
+     */
+    private ProjectInfo newProjectInfo(
+        BuildFile bf,
+        String config,
+        String platform,
+        String framework) throws IllegalArgumentException
     {
-        List<JAXBElement<? extends SimpleItemType>> tags =
-            itemGroup.getItemOrLinkOrResourceCompile();
+        List<Definition> itemDefs = new ArrayList<Definition>();
+        List<File> imports = new ArrayList<File>();
+        ProjectContext ctx =
+            evaluate(bf, config, platform, framework, itemDefs, imports);
+
+        String outputFilePath = null;
+        List<ItemSpec> items = new ArrayList<ItemSpec>();
 
-        for (JAXBElement<? extends SimpleItemType> tag : tags)
+        for (Definition def : itemDefs)
         {
-            if (!(tag.getDeclaredType() == ProjectReference.class))
+            if (!def.condition.evaluate(ctx))
             {
                 continue;
             }
 
-            ProjectReference pr = (ProjectReference) tag.getValue();
-
-            String name = "";
-
-            for (JAXBElement<?> child : pr
-                .getNameOrProjectOrReferenceOutputAssembly())
+            if (def.kind == Kind.ITEM)
             {
-                if (child.getName().getLocalPart().equals("Name"))
-                {
-                    Element el = (Element) child.getValue();
-                    name = el.getTextContent();
-                }
+                items.add(new ItemSpec(def.name, def.value.evaluate(ctx), def
+                    .exclude
+                    .evaluate(ctx)));
+            }
+            else
+            {
+                outputFilePath = def.value.evaluate(ctx);
             }
-
-            msbuildProject.projectReferences.put(pr.getInclude(), name);
         }
+
+        return new ProjectInfo(
+            this,
+            ctx,
+            framework,
+            outputFilePath,
+            items,
+            imports);
     }
 
-    private static void processCSharpOrVBProjectGlobalProps(
-        PropertyGroupType pg,
-        MSBuildProject msbp)
+    /**
+     * Evaluates the property definitions of a build file and of the files it
+     * imports.
+     * 
+     * @param bf The build file.
+     * @param ctx The evaluation context.
+     * @param itemDefs The list that receives the build file's item
+     *        definitions and items.
+     * @param imported The normalized paths of the files that have already been
+     *        imported. A file is only imported once.
+     * @param imports The list that receives the files that are imported.
+     * @throws IllegalArgumentException When an imported file cannot be read.
+     */
+    private static void evaluate(
+        BuildFile bf,
+        ProjectContext ctx,
+        List<Definition> itemDefs,
+        Set<String> imported,
+        List<File> imports) throws IllegalArgumentException
     {
-        for (JAXBElement<?> jel : pg.getProperty())
-        {
-            String jelName = jel.getName().getLocalPart();
-            String jelValu = ((StringPropertyType) jel.getValue()).getValue();
+        File previous = ctx.getThisFile();
+        ctx.setThisFile(bf.getFile());
 
-            if (jelName.equals("OutputType"))
-            {
-                msbp.type = ProjectType.parse(jelValu);
-            }
-            else if (jelName.equals("RootNamespace"))
-            {
-                msbp.rootNamespace = jelValu;
-            }
-            else if (jelName.equals("AssemblyName"))
+        for (Definition def : bf.getDefinitions())
+        {
+            if (!def.condition.evaluate(ctx))
             {
-                msbp.assemblyName = jelValu;
+                continue;
             }
-            else if (jelName.equals("TargetFrameworkVersion"))
+
+            switch (def.kind)
             {
-                msbp.targetFrameworkVersion = jelValu;
+                case PROPERTY :
+                {
+                    ctx.set(def.name, def.value.evaluate(ctx));
+                    break;
+                }
+                case OUTPUT_FILE :
+                case ITEM :
+                {
+                    itemDefs.add(def);
+                    break;
+                }
+                case IMPORT :
+                {
+                    File dir = bf.getFile().getAbsoluteFile().getParentFile();
+
+                    for (String path : StringUtils.split(def.value
+                        .evaluate(ctx), ';'))
+                    {
+                        path = path.trim();
+
+                        // Wildcard imports are not supported.
+                        if (path.length() == 0 || path.indexOf('*') != -1
+                            || path.indexOf('?') != -1)
+                        {
+                            continue;
+                        }
+
+                        File f = EvaluationContext.resolveFile(dir, path);
+
+                        if (!imported.add(normalize(f)))
+                        {
+                            continue;
+                        }
+
+                        BuildFile ibf = BuildFile.getImport(f);
+
+                        if (ibf != null)
+                        {
+                            imports.add(ibf.getFile());
+                            evaluate(ibf, ctx, itemDefs, imported, imports);
+                        }
+                    }
+
+                    break;
+                }
             }
         }
+
+        ctx.setThisFile(previous);
+    }
+
+    /**
+     * Gets the normalized, absolute path of a file.
+     * 
+     * @param file The file.
+     * @return The normalized, absolute path of a file.
+     */
+    static String normalize(File file)
+    {
+        String path = FilenameUtils.normalize(file.getAbsolutePath());
+        return path == null ? file.getAbsolutePath() : path;
+    }
+
+    /**
+     * The keys, as returned by {@link EvaluationContext#key(String)}, of the
+     * targets that run when a project is cleaned.
+     */
+    private static final Set<String> CLEAN_TARGETS = new HashSet<String>();
+
+    static
+    {
+        for (String t : new String[]
+        {
+            "Clean", "BeforeClean", "AfterClean", "CoreClean",
+            "CleanReferencedProjects", "CleanPublishFolder"
+        })
+        {
+            CLEAN_TARGETS.add(EvaluationContext.key(t));
+        }
     }
 
     /**
-     * A map of the project's build artifacts. The map's key is the build
-     * configuration (Debug, Release, etc.). The key returns a second map for
-     * which the key is the platform type (AnyCPU, Win32, x64, etc.). The
-     * ultimate value is the build artifacts object for that build configuration
-     * / platform pair.
+     * Whether or not the project or a file it imports, other than the stock
+     * Microsoft files, customizes the Clean target.
      */
-    private Map<String, Map<String, ProjectInfo>> projectInfos =
-        new HashMap<String, Map<String, ProjectInfo>>();
+    private final boolean cleanCustomized;
 
     /**
-     * The deserialized project.
+     * The project's information objects indexed by the keys of their
+     * configuration and platform pairs as returned by
+     * {@link #getPairKey(String, String, String)}.
      */
-    private Project project;
+    private final ConcurrentMap<String, ProjectInfo> projectInfos;
 
     /**
      * The project's language.
      */
-    private ProjectLanguageType projectLanguage;
+    private final ProjectLanguageType projectLanguage;
 
     /**
      * The underlying project file.
      */
-    private File file;
+    private final File file;
 
     /**
      * The name of the final output assembly after the project is built.
      */
-    private String assemblyName;
+    private final String assemblyName;
 
     /**
      * The project's type.
      */
-    private ProjectType type;
+    private final ProjectType type;
 
     /**
      * The root namespace to use when you name an embedded resource. This
      * namespace is part of the embedded resource manifest name.
      */
-    private String rootNamespace;
+    private final String rootNamespace;
 
     /**
      * The version of the .NET Framework that is required to run the application
      * that you are building. Specifying this lets you reference certain
      * framework assemblies that you may not be able to reference otherwise.
      */
-    private String targetFrameworkVersion;
+    private final String targetFrameworkVersion;
+
+    /**
+     * The frameworks the project is built against.
+     */
+    private final List<String> targetFrameworks;
+
+    /**
+     * The project's project references.
+     */
+    private final Map<String, String> projectReferences;
+
+    /**
+     * The names of the unsupported functions the project file's conditions
+     * call.
+     */
+    private final Set<String> unknownFunctions;
 
     /**
      * The default build configuration name.
@@ -461,12 +724,6 @@ public class MSBuildProject
      */
     //private String defaultPlatform;
 
-    /**
-     * The project's project references.
-     */
-    private Map<String, String> projectReferences =
-        new HashMap<String, String>();
-
     /**
      * Gets the project's project references.
      * 
@@ -498,6 +755,19 @@ public class MSBuildProject
         return this.targetFrameworkVersion;
     }
 
+    /**
+     * Gets the frameworks the project is built against, from the
+     * TargetFrameworks property or, if the project is built against a single
+     * framework, the TargetFramework or TargetFrameworkVersion property.
+     * 
+     * @return The frameworks the project is built against. The list is empty
+     *         if the project does not name a framework.
+     */
+    public List<String> getTargetFrameworks()
+    {
+        return this.targetFrameworks;
+    }
+
     /**
      * Gets the project's language.
      * 
@@ -544,32 +814,51 @@ public class MSBuildProject
      * 
      * @param config The configuration name (ex. Debug, Release).
      * @param platform The platform type (ex. AnyCPU, x86, Win32).
+     * @param framework The target framework or null for the framework the
+     *        project file selects.
      * @return The project's information object for the given configuration and
      *         platform type.
      */
-    private ProjectInfo getProjectInfo(String config, String platform)
+    private ProjectInfo getProjectInfo(
+        String config,
+        String platform,
+        String framework)
     {
         if (StringUtils.isEmpty(config))
         {
             return null;
         }
 
-        if (!this.projectInfos.containsKey(config))
+        String key = getPairKey(config, platform, framework);
+        ProjectInfo pi = this.projectInfos.get(key);
+
+        if (pi != null)
         {
-            this.projectInfos.put(config, new HashMap<String, ProjectInfo>());
+            return pi;
         }
 
-        Map<String, ProjectInfo> map = this.projectInfos.get(config);
-
-        if (!map.containsKey(platform))
+        // The pair is not one the project declares, so the project file is
+        // read again in order to evaluate it.
+        try
+        {
+            pi =
+                newProjectInfo(
+                    BuildFile.read(this.file),
+                    config,
+                    platform,
+                    framework);
+        }
+        catch (IOException e)
         {
-            ProjectInfo pi = new ProjectInfo(this);
-            pi.setConfig(config);
-            pi.setPlatform(platform);
-            map.put(platform, pi);
+            throw new IllegalStateException(String.format(
+                "Error reading file '%s'. %s",
+                this.file,
+                e.getMessage()), e);
         }
 
-        return map.get(platform);
+        ProjectInfo existing = this.projectInfos.putIfAbsent(key, pi);
+
+        return existing == null ? pi : existing;
     }
 
     /**
@@ -593,7 +882,69 @@ public class MSBuildProject
      */
     public File getBuildDir(String config, String platform)
     {
-        return getProjectInfo(config, platform).getDir();
+        return getBuildDir(config, platform, null);
+    }
+
+    /**
+     * Gets the project's build directory for a target framework.
+     * 
+     * @param config The configuration name (ex. Debug, Release).
+     * @param platform The platform type (ex. AnyCPU, x86, Win32).
+     * @param framework The target framework or null for the framework the
+     *        project file selects.
+     * @return The project's build directory.
+     */
+    public File getBuildDir(
+        String config,
+        String platform,
+        String framework)
+    {
+        return getProjectInfo(config, platform, framework).getDir();
+    }
+
+    /**
+     * Gets the project's intermediate directory, where the compiler's
+     * intermediate files and the list of the files written by the build are
+     * kept.
+     * 
+     * @param config The configuration name (ex. Debug, Release).
+     * @param platform The platform type (ex. AnyCPU, x86, Win32).
+     * @return The project's intermediate directory.
+     */
+    public File getIntermediateDir(String config, String platform)
+    {
+        return getIntermediateDir(config, platform, null);
+    }
+
+    /**
+     * Gets the project's intermediate directory for a target framework.
+     * 
+     * @param config The configuration name (ex. Debug, Release).
+     * @param platform The platform type (ex. AnyCPU, x86, Win32).
+     * @param framework The target framework or null for the framework the
+     *        project file selects.
+     * @return The project's intermediate directory.
+     */
+    public File getIntermediateDir(
+        String config,
+        String platform,
+        String framework)
+    {
+        return getProjectInfo(config, platform, framework).getIntDir();
+    }
+
+    /**
+     * Gets a flag indicating whether or not the project, or a file it imports
+     * other than the stock Microsoft files, defines or hooks the targets that
+     * run when the project is cleaned. Such a project must be cleaned by
+     * msbuild.
+     * 
+     * @return A flag indicating whether or not the project customizes the
+     *         Clean target.
+     */
+    public boolean isCleanCustomized()
+    {
+        return this.cleanCustomized;
     }
 
     /**
@@ -605,7 +956,24 @@ public class MSBuildProject
      */
     public File getBinArtifact(String config, String platform)
     {
-        return getProjectInfo(config, platform).getBin();
+        return getBinArtifact(config, platform, null);
+    }
+
+    /**
+     * Gets the project's binary artifact for a target framework.
+     * 
+     * @param config The configuration name (ex. Debug, Release).
+     * @param platform The platform type (ex. AnyCPU, x86, Win32).
+     * @param framework The target framework or null for the framework the
+     *        project file selects.
+     * @return The project's binary artifact.
+     */
+    public File getBinArtifact(
+        String config,
+        String platform,
+        String framework)
+    {
+        return getProjectInfo(config, platform, framework).getBin();
     }
 
     /**
@@ -617,7 +985,24 @@ public class MSBuildProject
      */
     public File getDocArtifact(String config, String platform)
     {
-        return getProjectInfo(config, platform).getDoc();
+        return getDocArtifact(config, platform, null);
+    }
+
+    /**
+     * Gets the project's documentation artifact for a target framework.
+     * 
+     * @param config The configuration name (ex. Debug, Release).
+     * @param platform The platform type (ex. AnyCPU, x86, Win32).
+     * @param framework The target framework or null for the framework the
+     *        project file selects.
+     * @return The project's documentation artifact.
+     */
+    public File getDocArtifact(
+        String config,
+        String platform,
+        String framework)
+    {
+        return getProjectInfo(config, platform, framework).getDoc();
     }
 
     /**
@@ -629,7 +1014,24 @@ public class MSBuildProject
      */
     public File getPdbArtifact(String config, String platform)
     {
-        return getProjectInfo(config, platform).getPdb();
+        return getPdbArtifact(config, platform, null);
+    }
+
+    /**
+     * Gets the project's symbols artifact for a target framework.
+     * 
+     * @param config The configuration name (ex. Debug, Release).
+     * @param platform The platform type (ex. AnyCPU, x86, Win32).
+     * @param framework The target framework or null for the framework the
+     *        project file selects.
+     * @return The project's symbols artifact.
+     */
+    public File getPdbArtifact(
+        String config,
+        String platform,
+        String framework)
+    {
+        return getProjectInfo(config, platform, framework).getPdb();
     }
 
     /**
@@ -644,266 +1046,659 @@ public class MSBuildProject
      */
     public String getArtifactName(String config, String platform)
     {
-        return getProjectInfo(config, platform).getArtifactName();
+        return getArtifactName(config, platform, null);
     }
 
-    private static class ProjectInfo implements Serializable
-    {
-        private final static Pattern TOKEN_PATT = Pattern
-            .compile("\\$\\((.+?)\\)");
-
-        private final Map<String, String> tokensAndReplacements =
-            new HashMap<String, String>();
+    /**
+     * Gets the project's artifact name for a target framework.
+     * 
+     * @param config The configuration name (ex. Debug, Release).
+     * @param platform The platform type (ex. AnyCPU, x86, Win32).
+     * @param framework The target framework or null for the framework the
+     *        project file selects.
+     * @return The project's artifact name.
+     */
+    public String getArtifactName(
+        String config,
+        String platform,
+        String framework)
+    {
+        return getProjectInfo(config, platform, framework).getArtifactName();
+    }
+
+    /**
+     * Gets the files the project imports, in the order they are imported.
+     * Imports that do not exist are not included.
+     * 
+     * @param config The configuration name (ex. Debug, Release).
+     * @param platform The platform type (ex. AnyCPU, x86, Win32).
+     * @return The files the project imports.
+     */
+    public List<File> getImports(String config, String platform)
+    {
+        return getProjectInfo(config, platform, null).getImports();
+    }
+
+    /**
+     * Gets the project's items of the given type with their wildcards
+     * expanded. Items of the types that do not name files the build reads,
+     * such as Reference and Folder, are not available.
+     * 
+     * @param itemType The item type (ex. Compile).
+     * @param config The configuration name (ex. Debug, Release).
+     * @param platform The platform type (ex. AnyCPU, x86, Win32).
+     * @return The items' paths relative to the project directory, sorted and
+     *         without duplicates.
+     * @throws IOException When a directory cannot be walked.
+     */
+    public List<String> getItems(
+        String itemType,
+        String config,
+        String platform) throws IOException
+    {
+        return getItems(itemType, config, platform, false);
+    }
+
+    /**
+     * Gets the project's items whose types name files the build reads, such
+     * as Compile, EmbeddedResource and ClCompile, with their wildcards
+     * expanded.
+     * 
+     * @param config The configuration name (ex. Debug, Release).
+     * @param platform The platform type (ex. AnyCPU, x86, Win32).
+     * @return The items' paths relative to the project directory, sorted and
+     *         without duplicates.
+     * @throws IOException When a directory cannot be walked.
+     */
+    public List<String> getItems(String config, String platform)
+        throws IOException
+    {
+        return getItems(null, config, platform, true);
+    }
+
+    private List<String> getItems(
+        String itemType,
+        String config,
+        String platform,
+        boolean inputTypes) throws IOException
+    {
+        Set<String> items = new ConcurrentSkipListSet<String>();
+
+        ItemExpander ie =
+            new ItemExpander(this.file.getAbsoluteFile().getParentFile());
+
+        for (ItemSpec spec : getProjectInfo(config, platform, null)
+            .getItems())
+        {
+            if (inputTypes ? BuildFile.INPUT_ITEM_TYPES
+                .contains(EvaluationContext.key(spec.type)) : spec.type
+                .equalsIgnoreCase(itemType))
+            {
+                ie.expand(spec.include, spec.exclude, items);
+            }
+        }
+
+        return new ArrayList<String>(items);
+    }
+
+    /**
+     * Gets the names of the unsupported functions the project file's
+     * conditions call. The conditions that call them are evaluated as false,
+     * so the project's evaluation may differ from msbuild's.
+     * 
+     * @return The names of the unsupported functions, sorted.
+     */
+    public Set<String> getUnknownFunctions()
+    {
+        return this.unknownFunctions;
+    }
+
+    /**
+     * Gets the types of the project's items that are not known to either
+     * name or not name files the build reads.
+     * 
+     * @param config The configuration name (ex. Debug, Release).
+     * @param platform The platform type (ex. AnyCPU, x86, Win32).
+     * @return The item types, sorted. The set is empty if every item type is
+     *         known.
+     */
+    public Set<String> getUnclassifiedItemTypes(String config, String platform)
+    {
+        Set<String> types = new TreeSet<String>();
+
+        for (ItemSpec spec : getProjectInfo(config, platform, null)
+            .getItems())
+        {
+            if (!BuildFile.INPUT_ITEM_TYPES.contains(EvaluationContext
+                .key(spec.type)))
+            {
+                types.add(spec.type);
+            }
+        }
+
+        return types;
+    }
+
+    /**
+     * Adds the files a configuration and platform of the project is built
+     * from to a fingerprint: the project file, the files it imports and its
+     * input items. Each file is added under its path relative to a base
+     * directory so that the same sources produce the same fingerprint in any
+     * workspace. The inputs of the projects the project references are not
+     * added; see {@link ProjectInputs}.
+     * 
+     * @param fp The fingerprint.
+     * @param baseDir The directory the files' names are relative to.
+     * @param config The configuration name (ex. Debug, Release).
+     * @param platform The platform type (ex. AnyCPU, x86, Win32).
+     * @throws IOException When a file cannot be read or when a project has
+     *         items of unclassified types, in which case its inputs are not
+     *         known.
+     */
+    public void addInputs(
+        Fingerprint fp,
+        File baseDir,
+        String config,
+        String platform) throws IOException
+    {
+        Set<String> unclassified = getUnclassifiedItemTypes(config, platform);
+
+        if (!unclassified.isEmpty())
+        {
+            throw new IOException(String.format(
+                "%s has items of unclassified types %s",
+                this.file.getName(),
+                unclassified));
+        }
+
+        File projDir = this.file.getAbsoluteFile().getParentFile();
 
+        fp.add(getRelativePath(baseDir, this.file), this.file);
+
+        for (File f : getImports(config, platform))
+        {
+            fp.add(getRelativePath(baseDir, f), f);
+        }
+
+        for (String item : getItems(config, platform))
+        {
+            File f = new File(item.replace('\\', File.separatorChar));
+
+            if (!f.isAbsolute())
+            {
+                f = new File(projDir, f.getPath());
+            }
+
+            fp.add(getRelativePath(baseDir, f), f);
+        }
+    }
+
+    /**
+     * Gets the path of a file relative to a directory. The path leads out of
+     * the directory with ".." segments if the file is not below it.
+     * 
+     * @param dir The directory.
+     * @param file The file.
+     * @return The file's relative path with '/' separators.
+     */
+    static String getRelativePath(File dir, File file)
+    {
+        String[] d = normalize(dir).split("[\\\\/]+");
+        String[] f = normalize(file).split("[\\\\/]+");
+
+        int common = 0;
+
+        while (common < d.length && common < f.length
+            && d[common].equals(f[common]))
+        {
+            ++common;
+        }
+
+        StringBuilder buff = new StringBuilder();
+
+        for (int x = common; x < d.length; ++x)
+        {
+            buff.append("../");
+        }
+
+        for (int x = common; x < f.length; ++x)
+        {
+            buff.append(f[x]);
+
+            if (x < f.length - 1)
+            {
+                buff.append('/');
+            }
+        }
+
+        return buff.toString();
+    }
+
+    /**
+     * The evaluation context for a project. It supplies the defaults of the
+     * well-known properties that are otherwise defined by the imported
+     * Microsoft targets files.
+     */
+    private static class ProjectContext extends EvaluationContext
+    {
         /**
-         * The serial version UID.
+         * The project being evaluated.
          */
-        private static final long serialVersionUID = 398870509494073351L;
+        private final MSBuildProject parent;
+
+        /**
+         * The file whose definitions are being evaluated. This is either the
+         * project file or a file it imports.
+         */
+        private File thisFile;
 
-        public ProjectInfo(MSBuildProject parent)
+        public ProjectContext(MSBuildProject parent)
         {
+            super(parent.getFile().getAbsoluteFile().getParentFile());
             this.parent = parent;
-            tokensAndReplacements.put("SolutionDir", ".\\\\");
-            tokensAndReplacements.put("OutDir", "");
-            tokensAndReplacements.put("ProjectDir", ".\\\\");
         }
 
         /**
-         * The parent MSBuildProject object.
+         * Gets the file whose definitions are being evaluated.
+         * 
+         * @return The file whose definitions are being evaluated.
          */
-        private MSBuildProject parent;
+        File getThisFile()
+        {
+            return this.thisFile;
+        }
 
         /**
-         * The project artifact's name.
+         * Sets the file whose definitions are being evaluated.
+         * 
+         * @param toSet The file whose definitions are being evaluated.
+         */
+        void setThisFile(File toSet)
+        {
+            this.thisFile = toSet;
+        }
+
+        @Override
+        protected String getDefault(String name)
+        {
+            if (name.regionMatches(true, 0, "MSBuildThisFile", 0, 15))
+            {
+                return getReserved(this.thisFile, name.substring(15), true);
+            }
+            else if (name.regionMatches(true, 0, "MSBuildProject", 0, 14))
+            {
+                return getReserved(
+                    this.parent.getFile(),
+                    name.substring(14),
+                    false);
+            }
+            else if (name.equalsIgnoreCase("SolutionDir")
+                || name.equalsIgnoreCase("ProjectDir"))
+            {
+                return ".\\";
+            }
+            else if (name.equalsIgnoreCase("OutDir"))
+            {
+                return "";
+            }
+            else if (name.equalsIgnoreCase("ProjectName"))
+            {
+                if (this.parent.getProjectLanguage() == ProjectLanguageType.CPP)
+                {
+                    return FilenameUtils.getBaseName(this.parent
+                        .getFile()
+                        .toString());
+                }
+
+                return getAssemNameOrRootNS();
+            }
+            else if (name.equalsIgnoreCase("TargetName"))
+            {
+                return getAssemNameOrRootNS();
+            }
+            else if (name.equalsIgnoreCase("TargetExtension"))
+            {
+                ProjectType pt = getType();
+                return pt == null ? "" : "." + pt.getFileExtension();
+            }
+
+            return null;
+        }
+
+        /**
+         * Gets the value of one of the reserved properties that describe a
+         * file, ex. MSBuildThisFileDirectory or MSBuildProjectName.
+         * 
+         * @param file The file.
+         * @param suffix The part of the property's name that follows
+         *        MSBuildThisFile or MSBuildProject.
+         * @param endSeparator Whether or not the directory's path ends with a
+         *        separator. MSBuildThisFileDirectory does while
+         *        MSBuildProjectDirectory does not.
+         * @return The property's value or null if the suffix is not
+         *         recognized.
          */
-        private String artifactName;
+        private static String getReserved(
+            File file,
+            String suffix,
+            boolean endSeparator)
+        {
+            if (file == null)
+            {
+                return null;
+            }
+
+            String path = file.getAbsolutePath();
+
+            if (suffix.length() == 0 || suffix.equalsIgnoreCase("File"))
+            {
+                return file.getName();
+            }
+            else if (suffix.equalsIgnoreCase("FullPath"))
+            {
+                return path;
+            }
+            else if (suffix.equalsIgnoreCase("Directory"))
+            {
+                return endSeparator ? FilenameUtils.getFullPath(path)
+                    : FilenameUtils.getFullPathNoEndSeparator(path);
+            }
+            else if (suffix.equalsIgnoreCase("DirectoryNoRoot"))
+            {
+                return FilenameUtils.getPath(path);
+            }
+            else if (suffix.equalsIgnoreCase("Name"))
+            {
+                return FilenameUtils.getBaseName(path);
+            }
+            else if (suffix.equalsIgnoreCase("Extension"))
+            {
+                String ext = FilenameUtils.getExtension(path);
+                return ext.length() == 0 ? "" : "." + ext;
+            }
+
+            return null;
+        }
 
         /**
-         * The project's type.
+         * Gets the project's type for the current configuration.
+         * 
+         * @return The project's type for the current configuration.
          */
-        private ProjectType type;
+        ProjectType getType()
+        {
+            ProjectType pt = ProjectType.parse(getDefined("ConfigurationType"));
+            return pt == null ? ProjectType.parse(getDefined("OutputType")) : pt;
+        }
 
         /**
-         * The build directory.
+         * Gets the assembly name or, if it is not defined, the root namespace.
+         * 
+         * @return The assembly name or, if it is not defined, the root
+         *         namespace.
          */
-        private File dir;
+        String getAssemNameOrRootNS()
+        {
+            String an = getDefined("AssemblyName");
+            return StringUtils.isEmpty(an) ? getDefined("RootNamespace") : an;
+        }
+    }
 
+    /**
+     * The artifact names and paths of a configuration and platform pair.
+     */
+    private static final class ProjectInfo implements Serializable
+    {
         /**
-         * The binary artifact.
+         * The serial version UID.
          */
-        private File bin;
+        private static final long serialVersionUID = 398870509494073351L;
 
         /**
-         * The documentation artifact.
+         * The project artifact's name.
          */
-        private File doc;
+        private final String artifactName;
 
         /**
-         * The tokenized path to the base artifact directory.
+         * The build directory.
          */
-        private String outputDirPath;
+        private final File dir;
 
         /**
-         * The tokenized path to the documentation artifact.
+         * The intermediate directory.
          */
-        private String docFilePath;
+        private final File intDir;
 
         /**
-         * The target name (CPP only).
+         * The binary artifact.
          */
-        private String targetName;
+        private final File bin;
 
         /**
-         * The output file (CPP only).
+         * The documentation artifact.
          */
-        private String outputFilePath;
+        private final File doc;
 
         /**
          * The PDB (build symbols) artifact.
          */
-        private File pdb;
+        private final File pdb;
 
-        public File getBin()
+        /**
+         * The project's items.
+         */
+        private final List<ItemSpec> items;
+
+        /**
+         * The files the project imports.
+         */
+        private final List<File> imports;
+
+        /**
+         * Initializes a new instance of the ProjectInfo class from the
+         * project's evaluated properties.
+         * 
+         * @param parent The project.
+         * @param ctx The project's evaluated properties.
+         * @param framework The target framework or null for the framework the
+         *        project file selects. The outputs of a framework are written
+         *        to a subdirectory named after it unless the
+         *        AppendTargetFrameworkToOutputPath property is false.
+         * @param outputFilePath The evaluated OutputFile metadata of the
+         *        project's Link or Lib item definition (CPP only).
+         * @param items The project's items.
+         * @param imports The files the project imports.
+         */
+        ProjectInfo(
+            MSBuildProject parent,
+            ProjectContext ctx,
+            String framework,
+            String outputFilePath,
+            List<ItemSpec> items,
+            List<File> imports)
         {
-            if (this.bin != null)
-            {
-                return this.bin;
-            }
+            this.items =
+                items.isEmpty() ? Collections.<ItemSpec> emptyList()
+                    : Collections.unmodifiableList(items);
 
-            this.bin =
-                new File(getDir(), String.format(
-                    "%s.%s",
-                    getArtifactName(),
-                    getType().getFileExtension()));
+            this.imports =
+                imports.isEmpty() ? Collections.<File> emptyList()
+                    : Collections.unmodifiableList(imports);
 
-            return this.bin;
-        }
+            ProjectType pt =
+                ProjectType.parse(ctx.getDefined("ConfigurationType"));
 
-        public File getDoc()
-        {
-            if (StringUtils.isEmpty(this.docFilePath))
+            if (pt == null)
             {
-                return null;
+                pt = parent.getType();
             }
 
-            if (this.doc != null)
+            String targetName = ctx.getDefined("TargetName");
+
+            if (StringUtils.isNotEmpty(targetName))
             {
-                return this.doc;
+                this.artifactName = intern(targetName);
             }
-
-            this.doc = new File(replaceTokens(this.docFilePath));
-
-            return this.doc;
-        }
-
-        public File getPdb()
-        {
-            if (this.pdb != null)
+            else if (StringUtils.isNotEmpty(outputFilePath))
             {
-                return this.pdb;
+                this.artifactName =
+                    intern(FilenameUtils.getBaseName(outputFilePath));
             }
-
-            String fileName = String.format("%s.pdb", getArtifactName());
-
-            this.pdb = new File(getDir(), fileName);
-
-            return this.pdb;
-        }
-
-        public File getDir()
-        {
-            if (this.dir != null)
+            else
             {
-                return this.dir;
+                this.artifactName = intern(ctx.getAssemNameOrRootNS());
             }
 
-            this.dir = new File(replaceTokens(this.outputDirPath));
+            String outputDirPath;
+            String intDirPath;
+            String docFilePath = null;
+            String config = ctx.get("Configuration");
+            String platform = ctx.get("Platform");
 
-            return this.dir;
-        }
+            if (parent.getProjectLanguage() == ProjectLanguageType.CPP)
+            {
+                outputDirPath = ctx.get("OutDir");
+                intDirPath = ctx.getDefined("IntDir");
 
-        public void setType(ProjectType toSet)
-        {
-            this.type = toSet;
-        }
+                if (StringUtils.isEmpty(intDirPath))
+                {
+                    intDirPath =
+                        platform.equalsIgnoreCase("Win32") ? config + "\\"
+                            : platform + "\\" + config + "\\";
+                }
+            }
+            else
+            {
+                outputDirPath = ctx.getDefined("OutputPath");
+                docFilePath = ctx.getDefined("DocumentationFile");
+                intDirPath = ctx.getDefined("IntermediateOutputPath");
 
-        private ProjectType getType()
-        {
-            return this.type == null ? this.parent.getType() : this.type;
-        }
+                if (StringUtils.isEmpty(intDirPath))
+                {
+                    String base =
+                        appendSeparator(ctx
+                            .getDefined("BaseIntermediateOutputPath"));
 
-        public void setConfig(String toSet)
-        {
-            this.tokensAndReplacements.put("Configuration", toSet);
-        }
+                    if (base.length() == 0)
+                    {
+                        base = "obj\\";
+                    }
 
-        public void setPlatform(String toSet)
-        {
-            this.tokensAndReplacements.put("Platform", toSet);
-        }
+                    intDirPath =
+                        platform.length() == 0
+                            || platform.equalsIgnoreCase("AnyCPU") ? base
+                            + config + "\\" : base + platform + "\\"
+                            + config + "\\";
+                }
+            }
 
-        private String replaceTokens(String toReplace)
-        {
-            if (!this.tokensAndReplacements.containsKey("ProjectName"))
+            if (framework != null
+                && !"false".equalsIgnoreCase(ctx
+                    .getDefined("AppendTargetFrameworkToOutputPath")))
             {
-                String bfn =
-                    FilenameUtils.getBaseName(this.parent.getFile().toString());
-                if (this.parent.getProjectLanguage() == ProjectLanguageType.CPP
-                    && !getAssemNameOrRootNS().equals(bfn))
-                {
-                    this.tokensAndReplacements.put("ProjectName", bfn);
-                }
-                else
+                String od = appendSeparator(outputDirPath);
+
+                if (od.length() > 0 && docFilePath != null
+                    && docFilePath.startsWith(od))
                 {
-                    this.tokensAndReplacements.put(
-                        "ProjectName",
-                        getAssemNameOrRootNS());
+                    docFilePath =
+                        od + framework + "\\"
+                            + docFilePath.substring(od.length());
                 }
-            }
 
-            if (!this.tokensAndReplacements.containsKey("TargetName"))
-            {
-                this.tokensAndReplacements.put(
-                    "TargetName",
-                    getAssemNameOrRootNS());
+                outputDirPath = od + framework + "\\";
+                intDirPath = appendSeparator(intDirPath) + framework + "\\";
             }
 
-            if (!this.tokensAndReplacements.containsKey("TargetExtension"))
-            {
-                this.tokensAndReplacements.put("TargetExtension", "."
-                    + getType().getFileExtension());
-            }
+            this.intDir = new File(intern(intDirPath));
 
-            StringBuffer sb = new StringBuffer();
-            Matcher matt = TOKEN_PATT.matcher(toReplace);
+            this.dir =
+                new File(intern(StringUtils.defaultString(outputDirPath)));
 
-            while (matt.find())
-            {
-                String t = matt.group(1);
-                String r = this.tokensAndReplacements.get(t);
-                matt.appendReplacement(sb, r);
-            }
+            this.bin =
+                pt == null ? null : new File(this.dir, String.format(
+                    "%s.%s",
+                    this.artifactName,
+                    pt.getFileExtension()));
 
-            matt.appendTail(sb);
+            this.pdb =
+                new File(this.dir, String.format("%s.pdb", this.artifactName));
 
-            return sb.toString();
+            this.doc =
+                StringUtils.isEmpty(docFilePath) ? null : new File(docFilePath);
         }
 
         public String getArtifactName()
         {
-            if (StringUtils.isNotEmpty(this.artifactName))
-            {
-                return this.artifactName;
-            }
+            return this.artifactName;
+        }
 
-            if (StringUtils.isNotEmpty(this.targetName))
-            {
-                this.artifactName = replaceTokens(this.targetName);
-            }
-            else if (StringUtils.isNotEmpty(this.outputFilePath))
-            {
-                this.artifactName = replaceTokens(this.outputFilePath);
-            }
-            else
-            {
-                this.artifactName = getAssemNameOrRootNS();
-            }
+        public File getDir()
+        {
+            return this.dir;
+        }
 
-            return this.artifactName;
+        public File getIntDir()
+        {
+            return this.intDir;
         }
 
-        private String getAssemNameOrRootNS()
+        public File getBin()
         {
-            return StringUtils.isEmpty(this.parent.getAssemblyName())
-                ? this.parent.getRootNamespace() : this.parent
-                    .getAssemblyName();
+            return this.bin;
         }
 
-        public void setOutputDirPath(String toSet)
+        public File getDoc()
         {
-            this.outputDirPath = toSet;
+            return this.doc;
         }
 
-        public void setDocFilePath(String toSet)
+        public File getPdb()
         {
-            this.docFilePath = toSet;
+            return this.pdb;
         }
 
-        public void setTargetName(String toSet)
+        public List<ItemSpec> getItems()
         {
-            this.targetName = toSet;
-            this.tokensAndReplacements.put("TargetName", toSet);
+            return this.items;
         }
 
-        public void setTargetExtension(String toSet)
+        public List<File> getImports()
         {
-            this.tokensAndReplacements.put("TargetExtension", toSet);
+            return this.imports;
         }
+    }
+
+    /**
+     * The evaluated Include and Exclude attributes of an item.
+     */
+    private static final class ItemSpec implements Serializable
+    {
+        /**
+         * The serial version UID.
+         */
+        private static final long serialVersionUID = -2874137413587420815L;
+
+        /**
+         * The item type, ex. Compile.
+         */
+        private final String type;
+
+        /**
+         * The evaluated Include attribute.
+         */
+        private final String include;
+
+        /**
+         * The evaluated Exclude attribute.
+         */
+        private final String exclude;
 
-        public void setOutputFilePath(String toSet)
+        ItemSpec(String type, String include, String exclude)
         {
-            toSet = FilenameUtils.getBaseName(toSet);
-            this.outputFilePath = toSet;
+            this.type = intern(type);
+            this.include = intern(include);
+            this.exclude = intern(exclude);
         }
     }
 }
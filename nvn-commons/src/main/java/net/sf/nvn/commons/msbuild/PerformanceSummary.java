@@ -0,0 +1,393 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons.msbuild;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import net.sf.nvn.commons.LineHandler;
+import net.sf.nvn.commons.StringUtils;
+
+/**
+ * <p>
+ * The project, target and task timings of one or more msbuild runs, parsed
+ * from the performance summary msbuild prints when the console logger is given
+ * the <em>PerformanceSummary</em> parameter:
+ * </p>
+ * 
+ * <pre>
+ * Target Performance Summary:
+ *        12 ms  ResolveAssemblyReferences                  1 calls
+ *       803 ms  CoreCompile                                1 calls
+ * </pre>
+ * 
+ * <p>
+ * The summary is parsed line by line as msbuild writes it, so only the
+ * timings are kept in memory and not the output.
+ * </p>
+ * 
+ * @author akutz
+ * 
+ */
+public class PerformanceSummary implements LineHandler
+{
+    /**
+     * The kinds of timings in a performance summary.
+     */
+    public enum Kind
+    {
+        /**
+         * The time spent in each project.
+         */
+        Project,
+
+        /**
+         * The time spent in each target.
+         */
+        Target,
+
+        /**
+         * The time spent in each task.
+         */
+        Task
+    }
+
+    /**
+     * The time spent in a project, target or task.
+     */
+    public static class Timing
+    {
+        private final String name;
+
+        private long millis;
+
+        private int calls;
+
+        Timing(String name)
+        {
+            this.name = name;
+        }
+
+        /**
+         * Gets the name of the project, target or task.
+         * 
+         * @return The name.
+         */
+        public String getName()
+        {
+            return this.name;
+        }
+
+        /**
+         * Gets the time spent in milliseconds.
+         * 
+         * @return The time spent in milliseconds.
+         */
+        public long getMillis()
+        {
+            return this.millis;
+        }
+
+        /**
+         * Gets the number of calls.
+         * 
+         * @return The number of calls.
+         */
+        public int getCalls()
+        {
+            return this.calls;
+        }
+    }
+
+    /**
+     * Matches the header of a section, for example
+     * <em>Target Performance Summary:</em>. Lines may be prefixed by the id of
+     * the node that logged them.
+     */
+    private static final Pattern HEADER =
+        Pattern.compile("^\\s*(?:\\d+>)?(Project|Target|Task) Performance "
+            + "Summary:\\s*$", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Matches a line of a section, for example
+     * <em>803 ms  CoreCompile  1 calls</em>.
+     */
+    private static final Pattern LINE =
+        Pattern.compile("^\\s*(?:\\d+>)?\\s*(\\d+) ms\\s+(.+?)\\s+(\\d+) "
+            + "calls?\\s*$");
+
+    /**
+     * The timings of each kind, keyed by name.
+     */
+    private final Map<Kind, Map<String, Timing>> timings =
+        new LinkedHashMap<Kind, Map<String, Timing>>();
+
+    /**
+     * The section being parsed or null if the parser is not in a section.
+     */
+    private Kind section;
+
+    /**
+     * Initializes a new instance of the PerformanceSummary class.
+     */
+    public PerformanceSummary()
+    {
+        for (Kind k : Kind.values())
+        {
+            this.timings.put(k, new LinkedHashMap<String, Timing>());
+        }
+    }
+
+    @Override
+    public void handle(String line)
+    {
+        Matcher m = HEADER.matcher(line);
+
+        if (m.matches())
+        {
+            this.section = Kind.valueOf(capitalize(m.group(1)));
+            return;
+        }
+
+        if (this.section == null || line.trim().length() == 0)
+        {
+            return;
+        }
+
+        m = LINE.matcher(line);
+
+        if (m.matches())
+        {
+            add(this.section, m.group(2), parseDigits(m.group(1)), (int) Math
+                .min(Integer.MAX_VALUE, parseDigits(m.group(3))));
+        }
+        else
+        {
+            this.section = null;
+        }
+    }
+
+    /**
+     * Adds time spent in a project, target or task.
+     * 
+     * @param kind The kind of timing.
+     * @param name The name of the project, target or task.
+     * @param millis The time spent in milliseconds.
+     * @param calls The number of calls.
+     */
+    public void add(Kind kind, String name, long millis, int calls)
+    {
+        Map<String, Timing> map = this.timings.get(kind);
+        Timing t = map.get(name);
+
+        if (t == null)
+        {
+            t = new Timing(name);
+            map.put(name, t);
+        }
+
+        // The sums saturate rather than overflow.
+        t.millis = Math.min(Long.MAX_VALUE - millis, t.millis) + millis;
+        t.calls = (int) Math.min(Integer.MAX_VALUE, (long) t.calls + calls);
+    }
+
+    /**
+     * Adds the timings of another summary to this one.
+     * 
+     * @param other The other summary.
+     */
+    public void add(PerformanceSummary other)
+    {
+        for (Kind k : Kind.values())
+        {
+            for (Timing t : other.timings.get(k).values())
+            {
+                add(k, t.name, t.millis, t.calls);
+            }
+        }
+    }
+
+    /**
+     * Gets a flag indicating whether or not the summary has no timings.
+     * 
+     * @return A flag indicating whether or not the summary has no timings.
+     */
+    public boolean isEmpty()
+    {
+        for (Map<String, Timing> map : this.timings.values())
+        {
+            if (!map.isEmpty())
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the timings of a kind, the most expensive first.
+     * 
+     * @param kind The kind of timing.
+     * @return The timings.
+     */
+    public List<Timing> getTimings(Kind kind)
+    {
+        List<Timing> list =
+            new ArrayList<Timing>(this.timings.get(kind).values());
+
+        Collections.sort(list, new Comparator<Timing>()
+        {
+            @Override
+            public int compare(Timing o1, Timing o2)
+            {
+                return o1.millis == o2.millis ? o1.name.compareTo(o2.name)
+                    : (o1.millis > o2.millis ? -1 : 1);
+            }
+        });
+
+        return list;
+    }
+
+    /**
+     * Formats the summary as a JSON object with the arrays <em>projects</em>,
+     * <em>targets</em> and <em>tasks</em>. Each element has a
+     * <em>name</em>, <em>ms</em> and <em>calls</em>.
+     * 
+     * @return The summary as JSON.
+     */
+    public String toJson()
+    {
+        StringBuilder buff = new StringBuilder();
+        buff.append("{");
+
+        for (Kind k : Kind.values())
+        {
+            if (k.ordinal() > 0)
+            {
+                buff.append(",");
+            }
+
+            buff.append("\"");
+            buff.append(k.name().toLowerCase());
+            buff.append("s\":[");
+
+            List<Timing> list = getTimings(k);
+
+            for (int x = 0; x < list.size(); ++x)
+            {
+                Timing t = list.get(x);
+
+                if (x > 0)
+                {
+                    buff.append(",");
+                }
+
+                buff.append("{\"name\":");
+                StringUtils.appendJsonString(buff, t.name);
+                buff.append(",\"ms\":");
+                buff.append(t.millis);
+                buff.append(",\"calls\":");
+                buff.append(t.calls);
+                buff.append("}");
+            }
+
+            buff.append("]");
+        }
+
+        buff.append("}");
+        return buff.toString();
+    }
+
+    /**
+     * Formats the summaries of several modules and their total as a JSON
+     * object with the members <em>modules</em> and <em>total</em>.
+     * 
+     * @param modules The summaries keyed by module.
+     * @return The summaries as JSON.
+     */
+    public static String toJson(Map<String, PerformanceSummary> modules)
+    {
+        PerformanceSummary total = new PerformanceSummary();
+        StringBuilder buff = new StringBuilder();
+        buff.append("{\"modules\":{");
+
+        boolean first = true;
+
+        for (Map.Entry<String, PerformanceSummary> e : modules.entrySet())
+        {
+            if (!first)
+            {
+                buff.append(",");
+            }
+
+            first = false;
+            StringUtils.appendJsonString(buff, e.getKey());
+            buff.append(":");
+            buff.append(e.getValue().toJson());
+            total.add(e.getValue());
+        }
+
+        buff.append("},\"total\":");
+        buff.append(total.toJson());
+        buff.append("}");
+        return buff.toString();
+    }
+
+    /**
+     * Parses a run of digits, clamping a number too large for a long.
+     * 
+     * @param digits The digits.
+     * @return The number.
+     */
+    private static long parseDigits(String digits)
+    {
+        try
+        {
+            return Long.parseLong(digits);
+        }
+        catch (NumberFormatException e)
+        {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static String capitalize(String s)
+    {
+        return Character.toUpperCase(s.charAt(0))
+            + s.substring(1).toLowerCase();
+    }
+}
@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons.msbuild;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import net.sf.nvn.commons.Fingerprint;
+
+/**
+ * The fingerprints of the inputs of MSBuild projects and of the projects they
+ * reference, transitively. Each project is read and its inputs are hashed
+ * once per configuration and platform, so the modules of a build that
+ * reference the same projects share their fingerprints instead of hashing
+ * them again.
+ * 
+ * <p>
+ * The fingerprints are not invalidated when a project's inputs change, so an
+ * instance should not outlive the build it was created for.
+ * </p>
+ * 
+ * @author akutz
+ * 
+ */
+public class ProjectInputs
+{
+    /**
+     * The projects that have been read, indexed by their normalized paths.
+     */
+    private final ConcurrentMap<String, MSBuildProject> projects =
+        new ConcurrentHashMap<String, MSBuildProject>();
+
+    /**
+     * The fingerprints that have been computed, indexed by the normalized
+     * path of the project, the configuration and the platform.
+     */
+    private final ConcurrentMap<String, String> fingerprints =
+        new ConcurrentHashMap<String, String>();
+
+    /**
+     * Gets a project, reading it if it has not been read yet.
+     * 
+     * @param file The project file.
+     * @return The project.
+     * @throws IOException When the project cannot be read.
+     */
+    public MSBuildProject getProject(File file) throws IOException
+    {
+        String path = MSBuildProject.normalize(file);
+        MSBuildProject p = this.projects.get(path);
+
+        if (p == null)
+        {
+            p = MSBuildProject.instance(new File(path));
+            MSBuildProject existing = this.projects.putIfAbsent(path, p);
+            p = existing == null ? p : existing;
+        }
+
+        return p;
+    }
+
+    /**
+     * Adds the fingerprint of a project's inputs, including the inputs of the
+     * projects it references, to a fingerprint.
+     * 
+     * @param fp The fingerprint.
+     * @param baseDir The directory the project's name is relative to.
+     * @param file The project file.
+     * @param config The configuration name (ex. Debug, Release).
+     * @param platform The platform type (ex. AnyCPU, x86, Win32).
+     * @throws IOException When a file cannot be read or when a project has
+     *         items of unclassified types.
+     */
+    public void add(
+        Fingerprint fp,
+        File baseDir,
+        File file,
+        String config,
+        String platform) throws IOException
+    {
+        fp.add(
+            MSBuildProject.getRelativePath(baseDir, file),
+            getFingerprint(file, config, platform));
+    }
+
+    /**
+     * Gets the fingerprint of a project's inputs, including the inputs of the
+     * projects it references. The project's files are named relative to its
+     * directory, so the fingerprint does not depend on where the project is.
+     * 
+     * @param file The project file.
+     * @param config The configuration name (ex. Debug, Release).
+     * @param platform The platform type (ex. AnyCPU, x86, Win32).
+     * @return The fingerprint of the project's inputs.
+     * @throws IOException When a file cannot be read or when a project has
+     *         items of unclassified types.
+     */
+    public String getFingerprint(File file, String config, String platform)
+        throws IOException
+    {
+        return getFingerprint(file, config, platform, new HashSet<String>());
+    }
+
+    private String getFingerprint(
+        File file,
+        String config,
+        String platform,
+        Set<String> visiting) throws IOException
+    {
+        String path = MSBuildProject.normalize(file);
+        String key = path + "|" + config + "|" + platform;
+        String value = this.fingerprints.get(key);
+
+        if (value != null)
+        {
+            return value;
+        }
+
+        MSBuildProject p = getProject(file);
+        File projDir = new File(path).getParentFile();
+
+        Fingerprint fp = new Fingerprint();
+        p.addInputs(fp, projDir, config, platform);
+
+        // Sort the references so the fingerprint does not depend on the order
+        // in which they are declared.
+        List<String> refs =
+            new ArrayList<String>(p.getProjectReferences().keySet());
+        Collections.sort(refs);
+
+        visiting.add(path);
+
+        for (String ref : refs)
+        {
+            File f = EvaluationContext.resolveFile(projDir, ref);
+
+            // A project that references one of the projects that reference
+            // it cannot be built, so the cycle is not followed.
+            if (f.exists() && !visiting.contains(MSBuildProject.normalize(f)))
+            {
+                fp.add(
+                    MSBuildProject.getRelativePath(projDir, f),
+                    getFingerprint(f, config, platform, visiting));
+            }
+        }
+
+        visiting.remove(path);
+
+        value = fp.getValue();
+        this.fingerprints.putIfAbsent(key, value);
+        return value;
+    }
+}
@@ -0,0 +1,484 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons.msbuild;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Characters;
+import javax.xml.stream.events.Comment;
+import javax.xml.stream.events.EntityReference;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.ProcessingInstruction;
+import javax.xml.stream.events.StartDocument;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Rewrites an MSBuild project so that some of its project references become
+ * explicit references. The ProjectReference items being refactored are
+ * removed and a new ItemGroup with a Reference item for each of them is added
+ * to the end of the project.
+ * 
+ * <p>
+ * The project is copied in a single streaming pass. Comments, whitespace,
+ * line separators and empty elements are kept, although a byte order mark is
+ * dropped and attribute order, quoting and character escaping may be
+ * normalized.
+ * </p>
+ * 
+ * @author akutz
+ * 
+ */
+public class ProjectReferenceRewriter
+{
+    /**
+     * The name of the ProjectReference element.
+     */
+    private static final String PROJECT_REFERENCE = "ProjectReference";
+
+    /**
+     * The project references to refactor. The map's key is the Include
+     * attribute of the ProjectReference item and its value is the name of the
+     * explicit reference that replaces it.
+     */
+    private final Map<String, String> references;
+
+    /**
+     * Initializes a new instance of the ProjectReferenceRewriter class.
+     * 
+     * @param references The project references to refactor. The map's key is
+     *        the Include attribute of the ProjectReference item and its value
+     *        is the name of the explicit reference that replaces it.
+     */
+    public ProjectReferenceRewriter(Map<String, String> references)
+    {
+        this.references = new LinkedHashMap<String, String>(references);
+    }
+
+    /**
+     * Rewrites a project.
+     * 
+     * @param in The project to read.
+     * @param out The file to write the rewritten project to.
+     * @return True if the rewritten project was written or false if there are
+     *         no project references to refactor, in which case the rewritten
+     *         project would equal the original and nothing is written.
+     * @throws IOException When an error occurs.
+     */
+    public boolean rewrite(File in, File out) throws IOException
+    {
+        if (this.references.isEmpty())
+        {
+            return false;
+        }
+
+        InputStream is = new FileInputStream(in);
+        OutputStream os = null;
+
+        try
+        {
+            os = new FileOutputStream(out);
+            rewrite(is, os);
+        }
+        catch (XMLStreamException e)
+        {
+            throw new IOException(String.format(
+                "Error rewriting '%s' to '%s'. %s",
+                in,
+                out,
+                e.getMessage()), e);
+        }
+        finally
+        {
+            IOUtils.closeQuietly(is);
+            IOUtils.closeQuietly(os);
+        }
+
+        return true;
+    }
+
+    private void rewrite(InputStream is, OutputStream os)
+        throws IOException, XMLStreamException
+    {
+        // The parser normalizes line breaks to \n so the project's line
+        // separator is sniffed from the raw bytes and restored on output.
+        is = new BufferedInputStream(is);
+        String newLine = getNewLine(is);
+
+        XMLInputFactory xif = XMLInputFactory.newInstance();
+        xif.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        XMLEventReader xr = xif.createXMLEventReader(is);
+
+        XMLStreamWriter xw = null;
+
+        // The whitespace that precedes the next element is held back so it can
+        // be dropped along with a ProjectReference that is removed.
+        StringBuilder heldSpace = new StringBuilder();
+
+        String indent = null;
+        String namespaceUri = "";
+        int depth = 0;
+
+        try
+        {
+            while (xr.hasNext())
+            {
+                XMLEvent e = xr.nextEvent();
+
+                if (e.isStartDocument())
+                {
+                    StartDocument sd = (StartDocument) e;
+                    String encoding =
+                        sd.encodingSet() ? sd.getCharacterEncodingScheme()
+                            : "utf-8";
+
+                    xw =
+                        XMLOutputFactory.newInstance().createXMLStreamWriter(
+                            os,
+                            encoding);
+
+                    if (sd.encodingSet())
+                    {
+                        xw.writeStartDocument(encoding, sd.getVersion());
+                        xw.writeCharacters(newLine);
+                    }
+
+                    continue;
+                }
+
+                if (e.isCharacters() && e.asCharacters().isWhiteSpace()
+                    && !e.asCharacters().isCData())
+                {
+                    heldSpace.append(e.asCharacters().getData());
+                    continue;
+                }
+
+                if (e.isStartElement())
+                {
+                    StartElement se = e.asStartElement();
+                    ++depth;
+
+                    if (depth == 1)
+                    {
+                        namespaceUri = se.getName().getNamespaceURI();
+                    }
+                    else if (depth == 2 && indent == null)
+                    {
+                        indent = getIndent(heldSpace);
+                    }
+
+                    if (depth == 3 && isRefactored(se))
+                    {
+                        heldSpace.setLength(0);
+                        skipElement(xr);
+                        --depth;
+                        continue;
+                    }
+
+                    flush(xw, heldSpace, newLine);
+
+                    // An element without content is written as an empty
+                    // element.
+                    boolean empty = xr.peek().isEndElement();
+
+                    if (empty)
+                    {
+                        xr.nextEvent();
+                        --depth;
+                    }
+
+                    writeStartElement(xw, se, empty);
+                    continue;
+                }
+
+                flush(xw, heldSpace, newLine);
+
+                if (e.isEndElement() && --depth == 0)
+                {
+                    writeReferences(xw, namespaceUri, newLine, indent);
+                }
+
+                write(xw, e, newLine);
+            }
+
+            flush(xw, heldSpace, newLine);
+            xw.flush();
+        }
+        finally
+        {
+            xr.close();
+
+            if (xw != null)
+            {
+                xw.close();
+            }
+        }
+    }
+
+    private boolean isRefactored(StartElement se)
+    {
+        if (!se.getName().getLocalPart().equals(PROJECT_REFERENCE))
+        {
+            return false;
+        }
+
+        Attribute include = se.getAttributeByName(new QName("Include"));
+
+        return include != null
+            && this.references.containsKey(include.getValue());
+    }
+
+    private void writeReferences(
+        XMLStreamWriter xw,
+        String ns,
+        String newLine,
+        String indent) throws XMLStreamException
+    {
+        indent = indent == null ? "  " : indent;
+
+        xw.writeCharacters(indent);
+        xw.writeStartElement("", "ItemGroup", ns);
+
+        for (String name : this.references.values())
+        {
+            xw.writeCharacters(newLine + indent + indent);
+            xw.writeEmptyElement("", "Reference", ns);
+            xw.writeAttribute("Include", name);
+        }
+
+        xw.writeCharacters(newLine + indent);
+        xw.writeEndElement();
+        xw.writeCharacters(newLine);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writeStartElement(
+        XMLStreamWriter xw,
+        StartElement se,
+        boolean empty) throws XMLStreamException
+    {
+        QName n = se.getName();
+
+        if (empty)
+        {
+            xw.writeEmptyElement(
+                n.getPrefix(),
+                n.getLocalPart(),
+                n.getNamespaceURI());
+        }
+        else
+        {
+            xw.writeStartElement(
+                n.getPrefix(),
+                n.getLocalPart(),
+                n.getNamespaceURI());
+        }
+
+        Iterator<Attribute> ai = se.getAttributes();
+
+        while (ai.hasNext())
+        {
+            Attribute a = ai.next();
+            QName an = a.getName();
+
+            if (an.getNamespaceURI().length() == 0)
+            {
+                xw.writeAttribute(an.getLocalPart(), a.getValue());
+            }
+            else
+            {
+                xw.writeAttribute(
+                    an.getPrefix(),
+                    an.getNamespaceURI(),
+                    an.getLocalPart(),
+                    a.getValue());
+            }
+        }
+
+        Iterator<Namespace> nsi = se.getNamespaces();
+
+        while (nsi.hasNext())
+        {
+            Namespace ns = nsi.next();
+
+            if (ns.isDefaultNamespaceDeclaration())
+            {
+                xw.writeDefaultNamespace(ns.getNamespaceURI());
+            }
+            else
+            {
+                xw.writeNamespace(ns.getPrefix(), ns.getNamespaceURI());
+            }
+        }
+    }
+
+    private static void write(XMLStreamWriter xw, XMLEvent e, String newLine)
+        throws XMLStreamException
+    {
+        if (e.isEndElement())
+        {
+            xw.writeEndElement();
+        }
+        else if (e.isCharacters())
+        {
+            Characters c = e.asCharacters();
+
+            if (c.isCData())
+            {
+                xw.writeCData(c.getData());
+            }
+            else
+            {
+                xw.writeCharacters(toNewLine(c.getData(), newLine));
+            }
+        }
+        else if (e instanceof Comment)
+        {
+            xw.writeComment(toNewLine(((Comment) e).getText(), newLine));
+        }
+        else if (e.isProcessingInstruction())
+        {
+            ProcessingInstruction pi = (ProcessingInstruction) e;
+            xw.writeProcessingInstruction(pi.getTarget(), pi.getData());
+        }
+        else if (e.isEntityReference())
+        {
+            xw.writeEntityRef(((EntityReference) e).getName());
+        }
+        else if (e.isEndDocument())
+        {
+            xw.writeEndDocument();
+        }
+    }
+
+    private static void flush(
+        XMLStreamWriter xw,
+        StringBuilder heldSpace,
+        String newLine) throws XMLStreamException
+    {
+        if (heldSpace.length() > 0)
+        {
+            xw.writeCharacters(toNewLine(heldSpace.toString(), newLine));
+            heldSpace.setLength(0);
+        }
+    }
+
+    private static String toNewLine(String text, String newLine)
+    {
+        return newLine.equals("\n") ? text : text.replace("\n", newLine);
+    }
+
+    private static void skipElement(XMLEventReader xr)
+        throws XMLStreamException
+    {
+        int depth = 1;
+
+        while (depth > 0)
+        {
+            XMLEvent e = xr.nextEvent();
+
+            if (e.isStartElement())
+            {
+                ++depth;
+            }
+            else if (e.isEndElement())
+            {
+                --depth;
+            }
+        }
+    }
+
+    /**
+     * Gets the line separator used by a stream. The stream is reset to where
+     * it was before this method was called.
+     * 
+     * @param is The stream. It must support mark and reset.
+     * @return The line separator used by the stream. If the stream contains no
+     *         line breaks then the Windows line separator is returned.
+     * @throws IOException When an error occurs.
+     */
+    private static String getNewLine(InputStream is) throws IOException
+    {
+        is.mark(8192);
+
+        try
+        {
+            int prev = -1;
+
+            for (int x = 0; x < 8192; ++x)
+            {
+                int b = is.read();
+
+                if (b == -1)
+                {
+                    break;
+                }
+
+                if (b == '\n')
+                {
+                    return prev == '\r' ? "\r\n" : "\n";
+                }
+
+                prev = b;
+            }
+
+            return "\r\n";
+        }
+        finally
+        {
+            is.reset();
+        }
+    }
+
+    private static String getIndent(CharSequence whitespace)
+    {
+        String s = whitespace.toString();
+        int x = s.lastIndexOf('\n');
+
+        return x == -1 ? null : s.substring(x + 1);
+    }
+}
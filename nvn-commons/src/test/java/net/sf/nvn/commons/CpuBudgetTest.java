@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * The test class for CpuBudget.
+ * 
+ * @author akutz
+ * 
+ */
+public class CpuBudgetTest
+{
+    @Test
+    public void testFairShare() throws Exception
+    {
+        CpuBudget b = new CpuBudget(8);
+
+        CpuBudget.Lease l1 = b.acquire(4);
+        Assert.assertEquals(l1.getCount(), 4);
+        Assert.assertTrue(l1.isExclusive());
+
+        CpuBudget.Lease l2 = b.acquire(8);
+        Assert.assertEquals(l2.getCount(), 4);
+        Assert.assertFalse(l2.isExclusive());
+
+        // The processors that are returned go to the next process, which
+        // shares the budget with the process that is still running.
+        l1.release();
+        l1.release();
+        CpuBudget.Lease l3 = b.acquire(8);
+        Assert.assertEquals(l3.getCount(), 4);
+        Assert.assertEquals(b.getLeases(), 2);
+
+        l2.release();
+        l3.release();
+        Assert.assertEquals(b.getLeases(), 0);
+        Assert.assertEquals(b.acquire(8).getCount(), 8);
+    }
+
+    @Test
+    public void testMax() throws Exception
+    {
+        CpuBudget b = new CpuBudget(8);
+
+        for (int x = 0; x < 4; ++x)
+        {
+            Assert.assertEquals(b.acquire(2).getCount(), 2);
+        }
+    }
+
+    @Test(timeOut = 5000)
+    public void testWaitForProcessors() throws Exception
+    {
+        final CpuBudget b = new CpuBudget(2);
+        CpuBudget.Lease l1 = b.acquire(2);
+
+        final AtomicInteger count = new AtomicInteger();
+        Thread t = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    count.set(b.acquire(2).getCount());
+                }
+                catch (InterruptedException e)
+                {
+                    count.set(-1);
+                }
+            }
+        };
+        t.start();
+
+        // The budget is used up, so the second lease waits.
+        t.join(200);
+        Assert.assertTrue(t.isAlive());
+
+        l1.release();
+        t.join();
+        Assert.assertEquals(count.get(), 2);
+    }
+
+    @Test(timeOut = 10000)
+    public void testConcurrentLeasesStayWithinBudget() throws Exception
+    {
+        final CpuBudget b = new CpuBudget(8);
+        final AtomicInteger leased = new AtomicInteger();
+        final AtomicInteger maxLeased = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+
+        Thread[] threads = new Thread[12];
+
+        for (int x = 0; x < threads.length; ++x)
+        {
+            threads[x] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        for (int y = 0; y < 50; ++y)
+                        {
+                            CpuBudget.Lease l = b.acquire(8);
+                            int n = leased.addAndGet(l.getCount());
+
+                            while (n > maxLeased.get()
+                                && !maxLeased.compareAndSet(
+                                    maxLeased.get(),
+                                    n))
+                            {
+                                // Retry.
+                            }
+
+                            Thread.sleep(1);
+                            leased.addAndGet(-l.getCount());
+                            l.release();
+                        }
+                    }
+                    catch (InterruptedException e)
+                    {
+                        errors.incrementAndGet();
+                    }
+                }
+            };
+            threads[x].start();
+        }
+
+        for (Thread t : threads)
+        {
+            t.join();
+        }
+
+        Assert.assertEquals(errors.get(), 0);
+        Assert.assertEquals(b.getLeases(), 0);
+        Assert.assertTrue(
+            maxLeased.get() <= b.getSize(),
+            "leased " + maxLeased.get());
+    }
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons;
+
+import java.io.File;
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * The test class for Fingerprint.
+ * 
+ * @author akutz
+ * 
+ */
+public class FingerprintTest
+{
+    @Test
+    public void testValues() throws Exception
+    {
+        String v1 = new Fingerprint().add("a", "bc").getValue();
+
+        Assert.assertEquals(v1.length(), 40);
+        Assert.assertEquals(new Fingerprint().add("a", "bc").getValue(), v1);
+        Assert.assertFalse(new Fingerprint().add("ab", "c").getValue().equals(
+            v1));
+        Assert.assertFalse(new Fingerprint()
+            .add("a", (String) null)
+            .getValue()
+            .equals(new Fingerprint().add("a", "").getValue()));
+    }
+
+    @Test
+    public void testFiles() throws Exception
+    {
+        File dir = new File("target/test-fingerprint/" + System.nanoTime());
+        File f1 = new File(dir, "one/Class1.cs");
+        File f2 = new File(dir, "two/Class1.cs");
+
+        FileUtils.writeStringToFile(f1, "class Class1 {}");
+        FileUtils.writeStringToFile(f2, "class Class1 {}");
+
+        // Only the name and content of a file count, not its location.
+        Assert.assertEquals(
+            new Fingerprint().add("Class1.cs", f1).getValue(),
+            new Fingerprint().add("Class1.cs", f2).getValue());
+
+        String before = new Fingerprint().add("Class1.cs", f1).getValue();
+        FileUtils.writeStringToFile(f1, "class Class1 { }");
+        Assert.assertFalse(new Fingerprint()
+            .add("Class1.cs", f1)
+            .getValue()
+            .equals(before));
+
+        Assert.assertFalse(new Fingerprint()
+            .add("Class1.cs", new File(dir, "missing.cs"))
+            .getValue()
+            .equals(before));
+
+        FileUtils.deleteDirectory(dir);
+    }
+}
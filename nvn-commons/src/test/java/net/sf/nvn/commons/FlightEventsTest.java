@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * The test class for FlightEvents.
+ * 
+ * @author akutz
+ * 
+ */
+public class FlightEventsTest
+{
+    @Test
+    public void testRecording() throws Exception
+    {
+        // Without a recording the events are not recorded.
+        FlightEvents.Event e =
+            FlightEvents.begin(FlightEvents.FILE_COPY, "a.dll", "b.dll");
+        Assert.assertFalse(e.isRecorded());
+        e.end();
+
+        if (!FlightEvents.isAvailable())
+        {
+            return;
+        }
+
+        Class<?> rc = Class.forName("jdk.jfr.Recording");
+        Object r = rc.newInstance();
+        rc.getMethod("disable", String.class).invoke(
+            r,
+            "net.sf.nvn.ProcessWait");
+        rc.getMethod("start").invoke(r);
+
+        try
+        {
+            FlightEvents.setContext("module", "mojo");
+            e = FlightEvents.begin(FlightEvents.FILE_COPY, "a.dll", "b.dll");
+            Assert.assertTrue(e.isRecorded());
+            e.end();
+
+            // The nvn events are enabled unless a recording disables them.
+            e = FlightEvents.begin(FlightEvents.PROCESS_WAIT, "msbuild");
+            Assert.assertFalse(e.isRecorded());
+        }
+        finally
+        {
+            FlightEvents.clearContext();
+            rc.getMethod("stop").invoke(r);
+            rc.getMethod("close").invoke(r);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * The test class for Metrics.
+ * 
+ * @author akutz
+ * 
+ */
+public class MetricsTest
+{
+    @Test
+    public void testPrometheus()
+    {
+        Metrics m = new Metrics();
+
+        m.counter("nvn_processes_total", "Processes", "tool", "msbuild").inc();
+        m.counter("nvn_processes_total", "Processes", "tool", "msbuild").inc();
+        m.counter("nvn_processes_total", "Processes", "tool", "reg").inc(3);
+        m.histogram("nvn_size", "Sizes", new double[]
+        {
+            1, 10
+        }).observe(5);
+        m.histogram("nvn_size", "Sizes", new double[]
+        {
+            1, 10
+        }).observe(50);
+
+        Assert.assertEquals(m.counter(
+            "nvn_processes_total",
+            "Processes",
+            "tool",
+            "msbuild").get(), 2);
+
+        Assert.assertEquals(m.toPrometheus(), "# HELP nvn_processes_total "
+            + "Processes\n# TYPE nvn_processes_total counter\n"
+            + "nvn_processes_total{tool=\"msbuild\"} 2\n"
+            + "nvn_processes_total{tool=\"reg\"} 3\n"
+            + "# HELP nvn_size Sizes\n# TYPE nvn_size histogram\n"
+            + "nvn_size_bucket{le=\"1.0\"} 0\n"
+            + "nvn_size_bucket{le=\"10.0\"} 1\n"
+            + "nvn_size_bucket{le=\"+Inf\"} 2\n" + "nvn_size_sum 55.0\n"
+            + "nvn_size_count 2\n");
+
+        Assert.assertEquals(m.toJson(), "{\"metrics\":["
+            + "{\"name\":\"nvn_processes_total\",\"type\":\"counter\","
+            + "\"help\":\"Processes\",\"labels\":{\"tool\":\"msbuild\"},"
+            + "\"value\":2},"
+            + "{\"name\":\"nvn_processes_total\",\"type\":\"counter\","
+            + "\"help\":\"Processes\",\"labels\":{\"tool\":\"reg\"},"
+            + "\"value\":3},"
+            + "{\"name\":\"nvn_size\",\"type\":\"histogram\","
+            + "\"help\":\"Sizes\",\"labels\":{},\"count\":2,\"sum\":55.0,"
+            + "\"buckets\":[{\"le\":1.0,\"count\":0},"
+            + "{\"le\":10.0,\"count\":1}]}]}");
+    }
+
+    @Test
+    public void testTimer()
+    {
+        Metrics m = new Metrics();
+        Metrics.Timer t = m.timer("nvn_parse_seconds", "Parses");
+        t.stop(System.nanoTime());
+
+        Assert.assertEquals(t.getCount(), 1);
+        Assert.assertTrue(m.toPrometheus().contains(
+            "nvn_parse_seconds_bucket{le=\"0.005\"} 1\n"));
+
+        try
+        {
+            m.counter("nvn_parse_seconds", "Parses");
+            Assert.fail("a timer is not a counter");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // The name is taken by the timer.
+        }
+    }
+}
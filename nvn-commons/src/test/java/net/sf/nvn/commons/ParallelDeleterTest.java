@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons;
+
+import java.io.File;
+import java.util.Arrays;
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * The test class for ParallelDeleter.
+ * 
+ * @author akutz
+ * 
+ */
+public class ParallelDeleterTest
+{
+    @Test
+    public void testDelete() throws Exception
+    {
+        File root = new File("target/ParallelDeleterTest");
+        FileUtils.deleteDirectory(root);
+
+        File obj = new File(root, "obj/Debug");
+        File bin = new File(root, "bin/Debug");
+        int files = 0;
+
+        for (int x = 0; x < 10; ++x)
+        {
+            File dir = new File(obj, "dir" + x);
+
+            for (int y = 0; y < 10; ++y)
+            {
+                FileUtils.writeStringToFile(new File(dir, "file" + y), "x");
+                ++files;
+            }
+        }
+
+        File dll = new File(bin, "Foo.dll");
+        File config = new File(bin, "Foo.dll.config");
+        FileUtils.writeStringToFile(dll, "x");
+        FileUtils.writeStringToFile(config, "x");
+
+        int deleted =
+            new ParallelDeleter(4).delete(Arrays.asList(obj, dll, new File(
+                root,
+                "missing")));
+
+        // The files, the ten subdirectories, obj/Debug and Foo.dll.
+        Assert.assertEquals(deleted, files + 10 + 1 + 1);
+        Assert.assertFalse(obj.exists());
+        Assert.assertTrue(obj.getParentFile().exists());
+        Assert.assertFalse(dll.exists());
+        Assert.assertTrue(config.exists());
+
+        FileUtils.deleteDirectory(root);
+    }
+}
@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * The test class for ProcessUtils.
+ * 
+ * @author akutz
+ * 
+ */
+public class ProcessUtilsTest
+{
+    @Test
+    public void testGetToolName()
+    {
+        Assert.assertEquals(
+            ProcessUtils.getToolName("reg query \"HKLM\""),
+            "reg");
+        Assert.assertEquals(ProcessUtils.getToolName("\"C:\\Program Files\\"
+            + "MSBuild\\MSBuild.exe\" /nologo a.sln"), "msbuild");
+        Assert.assertEquals(ProcessUtils.getToolName(" /usr/bin/mono"), "mono");
+    }
+
+    @Test(timeOut = 5000)
+    public void testPipeSurvivesFailingHandler() throws Exception
+    {
+        ByteArrayOutputStream buff = new ByteArrayOutputStream();
+        final List<String> handled = new ArrayList<String>();
+
+        Thread t =
+            ProcessUtils.pipe(new ByteArrayInputStream("a\nbad\nc\n"
+                .getBytes("UTF-8")), new PrintStream(buff, true, "UTF-8"),
+                new LineHandler()
+                {
+                    @Override
+                    public void handle(String line)
+                    {
+                        if (line.equals("bad"))
+                        {
+                            throw new IllegalStateException(line);
+                        }
+
+                        handled.add(line);
+                    }
+                });
+        t.join();
+
+        Assert.assertEquals(handled.size(), 2);
+        Assert.assertEquals(handled.get(1), "c");
+        Assert.assertEquals(buff.toString("UTF-8").split("\\r?\\n").length, 3);
+    }
+}
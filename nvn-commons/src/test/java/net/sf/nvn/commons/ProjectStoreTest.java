@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * The test class for ProjectStore.
+ * 
+ * @author akutz
+ * 
+ */
+public class ProjectStoreTest
+{
+    private static final ProjectStore.Key<String> NAME =
+        new ProjectStore.Key<String>("artifact.name", String.class);
+
+    private static final ProjectStore.Key<File> BIN =
+        new ProjectStore.Key<File>("artifact.bin", File.class);
+
+    @Test
+    public void testPutGet()
+    {
+        ProjectStore s = new ProjectStore();
+        String p1 = ProjectStore.getProjectKey("net.sf.nvn", "a", "1.0");
+        String p2 = ProjectStore.getProjectKey("net.sf.nvn", "a", "2.0");
+
+        Assert.assertEquals(p1, "net.sf.nvn:a:1.0");
+        Assert.assertNull(s.get(p1, NAME));
+
+        s.put(p1, NAME, "HelloWorld");
+        s.put(p1, BIN, new File("HelloWorld.dll"));
+        s.put(p2, NAME, "HelloWorld2");
+
+        Assert.assertEquals(s.get(p1, NAME), "HelloWorld");
+        Assert.assertEquals(s.get(p1, BIN), new File("HelloWorld.dll"));
+        Assert.assertEquals(s.get(p2, NAME), "HelloWorld2");
+        Assert.assertNull(s.get(p2, BIN));
+        Assert.assertEquals(s.size(), 2);
+
+        s.remove(p1);
+        Assert.assertNull(s.get(p1, NAME));
+        Assert.assertEquals(s.size(), 1);
+
+        s.clear();
+        Assert.assertEquals(s.size(), 0);
+    }
+
+    @Test
+    public void testThreads() throws Exception
+    {
+        final ProjectStore s = new ProjectStore();
+        final String p = ProjectStore.getProjectKey("net.sf.nvn", "a", "1.0");
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger errors = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+
+        // A value stored by one thread is seen by the others.
+        for (int x = 0; x < threads.length; ++x)
+        {
+            final String name = "t" + x;
+
+            threads[x] = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+
+                        for (int y = 0; y < 1000; ++y)
+                        {
+                            s.put(p, NAME, name);
+
+                            if (s.get(p, NAME) == null)
+                            {
+                                errors.incrementAndGet();
+                            }
+                        }
+                    }
+                    catch (InterruptedException e)
+                    {
+                        errors.incrementAndGet();
+                    }
+                }
+            });
+            threads[x].start();
+        }
+
+        start.countDown();
+
+        for (Thread t : threads)
+        {
+            t.join();
+        }
+
+        Assert.assertEquals(errors.get(), 0);
+        Assert.assertEquals(s.size(), 1);
+        Assert.assertTrue(s.get(p, NAME).startsWith("t"));
+    }
+}
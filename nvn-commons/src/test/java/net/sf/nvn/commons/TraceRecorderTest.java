@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * The test class for TraceRecorder.
+ * 
+ * @author akutz
+ * 
+ */
+public class TraceRecorderTest
+{
+    @Test
+    public void testToJson() throws Exception
+    {
+        final TraceRecorder r = new TraceRecorder();
+
+        TraceRecorder.Span mojo = r.begin("app", "msbuild", "mojo");
+        TraceRecorder.Span exec =
+            r.begin("app", "msbuild", "exec", "command", "msbuild \"a.sln\"");
+        exec.end();
+        exec.end();
+        mojo.end();
+
+        // A span that does not end is not recorded.
+        r.begin("app", "install", "mojo");
+
+        Thread t = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                r.begin("lib", "clean", "mojo").end();
+            }
+        }, "worker");
+        t.start();
+        t.join();
+
+        TraceRecorder.Span.NONE.end();
+
+        Assert.assertEquals(r.size(), 3);
+
+        String json = r.toJson();
+        long tid = Thread.currentThread().getId();
+
+        Assert.assertTrue(json.startsWith("{\"displayTimeUnit\":\"ms\","
+            + "\"traceEvents\":[{\"name\":\"process_name\",\"ph\":\"M\","
+            + "\"pid\":1,\"args\":{\"name\":\"app\"}},"), json);
+        Assert.assertTrue(json.contains("{\"name\":\"thread_name\","
+            + "\"ph\":\"M\",\"pid\":2,\"tid\":" + t.getId()
+            + ",\"args\":{\"name\":\"worker\"}}"), json);
+        Assert.assertTrue(json.contains("{\"name\":\"msbuild\","
+            + "\"cat\":\"exec\",\"ph\":\"X\","), json);
+        Assert.assertTrue(json.contains(",\"pid\":1,\"tid\":" + tid
+            + ",\"args\":{\"command\":\"msbuild \\\"a.sln\\\"\"}}"), json);
+        Assert.assertFalse(json.contains("install"), json);
+        Assert.assertTrue(json.endsWith("}]}"), json);
+    }
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * The test class for VersionConstraint and VersionRange.
+ * 
+ * @author akutz
+ * 
+ */
+public class VersionConstraintTest
+{
+    @Test
+    public void testRanges() throws Exception
+    {
+        VersionRange r = VersionRange.parse("[1.2,2.0)");
+        Assert.assertTrue(r.contains(Version.parse("1.2")));
+        Assert.assertTrue(r.contains(Version.parse("1.9.9.9")));
+        Assert.assertFalse(r.contains(Version.parse("2.0.0.0")));
+        Assert.assertFalse(r.contains(Version.parse("1.1.9")));
+        Assert.assertEquals(r.toString(), "[1.2.0.0,2.0.0.0)");
+
+        r = VersionRange.parse("(,1.0]");
+        Assert.assertTrue(r.contains(Version.parse("0.1")));
+        Assert.assertTrue(r.contains(Version.parse("1.0.0.0")));
+        Assert.assertFalse(r.contains(Version.parse("1.0.0.1")));
+
+        r = VersionRange.parse("1.4.*");
+        Assert.assertTrue(r.contains(Version.parse("1.4")));
+        Assert.assertTrue(r.contains(Version.parse("1.4.7.3")));
+        Assert.assertFalse(r.contains(Version.parse("1.5")));
+        Assert.assertFalse(r.contains(Version.parse("1.3.9")));
+
+        r = VersionRange.parse("[1.5]");
+        Assert.assertTrue(r.contains(Version.parse("1.5.0.0")));
+        Assert.assertFalse(r.contains(Version.parse("1.5.0.1")));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testBadRange()
+    {
+        VersionRange.parse("[1.0,2.0");
+    }
+
+    @Test
+    public void testConstraints() throws Exception
+    {
+        VersionConstraint c = VersionConstraint.parse("[1.0,1.5],[2.0,)");
+        Assert.assertEquals(c.getRanges().length, 2);
+        Assert.assertNull(c.getPrefix());
+        Assert.assertTrue(c.matches(Version.parse("1.5")));
+        Assert.assertFalse(c.matches(Version.parse("1.6")));
+        Assert.assertTrue(c.matches(Version.parse("3.0-SNAPSHOT")));
+
+        c = VersionConstraint.parse("PM-1.4.*-SNAPSHOT");
+        Assert.assertEquals(c.getPrefix(), "PM-");
+        Assert.assertEquals(c.getSuffix(), "-SNAPSHOT");
+        Assert.assertTrue(c.matches(Version.parse("PM-1.4.2-SNAPSHOT")));
+        Assert.assertFalse(c.matches(Version.parse("1.4.2-SNAPSHOT")));
+        Assert.assertFalse(c.matches(Version.parse("PM-1.4.2")));
+
+        c = VersionConstraint.parse("2.1-rc1");
+        Assert.assertTrue(c.matches(Version.parse("2.1.0.0-rc1")));
+        Assert.assertFalse(c.matches(Version.parse("2.1.0.0-rc2")));
+    }
+
+    @Test
+    public void testSelectBest() throws Exception
+    {
+        String[] s =
+        {
+            "1.0", "1.2", "1.4", "1.4.1-SNAPSHOT", "1.4.1", "1.9", "2.0",
+            "2.0.1", "3.0-SNAPSHOT"
+        };
+
+        Version[] sorted = new Version[s.length];
+
+        for (int x = 0; x < s.length; ++x)
+        {
+            sorted[x] = Version.parse(s[x]);
+        }
+
+        Assert.assertEquals(select("[1.2,2.0)", sorted), "1.9");
+        Assert.assertEquals(select("1.4.*", sorted), "1.4.1");
+        Assert.assertEquals(select("1.4.*-SNAPSHOT", sorted), "1.4.1-SNAPSHOT");
+        Assert.assertEquals(select("[1.0,1.3),[2.0,2.0.1)", sorted), "2.0");
+        Assert.assertEquals(select("[1.0,)", sorted), "3.0-SNAPSHOT");
+        Assert.assertEquals(select("(,1.0)", sorted), null);
+        Assert.assertEquals(
+            VersionConstraint.parse("[1.0,1.5]").findBest(sorted),
+            4);
+    }
+
+    private static String select(String constraint, Version[] sorted)
+    {
+        Version v = VersionConstraint.parse(constraint).selectBest(sorted);
+        return v == null ? null : v.toStringRaw();
+    }
+}
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * The test class for VersionSorter.
+ * 
+ * @author akutz
+ * 
+ */
+public class VersionSorterTest
+{
+    @Test
+    public void testSort() throws Exception
+    {
+        String[] s =
+        {
+            "2.0", "1.0", "1.0-SNAPSHOT", "PM-1.0", "1.0-alpha", "10.0",
+            "1.2.3.4", "1.2.3.300", "1.10"
+        };
+
+        Version[] versions = new Version[s.length];
+
+        for (int x = 0; x < s.length; ++x)
+        {
+            versions[x] = Version.parse(s[x]);
+        }
+
+        Version[] sorted = VersionSorter.sort(versions);
+        String[] raw = new String[sorted.length];
+
+        for (int x = 0; x < sorted.length; ++x)
+        {
+            raw[x] = sorted[x].toStringRaw();
+        }
+
+        Assert.assertEquals(raw, new String[]
+        {
+            "1.0-SNAPSHOT", "1.0-alpha", "1.0", "PM-1.0", "1.2.3.4",
+            "1.2.3.300", "1.10", "2.0", "10.0"
+        });
+    }
+
+    @Test
+    public void testSortRandom() throws Exception
+    {
+        Random r = new Random(7);
+        String[] suffixes =
+        {
+            "", "", "-SNAPSHOT", "-rc1"
+        };
+
+        Version[] versions = new Version[5000];
+
+        for (int x = 0; x < versions.length; ++x)
+        {
+            versions[x] =
+                Version.parse(String.format(
+                    "%s%s.%s.%s.%s%s",
+                    r.nextInt(8) == 0 ? "v" : "",
+                    r.nextInt(4),
+                    r.nextInt(20),
+                    r.nextInt(1000),
+                    r.nextInt(70000),
+                    suffixes[r.nextInt(suffixes.length)]));
+        }
+
+        Version[] expected = versions.clone();
+        Arrays.sort(expected, new Comparator<Version>()
+        {
+            @Override
+            public int compare(Version o1, Version o2)
+            {
+                return VersionSorter.compare(o1, o2);
+            }
+        });
+
+        Version[] sorted = VersionSorter.sort(versions);
+
+        for (int x = 0; x < sorted.length; ++x)
+        {
+            Assert.assertEquals(
+                VersionSorter.compare(sorted[x], expected[x]),
+                0,
+                sorted[x].toStringRaw());
+        }
+    }
+}
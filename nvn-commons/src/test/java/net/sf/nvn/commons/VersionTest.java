@@ -108,6 +108,75 @@ public class VersionTest
         Assert.assertEquals(v6.toString(), "0.1013.1.3");
     }
 
+    @Test
+    public void testLeadingZeros() throws Exception
+    {
+        Version v = Version.parse("v01.002.0003.4-rc1");
+        Assert.assertEquals(v.getPrefix(), "v");
+        Assert.assertEquals(v.getSuffix(), "-rc1");
+        Assert.assertEquals(v.getMinor(), "002");
+        Assert.assertEquals(v.getMinorAsInt(), 2);
+        Assert.assertEquals(v.toString(), "01.002.0003.4");
+        Assert.assertEquals(
+            v.toStringWithPrefixAndSuffix(3),
+            "v01.002.0003-rc1");
+
+        Version v2 = Version.parse("1.2.3.4");
+        Assert.assertEquals(v, v2);
+        Assert.assertEquals(v.hashCode(), v2.hashCode());
+
+        v.addBuild(-3);
+        Assert.assertEquals(v.getBuild(), "0000");
+        v.addRevision(96);
+        Assert.assertEquals(v.getRevision(), "100");
+        v.addRevision(-95);
+        Assert.assertEquals(v.getRevision(), "005");
+        Assert.assertEquals(v.getNumberOfComponents(), 4);
+
+        Version v3 = (Version) v.clone();
+        v3.setMajor("7");
+        Assert.assertEquals(v.toString(), "01.002.0000.005");
+        Assert.assertEquals(
+            v3.toStringWithPrefixAndSuffix(),
+            "v7.002.0000.005-rc1");
+    }
+
+    @Test
+    public void testValueOf() throws Exception
+    {
+        Version v = Version.valueOf("1.0.0.0-SNAPSHOT");
+        Assert.assertTrue(v.isImmutable());
+        Assert.assertSame(Version.valueOf("1.0.0.0-SNAPSHOT"), v);
+        Assert.assertEquals(v.getSuffix(), "-SNAPSHOT");
+
+        try
+        {
+            v.addRevision(1);
+            Assert.fail("An immutable version was modified");
+        }
+        catch (UnsupportedOperationException e)
+        {
+            Assert.assertEquals(v.toString(), "1.0.0.0");
+        }
+
+        Version m = v.toMutable();
+        Assert.assertFalse(m.isImmutable());
+        m.addRevision(1);
+        Assert.assertEquals(
+            m.toStringWithPrefixAndSuffix(),
+            "1.0.0.1-SNAPSHOT");
+        Assert.assertEquals(v.toString(), "1.0.0.0");
+        Assert.assertEquals(
+            Version.valueOf("1.0.0.0-SNAPSHOT").toString(),
+            "1.0.0.0");
+    }
+
+    @Test(expectedExceptions = Exception.class)
+    public void testParseTooLarge() throws Exception
+    {
+        Version.parse("1.0.2147483648");
+    }
+
     private Version testParseVersion4(String toParse) throws Exception
     {
         Version v = Version.parse(toParse);
@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.IOUtils;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A minimal in-memory build cache server for testing HttpOutputCache. Like a
+ * plain WebDAV or object store, it stores the bodies of PUT requests as opaque
+ * bytes and returns them to GET and HEAD requests without any of the PUT
+ * request's headers.
+ * 
+ * @author akutz
+ * 
+ */
+class CacheServer implements HttpHandler
+{
+    private final HttpServer server;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    /**
+     * The stored resources keyed by their paths.
+     */
+    final Map<String, byte[]> resources =
+        new ConcurrentHashMap<String, byte[]>();
+
+    /**
+     * The addresses of the connections that have made requests.
+     */
+    final Set<String> connections =
+        Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * The number of requests that have been handled.
+     */
+    final AtomicInteger requests = new AtomicInteger();
+
+    /**
+     * The number of requests that are being handled.
+     */
+    final AtomicInteger active = new AtomicInteger();
+
+    /**
+     * The largest number of requests that were handled at the same time.
+     */
+    final AtomicInteger maxActive = new AtomicInteger();
+
+    /**
+     * The time in milliseconds the server waits before responding.
+     */
+    volatile long delay;
+
+    /**
+     * The time in milliseconds the server waits between the 1 KB chunks of a
+     * response's body.
+     */
+    volatile long chunkDelay;
+
+    CacheServer() throws IOException
+    {
+        this.server =
+            HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/cache/", this);
+        this.server.setExecutor(this.executor);
+        this.server.start();
+    }
+
+    URL getUrl() throws IOException
+    {
+        return new URL(String.format("http://127.0.0.1:%s/cache/", this.server
+            .getAddress()
+            .getPort()));
+    }
+
+    void stop()
+    {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException
+    {
+        this.requests.incrementAndGet();
+        this.connections.add(exchange.getRemoteAddress().toString());
+
+        int n = this.active.incrementAndGet();
+
+        while (n > this.maxActive.get()
+            && !this.maxActive.compareAndSet(this.maxActive.get(), n))
+        {
+            // Retry.
+        }
+
+        try
+        {
+            if (this.delay > 0)
+            {
+                Thread.sleep(this.delay);
+            }
+
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+
+            // The request body is always read, otherwise the server closes
+            // the connection instead of keeping it alive.
+            InputStream in = exchange.getRequestBody();
+            ByteArrayOutputStream request = new ByteArrayOutputStream();
+            IOUtils.copy(in, request);
+            in.close();
+
+            if (method.equals("PUT"))
+            {
+                this.resources.put(path, request.toByteArray());
+                exchange.sendResponseHeaders(201, -1);
+                return;
+            }
+
+            byte[] body = this.resources.get(path);
+
+            if (body == null)
+            {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            if (method.equals("HEAD"))
+            {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream out = exchange.getResponseBody();
+
+            for (int x = 0; x < body.length; x += 1024)
+            {
+                if (x > 0 && this.chunkDelay > 0)
+                {
+                    Thread.sleep(this.chunkDelay);
+                }
+
+                out.write(body, x, Math.min(1024, body.length - x));
+                out.flush();
+            }
+
+            out.close();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            this.active.decrementAndGet();
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * The test class for HttpOutputCache.
+ * 
+ * @author akutz
+ * 
+ */
+public class HttpOutputCacheTest
+{
+    private File testDir;
+
+    private CacheServer server;
+
+    @BeforeClass
+    public void startServer() throws Exception
+    {
+        this.testDir =
+            new File("target/test-http-cache/" + System.currentTimeMillis());
+        this.server = new CacheServer();
+    }
+
+    @AfterClass
+    public void stopServer() throws Exception
+    {
+        this.server.stop();
+        FileUtils.deleteDirectory(this.testDir);
+    }
+
+    @BeforeMethod
+    public void resetServer()
+    {
+        this.server.delay = 0;
+        this.server.chunkDelay = 0;
+        this.server.resources.clear();
+        this.server.connections.clear();
+        this.server.requests.set(0);
+        this.server.maxActive.set(0);
+    }
+
+    @Test
+    public void testStoreAndRestore() throws Exception
+    {
+        HttpOutputCache cache = new HttpOutputCache(this.server.getUrl(), 5000);
+
+        Map<String, File> built = outputs("built");
+        FileUtils.writeStringToFile(built.get("bin"), "binary");
+        FileUtils.writeStringToFile(built.get("pdb"), "symbols");
+
+        Assert.assertFalse(cache.restore("a1b2", built));
+        cache.store("a1b2", built);
+
+        // The outputs are stored as gzip files and the manifest is not.
+        Assert.assertEquals(
+            this.server.resources.get("/cache/a1b2/bin")[0],
+            (byte) 0x1f);
+        Assert.assertEquals(
+            this.server.resources.get("/cache/a1b2/manifest")[0],
+            (byte) '#');
+        Assert.assertNull(this.server.resources.get("/cache/a1b2/doc"));
+
+        Map<String, File> restored = outputs("restored");
+        Assert.assertTrue(cache.restore("a1b2", restored));
+        Assert.assertEquals(
+            FileUtils.readFileToString(restored.get("bin")),
+            "binary");
+        Assert.assertEquals(
+            FileUtils.readFileToString(restored.get("pdb")),
+            "symbols");
+        Assert.assertFalse(restored.get("doc").exists());
+
+        // Storing an existing entry uploads nothing.
+        int requests = this.server.requests.get();
+        cache.store("a1b2", built);
+        Assert.assertEquals(this.server.requests.get(), requests + 1);
+    }
+
+    @Test
+    public void testChecksum() throws Exception
+    {
+        HttpOutputCache cache = new HttpOutputCache(this.server.getUrl(), 5000);
+
+        Map<String, File> built = outputs("checksum");
+        FileUtils.writeStringToFile(built.get("bin"), "binary");
+        cache.store("c3d4", built);
+
+        this.server.resources.put("/cache/c3d4/bin", gzip("tampered"));
+        FileUtils.writeStringToFile(built.get("bin"), "local");
+
+        try
+        {
+            cache.restore("c3d4", built);
+            Assert.fail("The checksum was not verified");
+        }
+        catch (IOException e)
+        {
+            Assert.assertTrue(e.getMessage().startsWith("Checksum mismatch"));
+        }
+
+        Assert.assertEquals(
+            FileUtils.readFileToString(built.get("bin")),
+            "local");
+        Assert.assertFalse(LocalOutputCache
+            .getTempFile(built.get("bin"))
+            .exists());
+    }
+
+    @Test
+    public void testLatencyBudget() throws Exception
+    {
+        HttpOutputCache cache = new HttpOutputCache(this.server.getUrl(), 200);
+
+        Map<String, File> built = outputs("latency");
+        FileUtils.writeStringToFile(built.get("bin"), "binary");
+        cache.store("e5f6", built);
+
+        this.server.delay = 2000;
+        long start = System.currentTimeMillis();
+
+        try
+        {
+            cache.restore("e5f6", built);
+            Assert.fail("The latency budget was not enforced");
+        }
+        catch (IOException e)
+        {
+            // The build falls back to building the project locally.
+        }
+
+        Assert.assertTrue(System.currentTimeMillis() - start < 1500);
+    }
+
+    @Test
+    public void testSlowDownloadIsAbandoned() throws Exception
+    {
+        ThreadPoolExecutor executor =
+            (ThreadPoolExecutor) Executors.newCachedThreadPool();
+        HttpOutputCache cache =
+            new HttpOutputCache(this.server.getUrl(), 500, 5000, executor);
+
+        // Random content does not compress, so the stored output is 64 KB.
+        byte[] content = new byte[64 * 1024];
+        new Random(1).nextBytes(content);
+
+        Map<String, File> built = outputs("slow");
+        FileUtils.writeByteArrayToFile(built.get("bin"), content);
+        cache.store("f1a2", built);
+
+        // Each chunk arrives well within the read timeout, but the whole
+        // output would take several seconds.
+        this.server.chunkDelay = 50;
+        Map<String, File> restored = outputs("slow2");
+        long start = System.currentTimeMillis();
+
+        try
+        {
+            cache.restore("f1a2", restored);
+            Assert.fail("The latency budget was not enforced");
+        }
+        catch (IOException e)
+        {
+            // The build falls back to building the project locally.
+        }
+
+        Assert.assertTrue(System.currentTimeMillis() - start < 1500);
+
+        // The abandoned download stops and removes its temporary file.
+        while (executor.getActiveCount() > 0
+            && System.currentTimeMillis() - start < 2000)
+        {
+            Thread.sleep(10);
+        }
+
+        executor.shutdown();
+        Assert.assertEquals(executor.getActiveCount(), 0);
+        Assert.assertFalse(LocalOutputCache
+            .getTempFile(restored.get("bin"))
+            .exists());
+        Assert.assertFalse(restored.get("bin").exists());
+    }
+
+    @Test
+    public void testParallelDownloadsAndConnectionReuse() throws Exception
+    {
+        HttpOutputCache cache = new HttpOutputCache(this.server.getUrl(), 5000);
+
+        Map<String, File> built = outputs("parallel");
+        FileUtils.writeStringToFile(built.get("bin"), "binary");
+        FileUtils.writeStringToFile(built.get("pdb"), "symbols");
+        FileUtils.writeStringToFile(built.get("doc"), "documentation");
+        cache.store("a7b8", built);
+
+        this.server.delay = 200;
+        this.server.maxActive.set(0);
+        Assert.assertTrue(cache.restore("a7b8", outputs("parallel2")));
+        Assert.assertTrue(this.server.maxActive.get() > 1);
+
+        this.server.delay = 0;
+        this.server.connections.clear();
+        this.server.requests.set(0);
+
+        for (int x = 0; x < 5; ++x)
+        {
+            Assert.assertTrue(cache.restore("a7b8", outputs("parallel3")));
+        }
+
+        Assert.assertEquals(this.server.requests.get(), 20);
+        Assert.assertTrue(
+            this.server.connections.size() < 20,
+            "connections: " + this.server.connections.size());
+    }
+
+    @Test
+    public void testUploadTimeout() throws Exception
+    {
+        HttpOutputCache cache =
+            new HttpOutputCache(this.server.getUrl(), 5000, 200);
+
+        Map<String, File> built = outputs("upload");
+        FileUtils.writeStringToFile(built.get("bin"), "binary");
+
+        this.server.delay = 2000;
+        long start = System.currentTimeMillis();
+
+        try
+        {
+            cache.store("c9d0", built);
+            Assert.fail("The upload timeout was not enforced");
+        }
+        catch (IOException e)
+        {
+            // The entry is abandoned.
+        }
+
+        Assert.assertTrue(System.currentTimeMillis() - start < 1500);
+        Assert.assertNull(this.server.resources.get("/cache/c9d0/manifest"));
+    }
+
+    private static byte[] gzip(String content) throws IOException
+    {
+        ByteArrayOutputStream buff = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(buff);
+        out.write(content.getBytes("UTF-8"));
+        out.close();
+        return buff.toByteArray();
+    }
+
+    private Map<String, File> outputs(String dirName)
+    {
+        File dir = new File(this.testDir, dirName);
+        Map<String, File> outputs = new HashMap<String, File>();
+        outputs.put("bin", new File(dir, "MyProject.dll"));
+        outputs.put("pdb", new File(dir, "MyProject.pdb"));
+        outputs.put("doc", new File(dir, "MyProject.XML"));
+        return outputs;
+    }
+}
@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons.cache;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * The test class for LocalOutputCache.
+ * 
+ * @author akutz
+ * 
+ */
+public class LocalOutputCacheTest
+{
+    private File testDir;
+
+    @BeforeClass
+    public void createTestDir() throws Exception
+    {
+        this.testDir =
+            new File("target/test-cache/" + System.currentTimeMillis());
+        this.testDir.mkdirs();
+    }
+
+    @AfterClass
+    public void deleteTestDir() throws Exception
+    {
+        FileUtils.deleteDirectory(this.testDir);
+    }
+
+    @Test
+    public void testStoreAndRestore() throws Exception
+    {
+        LocalOutputCache cache =
+            new LocalOutputCache(new File(this.testDir, "cache1"), 1 << 20);
+
+        Map<String, File> built = outputs(new File(this.testDir, "built"));
+        FileUtils.writeStringToFile(built.get("bin"), "binary");
+        FileUtils.writeStringToFile(built.get("pdb"), "symbols");
+
+        Assert.assertFalse(cache.restore("a1b2", built));
+        cache.store("a1b2", built);
+
+        Map<String, File> restored =
+            outputs(new File(this.testDir, "restored"));
+        Assert.assertTrue(cache.restore("a1b2", restored));
+        Assert.assertEquals(
+            FileUtils.readFileToString(restored.get("bin")),
+            "binary");
+        Assert.assertEquals(
+            FileUtils.readFileToString(restored.get("pdb")),
+            "symbols");
+        Assert.assertFalse(restored.get("doc").exists());
+        Assert.assertFalse(LocalOutputCache
+            .getTempFile(restored.get("bin"))
+            .exists());
+
+        Assert.assertFalse(cache.restore("c3d4", restored));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidKey() throws Exception
+    {
+        LocalOutputCache cache =
+            new LocalOutputCache(new File(this.testDir, "cache2"), 1 << 20);
+        cache.restore("..", outputs(this.testDir));
+    }
+
+    @Test
+    public void testEviction() throws Exception
+    {
+        LocalOutputCache cache =
+            new LocalOutputCache(new File(this.testDir, "cache3"), 3500);
+
+        Map<String, File> built = outputs(new File(this.testDir, "evict"));
+        long time = System.currentTimeMillis() - 100000;
+
+        for (String key : new String[]
+        {
+            "k1", "k2", "k3"
+        })
+        {
+            FileUtils.writeStringToFile(built.get("bin"), key
+                + new String(new char[1000]));
+            cache.store(key, built);
+
+            // Entries are timestamped to the second on some file systems.
+            new File(cache.getDirectory(), key + "/" + key)
+                .setLastModified(time += 10000);
+        }
+
+        // Restoring k1 makes k2 the least recently used entry.
+        Assert.assertTrue(cache.restore("k1", built));
+        new File(cache.getDirectory(), "k1/k1").setLastModified(time += 10000);
+
+        FileUtils.writeStringToFile(built.get("bin"), "k4"
+            + new String(new char[1000]));
+        cache.store("k4", built);
+
+        Assert.assertTrue(cache.restore("k1", built));
+        Assert.assertFalse(cache.restore("k2", built));
+        Assert.assertTrue(cache.restore("k3", built));
+        Assert.assertTrue(cache.restore("k4", built));
+    }
+
+    @Test
+    public void testIndex() throws Exception
+    {
+        LocalOutputCache cache =
+            new LocalOutputCache(new File(this.testDir, "cache5"), 1 << 20);
+        File index = new File(cache.getDirectory(), ".index");
+
+        Map<String, File> built = outputs(new File(this.testDir, "index"));
+        FileUtils.writeStringToFile(built.get("bin"), "binary");
+        FileUtils.writeStringToFile(built.get("pdb"), "symbols");
+
+        cache.store("g7h8", built);
+        cache.store("g7h8", built);
+        Assert.assertEquals(FileUtils.readFileToString(index), "g7h8 13\n");
+
+        // A missing index is rebuilt from the entries.
+        index.delete();
+        cache.store("i9j0", built);
+        Assert.assertEquals(
+            new TreeSet<Object>(FileUtils.readLines(index)),
+            new TreeSet<Object>(Arrays.asList("g7h8 13", "i9j0 13")));
+    }
+
+    @Test
+    public void testConcurrentStores() throws Exception
+    {
+        final LocalOutputCache cache =
+            new LocalOutputCache(new File(this.testDir, "cache4"), 1 << 20);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+
+        for (int x = 0; x < 32; ++x)
+        {
+            final Map<String, File> built =
+                outputs(new File(this.testDir, "concurrent/" + x));
+            FileUtils.writeStringToFile(built.get("bin"), "same");
+
+            results.add(executor.submit(new Callable<Boolean>()
+            {
+                @Override
+                public Boolean call() throws Exception
+                {
+                    cache.store("e5f6", built);
+                    return cache.restore("e5f6", built);
+                }
+            }));
+        }
+
+        for (Future<Boolean> f : results)
+        {
+            Assert.assertTrue(f.get());
+        }
+
+        executor.shutdown();
+
+        Assert.assertEquals(
+            new File(cache.getDirectory(), "e5/e5f6").list().length,
+            1);
+        Assert.assertEquals(
+            new File(cache.getDirectory(), ".tmp").list().length,
+            0);
+    }
+
+    private static Map<String, File> outputs(File dir)
+    {
+        Map<String, File> outputs = new HashMap<String, File>();
+        outputs.put("bin", new File(dir, "MyProject.dll"));
+        outputs.put("pdb", new File(dir, "MyProject.pdb"));
+        outputs.put("doc", new File(dir, "MyProject.XML"));
+        return outputs;
+    }
+}
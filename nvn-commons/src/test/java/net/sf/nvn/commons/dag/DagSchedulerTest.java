@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons.dag;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * The test class for DagScheduler.
+ * 
+ * @author akutz
+ * 
+ */
+public class DagSchedulerTest
+{
+    @Test
+    public void testCriticalPathFirst() throws Exception
+    {
+        // Common <- Core <- App is the longest chain, so Common runs before
+        // Docs and Tools even though they were added first.
+        DagScheduler<String> s = new DagScheduler<String>();
+        s.add("Docs", 2);
+        s.add("Tools", 3);
+        s.add("Common", 1);
+        s.add("Core", 5);
+        s.add("App", 5);
+        s.addDependency("Core", "Common");
+        s.addDependency("App", "Core");
+        s.addDependency("Tools", "Common");
+
+        Assert.assertEquals(s.getCriticalPaths().get("Common").longValue(), 11);
+        Assert.assertEquals(s.getCriticalPaths().get("Docs").longValue(), 2);
+
+        final List<String> ran =
+            Collections.synchronizedList(new ArrayList<String>());
+
+        s.run(1, new DagScheduler.Task<String>()
+        {
+            @Override
+            public void run(String node)
+            {
+                ran.add(node);
+            }
+        });
+
+        Assert.assertEquals(ran.toString(), "[Common, Core, App, Tools, Docs]");
+    }
+
+    @Test
+    public void testIndependentNodesRunConcurrently() throws Exception
+    {
+        DagScheduler<String> s = new DagScheduler<String>();
+        s.add("A", 1);
+        s.add("B", 1);
+        s.add("C", 1);
+        s.addDependency("C", "A");
+        s.addDependency("C", "B");
+
+        // A and B each wait for the other to start, which only succeeds when
+        // they run at the same time.
+        final CountDownLatch started = new CountDownLatch(2);
+        final List<String> ran =
+            Collections.synchronizedList(new ArrayList<String>());
+
+        s.run(2, new DagScheduler.Task<String>()
+        {
+            @Override
+            public void run(String node) throws Exception
+            {
+                if (!node.equals("C"))
+                {
+                    started.countDown();
+                    Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+                }
+
+                ran.add(node);
+            }
+        });
+
+        Assert.assertEquals(ran.size(), 3);
+        Assert.assertEquals(ran.get(2), "C");
+    }
+
+    @Test(timeOut = 5000)
+    public void testNoThreads() throws Exception
+    {
+        DagScheduler<String> s = new DagScheduler<String>();
+        s.add("A", 1);
+        s.add("B", 1);
+        s.addDependency("B", "A");
+
+        final List<String> ran =
+            Collections.synchronizedList(new ArrayList<String>());
+
+        // A thread count less than one runs the nodes one at a time rather
+        // than not at all.
+        s.run(0, new DagScheduler.Task<String>()
+        {
+            @Override
+            public void run(String node) throws Exception
+            {
+                ran.add(node);
+            }
+        });
+
+        Assert.assertEquals(ran.toString(), "[A, B]");
+    }
+
+    @Test
+    public void testFailureSkipsDependents() throws Exception
+    {
+        DagScheduler<String> s = new DagScheduler<String>();
+        s.add("A", 1);
+        s.add("B", 1);
+        s.add("C", 1);
+        s.addDependency("B", "A");
+        s.addDependency("C", "B");
+
+        final List<String> ran =
+            Collections.synchronizedList(new ArrayList<String>());
+
+        try
+        {
+            s.run(4, new DagScheduler.Task<String>()
+            {
+                @Override
+                public void run(String node) throws Exception
+                {
+                    ran.add(node);
+
+                    if (node.equals("B"))
+                    {
+                        throw new IllegalStateException("B failed");
+                    }
+                }
+            });
+
+            Assert.fail("expected an ExecutionException");
+        }
+        catch (ExecutionException e)
+        {
+            Assert.assertEquals(e.getCause().getMessage(), "B failed");
+        }
+
+        Assert.assertEquals(ran.toString(), "[A, B]");
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testCycle() throws Exception
+    {
+        DagScheduler<String> s = new DagScheduler<String>();
+        s.add("A", 1);
+        s.add("B", 1);
+        s.addDependency("A", "B");
+        s.addDependency("B", "A");
+        s.getTopologicalOrder();
+    }
+}
@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons.msbuild;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * The test class for Condition and Expression.
+ * 
+ * @author akutz
+ * 
+ */
+public class ConditionTest
+{
+    private static EvaluationContext newContext()
+    {
+        EvaluationContext ctx =
+            new EvaluationContext(new File("src/test/resources"));
+        ctx.setGlobal("Configuration", "Debug");
+        ctx.setGlobal("Platform", "AnyCPU");
+        ctx.set("Count", "4");
+        ctx.set("Suffix", "Debug");
+        ctx.set("OutDir_Debug", "bin\\Debug\\");
+        return ctx;
+    }
+
+    @Test
+    public void testComparison() throws Exception
+    {
+        EvaluationContext ctx = newContext();
+
+        Assert.assertTrue(Condition.compile(
+            " '$(Configuration)|$(Platform)' == 'Debug|AnyCPU' ").evaluate(ctx));
+        Assert.assertTrue(Condition.compile(
+            "'$(configuration)|$(platform)'=='debug|anycpu'").evaluate(ctx));
+        Assert.assertFalse(Condition.compile(
+            "'$(Configuration)|$(Platform)' == 'Release|AnyCPU'").evaluate(ctx));
+        Assert.assertTrue(Condition.compile("'$(Configuration)' != ''")
+            .evaluate(ctx));
+        Assert.assertTrue(Condition.compile("'$(Undefined)' == ''").evaluate(
+            ctx));
+        Assert.assertTrue(Condition.compile("$(Count) > 3").evaluate(ctx));
+        Assert.assertTrue(Condition.compile("$(Count) <= 0x04").evaluate(ctx));
+        Assert.assertFalse(Condition.compile("'$(Configuration)' > 3")
+            .evaluate(ctx));
+    }
+
+    @Test
+    public void testLogicalOperators() throws Exception
+    {
+        EvaluationContext ctx = newContext();
+
+        Assert.assertTrue(Condition.compile(
+            "'$(Configuration)' == 'Debug' and '$(Platform)' == 'AnyCPU'")
+            .evaluate(ctx));
+        Assert.assertFalse(Condition.compile(
+            "'$(Configuration)' == 'Debug' AND '$(Platform)' == 'x86'")
+            .evaluate(ctx));
+        Assert.assertTrue(Condition.compile(
+            "'$(Configuration)' == 'Release' Or '$(Platform)' == 'AnyCPU'")
+            .evaluate(ctx));
+        Assert.assertTrue(Condition.compile(
+            "!('$(Configuration)' == 'Release' or false)").evaluate(ctx));
+        Assert.assertTrue(Condition.compile("true").evaluate(ctx));
+        Assert.assertFalse(Condition.compile("!true").evaluate(ctx));
+    }
+
+    @Test
+    public void testFunctions() throws Exception
+    {
+        EvaluationContext ctx = newContext();
+
+        Assert.assertTrue(Condition.compile("Exists('MyProject.csproj')")
+            .evaluate(ctx));
+        Assert.assertFalse(Condition.compile("exists('NoSuchProject.csproj')")
+            .evaluate(ctx));
+        Assert.assertTrue(Condition.compile(
+            "HasTrailingSlash('$(OutDir_Debug)')").evaluate(ctx));
+    }
+
+    @Test
+    public void testUnknownFunction() throws Exception
+    {
+        EvaluationContext ctx = newContext();
+
+        Condition c =
+            Condition.compile("'$(Configuration)' == 'Debug' and "
+                + "IsOSPlatform('Windows', 'a(b)') or !Foo()");
+        Assert.assertTrue(c.evaluate(ctx));
+
+        Set<String> names = new TreeSet<String>();
+        c.collectUnknownFunctions(names);
+        Assert.assertEquals(names, new TreeSet<String>(Arrays.asList(
+            "Foo",
+            "IsOSPlatform")));
+
+        Assert.assertFalse(Condition.compile("IsOSPlatform('Windows')")
+            .evaluate(ctx));
+    }
+
+    @Test
+    public void testCompileIsCached() throws Exception
+    {
+        String text = "'$(Configuration)' == 'Debug'";
+        Assert.assertSame(Condition.compile(text), Condition.compile(text));
+        Assert.assertSame(Condition.TRUE, Condition.compile(null));
+        Assert.assertSame(Condition.TRUE, Condition.compile("  "));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidCondition() throws Exception
+    {
+        Condition.compile("'$(Configuration)' == 'Debug' and");
+    }
+
+    @Test
+    public void testExpression() throws Exception
+    {
+        EvaluationContext ctx = newContext();
+
+        Assert.assertEquals(Expression.compile(
+            "$(OutDir_$(Suffix))MyProject.dll").evaluate(ctx),
+            "bin\\Debug\\MyProject.dll");
+        Assert.assertEquals(Expression.compile("$(Undefined)x").evaluate(ctx),
+            "x");
+        Assert.assertEquals(Expression.compile("$(Path)").evaluate(ctx), System
+            .getenv("Path") == null ? "" : System.getenv("Path"));
+        Assert.assertEquals(Expression.compile("$([System.IO.Path]::x)")
+            .evaluate(ctx), "$([System.IO.Path]::x)");
+        Assert.assertEquals(Expression.compile(
+            "$([System.IO.Path]::Combine($(Suffix), 'b'))").evaluate(ctx),
+            "$([System.IO.Path]::Combine($(Suffix), 'b'))");
+        Assert.assertEquals(Expression.compile(
+            "$(Suffix.Replace('$(Suffix)', 'x'))$(Suffix)").evaluate(ctx),
+            "$(Suffix.Replace('$(Suffix)', 'x'))Debug");
+        Assert.assertTrue(Expression.compile("bin\\Debug").isConstant());
+        Assert.assertFalse(Expression.compile("$(Count)").isConstant());
+    }
+
+    @Test
+    public void testGlobalPropertiesCannotBeRedefined() throws Exception
+    {
+        EvaluationContext ctx = newContext();
+        ctx.set("Configuration", "Release");
+        Assert.assertEquals(ctx.get("Configuration"), "Debug");
+    }
+
+    @Test
+    public void testMatch() throws Exception
+    {
+        Expression e = Expression.compile("$(Configuration)|$(Platform)");
+
+        Map<String, String> m = e.match("Debug|AnyCPU");
+        Assert.assertEquals(m.get("configuration"), "Debug");
+        Assert.assertEquals(m.get("platform"), "AnyCPU");
+
+        Assert.assertNull(e.match("Debug"));
+        Assert.assertNull(Expression.compile("$(A)$(B)").match("ab"));
+
+        List<Map<String, String>> bindings =
+            new ArrayList<Map<String, String>>();
+        Condition.compile(
+            " '$(Configuration)|$(Platform)' == 'Release|x64' "
+                + "and '$(Configuration)' != ''").collectBindings(bindings);
+        Assert.assertEquals(bindings.size(), 2);
+        Assert.assertEquals(bindings.get(0).get("platform"), "x64");
+        Assert.assertEquals(bindings.get(1).get("configuration"), "");
+    }
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons.msbuild;
+
+import java.util.List;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * The test class for DiagnosticCollector.
+ * 
+ * @author akutz
+ * 
+ */
+public class DiagnosticCollectorTest
+{
+    @Test
+    public void testParse()
+    {
+        Diagnostic d =
+            DiagnosticCollector.parse("  1>C:\\src\\Foo\\Program.cs(10,17): "
+                + "warning CS0168: The variable 'e' is declared but never "
+                + "used [C:\\src\\Foo\\Foo.csproj]");
+        Assert.assertFalse(d.isError());
+        Assert.assertEquals(d.getCode(), "CS0168");
+        Assert.assertEquals(d.getFile(), "C:\\src\\Foo\\Program.cs");
+        Assert.assertEquals(d.getLine(), 10);
+        Assert.assertEquals(d.getColumn(), 17);
+        Assert.assertEquals(
+            d.getMessage(),
+            "The variable 'e' is declared but never used");
+
+        d =
+            DiagnosticCollector.parse("CSC : error CS2001: Source file "
+                + "'Bar.cs' could not be found");
+        Assert.assertTrue(d.isError());
+        Assert.assertEquals(d.getFile(), "CSC");
+        Assert.assertEquals(d.getLine(), 0);
+        Assert.assertEquals(d.toString(), "CSC: error CS2001: Source file "
+            + "'Bar.cs' could not be found");
+
+        d =
+            DiagnosticCollector.parse("Foo.targets(12): error : Custom "
+                + "error");
+        Assert.assertEquals(d.getCode(), "");
+        Assert.assertEquals(d.getLine(), 12);
+        Assert.assertEquals(d.getColumn(), 0);
+
+        d =
+            DiagnosticCollector.parse("Foo.cs(99999999999,1): error CS1002: "
+                + "; expected");
+        Assert.assertEquals(d.getCode(), "CS1002");
+        Assert.assertEquals(d.getLine(), 0);
+        Assert.assertEquals(d.getColumn(), 1);
+
+        Assert.assertNull(DiagnosticCollector.parse("    0 Warning(s)"));
+        Assert.assertNull(DiagnosticCollector.parse("    1 Error(s)"));
+        Assert.assertNull(DiagnosticCollector.parse("  csc.exe "
+            + "/warnaserror- /nowarn:1701 Program.cs"));
+    }
+
+    @Test
+    public void testDeduplicate()
+    {
+        DiagnosticCollector dc = new DiagnosticCollector(2);
+
+        String w =
+            "Shared.cs(3,3): warning CS0168: The variable 'e' is declared "
+                + "but never used";
+
+        dc.handle(w + " [C:\\src\\Foo\\Foo.csproj]");
+        dc.handle(w + " [C:\\src\\Bar\\Bar.csproj]");
+        dc.handle("Foo.cs(1,1): error CS1002: ; expected");
+
+        List<Diagnostic> drained = dc.drain();
+        Assert.assertEquals(drained.size(), 2);
+        Assert.assertEquals(drained.get(0).getCount(), 2);
+        Assert.assertTrue(dc.drain().isEmpty());
+
+        // The limit has been reached, so the diagnostic is only counted.
+        dc.handle("Foo.cs(4,2): error CS1002: ; expected");
+        Assert.assertEquals(dc.getErrors(), 2);
+        Assert.assertEquals(dc.getWarnings(), 1);
+        Assert.assertEquals(dc.getDropped(), 1);
+        Assert.assertTrue(dc.drain().isEmpty());
+    }
+
+    @Test
+    public void testSummarize()
+    {
+        DiagnosticCollector dc = new DiagnosticCollector(100);
+        dc.handle("Bar.cs(3,3): warning CS0168: The variable 'e'");
+        dc.handle("Foo.cs(4,2): error CS1002: ; expected");
+        dc.handle("Foo.cs(1,1): error CS1002: ; expected");
+        dc.handle("Baz.cs(7): warning CS0168: The variable 'f'");
+
+        List<String> lines =
+            DiagnosticCollector.summarize(dc.getDiagnostics());
+        Assert.assertEquals(lines.size(), 5);
+        Assert.assertEquals(lines.get(0), "error CS1002 (2)");
+        Assert.assertEquals(lines.get(1), "  Foo.cs: 1,1 4,2");
+        Assert.assertEquals(lines.get(2), "warning CS0168 (2)");
+        Assert.assertEquals(lines.get(3), "  Bar.cs: 3,3");
+        Assert.assertEquals(lines.get(4), "  Baz.cs: 7");
+    }
+}
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons.msbuild;
+
+import java.io.File;
+import java.util.Arrays;
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * The test class for ItemExpander and Glob.
+ * 
+ * @author akutz
+ * 
+ */
+public class ItemExpanderTest
+{
+    private File projectDir;
+
+    @BeforeClass
+    public void createProjectDir() throws Exception
+    {
+        this.projectDir =
+            new File("target/test-items/" + System.currentTimeMillis());
+
+        for (String path : new String[]
+        {
+            "Program.cs", "Properties/AssemblyInfo.cs", "Model/Person.cs",
+            "Model/Data/Address.CS", "Model/Data/Address.resx",
+            "obj/Debug/Temp.cs", "bin/Debug/Gen.cs", "Views/Main.xaml",
+            "Views/Main.xaml.cs", "readme.txt"
+        })
+        {
+            File f = new File(this.projectDir, path);
+            f.getParentFile().mkdirs();
+            FileUtils.writeStringToFile(f, path);
+        }
+    }
+
+    @AfterClass
+    public void deleteProjectDir() throws Exception
+    {
+        FileUtils.deleteDirectory(this.projectDir);
+    }
+
+    @Test
+    public void testRecursiveWildcard() throws Exception
+    {
+        ItemExpander ie = new ItemExpander(this.projectDir);
+
+        Assert.assertEquals(ie.expand("**\\*.cs", "obj\\**;bin\\**"), Arrays
+            .asList(
+                "Model\\Data\\Address.CS",
+                "Model\\Person.cs",
+                "Program.cs",
+                "Properties\\AssemblyInfo.cs",
+                "Views\\Main.xaml.cs"));
+    }
+
+    @Test
+    public void testRootedWildcardAndLiterals() throws Exception
+    {
+        ItemExpander ie = new ItemExpander(this.projectDir);
+
+        Assert.assertEquals(ie.expand(
+            "Model/**/*.resx;readme.txt;Missing.txt;Views\\Main.xaml",
+            "Missing.txt"), Arrays.asList(
+            "Model\\Data\\Address.resx",
+            "Views\\Main.xaml",
+            "readme.txt"));
+
+        Assert.assertEquals(ie.expand("Model\\*.cs", null), Arrays
+            .asList("Model\\Person.cs"));
+
+        Assert.assertEquals(
+            ie.expand("Model\\Data\\Address.??", ""),
+            Arrays.asList("Model\\Data\\Address.CS"));
+
+        Assert.assertTrue(ie.expand("NoSuchDir\\**\\*", null).isEmpty());
+    }
+
+    @Test
+    public void testGlob() throws Exception
+    {
+        Glob g = Glob.compile("src\\**\\*.cs");
+        Assert.assertEquals(g.getRoot(), "src\\");
+        Assert.assertTrue(g.matches("src\\a.cs"));
+        Assert.assertTrue(g.matches("src/a/b/C.CS"));
+        Assert.assertFalse(g.matches("lib\\a.cs"));
+        Assert.assertTrue(g.mayMatchBelow("src\\a"));
+        Assert.assertFalse(g.mayMatchBelow("lib"));
+
+        Glob obj = Glob.compile(".\\obj\\**");
+        Assert.assertTrue(obj.matchesAllBelow("obj"));
+        Assert.assertTrue(obj.matchesAllBelow("obj\\Debug"));
+        Assert.assertFalse(obj.matchesAllBelow("src"));
+        Assert.assertFalse(Glob.compile("obj\\**\\*.cs").matchesAllBelow(
+            "obj"));
+    }
+}
@@ -31,9 +31,20 @@
 package net.sf.nvn.commons.msbuild;
 
 import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import junit.framework.Assert;
+import net.sf.nvn.commons.Fingerprint;
 import net.sf.nvn.commons.msbuild.MSBuildProject;
 import net.sf.nvn.commons.msbuild.ProjectLanguageType;
+import org.apache.commons.io.FileUtils;
 import org.testng.annotations.Test;
 
 /**
@@ -90,6 +101,11 @@ public class MSBuildProjectTest
             new File("bin\\Release\\/MyProject.Library.pdb"),
             p.getPdbArtifact("Release", "AnyCPU"));
         Assert.assertNull(p.getDocArtifact("Release", "AnyCPU"));
+
+        Assert.assertEquals(
+            new File("obj\\Debug\\"),
+            p.getIntermediateDir("Debug", "AnyCPU"));
+        Assert.assertFalse(p.isCleanCustomized());
     }
 
     @Test
@@ -110,6 +126,9 @@ public class MSBuildProjectTest
         Assert.assertEquals(
             new File(".\\Release\\"),
             p.getBuildDir("Release", "Win32"));
+        Assert.assertEquals(
+            new File("Release\\"),
+            p.getIntermediateDir("Release", "Win32"));
     }
 
     @Test
@@ -205,4 +224,422 @@ public class MSBuildProjectTest
         Assert.assertEquals(1, p.getProjectReferences().size());
         System.out.println(p.getBuildDir("Release", "AnyCPU").toString());
     }
+
+    @Test
+    public void testInstance8() throws Exception
+    {
+        File f = new File("src/test/resources/MyProject4.csproj");
+
+        MSBuildProject p = MSBuildProject.instance(f);
+        Assert.assertEquals(ProjectLanguageType.CSharp, p.getProjectLanguage());
+        Assert.assertEquals("v3.5", p.getTargetFrameworkVersion());
+        Assert.assertEquals(
+            Arrays.asList("v3.5"),
+            p.getTargetFrameworks());
+        Assert.assertEquals(
+            "Acme.MyProject4",
+            p.getArtifactName("Debug", "AnyCPU"));
+
+        Assert.assertEquals(
+            new File("build\\Debug\\"),
+            p.getBuildDir("Debug", "AnyCPU"));
+        Assert.assertNull(p.getDocArtifact("Debug", "AnyCPU"));
+
+        Assert.assertEquals(
+            new File("build\\Release\\Signed\\"),
+            p.getBuildDir("Release", "AnyCPU"));
+        Assert.assertEquals(
+            new File("build\\Release\\Signed\\Acme.MyProject4.XML"),
+            p.getDocArtifact("Release", "AnyCPU"));
+
+        Assert.assertEquals(
+            Arrays.asList("Class1.cs"),
+            p.getItems("Compile", "Debug", "AnyCPU"));
+        Assert.assertEquals(Arrays.asList(
+            "imports\\Common.props",
+            "imports\\Output.props"), p.getItems("None", "Debug", "AnyCPU"));
+        Assert.assertEquals(Arrays.asList(
+            "Class1.cs",
+            "imports\\Common.props",
+            "imports\\Output.props"), p.getItems("Debug", "AnyCPU"));
+
+        Assert.assertEquals(2, p.getImports("Debug", "AnyCPU").size());
+        Assert.assertEquals(3, p.getImports("Release", "AnyCPU").size());
+        Assert.assertEquals("Release.props", p
+            .getImports("Release", "AnyCPU")
+            .get(2)
+            .getName());
+
+        // Imported files are shared by every project that imports them.
+        File props = new File("src/test/resources/imports/Common.props");
+        Assert.assertSame(
+            BuildFile.getImport(props),
+            BuildFile.getImport(props));
+    }
+
+    @Test
+    public void testInstance9() throws Exception
+    {
+        File f = new File("src/test/resources/MyProject5.csproj");
+
+        MSBuildProject p = MSBuildProject.instance(f);
+        Assert.assertEquals(
+            new File("build\\obj\\x86\\Debug\\"),
+            p.getIntermediateDir("Debug", "x86"));
+        Assert.assertEquals(
+            new File("build\\Release\\"),
+            p.getIntermediateDir("Release", "x86"));
+
+        // The Generate target runs after the Clean target.
+        Assert.assertTrue(p.isCleanCustomized());
+    }
+
+    @Test
+    public void testInstance10() throws Exception
+    {
+        File f = new File("src/test/resources/MyProject6.csproj");
+
+        MSBuildProject p = MSBuildProject.instance(f);
+        Assert.assertEquals(
+            Arrays.asList("net40", "net45"),
+            p.getTargetFrameworks());
+        Assert.assertEquals(
+            "TargetFramework",
+            MSBuildProject.getTargetFrameworkProperty("net45"));
+        Assert.assertEquals(
+            "TargetFrameworkVersion",
+            MSBuildProject.getTargetFrameworkProperty("v4.0"));
+
+        Assert.assertEquals(
+            new File("bin\\Debug\\"),
+            p.getBuildDir("Debug", "AnyCPU"));
+        Assert.assertEquals(
+            new File("bin\\Debug\\net45\\"),
+            p.getBuildDir("Debug", "AnyCPU", "net45"));
+        Assert.assertEquals(
+            new File("obj\\Debug\\net45\\"),
+            p.getIntermediateDir("Debug", "AnyCPU", "net45"));
+        Assert.assertEquals(
+            new File("bin\\Debug\\net45\\MyProject6.XML"),
+            p.getDocArtifact("Debug", "AnyCPU", "net45"));
+
+        // Each framework is evaluated with its own properties.
+        Assert.assertEquals(
+            "MyProject6.Net40",
+            p.getArtifactName("Debug", "AnyCPU", "net40"));
+        Assert.assertEquals(
+            new File("bin\\Debug\\net40\\/MyProject6.Net40.dll"),
+            p.getBinArtifact("Debug", "AnyCPU", "net40"));
+        Assert.assertEquals(
+            "MyProject6",
+            p.getArtifactName("Debug", "AnyCPU", "net45"));
+    }
+
+    @Test
+    public void testSharedStrings() throws Exception
+    {
+        File f = new File("src/test/resources/MyProjectDll2.vcxproj");
+
+        MSBuildProject p1 = MSBuildProject.instance(f);
+        MSBuildProject p2 = MSBuildProject.instance(f);
+
+        Assert.assertNotSame(p1, p2);
+
+        // The strings each descriptor retains are interned, so descriptors of
+        // the same project share them instead of holding copies.
+        String an1 = p1.getArtifactName("Debug", "Win32");
+        String an2 = p2.getArtifactName("Debug", "Win32");
+
+        Assert.assertEquals(an1, "CE_EventTraceMessage");
+        Assert.assertSame(an1, an2);
+        Assert.assertSame(
+            p1.getBuildDir("Debug", "Win32").getPath(),
+            p2.getBuildDir("Debug", "Win32").getPath());
+        Assert.assertSame(
+            p1.getIntermediateDir("Debug", "Win32").getPath(),
+            p2.getIntermediateDir("Debug", "Win32").getPath());
+    }
+
+    @Test
+    public void testRetainedSize() throws Exception
+    {
+        File f = new File("src/test/resources/MyProjectDll2.vcxproj");
+
+        MSBuildProject p1 = MSBuildProject.instance(f);
+        MSBuildProject p2 = MSBuildProject.instance(f);
+
+        // The memory a descriptor retains is the part of its object graph it
+        // does not share with another descriptor of the same project.
+        long retained = getRetainedSize(p2, p1);
+
+        Assert.assertEquals(
+            "CE_EventTraceMessage",
+            p2.getArtifactName("Debug", "Win32"));
+        Assert.assertTrue(
+            String.format("%s retains %s bytes", f, retained),
+            retained < 8 * 1024);
+    }
+
+    @Test
+    public void testCppInputs() throws Exception
+    {
+        File dir = new File("target/test-inputs/" + System.nanoTime());
+        File f = new File(dir, "MyProjectDll.vcxproj");
+
+        FileUtils.copyFile(
+            new File("src/test/resources/MyProjectDll.vcxproj"),
+            f);
+
+        for (String n : new String[]
+        {
+            "PowerPathWrapper.cpp", "Stdafx.cpp", "PowerPathWrapper.h",
+            "resource.h", "Stdafx.h", "PowerPathWrapper.rc"
+        })
+        {
+            FileUtils.writeStringToFile(new File(dir, n), n);
+        }
+
+        MSBuildProject p = MSBuildProject.instance(f);
+
+        Assert.assertEquals(Arrays.asList(
+            "PowerPathWrapper.cpp",
+            "PowerPathWrapper.h",
+            "PowerPathWrapper.rc",
+            "Stdafx.cpp",
+            "Stdafx.h",
+            "resource.h"), p.getItems("Debug", "Win32"));
+        Assert.assertTrue(p
+            .getUnclassifiedItemTypes("Debug", "Win32")
+            .isEmpty());
+
+        String before = getInputs(p, dir);
+        Assert.assertEquals(before, getInputs(p, dir));
+
+        FileUtils.writeStringToFile(
+            new File(dir, "Stdafx.cpp"),
+            "#include \"Stdafx.h\"");
+
+        Assert.assertFalse(before.equals(getInputs(p, dir)));
+
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testReferencedInputs() throws Exception
+    {
+        File dir = new File("target/test-inputs/" + System.nanoTime());
+        File app = new File(dir, "App/App.csproj");
+        File lib = new File(dir, "Lib/Lib.csproj");
+        File source = new File(dir, "Lib/Class1.cs");
+
+        FileUtils.writeStringToFile(app, getProjectXml(
+            "<Compile Include=\"Program.cs\" />",
+            "<ProjectReference Include=\"..\\Lib\\Lib.csproj\" />"));
+        FileUtils.writeStringToFile(lib, getProjectXml(
+            "<Compile Include=\"Class1.cs\" />"));
+        FileUtils.writeStringToFile(new File(dir, "App/Program.cs"), "app");
+        FileUtils.writeStringToFile(source, "class Class1 {}");
+
+        MSBuildProject p = MSBuildProject.instance(app);
+        ProjectInputs inputs = new ProjectInputs();
+
+        String before = inputs.getFingerprint(app, "Debug", "AnyCPU");
+        String own = getInputs(p, app.getParentFile());
+
+        FileUtils.writeStringToFile(source, "class Class1 { }");
+
+        // The fingerprints are computed once per instance.
+        Assert.assertEquals(before, inputs.getFingerprint(
+            app,
+            "Debug",
+            "AnyCPU"));
+        Assert.assertSame(inputs.getProject(lib), inputs.getProject(new File(
+            dir,
+            "App/../Lib/Lib.csproj")));
+
+        // Only the fingerprint that includes the referenced project's inputs
+        // changes.
+        Assert.assertFalse(before.equals(new ProjectInputs().getFingerprint(
+            app,
+            "Debug",
+            "AnyCPU")));
+        Assert.assertEquals(own, getInputs(p, app.getParentFile()));
+
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testUnclassifiedInputs() throws Exception
+    {
+        File dir = new File("target/test-inputs/" + System.nanoTime());
+        File f = new File(dir, "Unknown.csproj");
+
+        FileUtils.writeStringToFile(f, getProjectXml(
+            "<Compile Include=\"Class1.cs\" />",
+            "<Folder Include=\"Properties\\\" />",
+            "<CustomCodeGen Include=\"Model.tt\" />"));
+
+        MSBuildProject p = MSBuildProject.instance(f);
+
+        Assert.assertEquals("[CustomCodeGen]", p.getUnclassifiedItemTypes(
+            "Debug",
+            "AnyCPU").toString());
+
+        try
+        {
+            getInputs(p, dir);
+            Assert.fail("the inputs of a project with items of unclassified "
+                + "types were fingerprinted");
+        }
+        catch (IOException e)
+        {
+            Assert.assertTrue(e.getMessage().contains("CustomCodeGen"));
+        }
+
+        FileUtils.deleteDirectory(dir);
+    }
+
+    /**
+     * Estimates the size of the objects reachable from an object that are not
+     * also reachable from another object. Objects are assumed to have a
+     * 12-byte header, 4-byte references and to be aligned to 8 bytes, as on a
+     * 64-bit JVM with compressed references.
+     * 
+     * @param root The object to measure.
+     * @param shared The object whose graph is excluded.
+     * @return The estimated size in bytes.
+     */
+    private static long getRetainedSize(Object root, Object shared)
+        throws IllegalAccessException
+    {
+        Map<Object, Object> excluded = new IdentityHashMap<Object, Object>();
+        walk(shared, excluded, null);
+
+        long[] size = new long[1];
+        walk(root, excluded, size);
+        return size[0];
+    }
+
+    private static void walk(
+        Object root,
+        Map<Object, Object> visited,
+        long[] size) throws IllegalAccessException
+    {
+        Deque<Object> stack = new ArrayDeque<Object>();
+        stack.push(root);
+
+        while (!stack.isEmpty())
+        {
+            Object o = stack.pop();
+
+            if (o instanceof Class || visited.put(o, o) != null)
+            {
+                continue;
+            }
+
+            Class<?> c = o.getClass();
+            long shallow;
+
+            if (c.isArray())
+            {
+                Class<?> ct = c.getComponentType();
+                int length = Array.getLength(o);
+                shallow = 16 + (long) length * getSize(ct);
+
+                for (int x = 0; !ct.isPrimitive() && x < length; ++x)
+                {
+                    Object e = Array.get(o, x);
+
+                    if (e != null)
+                    {
+                        stack.push(e);
+                    }
+                }
+            }
+            else
+            {
+                shallow = 12;
+
+                for (; c != null; c = c.getSuperclass())
+                {
+                    for (Field fld : c.getDeclaredFields())
+                    {
+                        if (Modifier.isStatic(fld.getModifiers()))
+                        {
+                            continue;
+                        }
+
+                        shallow += getSize(fld.getType());
+
+                        if (!fld.getType().isPrimitive())
+                        {
+                            fld.setAccessible(true);
+                            Object v = fld.get(o);
+
+                            if (v != null)
+                            {
+                                stack.push(v);
+                            }
+                        }
+                    }
+                }
+            }
+
+            if (size != null)
+            {
+                size[0] += (shallow + 7) & ~7;
+            }
+        }
+    }
+
+    private static int getSize(Class<?> type)
+    {
+        if (type == long.class || type == double.class)
+        {
+            return 8;
+        }
+        else if (type == byte.class || type == boolean.class)
+        {
+            return 1;
+        }
+        else if (type == char.class || type == short.class)
+        {
+            return 2;
+        }
+
+        return 4;
+    }
+
+    private static String getInputs(MSBuildProject p, File baseDir)
+        throws IOException
+    {
+        Fingerprint fp = new Fingerprint();
+        p.addInputs(fp, baseDir, "Debug", p.getProjectLanguage() ==
+            ProjectLanguageType.CPP ? "Win32" : "AnyCPU");
+        return fp.getValue();
+    }
+
+    private static String getProjectXml(String... items)
+    {
+        StringBuilder buff = new StringBuilder();
+
+        buff.append("<Project xmlns=\"http://schemas.microsoft.com/");
+        buff.append("developer/msbuild/2003\">\n");
+        buff.append("  <PropertyGroup>\n");
+        buff.append("    <OutputType>Library</OutputType>\n");
+        buff.append("    <AssemblyName>Test</AssemblyName>\n");
+        buff.append("    <OutputPath>bin\\Debug\\</OutputPath>\n");
+        buff.append("  </PropertyGroup>\n");
+        buff.append("  <ItemGroup>\n");
+
+        for (String item : items)
+        {
+            buff.append("    ").append(item).append("\n");
+        }
+
+        buff.append("  </ItemGroup>\n");
+        buff.append("</Project>\n");
+
+        return buff.toString();
+    }
 }
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons.msbuild;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import net.sf.nvn.commons.msbuild.PerformanceSummary.Kind;
+import net.sf.nvn.commons.msbuild.PerformanceSummary.Timing;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * The test class for PerformanceSummary.
+ * 
+ * @author akutz
+ * 
+ */
+public class PerformanceSummaryTest
+{
+    private static final String[] OUTPUT =
+        new String[]
+        {
+            "Build succeeded.",
+            "    0 Warning(s)",
+            "",
+            "Project Performance Summary:",
+            "      950 ms  C:\\src\\Foo\\Foo.csproj             1 calls",
+            "",
+            "Target Performance Summary:",
+            "        3 ms  GetFrameworkPaths                  2 calls",
+            "       12 ms  ResolveAssemblyReferences          1 calls",
+            "      803 ms  CoreCompile                        1 calls",
+            "",
+            "1>Task Performance Summary:",
+            "1>      10 ms  ResolveAssemblyReference          1 calls",
+            "1>     790 ms  Csc                               1 calls",
+            "",
+            "Time Elapsed 00:00:00.95",
+            "        5 ms  NotATarget                         1 calls",
+        };
+
+    @Test
+    public void testHandle()
+    {
+        PerformanceSummary ps = new PerformanceSummary();
+
+        for (String line : OUTPUT)
+        {
+            ps.handle(line);
+        }
+
+        List<Timing> projects = ps.getTimings(Kind.Project);
+        Assert.assertEquals(projects.size(), 1);
+        Assert.assertEquals(projects.get(0).getName(),
+            "C:\\src\\Foo\\Foo.csproj");
+        Assert.assertEquals(projects.get(0).getMillis(), 950);
+
+        List<Timing> targets = ps.getTimings(Kind.Target);
+        Assert.assertEquals(targets.size(), 3);
+        Assert.assertEquals(targets.get(0).getName(), "CoreCompile");
+        Assert.assertEquals(targets.get(2).getName(), "GetFrameworkPaths");
+        Assert.assertEquals(targets.get(2).getCalls(), 2);
+
+        List<Timing> tasks = ps.getTimings(Kind.Task);
+        Assert.assertEquals(tasks.size(), 2);
+        Assert.assertEquals(tasks.get(0).getName(), "Csc");
+        Assert.assertEquals(tasks.get(0).getMillis(), 790);
+    }
+
+    @Test
+    public void testHandleHugeNumbers()
+    {
+        PerformanceSummary ps = new PerformanceSummary();
+        ps.handle("Target Performance Summary:");
+        ps.handle("  99999999999999999999 ms  Build  99999999999 calls");
+        ps.handle("  5 ms  Build  1 calls");
+
+        List<Timing> targets = ps.getTimings(Kind.Target);
+        Assert.assertEquals(targets.size(), 1);
+        Assert.assertEquals(targets.get(0).getMillis(), Long.MAX_VALUE);
+        Assert.assertEquals(targets.get(0).getCalls(), Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void testToJson()
+    {
+        PerformanceSummary ps1 = new PerformanceSummary();
+        ps1.add(Kind.Target, "CoreCompile", 800, 1);
+        ps1.add(Kind.Task, "Csc", 790, 1);
+
+        PerformanceSummary ps2 = new PerformanceSummary();
+        ps2.add(Kind.Target, "CoreCompile", 200, 1);
+        ps2.add(Kind.Target, "Copy \"Files\"", 300, 2);
+
+        Assert.assertEquals(ps2.toJson(), "{\"projects\":[],\"targets\":["
+            + "{\"name\":\"Copy \\\"Files\\\"\",\"ms\":300,\"calls\":2},"
+            + "{\"name\":\"CoreCompile\",\"ms\":200,\"calls\":1}],"
+            + "\"tasks\":[]}");
+
+        Map<String, PerformanceSummary> modules =
+            new LinkedHashMap<String, PerformanceSummary>();
+        modules.put("a", ps1);
+        modules.put("b", ps2);
+
+        String json = PerformanceSummary.toJson(modules);
+        Assert.assertTrue(json.startsWith("{\"modules\":{\"a\":{"));
+        Assert.assertTrue(json.endsWith(",\"total\":{\"projects\":[],"
+            + "\"targets\":[{\"name\":\"CoreCompile\",\"ms\":1000,"
+            + "\"calls\":2},{\"name\":\"Copy \\\"Files\\\"\",\"ms\":300,"
+            + "\"calls\":2}],\"tasks\":[{\"name\":\"Csc\",\"ms\":790,"
+            + "\"calls\":1}]}}"));
+    }
+}
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.commons.msbuild;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.io.FileUtils;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * The test class for ProjectReferenceRewriter.
+ * 
+ * @author akutz
+ * 
+ */
+public class ProjectReferenceRewriterTest
+{
+    private File in = new File("src/test/resources/MyProject.csproj");
+
+    private File outDir;
+
+    @BeforeClass
+    public void createOutDir() throws Exception
+    {
+        this.outDir =
+            new File("target/test-rewriter/" + System.currentTimeMillis());
+        this.outDir.mkdirs();
+    }
+
+    @Test
+    public void testRewrite() throws Exception
+    {
+        Map<String, String> refs = new LinkedHashMap<String, String>();
+        refs.put("..\\Common\\Foo.csproj", "Foo");
+
+        File out = new File(this.outDir, "MyProject.csproj");
+        Assert.assertTrue(new ProjectReferenceRewriter(refs).rewrite(
+            this.in,
+            out));
+
+        MSBuildProject p = MSBuildProject.instance(out);
+        Assert.assertEquals(p.getProjectReferences().size(), 1);
+        Assert.assertEquals(p.getProjectReferences().get("..\\."), "AlwaysTrue");
+        Assert.assertEquals(
+            p.getArtifactName("Debug", "AnyCPU"),
+            "MyProject.Library");
+
+        String text = FileUtils.readFileToString(out, "utf-8");
+        Assert.assertFalse(text.contains("Foo.csproj"));
+        Assert.assertTrue(text.contains("\r\n  <ItemGroup>\r\n"
+            + "    <Reference Include=\"Foo\"/>\r\n"
+            + "  </ItemGroup>\r\n</Project>"));
+
+        // The removed project reference leaves no blank lines behind and
+        // everything else is copied line for line.
+        List<?> inLines = FileUtils.readLines(this.in, "utf-8");
+        List<?> outLines = FileUtils.readLines(out, "utf-8");
+        Assert.assertEquals(outLines.size(), inLines.size() - 4 + 3);
+        Assert.assertEquals(outLines.get(46), "    <ProjectReference "
+            + "Include=\"..\\.\">");
+        Assert.assertEquals(outLines.get(56), inLines.get(60));
+    }
+
+    @Test
+    public void testNothingToRewrite() throws Exception
+    {
+        Map<String, String> refs = Collections.emptyMap();
+
+        File out = new File(this.outDir, "Unchanged.csproj");
+        Assert.assertFalse(new ProjectReferenceRewriter(refs).rewrite(
+            this.in,
+            out));
+        Assert.assertFalse(out.exists());
+    }
+}
@@ -32,11 +32,22 @@ package net.sf.nvn.plugin;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import net.sf.nvn.commons.FlightEvents;
+import net.sf.nvn.commons.LineHandler;
+import net.sf.nvn.commons.Metrics;
 import net.sf.nvn.commons.ProcessUtils;
 import net.sf.nvn.commons.RegistryUtils;
+import net.sf.nvn.commons.TraceRecorder;
 import org.apache.commons.lang.StringUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.codehaus.plexus.util.CollectionUtils;
@@ -272,6 +283,18 @@ public abstract class AbstractExeMojo extends AbstractNvnMojo
         return 1;
     }
 
+    /**
+     * Gets the number of executions that may run at the same time. The
+     * executions are processed one after another unless this is greater than
+     * one.
+     * 
+     * @return The number of executions that may run at the same time.
+     */
+    int getParallelExecutions()
+    {
+        return 1;
+    }
+
     /**
      * Builds the string that is executed by Runtime.exec(String, String[]).
      * 
@@ -298,16 +321,116 @@ public abstract class AbstractExeMojo extends AbstractNvnMojo
     {
         initProcEnvVars();
 
+        int threads = Math.min(getParallelExecutions(), getExecutions());
+
+        if (threads > 1)
+        {
+            execParallel(threads);
+            return;
+        }
+
         for (int x = 0; x < getExecutions(); ++x)
         {
-            if (skipExec(x))
+            execIfNotSkipped(x);
+        }
+    }
+
+    /**
+     * Processes an execution unless skipExec(int) says otherwise.
+     * 
+     * @param execution The execution index.
+     * @throws MojoExecutionException When an error occurs.
+     */
+    void execIfNotSkipped(int execution) throws MojoExecutionException
+    {
+        if (skipExec(execution))
+        {
+            return;
+        }
+
+        String cmd = buildCmdLineString(execution);
+        info("execution #%s: %s", execution, cmd);
+        exec(execution, cmd);
+    }
+
+    /**
+     * Processes the executions concurrently. All of the executions run to
+     * completion before the first error, if any, is thrown.
+     * 
+     * @param threads The number of executions to run at the same time.
+     * @throws MojoExecutionException When an execution fails.
+     */
+    void execParallel(int threads) throws MojoExecutionException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+        // The executions run on the pool's threads, which do not have the
+        // MOJO thread's context.
+        final String module = this.mavenProject.getArtifactId();
+
+        try
+        {
+            for (int x = 0; x < getExecutions(); ++x)
             {
-                continue;
+                final int execution = x;
+
+                futures.add(executor.submit(new Callable<Void>()
+                {
+                    @Override
+                    public Void call() throws MojoExecutionException
+                    {
+                        FlightEvents.setContext(module, getMojoName());
+
+                        try
+                        {
+                            execIfNotSkipped(execution);
+                        }
+                        finally
+                        {
+                            FlightEvents.clearContext();
+                        }
+
+                        return null;
+                    }
+                }));
             }
 
-            String cmd = buildCmdLineString(x);
-            info("execution #%s: %s", x, cmd);
-            exec(x, cmd);
+            MojoExecutionException error = null;
+
+            for (Future<Void> f : futures)
+            {
+                try
+                {
+                    f.get();
+                }
+                catch (ExecutionException e)
+                {
+                    if (error == null)
+                    {
+                        error =
+                            e.getCause() instanceof MojoExecutionException
+                                ? (MojoExecutionException) e.getCause()
+                                : new MojoExecutionException("Error running "
+                                    + getMojoName(), e.getCause());
+                    }
+                }
+            }
+
+            if (error != null)
+            {
+                throw error;
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while running "
+                + getMojoName(), e);
+        }
+        finally
+        {
+            executor.shutdownNow();
         }
     }
 
@@ -331,6 +454,19 @@ public abstract class AbstractExeMojo extends AbstractNvnMojo
         return true;
     }
 
+    /**
+     * Gets the handler that the lines of the process's output are passed to
+     * while they are shown. The handler is not used when showExecOutput
+     * returns false.
+     * 
+     * @param execution The execution index.
+     * @return The handler or null if the output is only shown.
+     */
+    LineHandler getOutputHandler(int execution)
+    {
+        return null;
+    }
+
     /**
      * The stdout of the process is copied here when showExecOutput returns
      * false.
@@ -352,10 +488,28 @@ public abstract class AbstractExeMojo extends AbstractNvnMojo
      */
     final void exec(int execution, String cmd) throws MojoExecutionException
     {
+        TraceRecorder.Span span = trace(getMojoName(), "exec", "command", cmd);
+        long start = System.nanoTime();
+
         try
         {
+            LineHandler handler =
+                showExecOutput() ? getOutputHandler(execution) : null;
+
             Process p =
-                ProcessUtils.exec(cmd, this.procEnvVars, showExecOutput());
+                ProcessUtils.exec(cmd, this.procEnvVars, showExecOutput()
+                    && handler == null);
+
+            Thread[] pumps = null;
+
+            if (handler != null)
+            {
+                pumps = new Thread[]
+                {
+                    ProcessUtils.pipe(p.getInputStream(), System.out, handler),
+                    ProcessUtils.pipe(p.getErrorStream(), System.err, handler)
+                };
+            }
 
             ByteArrayOutputStream stdoutBos = null;
             ByteArrayOutputStream stderrBos = null;
@@ -369,7 +523,26 @@ public abstract class AbstractExeMojo extends AbstractNvnMojo
                 ProcessUtils.pipe(p.getErrorStream(), stderrBos);
             }
 
-            int exitCode = p.waitFor();
+            FlightEvents.Event fe =
+                FlightEvents.begin(FlightEvents.PROCESS_WAIT, getMojoName());
+            int exitCode;
+
+            try
+            {
+                exitCode = p.waitFor();
+            }
+            finally
+            {
+                fe.end();
+            }
+
+            if (pumps != null)
+            {
+                for (Thread t : pumps)
+                {
+                    t.join();
+                }
+            }
 
             if (stdoutBos != null && stderrBos != null)
             {
@@ -390,6 +563,15 @@ public abstract class AbstractExeMojo extends AbstractNvnMojo
             throw new MojoExecutionException("Error running " + getMojoName()
                 + ": ", e);
         }
+        finally
+        {
+            span.end();
+            Metrics.getInstance().timer(
+                "nvn_process_seconds",
+                "Time spent running external tools",
+                "tool",
+                getMojoName()).stop(start);
+        }
     }
 
     /**
@@ -533,7 +715,7 @@ public abstract class AbstractExeMojo extends AbstractNvnMojo
         }
 
         this.procEnvVars.put("Path", path);
-        debug("Path=" + path);
+        debug("Path=%s", path);
     }
 
     /**
@@ -551,7 +733,7 @@ public abstract class AbstractExeMojo extends AbstractNvnMojo
             return;
         }
 
-        debug(String.format("putEnvVar(%s,%s)", key, val));
+        debug("putEnvVar(%s,%s)", key, val);
         this.procEnvVars.put(key, val);
     }
 
@@ -1074,12 +1256,12 @@ public abstract class AbstractExeMojo extends AbstractNvnMojo
 
             if (epf.exists())
             {
-                debug("getFullPathFromPath returning true = " + p);
+                debug("getFullPathFromPath returning true = %s", p);
                 return p;
             }
             else
             {
-                debug("getFullPathFromPath did not find = " + p);
+                debug("getFullPathFromPath did not find = %s", p);
             }
         }
 
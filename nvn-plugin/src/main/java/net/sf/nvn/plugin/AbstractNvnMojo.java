@@ -32,16 +32,20 @@ package net.sf.nvn.plugin;
 
 import static net.sf.nvn.commons.StringUtils.quote;
 import java.io.File;
-import java.util.HashMap;
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import net.sf.nvn.commons.FlightEvents;
+import net.sf.nvn.commons.Metrics;
+import net.sf.nvn.commons.ProjectStore;
 import net.sf.nvn.commons.ProjectUtils;
+import net.sf.nvn.commons.TraceRecorder;
 import net.sf.nvn.commons.Version;
 import net.sf.nvn.commons.msbuild.MSBuildProject;
 import net.sf.nvn.commons.msbuild.ProjectLanguageType;
+import org.apache.commons.lang.StringUtils;
 import org.apache.maven.artifact.factory.ArtifactFactory;
 import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.artifact.resolver.ArtifactResolver;
@@ -50,6 +54,7 @@ import org.apache.maven.execution.RuntimeInformation;
 import org.apache.maven.lifecycle.LifecycleExecutor;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.MavenProjectBuilder;
 import org.apache.maven.project.MavenProjectHelper;
@@ -72,45 +77,53 @@ public abstract class AbstractNvnMojo extends AbstractMojo
     /**
      * The property key for the MSBuildProject object.
      */
-    protected final static String NPK_PROJECT = "project";
+    protected final static ProjectStore.Key<MSBuildProject> NPK_PROJECT =
+        new ProjectStore.Key<MSBuildProject>("project", MSBuildProject.class);
 
     /**
      * The property key for the build configuration name (Debug, Release, etc.)
      */
-    protected final static String NPK_CONFIG = "config";
+    protected final static ProjectStore.Key<String> NPK_CONFIG =
+        new ProjectStore.Key<String>("config", String.class);
 
     /**
      * The property key for the build platform type (AnyCPU, x64, Win32, etc.)
      */
-    protected final static String NPK_PLATFORM = "platform";
+    protected final static ProjectStore.Key<String> NPK_PLATFORM =
+        new ProjectStore.Key<String>("platform", String.class);
 
     /**
      * The property key for the standard version.
      */
-    protected final static String NPK_VERSION = "version";
+    protected final static ProjectStore.Key<Version> NPK_VERSION =
+        new ProjectStore.Key<Version>("version", Version.class);
 
     /**
      * The property key for the standard version's MAJOR component.
      */
-    protected final static String NPK_VERSION_1 = "version.1";
+    protected final static ProjectStore.Key<String> NPK_VERSION_1 =
+        new ProjectStore.Key<String>("version.1", String.class);
 
     /**
      * The property key for the standard version's MAJOR and MINOR components.
      */
-    protected final static String NPK_VERSION_2 = "version.2";
+    protected final static ProjectStore.Key<String> NPK_VERSION_2 =
+        new ProjectStore.Key<String>("version.2", String.class);
 
     /**
      * The property key for the standard version's MAJOR, MINOR, and BUILD
      * components.
      */
-    protected final static String NPK_VERSION_3 = "version.3";
+    protected final static ProjectStore.Key<String> NPK_VERSION_3 =
+        new ProjectStore.Key<String>("version.3", String.class);
 
     /**
      * The property key for the project's build directory. Unlike the default
      * Maven property 'project.build.directory', this property value is relative
      * to the project's base directory.
      */
-    protected final static String NPK_BUILD_DIR = "build.directory";
+    protected final static ProjectStore.Key<File> NPK_BUILD_DIR =
+        new ProjectStore.Key<File>("build.directory", File.class);
 
     /**
      * The property key for the name of the project's artifact. The value does
@@ -119,39 +132,46 @@ public abstract class AbstractNvnMojo extends AbstractMojo
      * '\bin\Debug\HelloWorld.exe' then the name of the artifact is
      * 'HelloWorld'.
      */
-    protected final static String NPK_ARTIFACT_NAME = "artifact.name";
+    protected final static ProjectStore.Key<String> NPK_ARTIFACT_NAME =
+        new ProjectStore.Key<String>("artifact.name", String.class);
 
     /**
      * The property key for the project's binary artifact.
      */
-    protected final static String NPK_ARTIFACT_BIN = "artifact.bin";
+    protected final static ProjectStore.Key<File> NPK_ARTIFACT_BIN =
+        new ProjectStore.Key<File>("artifact.bin", File.class);
 
     /**
      * The property key for the project's symbols artifact.
      */
-    protected final static String NPK_ARTIFACT_PDB = "artifact.pdb";
+    protected final static ProjectStore.Key<File> NPK_ARTIFACT_PDB =
+        new ProjectStore.Key<File>("artifact.pdb", File.class);
 
     /**
      * The property key for the project's documentation artifact.
      */
-    protected final static String NPK_ARTIFACT_DOC = "artifact.doc";
+    protected final static ProjectStore.Key<File> NPK_ARTIFACT_DOC =
+        new ProjectStore.Key<File>("artifact.doc", File.class);
     
     /**
      * The proeprty key for the project's nvn artifact.
      */
-    protected final static String NPK_ARTIFACT_NVN = "artifact.nvn";
+    protected final static ProjectStore.Key<File> NPK_ARTIFACT_NVN =
+        new ProjectStore.Key<File>("artifact.nvn", File.class);
 
     /**
      * The property key for the project's import library artifact. This may be
      * the same as the binary artifact if the project is a C++ StaticLibrary
      * project.
      */
-    protected final static String NPK_ARTIFACT_LIB = "artifact.lib";
+    protected final static ProjectStore.Key<File> NPK_ARTIFACT_LIB =
+        new ProjectStore.Key<File>("artifact.lib", File.class);
 
     /**
      * The property key for the project's type library artifact.
      */
-    protected final static String NPK_ARTIFACT_TLB = "artifact.tlb";
+    protected final static ProjectStore.Key<File> NPK_ARTIFACT_TLB =
+        new ProjectStore.Key<File>("artifact.tlb", File.class);
 
     /**
      * Used to look up Artifacts in the remote repository.
@@ -299,6 +319,45 @@ public abstract class AbstractNvnMojo extends AbstractMojo
      */
     boolean ignoreExecutionRequirements;
 
+    /**
+     * <p>
+     * The file a Chrome trace of the Maven session is written to when the
+     * session ends. A relative path is resolved against the directory the
+     * build was started in. The trace has a group of lanes per module and a
+     * lane per thread, with spans for the MOJOs, the tools they run, the
+     * resolution of dependencies and file copies and deletes. It opens in
+     * Perfetto or chrome://tracing.
+     * </p>
+     * 
+     * <p>
+     * No trace is recorded unless this parameter is set, for example with
+     * <em>-Dnvn.traceFile=trace.json</em>.
+     * </p>
+     * 
+     * @parameter expression="${nvn.traceFile}"
+     */
+    String traceFile;
+
+    /**
+     * <p>
+     * The directory the metrics of the build are written to when Maven exits,
+     * as <em>nvn-metrics.prom</em> in the Prometheus text format and as
+     * <em>nvn-metrics.json</em>. A relative path is resolved against the
+     * directory the build was started in. The metrics include the processes
+     * spawned per tool, the time spent in each tool, registry probes, build
+     * cache hits and misses, the bytes copied, the time spent parsing projects
+     * and the time spent installing and deploying artifacts.
+     * </p>
+     * 
+     * <p>
+     * No metrics are written unless this parameter is set, for example with
+     * <em>-Dnvn.metricsDirectory=target</em>.
+     * </p>
+     * 
+     * @parameter expression="${nvn.metricsDirectory}"
+     */
+    String metricsDirectory;
+
     /**
      * The nvn execute method. nvn MOJOs override this method instead of the
      * normal MOJO {@link AbstractMojo#execute()} method.
@@ -370,14 +429,25 @@ public abstract class AbstractNvnMojo extends AbstractMojo
     MavenProject readProjectFile(File projectFile, boolean resolveDependencies)
         throws MojoExecutionException
     {
-        return ProjectUtils.readProjectFile(
-            this.builder,
-            this.localRepository,
-            this.mavenProject
-                .getProjectBuilderConfiguration()
-                .getGlobalProfileManager(),
-            projectFile,
-            resolveDependencies);
+        TraceRecorder.Span span =
+            trace("read project", "dependencies", "file", projectFile
+                .getPath());
+
+        try
+        {
+            return ProjectUtils.readProjectFile(
+                this.builder,
+                this.localRepository,
+                this.mavenProject
+                    .getProjectBuilderConfiguration()
+                    .getGlobalProfileManager(),
+                projectFile,
+                resolveDependencies);
+        }
+        finally
+        {
+            span.end();
+        }
     }
 
     @Override
@@ -395,26 +465,46 @@ public abstract class AbstractNvnMojo extends AbstractMojo
             return;
         }
 
+        initMetricsExport();
+        FlightEvents.setContext(
+            this.mavenProject.getArtifactId(),
+            getMojoName());
+        FlightEvents.Event fe = FlightEvents.begin(FlightEvents.MOJO_EXECUTE);
+        TraceRecorder.Span span = trace(getMojoName(), "mojo");
+
         try
         {
+            FlightEvents.Event phase =
+                FlightEvents.begin(FlightEvents.MOJO_PHASE, "pre");
             preExecute();
+            phase.end();
 
             if (this.ignoreExecutionRequirements || shouldExecute())
             {
+                phase = FlightEvents.begin(FlightEvents.MOJO_PHASE, "exec");
                 nvnExecute();
+                phase.end();
             }
             else
             {
                 debug("execution requirements not met");
             }
 
+            phase = FlightEvents.begin(FlightEvents.MOJO_PHASE, "post");
             postExecute(null);
+            phase.end();
         }
         catch (MojoExecutionException e)
         {
             postExecute(e);
             throw e;
         }
+        finally
+        {
+            span.end();
+            fe.end();
+            FlightEvents.clearContext();
+        }
     }
 
     /**
@@ -428,33 +518,22 @@ public abstract class AbstractNvnMojo extends AbstractMojo
     {
         String fp = file.getPath();
 
-        debug("getPath(" + fp + ")");
-
         String path;
 
         if (fp.contains("\\") || fp.contains("/"))
         {
-            debug("getPath - file path contains a \\ or /");
-
             if (fp.matches("^\\w\\:.*+"))
             {
                 path = fp;
-                debug("getPath detected a drive letter thus using file path as is");
             }
             else
             {
                 path = this.mavenProject.getBasedir() + "\\" + fp;
-                debug("getPath using basedir and file path as is");
             }
         }
-        else if ((path = getFullPathFromPath(file)) != null)
-        {
-            debug("getPath file is in path via path environment variable");
-        }
-        else
+        else if ((path = getFullPathFromPath(file)) == null)
         {
             path = this.mavenProject.getBasedir() + "\\" + fp;
-            debug("getPath using basedir and file path as is");
         }
 
         if (quote)
@@ -462,7 +541,7 @@ public abstract class AbstractNvnMojo extends AbstractMojo
             path = quote(path);
         }
 
-        debug("getPath returned \"%s\"", path);
+        debug("getPath(%s) returned \"%s\"", fp, path);
 
         return path;
     }
@@ -489,6 +568,43 @@ public abstract class AbstractNvnMojo extends AbstractMojo
         return null;
     }
 
+    /**
+     * This MOJO's logger.
+     */
+    private NvnLog nvnLog;
+
+    /**
+     * Gets this MOJO's logger.
+     * 
+     * @return This MOJO's logger.
+     */
+    NvnLog getNvnLog()
+    {
+        if (this.nvnLog == null)
+        {
+            this.nvnLog = new NvnLog(getLog(), getMojoName());
+        }
+
+        return this.nvnLog;
+    }
+
+    @Override
+    public void setLog(Log log)
+    {
+        super.setLog(log);
+        this.nvnLog = null;
+    }
+
+    /**
+     * Gets a flag indicating whether or not debug messages are logged.
+     * 
+     * @return A flag indicating whether or not debug messages are logged.
+     */
+    boolean isDebugEnabled()
+    {
+        return getNvnLog().isDebugEnabled();
+    }
+
     /**
      * Emits a debug message to the logger.
      * 
@@ -496,18 +612,58 @@ public abstract class AbstractNvnMojo extends AbstractMojo
      */
     void debug(String message)
     {
-        getLog().debug(String.format("NVN-%s: %s", getMojoName(), message));
+        getNvnLog().debug(message);
     }
 
     /**
-     * Emits a debug message to the logger.
+     * Emits a debug message to the logger. The message is only formatted if
+     * debug messages are logged.
+     * 
+     * @param messageFormat The message format string.
+     * @param arg The argument to the message format string.
+     */
+    void debug(String messageFormat, Object arg)
+    {
+        getNvnLog().debug(messageFormat, arg);
+    }
+
+    /**
+     * Emits a debug message to the logger. The message is only formatted if
+     * debug messages are logged.
+     * 
+     * @param messageFormat The message format string.
+     * @param arg1 The first argument to the message format string.
+     * @param arg2 The second argument to the message format string.
+     */
+    void debug(String messageFormat, Object arg1, Object arg2)
+    {
+        getNvnLog().debug(messageFormat, arg1, arg2);
+    }
+
+    /**
+     * Emits a debug message to the logger. The message is only formatted if
+     * debug messages are logged.
+     * 
+     * @param messageFormat The message format string.
+     * @param arg1 The first argument to the message format string.
+     * @param arg2 The second argument to the message format string.
+     * @param arg3 The third argument to the message format string.
+     */
+    void debug(String messageFormat, Object arg1, Object arg2, Object arg3)
+    {
+        getNvnLog().debug(messageFormat, arg1, arg2, arg3);
+    }
+
+    /**
+     * Emits a debug message to the logger. The message is only formatted if
+     * debug messages are logged.
      * 
      * @param messageFormat The message format string.
      * @param args Arguments to the message format string.
      */
     void debug(String messageFormat, Object... args)
     {
-        debug(String.format(messageFormat, args));
+        getNvnLog().debug(messageFormat, args);
     }
 
     /**
@@ -517,7 +673,30 @@ public abstract class AbstractNvnMojo extends AbstractMojo
      */
     void info(String message)
     {
-        getLog().info(String.format("NVN-%s: %s", getMojoName(), message));
+        getNvnLog().info(message);
+    }
+
+    /**
+     * Emits an info message to the logger.
+     * 
+     * @param messageFormat The message format string.
+     * @param arg The argument to the message format string.
+     */
+    void info(String messageFormat, Object arg)
+    {
+        getNvnLog().info(messageFormat, arg);
+    }
+
+    /**
+     * Emits an info message to the logger.
+     * 
+     * @param messageFormat The message format string.
+     * @param arg1 The first argument to the message format string.
+     * @param arg2 The second argument to the message format string.
+     */
+    void info(String messageFormat, Object arg1, Object arg2)
+    {
+        getNvnLog().info(messageFormat, arg1, arg2);
     }
 
     /**
@@ -528,7 +707,7 @@ public abstract class AbstractNvnMojo extends AbstractMojo
      */
     void info(String messageFormat, Object... args)
     {
-        info(String.format(messageFormat, args));
+        getNvnLog().info(messageFormat, args);
     }
 
     /**
@@ -538,7 +717,18 @@ public abstract class AbstractNvnMojo extends AbstractMojo
      */
     void error(String message)
     {
-        getLog().error(String.format("NVN-%s: %s", getMojoName(), message));
+        getNvnLog().error(message);
+    }
+
+    /**
+     * Emits an error message and its cause to the logger.
+     * 
+     * @param message The message to emit.
+     * @param cause The cause of the error.
+     */
+    void error(String message, Throwable cause)
+    {
+        getNvnLog().error(message, cause);
     }
 
     /**
@@ -549,7 +739,7 @@ public abstract class AbstractNvnMojo extends AbstractMojo
      */
     void error(String messageFormat, Object... args)
     {
-        debug(String.format(messageFormat, args));
+        getNvnLog().error(messageFormat, args);
     }
 
     /**
@@ -558,15 +748,12 @@ public abstract class AbstractNvnMojo extends AbstractMojo
      * @param key The property's key.
      * @param value The property's value.
      */
-    protected void initNvnProp(String key, Object value)
+    protected <T> void initNvnProp(ProjectStore.Key<T> key, T value)
     {
-        nvnPropertiesRWL.writeLock().lock();
-
-        key = NPK_PREFIX + key;
-        getNvnProperties().put(key, value);
-        this.mavenProject.getProperties().put(key, value.toString());
-
-        nvnPropertiesRWL.writeLock().unlock();
+        getProjectStore().put(getProjectKey(), key, value);
+        this.mavenProject.getProperties().put(
+            NPK_PREFIX + key.getName(),
+            value.toString());
     }
 
     /**
@@ -590,6 +777,24 @@ public abstract class AbstractNvnMojo extends AbstractMojo
         return getNvnProp(NPK_PLATFORM);
     }
 
+    /**
+     * Gets the target framework the project's main artifacts are built
+     * against, the first of the project's frameworks.
+     * 
+     * @return The target framework or null if the project is built against a
+     *         single framework.
+     */
+    String getTargetFramework()
+    {
+        if (!isMSBuildProject())
+        {
+            return null;
+        }
+
+        List<String> tfs = getMSBuildProject().getTargetFrameworks();
+        return tfs.size() > 1 ? tfs.get(0) : null;
+    }
+
     /**
      * Gets the artifact name.
      * 
@@ -724,56 +929,56 @@ public abstract class AbstractNvnMojo extends AbstractMojo
     }
 
     /**
-     * Gets a property from the current Maven project's properties collection.
+     * Gets an NVN property of the current Maven project.
      * 
      * @param <T> The property's type.
-     * @param name The property's key.
+     * @param key The property's key.
      * @return The property's value.
      */
-    @SuppressWarnings("unchecked")
-    <T> T getNvnProp(String key)
+    <T> T getNvnProp(ProjectStore.Key<T> key)
     {
-        key = NPK_PREFIX + key;
-
-        T value = null;
-
-        nvnPropertiesRWL.readLock().lock();
-
-        Properties nvnProps = getNvnProperties();
-
-        if (nvnProps.containsKey(key))
-        {
-            value = (T) nvnProps.get(key);
-        }
-
-        nvnPropertiesRWL.readLock().unlock();
-
-        return value;
+        return getProjectStore().get(getProjectKey(), key);
     }
 
     /**
-     * Gets the properties map for the current Maven project.
+     * Gets the key of the current Maven project in the project store.
      * 
-     * @return The properties map for the current Maven project.
+     * @return The key of the current Maven project in the project store.
      */
-    private Properties getNvnProperties()
+    private String getProjectKey()
     {
-        Map<String, Properties> projProps = nvnStorage.get();
-
-        String key =
-            String.format(
-                "%s-%s",
-                this.mavenProject.getGroupId(),
-                this.mavenProject.getArtifactId());
+        return ProjectStore.getProjectKey(
+            this.mavenProject.getGroupId(),
+            this.mavenProject.getArtifactId(),
+            this.mavenProject.getVersion());
+    }
 
-        if (!projProps.containsKey(key))
+    /**
+     * Gets the store of the NVN properties of the projects in this MOJO's
+     * Maven session.
+     * 
+     * @return The store of the NVN properties of the projects in this MOJO's
+     *         Maven session.
+     */
+    ProjectStore getProjectStore()
+    {
+        if (this.projectStore != null)
         {
-            nvnStorage.get().put(key, new Properties());
+            return this.projectStore;
         }
 
-        Properties props = nvnStorage.get().get(key);
+        synchronized (projectStores)
+        {
+            this.projectStore = projectStores.get(this.session);
+
+            if (this.projectStore == null)
+            {
+                this.projectStore = new ProjectStore();
+                projectStores.put(this.session, this.projectStore);
+            }
+        }
 
-        return props;
+        return this.projectStore;
     }
 
     protected Version getNvnVersion()
@@ -800,29 +1005,70 @@ public abstract class AbstractNvnMojo extends AbstractMojo
             return;
         }
 
-        File bd = null;
+        File bd = getExecutionRoot().getBasedir();
+
+        String relpath = PathUtils.toRelative(bd, file.toString());
+        info(
+            "##teamcity[publishArtifacts '%s => %s']",
+            relpath,
+            directoryOrArchive);
+    }
 
+    /**
+     * Gets the project the build was started in.
+     * 
+     * @return The project the build was started in.
+     * @throws MojoExecutionException When the project is not in the reactor.
+     */
+    MavenProject getExecutionRoot() throws MojoExecutionException
+    {
         for (int x = 0; x < this.reactorProjects.size(); ++x)
         {
             MavenProject mp = (MavenProject) this.reactorProjects.get(x);
             if (mp.isExecutionRoot())
             {
-                bd = mp.getBasedir();
-                break;
+                return mp;
             }
         }
 
-        if (bd == null)
+        throw new MojoExecutionException("Error finding execution root.");
+    }
+
+    /**
+     * Escapes a value for a TeamCity service message.
+     * 
+     * @param value The value.
+     * @return The escaped value.
+     */
+    static String escapeTeamCity(String value)
+    {
+        StringBuilder buff = new StringBuilder(value.length());
+
+        for (int x = 0; x < value.length(); ++x)
         {
-            throw new MojoExecutionException(
-                "Error finding execution root while publishing artifacts.");
+            char c = value.charAt(x);
+
+            switch (c)
+            {
+                case '\'' :
+                case '|' :
+                case '[' :
+                case ']' :
+                    buff.append('|');
+                    buff.append(c);
+                    break;
+                case '\n' :
+                    buff.append("|n");
+                    break;
+                case '\r' :
+                    buff.append("|r");
+                    break;
+                default :
+                    buff.append(c);
+            }
         }
 
-        String relpath = PathUtils.toRelative(bd, file.toString());
-        info(
-            "##teamcity[publishArtifacts '%s => %s']",
-            relpath,
-            directoryOrArchive);
+        return buff.toString();
     }
 
     /**
@@ -838,32 +1084,192 @@ public abstract class AbstractNvnMojo extends AbstractMojo
     }
 
     /**
-     * The read/write lock for {@link #getNvnProperties()} and
-     * {@link #nvnStorage}.
+     * Begins a span of the Chrome trace of this MOJO's Maven session.
+     * 
+     * @param name The span's name.
+     * @param category The span's category.
+     * @return The span, which is not recorded unless {@link #traceFile} is
+     *         set.
      */
-    private static final ReadWriteLock nvnPropertiesRWL =
-        new ReentrantReadWriteLock();
+    TraceRecorder.Span trace(String name, String category)
+    {
+        return trace(name, category, null, null);
+    }
 
     /**
-     * A ThreadLocal map that is indexed by a Maven project's groupId and
-     * artifactId in the format '%s-%s'. This map provides a properties
-     * collection specific to nvn for each Maven project in the reactor list.
-     */
-    private static final NvnStorage nvnStorage = new NvnStorage();
+     * Begins a span of the Chrome trace of this MOJO's Maven session.
+     * 
+     * @param name The span's name.
+     * @param category The span's category.
+     * @param argName The name of the span's argument.
+     * @param argValue The value of the span's argument.
+     * @return The span, which is not recorded unless {@link #traceFile} is
+     *         set.
+     */
+    TraceRecorder.Span trace(
+        String name,
+        String category,
+        String argName,
+        String argValue)
+    {
+        TraceRecorder tr = getTraceRecorder();
+
+        if (tr == null)
+        {
+            return TraceRecorder.Span.NONE;
+        }
+
+        return tr.begin(
+            this.mavenProject.getArtifactId(),
+            name,
+            category,
+            argName,
+            argValue);
+    }
 
     /**
-     * A ThreadLocal class for storing nvn properties per Maven project.
+     * Gets the trace recorder of this MOJO's Maven session. The first MOJO
+     * that traces in a session creates the recorder and registers a shutdown
+     * hook that writes the trace once, when Maven exits.
      * 
-     * @author akutz
+     * @return The trace recorder or null if {@link #traceFile} is not set.
+     */
+    TraceRecorder getTraceRecorder()
+    {
+        if (StringUtils.isEmpty(this.traceFile))
+        {
+            return null;
+        }
+
+        if (this.traceRecorder != null)
+        {
+            return this.traceRecorder;
+        }
+
+        synchronized (traceRecorders)
+        {
+            this.traceRecorder = traceRecorders.get(this.session);
+
+            if (this.traceRecorder != null)
+            {
+                return this.traceRecorder;
+            }
+
+            final TraceRecorder tr = new TraceRecorder();
+            final File file = resolveSessionFile(this.traceFile);
+
+            Runtime.getRuntime().addShutdownHook(new Thread("nvn-trace")
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        tr.write(file);
+                        System.out.println(String.format(
+                            "NVN: wrote %s spans to %s",
+                            tr.size(),
+                            file));
+                    }
+                    catch (IOException e)
+                    {
+                        System.err.println(String.format(
+                            "NVN: error writing %s: %s",
+                            file,
+                            e));
+                    }
+                }
+            });
+
+            traceRecorders.put(this.session, tr);
+            this.traceRecorder = tr;
+        }
+
+        return this.traceRecorder;
+    }
+
+    /**
+     * Registers a shutdown hook that writes the metrics of the build to
+     * {@link #metricsDirectory} when Maven exits. The hook is only registered
+     * once.
+     */
+    void initMetricsExport()
+    {
+        if (StringUtils.isEmpty(this.metricsDirectory)
+            || !metricsExported.compareAndSet(false, true))
+        {
+            return;
+        }
+
+        final File dir = resolveSessionFile(this.metricsDirectory);
+
+        Runtime.getRuntime().addShutdownHook(new Thread("nvn-metrics")
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Metrics.getInstance().write(dir);
+                    System.out.println(String.format(
+                        "NVN: wrote metrics to %s",
+                        dir));
+                }
+                catch (IOException e)
+                {
+                    System.err.println(String.format(
+                        "NVN: error writing metrics to %s: %s",
+                        dir,
+                        e));
+                }
+            }
+        });
+    }
+
+    /**
+     * Resolves a path against the directory the build was started in.
      * 
+     * @param path The path.
+     * @return The file.
      */
-    private static final class NvnStorage extends
-        ThreadLocal<Map<String, Properties>>
+    File resolveSessionFile(String path)
     {
-        @Override
-        protected Map<String, Properties> initialValue()
+        File f = new File(path);
+
+        if (!f.isAbsolute() && this.session != null)
         {
-            return new HashMap<String, Properties>();
+            f = new File(this.session.getExecutionRootDirectory(), path);
         }
+
+        return f;
     }
+
+    /**
+     * Whether or not the metrics of the build are written when Maven exits.
+     */
+    private static final AtomicBoolean metricsExported = new AtomicBoolean();
+
+    /**
+     * The trace recorder of this MOJO's Maven session.
+     */
+    private TraceRecorder traceRecorder;
+
+    /**
+     * The trace recorders of the Maven sessions.
+     */
+    private static final Map<MavenSession, TraceRecorder> traceRecorders =
+        new WeakHashMap<MavenSession, TraceRecorder>();
+
+    /**
+     * The project store of this MOJO's Maven session.
+     */
+    private ProjectStore projectStore;
+
+    /**
+     * The project stores of the Maven sessions. A session's store is looked up
+     * once per MOJO and is discarded along with the session when the session
+     * ends.
+     */
+    private static final Map<MavenSession, ProjectStore> projectStores =
+        new WeakHashMap<MavenSession, ProjectStore>();
 }
@@ -47,6 +47,7 @@ import org.apache.maven.plugin.MojoExecutionException;
  * A MOJO for creating .NET assembly information files.
  * 
  * @goal assembly-info
+ * @threadSafe
  * @phase generate-sources
  * @description A MOJO for creating .NET assembly information files.
  */
@@ -49,6 +49,7 @@ import org.apache.maven.plugin.MojoExecutionException;
  * A MOJO for creating a bootstrapper for an MSI package and its prerequisites.
  * 
  * @goal bootstrap
+ * @threadSafe
  * @phase package
  * @description A MOJO for creating a bootstrapper for an MSI package and its
  *              prerequisites.
@@ -474,7 +475,7 @@ public class BootstrapperMojo extends AbstractExeMojo
                 + this.outProjFile, e);
         }
 
-        info("Created project file at " + this.outProjFile);
+        info("Created project file at %s", this.outProjFile);
     }
 
     private void initResFile() throws MojoExecutionException
@@ -862,7 +863,7 @@ public class BootstrapperMojo extends AbstractExeMojo
                         "Error writing manifest file: " + this.manifest);
                 }
 
-                debug("wrote manifest file: " + this.manifest);
+                debug("wrote manifest file: %s", this.manifest);
             }
         }
         else if (execution == 0 && process.exitValue() != 0)
@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.plugin;
+
+import java.io.File;
+import java.util.Properties;
+import net.sf.nvn.commons.msbuild.MSBuildProject;
+
+/**
+ * A configuration, platform and, for a project that is built against several
+ * frameworks, target framework that MSBuildMojo builds, together with the
+ * directory the cell is built into, its artifacts and the state of its
+ * up-to-date check. Cells are built on threads other than the MOJO's, so a
+ * cell carries everything its build needs instead of reading it from the
+ * MOJO's project store.
+ * 
+ * @author akutz
+ * 
+ */
+class BuildCell
+{
+    /**
+     * The project.
+     */
+    final MSBuildProject project;
+
+    /**
+     * The build configuration.
+     */
+    final String config;
+
+    /**
+     * The build platform.
+     */
+    final String platform;
+
+    /**
+     * The target framework. Null if the project is built against a single
+     * framework.
+     */
+    final String framework;
+
+    /**
+     * The classifier the cell's artifacts are attached with. Null for the
+     * project's active configuration and platform, whose artifacts are the
+     * project's main artifacts.
+     */
+    final String classifier;
+
+    /**
+     * The directory the cell's outputs are written to.
+     */
+    final File buildDir;
+
+    /**
+     * The binary artifact.
+     */
+    final File bin;
+
+    /**
+     * The symbols artifact. May be null.
+     */
+    final File pdb;
+
+    /**
+     * The documentation artifact. May be null.
+     */
+    final File doc;
+
+    /**
+     * The properties msbuild is invoked with.
+     */
+    final Properties properties;
+
+    /**
+     * The fingerprint of the cell's inputs. Null if the up-to-date check was
+     * not performed.
+     */
+    String inputFingerprint;
+
+    /**
+     * A flag indicating whether or not msbuild was skipped because the cell
+     * is up-to-date.
+     */
+    boolean upToDate;
+
+    /**
+     * A flag indicating whether or not msbuild was skipped because the cell's
+     * artifacts were restored from the build output cache.
+     */
+    boolean restored;
+
+    BuildCell(
+        MSBuildProject project,
+        String config,
+        String platform,
+        String framework,
+        String classifier,
+        File buildDir,
+        File bin,
+        File pdb,
+        File doc,
+        Properties properties)
+    {
+        this.project = project;
+        this.config = config;
+        this.platform = platform;
+        this.framework = framework;
+        this.classifier = classifier;
+        this.buildDir = buildDir;
+        this.bin = bin;
+        this.pdb = pdb;
+        this.doc = doc;
+        this.properties = properties;
+    }
+
+    /**
+     * Gets the classifier for a configuration and platform, for example
+     * <em>release-x64</em>.
+     * 
+     * @param config The build configuration.
+     * @param platform The build platform.
+     * @return The classifier.
+     */
+    static String getClassifier(String config, String platform)
+    {
+        return (config + "-" + platform).replaceAll("\\s", "").toLowerCase();
+    }
+
+    /**
+     * Gets the classifier for a configuration, platform and target framework,
+     * for example <em>release-x64-net45</em>.
+     * 
+     * @param config The build configuration.
+     * @param platform The build platform.
+     * @param framework The target framework. May be null.
+     * @return The classifier.
+     */
+    static String getClassifier(
+        String config,
+        String platform,
+        String framework)
+    {
+        String c = getClassifier(config, platform);
+        return framework == null ? c : c + "-" + getClassifier(framework);
+    }
+
+    /**
+     * Gets the classifier for a target framework of the project's active
+     * configuration and platform, for example <em>net45</em>.
+     * 
+     * @param framework The target framework.
+     * @return The classifier.
+     */
+    static String getClassifier(String framework)
+    {
+        return framework.replaceAll("\\s", "").toLowerCase();
+    }
+
+    @Override
+    public String toString()
+    {
+        String s = this.config + "|" + this.platform;
+        return this.framework == null ? s : s + "|" + this.framework;
+    }
+}
@@ -47,6 +47,7 @@ import org.codehaus.plexus.util.StringUtils;
  * @author akutz
  * 
  * @goal candle
+ * @threadSafe
  * @phase package
  * @requiresDependencyResolution compile
  * @description A MOJO for running the Microsoft Windows Installer XML (WiX)
@@ -347,7 +348,7 @@ public class CandleMojo extends AbstractExeMojo
             String won = bn + ".wixobj";
             this.outputFile =
                 new File(super.mavenProject.getBuild().getDirectory(), won);
-            debug("WixObj File: " + this.outputFile);
+            debug("WixObj File: %s", this.outputFile);
         }
 
         if (this.enableDebugSymbolForSnapshotBuilds
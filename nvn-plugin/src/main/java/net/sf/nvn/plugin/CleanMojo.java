@@ -30,15 +30,66 @@
 
 package net.sf.nvn.plugin;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import net.sf.nvn.commons.ParallelDeleter;
+import net.sf.nvn.commons.TraceRecorder;
+import net.sf.nvn.commons.msbuild.EvaluationContext;
+import net.sf.nvn.commons.msbuild.MSBuildProject;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+
 /**
+ * <p>
  * A MOJO for cleaning .NET solutions and/or projects with MSBuild.
+ * </p>
+ * 
+ * <p>
+ * Unless <em>nativeClean</em> is false, msbuild is not started. Instead the
+ * files msbuild would delete are computed from the project file: the
+ * artifacts of each configuration and platform, the files listed in the
+ * intermediate directory's FileListAbsolute.txt and the intermediate directory
+ * itself. They are deleted by a pool of threads. Projects whose files, or the
+ * files they import, define or hook the Clean targets are still cleaned with
+ * msbuild.
+ * </p>
  * 
  * @goal clean
+ * @threadSafe
  * @phase clean
  * @description A MOJO for cleaning .NET solutions and/or projects with MSBuild.
  */
 public class CleanMojo extends MSBuildMojo
 {
+    /**
+     * Set this parameter to false to always clean with msbuild.
+     * 
+     * @parameter expression="${nvn.nativeClean}" default-value="true"
+     */
+    boolean nativeClean;
+
+    /**
+     * The number of threads that delete files when the project is not cleaned
+     * with msbuild. Defaults to the number of processors.
+     * 
+     * @parameter expression="${nvn.cleanThreads}"
+     */
+    Integer cleanThreads;
+
+    /**
+     * Whether or not the project is cleaned without msbuild.
+     */
+    private boolean cleanNatively;
+
     @Override
     void initTargets()
     {
@@ -52,4 +103,232 @@ public class CleanMojo extends MSBuildMojo
             "Clean"
         };
     }
+
+    @Override
+    void preExecute() throws MojoExecutionException
+    {
+        super.preExecute();
+
+        MSBuildProject mp = getMSBuildProject();
+
+        if (!this.nativeClean || mp == null)
+        {
+            return;
+        }
+
+        if (!Arrays.equals(this.targets, new String[]
+        {
+            "Clean"
+        }))
+        {
+            info("cleaning with msbuild because the targets are %s", Arrays
+                .toString(this.targets));
+        }
+        else if (mp.isCleanCustomized())
+        {
+            info("cleaning with msbuild because %s customizes the Clean "
+                + "target", mp.getFile().getName());
+        }
+        else
+        {
+            this.cleanNatively = true;
+        }
+    }
+
+    @Override
+    protected boolean skipExec(int execution)
+    {
+        // A clean is never up-to-date and does not produce outputs to cache.
+        return false;
+    }
+
+    @Override
+    void execIfNotSkipped(int execution) throws MojoExecutionException
+    {
+        if (!this.cleanNatively)
+        {
+            super.execIfNotSkipped(execution);
+            return;
+        }
+
+        BuildCell cell = getBuildCells().get(execution);
+        List<File> files = getFilesToClean(cell);
+
+        int threads =
+            this.cleanThreads == null ? Runtime
+                .getRuntime()
+                .availableProcessors() : this.cleanThreads.intValue();
+
+        TraceRecorder.Span span = trace("delete", "io");
+
+        try
+        {
+            int deleted = new ParallelDeleter(threads).delete(files);
+            info("cleaned %s: deleted %s file(s)", cell, deleted);
+        }
+        catch (IOException e)
+        {
+            throw new MojoExecutionException(String.format(
+                "Error cleaning %s",
+                cell), e);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException(String.format(
+                "Interrupted while cleaning %s",
+                cell), e);
+        }
+        finally
+        {
+            span.end();
+        }
+    }
+
+    /**
+     * Gets the files and directories msbuild deletes when it cleans a
+     * configuration and platform.
+     * 
+     * @param cell The configuration and platform.
+     * @return The files and directories to delete.
+     * @throws MojoExecutionException When an error occurs.
+     */
+    List<File> getFilesToClean(BuildCell cell) throws MojoExecutionException
+    {
+        File projDir = getProjectDir(cell);
+        Set<File> files = new LinkedHashSet<File>();
+
+        for (File f : new File[]
+        {
+            cell.bin, cell.pdb, cell.doc, getFingerprintFile(cell)
+        })
+        {
+            if (f != null)
+            {
+                files.add(resolve(f.getPath()));
+            }
+        }
+
+        File intDir = getIntermediateDir(cell);
+
+        // msbuild lists the files each build writes, such as the referenced
+        // assemblies that are copied to the output directory, in the
+        // intermediate directory.
+        File[] lists = intDir.listFiles();
+
+        if (lists != null)
+        {
+            for (File list : lists)
+            {
+                if (list.getName().endsWith("FileListAbsolute.txt"))
+                {
+                    for (String path : readLines(list))
+                    {
+                        File f = EvaluationContext.resolveFile(projDir, path);
+
+                        if (isInside(f, projDir) || isInside(f, getBuildDir()))
+                        {
+                            files.add(f);
+                        }
+                    }
+                }
+            }
+        }
+
+        // An intermediate directory outside of the project is not removed in
+        // case it is shared.
+        if (isInside(intDir, projDir) || isInside(intDir, getBuildDir()))
+        {
+            files.add(intDir);
+        }
+
+        return new ArrayList<File>(files);
+    }
+
+    /**
+     * Gets the intermediate directory of a configuration and platform.
+     * 
+     * @param cell The configuration and platform.
+     * @return The intermediate directory.
+     */
+    File getIntermediateDir(BuildCell cell)
+    {
+        String iop = cell.properties.getProperty("IntermediateOutputPath");
+
+        if (StringUtils.isNotEmpty(iop))
+        {
+            return resolve(StringUtils.strip(iop, "\""));
+        }
+
+        File intDir =
+            cell.project.getIntermediateDir(
+                cell.config,
+                cell.platform,
+                cell.framework);
+
+        return EvaluationContext.resolveFile(getProjectDir(cell), intDir
+            .getPath());
+    }
+
+    private static File getProjectDir(BuildCell cell)
+    {
+        return cell.project.getFile().getAbsoluteFile().getParentFile();
+    }
+
+    private File resolve(String path)
+    {
+        return EvaluationContext.resolveFile(
+            this.mavenProject.getBasedir(),
+            path).getAbsoluteFile();
+    }
+
+    private static boolean isInside(File file, File dir)
+    {
+        String f = FilenameUtils.normalize(file.getAbsolutePath());
+        String d = FilenameUtils.normalize(dir.getAbsolutePath());
+
+        if (f == null || d == null)
+        {
+            return false;
+        }
+
+        d = FilenameUtils.normalizeNoEndSeparator(d) + File.separator;
+        return f.length() > d.length() && f.regionMatches(true, 0, d, 0, d
+            .length());
+    }
+
+    private static List<String> readLines(File file)
+        throws MojoExecutionException
+    {
+        InputStream in = null;
+
+        try
+        {
+            in = new FileInputStream(file);
+
+            List<String> lines = new ArrayList<String>();
+
+            for (Object o : IOUtils.readLines(in))
+            {
+                String line = ((String) o).trim();
+
+                if (line.length() > 0)
+                {
+                    lines.add(line);
+                }
+            }
+
+            return lines;
+        }
+        catch (IOException e)
+        {
+            throw new MojoExecutionException(String.format(
+                "Error reading %s",
+                file), e);
+        }
+        finally
+        {
+            IOUtils.closeQuietly(in);
+        }
+    }
 }
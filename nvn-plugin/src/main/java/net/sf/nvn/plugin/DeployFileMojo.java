@@ -36,6 +36,7 @@ import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
 import java.util.Map;
+import net.sf.nvn.commons.Metrics;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.deployer.ArtifactDeployer;
@@ -76,6 +77,7 @@ import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
  * @author akutz
  * 
  * @goal deploy-file
+ * @threadSafe
  * @requiresProject false
  * @description A MOJO for deploying .NET artifacts.
  */
@@ -378,11 +380,7 @@ public class DeployFileMojo extends AbstractMojo
 
         try
         {
-            getDeployer().deploy(
-                file,
-                artifact,
-                deploymentRepository,
-                getLocalRepository());
+            deploy(file, artifact, deploymentRepository);
         }
         catch (ArtifactDeploymentException e)
         {
@@ -411,11 +409,7 @@ public class DeployFileMojo extends AbstractMojo
                     null);
             try
             {
-                getDeployer().deploy(
-                    nvnFile,
-                    artifact,
-                    deploymentRepository,
-                    getLocalRepository());
+                deploy(nvnFile, artifact, deploymentRepository);
             }
             catch (ArtifactDeploymentException e)
             {
@@ -425,6 +419,33 @@ public class DeployFileMojo extends AbstractMojo
         }
     }
 
+    /**
+     * Deploys a file to the deployment repository.
+     * 
+     * @param file The file.
+     * @param artifact The file's artifact.
+     * @param deploymentRepository The deployment repository.
+     * @throws ArtifactDeploymentException When an error occurs.
+     */
+    private void deploy(
+        File file,
+        Artifact artifact,
+        ArtifactRepository deploymentRepository)
+        throws ArtifactDeploymentException
+    {
+        long start = System.nanoTime();
+
+        getDeployer().deploy(
+            file,
+            artifact,
+            deploymentRepository,
+            getLocalRepository());
+
+        Metrics.getInstance().timer(
+            "nvn_artifact_deploy_seconds",
+            "Time spent deploying artifacts").stop(start);
+    }
+
     /**
      * Gets the path of the specified artifact within the local repository. Note
      * that the returned path need not exist (yet).
@@ -45,6 +45,7 @@ import org.apache.maven.plugin.MojoExecutionException;
  * @author akutz
  * 
  * @goal dotcover
+ * @threadSafe
  * @phase test
  * @requiresDependencyResolution compile
  * @description A MOJO for running the JetBrains dotCover code coverage tool.
@@ -53,6 +53,7 @@ import org.apache.maven.project.MavenProjectBuilder;
  * @author akutz
  * 
  * @goal generate-dependencies
+ * @threadSafe
  * @requiresProject false
  * @description A MOJO for generating the original .NET dependency files from
  *              the Mavenized versions.
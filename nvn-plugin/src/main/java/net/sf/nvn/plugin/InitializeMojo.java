@@ -48,6 +48,7 @@ import org.codehaus.plexus.util.StringUtils;
  * @author akutz
  * 
  * @goal initialize
+ * @threadSafe
  * @phase initialize
  * @description A MOJO for initializing the nvn build system.
  * 
@@ -214,12 +215,12 @@ public class InitializeMojo extends AbstractNvnMojo
                 getBuildConfig(),
                 getBuildPlatform());
         initNvnProp(NPK_BUILD_DIR, relBuildDir);
-        info("Initialized build directory (relative): " + relBuildDir);
+        info("Initialized build directory (relative): %s", relBuildDir);
 
         File baseDir = super.mavenProject.getBasedir();
         File absBuildDir = new File(baseDir, relBuildDir.toString());
         super.mavenProject.getBuild().setDirectory(absBuildDir.toString());
-        info("Initialized build directory (absolute): " + absBuildDir);
+        info("Initialized build directory (absolute): %s", absBuildDir);
     }
 
     /**
@@ -236,7 +237,7 @@ public class InitializeMojo extends AbstractNvnMojo
             super.mavenProject.setVersion(this.defaultVersion);
         }
 
-        info("initialized version: " + myVersion);
+        info("initialized version: %s", myVersion);
     }
 
     /**
@@ -250,7 +251,9 @@ public class InitializeMojo extends AbstractNvnMojo
 
         try
         {
-            v = Version.parse(super.mavenProject.getVersion());
+            // The cached version is shared, so the build number is applied
+            // to a copy.
+            v = Version.valueOf(super.mavenProject.getVersion()).toMutable();
         }
         catch (Exception e)
         {
@@ -268,7 +271,7 @@ public class InitializeMojo extends AbstractNvnMojo
 
                 try
                 {
-                    buildNumVer = Version.parse(envVarBuildNum);
+                    buildNumVer = Version.valueOf(envVarBuildNum);
                 }
                 catch (Exception e)
                 {
@@ -313,7 +316,7 @@ public class InitializeMojo extends AbstractNvnMojo
         initNvnProp(NPK_VERSION_2, v.toString(2));
         initNvnProp(NPK_VERSION_3, v.toString(3));
 
-        info("initialized nvn version: " + v);
+        info("initialized nvn version: %s", v);
     }
 
     /**
@@ -337,10 +340,11 @@ public class InitializeMojo extends AbstractNvnMojo
         File bd = this.mavenProject.getBasedir();
         String bc = getBuildConfig();
         String bp = getBuildPlatform();
+        String fw = getTargetFramework();
 
-        String artName = getMSBuildProject().getArtifactName(bc, bp);
+        String artName = getMSBuildProject().getArtifactName(bc, bp, fw);
         initNvnProp(NPK_ARTIFACT_NAME, artName);
-        info("artifact name: " + artName);
+        info("artifact name: %s", artName);
 
         // Create the binary artifact.
         Artifact artBin =
@@ -374,14 +378,18 @@ public class InitializeMojo extends AbstractNvnMojo
 
         // Get the binary artifact's file.
         File artBinFile =
-            new File(bd, getMSBuildProject().getBinArtifact(bc, bp).toString());
+            new File(bd, getMSBuildProject()
+                .getBinArtifact(bc, bp, fw)
+                .toString());
         artBin.setFile(artBinFile);
         this.mavenProject.setArtifact(artBin);
         initNvnProp(NPK_ARTIFACT_BIN, artBinFile);
         info("initialized bin artifact: %s", artBinFile);
 
         File artPdbFile =
-            new File(bd, getMSBuildProject().getPdbArtifact(bc, bp).toString());
+            new File(bd, getMSBuildProject()
+                .getPdbArtifact(bc, bp, fw)
+                .toString());
 
         if (artPdbFile != null)
         {
@@ -389,7 +397,7 @@ public class InitializeMojo extends AbstractNvnMojo
             info("initialized pdb artifact: %s", artPdbFile);
         }
 
-        File artDocFile = getMSBuildProject().getDocArtifact(bc, bp);
+        File artDocFile = getMSBuildProject().getDocArtifact(bc, bp, fw);
         if (artDocFile != null)
         {
             artDocFile = new File(bd, artDocFile.toString());
@@ -478,33 +486,18 @@ public class InitializeMojo extends AbstractNvnMojo
         info("build platform:      %s", getBuildPlatform());
     }
 
-    @SuppressWarnings("rawtypes")
     void initMSBuildProject() throws MojoExecutionException
     {
         if (this.msbuildProjectFile == null)
         {
-            Collection files =
-                FileUtils.listFiles(
-                    this.mavenProject.getBasedir(),
-                    new String[]
-                    {
-                        "csproj", "vbproj", "vcxproj"
-                    },
-                    false);
-
-            if (files == null)
-            {
-                debug("project file list is null");
-                return;
-            }
+            this.msbuildProjectFile =
+                findMSBuildProjectFile(this.mavenProject.getBasedir());
 
-            if (files.size() == 0)
+            if (this.msbuildProjectFile == null)
             {
                 debug("project file list is empty");
                 return;
             }
-
-            this.msbuildProjectFile = (File) files.iterator().next();
         }
 
         try
@@ -514,14 +507,23 @@ public class InitializeMojo extends AbstractNvnMojo
 
             if (msb == null)
             {
-                info("project file could not be unmarshalled: "
-                    + this.msbuildProjectFile);
+                info(
+                    "project file could not be unmarshalled: %s",
+                    this.msbuildProjectFile);
             }
             else
             {
                 initNvnProp(NPK_PROJECT, msb);
                 info("initialized msproject");
 
+                if (!msb.getUnknownFunctions().isEmpty())
+                {
+                    info(
+                        "conditions calling unsupported functions %s "
+                            + "are evaluated as false",
+                        msb.getUnknownFunctions());
+                }
+
                 // If this is a C++ project then adjust the default build
                 // platforms from 'AnyCPU' to 'Win32'.
                 if (msb.getProjectLanguage() == ProjectLanguageType.CPP)
@@ -545,4 +547,27 @@ public class InitializeMojo extends AbstractNvnMojo
                 this.msbuildProjectFile), e);
         }
     }
+
+    /**
+     * Finds the MSBuild project file in a directory.
+     * 
+     * @param dir The directory.
+     * @return The first C#, VisualBasic.NET or C++ project file in the
+     *         directory or null if there is none.
+     */
+    @SuppressWarnings("rawtypes")
+    static File findMSBuildProjectFile(File dir)
+    {
+        Collection files = FileUtils.listFiles(dir, new String[]
+        {
+            "csproj", "vbproj", "vcxproj"
+        }, false);
+
+        if (files == null || files.size() == 0)
+        {
+            return null;
+        }
+
+        return (File) files.iterator().next();
+    }
 }
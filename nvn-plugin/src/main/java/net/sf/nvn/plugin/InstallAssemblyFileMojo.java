@@ -32,6 +32,7 @@ package net.sf.nvn.plugin;
 
 import java.io.File;
 import net.sf.nvn.commons.DependencyUtils;
+import net.sf.nvn.commons.TraceRecorder;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.MojoExecutionException;
 
@@ -45,6 +46,7 @@ import org.apache.maven.plugin.MojoExecutionException;
  * @author akutz
  * 
  * @goal install-assembly-file
+ * @threadSafe
  * @requiresProject true
  * @requiresDependencyResolution
  * @description A Maven plug-in for installing the binary artifact this build
@@ -73,7 +75,17 @@ public class InstallAssemblyFileMojo extends AbstractNvnMojo
         File artBinFile = new File(localRepository.getBasedir(), artBinPath);
         
         // Copy the files.
-        DependencyUtils.copyToAssemblyNamedFiles(artBinFile, artName);
+        TraceRecorder.Span span =
+            trace("copy", "io", "file", artBinFile.getPath());
+
+        try
+        {
+            DependencyUtils.copyToAssemblyNamedFiles(artBinFile, artName);
+        }
+        finally
+        {
+            span.end();
+        }
     }
 
     @Override
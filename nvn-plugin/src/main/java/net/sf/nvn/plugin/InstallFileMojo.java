@@ -40,6 +40,8 @@ import java.net.MalformedURLException;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
+import net.sf.nvn.commons.FlightEvents;
+import net.sf.nvn.commons.Metrics;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.factory.ArtifactFactory;
@@ -83,6 +85,7 @@ import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
  * @author akutz
  * 
  * @goal install-file
+ * @threadSafe
  * @requiresProject false
  * @requiresDependencyResolution
  * @description A Maven plug-in for installing .NET artifacts.
@@ -358,7 +361,7 @@ public class InstallFileMojo extends AbstractMojo
 
         try
         {
-            installer.install(file, artifact, localRepository);
+            install(file, artifact);
             installChecksums(artifact);
         }
         catch (ArtifactInstallationException e)
@@ -399,7 +402,7 @@ public class InstallFileMojo extends AbstractMojo
                     null);
             try
             {
-                installer.install(nvnFile, artifact, localRepository);
+                install(nvnFile, artifact);
                 installChecksums(artifact);
             }
             catch (ArtifactInstallationException e)
@@ -420,7 +423,7 @@ public class InstallFileMojo extends AbstractMojo
                     "sources");
             try
             {
-                installer.install(pdbFile, artifact, localRepository);
+                install(pdbFile, artifact);
                 installChecksums(artifact);
             }
             catch (ArtifactInstallationException e)
@@ -441,7 +444,7 @@ public class InstallFileMojo extends AbstractMojo
                     "dotnetdoc");
             try
             {
-                installer.install(docFile, artifact, localRepository);
+                install(docFile, artifact);
                 installChecksums(artifact);
             }
             catch (ArtifactInstallationException e)
@@ -452,6 +455,40 @@ public class InstallFileMojo extends AbstractMojo
         }
     }
 
+    /**
+     * Installs a file to the local repository.
+     * 
+     * @param file The file.
+     * @param artifact The file's artifact.
+     * @throws ArtifactInstallationException When an error occurs.
+     */
+    private void install(File file, Artifact artifact)
+        throws ArtifactInstallationException
+    {
+        FlightEvents.Event fe =
+            FlightEvents.begin(
+                FlightEvents.FILE_COPY,
+                file.getPath(),
+                FlightEvents.FILE_COPY.isEnabled() ? localRepository
+                    .pathOf(artifact) : null);
+
+        long start = System.nanoTime();
+
+        try
+        {
+            installer.install(file, artifact, localRepository);
+        }
+        finally
+        {
+            fe.end();
+        }
+
+        Metrics.getInstance().timer(
+            "nvn_artifact_install_seconds",
+            "Time spent installing artifacts").stop(start);
+        Metrics.BYTES_COPIED.inc(file.length());
+    }
+
     /**
      * Parses a POM.
      * 
@@ -723,9 +760,14 @@ public class InstallFileMojo extends AbstractMojo
         String ext) throws MojoExecutionException
     {
         String checksum;
-        getLog().debug(
-            "Calculating " + digester.getAlgorithm() + " checksum for "
-                + originalFile);
+
+        if (getLog().isDebugEnabled())
+        {
+            getLog().debug(
+                "Calculating " + digester.getAlgorithm() + " checksum for "
+                    + originalFile);
+        }
+
         try
         {
             checksum = digester.calc(originalFile);
@@ -737,7 +779,12 @@ public class InstallFileMojo extends AbstractMojo
         }
 
         File checksumFile = new File(installedFile.getAbsolutePath() + ext);
-        getLog().debug("Installing checksum to " + checksumFile);
+
+        if (getLog().isDebugEnabled())
+        {
+            getLog().debug("Installing checksum to " + checksumFile);
+        }
+
         try
         {
             checksumFile.getParentFile().mkdirs();
@@ -18,6 +18,7 @@ import org.codehaus.plexus.util.StringUtils;
  * @author akutz
  * 
  * @goal light
+ * @threadSafe
  * @phase package
  * @requiresDependencyResolution compile
  * @description A MOJO for running the Microsoft Windows Installer XML (WiX)
@@ -394,7 +395,7 @@ public class LightMojo extends AbstractExeMojo
             {
                 candleOut
             };
-            debug("Using candle out file: " + candleOut);
+            debug("Using candle out file: %s", candleOut);
         }
 
         if (this.outputFile == null)
@@ -409,7 +410,7 @@ public class LightMojo extends AbstractExeMojo
                         super.mavenProject.getName()));
             }
 
-            debug("Initialized output file: " + this.outputFile);
+            debug("Initialized output file: %s", this.outputFile);
         }
 
         if (this.objectFiles != null)
@@ -437,7 +438,7 @@ public class LightMojo extends AbstractExeMojo
                 }
                 catch (IOException e)
                 {
-                    error("Error reading: " + f, e);
+                    error(String.format("Error reading: %s", f), e);
                     throw new MojoExecutionException("Error reading: " + f, e);
                 }
             }
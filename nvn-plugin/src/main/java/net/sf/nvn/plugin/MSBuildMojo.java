@@ -32,13 +32,40 @@ package net.sf.nvn.plugin;
 
 import static net.sf.nvn.commons.StringUtils.quote;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import net.sf.nvn.commons.CpuBudget;
 import net.sf.nvn.commons.DependencyUtils;
+import net.sf.nvn.commons.Fingerprint;
+import net.sf.nvn.commons.LineHandler;
+import net.sf.nvn.commons.Metrics;
+import net.sf.nvn.commons.TraceRecorder;
+import net.sf.nvn.commons.cache.HttpOutputCache;
+import net.sf.nvn.commons.cache.LocalOutputCache;
+import net.sf.nvn.commons.cache.OutputCache;
+import net.sf.nvn.commons.msbuild.Diagnostic;
+import net.sf.nvn.commons.msbuild.DiagnosticCollector;
+import net.sf.nvn.commons.msbuild.MSBuildProject;
+import net.sf.nvn.commons.msbuild.PerformanceSummary;
+import net.sf.nvn.commons.msbuild.ProjectInputs;
+import net.sf.nvn.commons.msbuild.ProjectReferenceRewriter;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.model.Dependency;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.project.MavenProject;
@@ -47,6 +74,7 @@ import org.apache.maven.project.MavenProject;
  * A MOJO for building .NET solutions and/or projects with MSBuild.
  * 
  * @goal msbuild
+ * @threadSafe
  * @phase compile
  * @description A MOJO for building .NET solutions and/or projects with MSBuild.
  * @requiresDependencyResolution
@@ -186,6 +214,53 @@ public class MSBuildMojo extends AbstractExeMojo
      */
     String consoleLoggerParameters;
 
+    /**
+     * <p>
+     * Set this parameter to true to have the console logger print the time
+     * spent in each project, target and task. The timings are parsed from the
+     * output as msbuild writes it and written to
+     * <em>msbuild-performance.json</em> in the project's build directory. The
+     * timings of all of the projects built in this Maven session are written
+     * to the same file in the build directory of the execution root.
+     * </p>
+     * 
+     * <p>
+     * When TeamCity integration is enabled the time spent in each target and
+     * task across the session is reported as the build statistics
+     * <em>msbuild.target.&lt;name&gt;</em> and
+     * <em>msbuild.task.&lt;name&gt;</em>.
+     * </p>
+     * 
+     * @parameter expression="${nvn.performanceSummary}" default-value="false"
+     */
+    boolean performanceSummary;
+
+    /**
+     * <p>
+     * Set this parameter to false to not collect the errors and warnings from
+     * msbuild's output. The diagnostics a project reports that no other
+     * project in this Maven session reported are summarized after the project
+     * is built, grouped by code and file.
+     * </p>
+     * 
+     * <p>
+     * When TeamCity integration is enabled each error is reported as a build
+     * problem and each warning as an inspection.
+     * </p>
+     * 
+     * @parameter expression="${nvn.reportDiagnostics}" default-value="true"
+     */
+    boolean reportDiagnostics;
+
+    /**
+     * The largest number of distinct diagnostics that are kept in memory for
+     * each msbuild execution and for the session. Diagnostics beyond this
+     * number are counted but not reported.
+     * 
+     * @parameter expression="${nvn.maxDiagnostics}" default-value="1000"
+     */
+    int maxDiagnostics;
+
     /**
      * Displays this amount of information in the build log. Individual loggers
      * display events based upon the verbosity level. A logger can also be
@@ -227,12 +302,33 @@ public class MSBuildMojo extends AbstractExeMojo
     File schema;
 
     /**
+     * <p>
      * Specifies the number of worker processes that are involved in the build.
+     * </p>
+     * 
+     * <p>
+     * When this parameter is not set and <em>shareCpuBudget</em> is true, the
+     * number is leased from a budget of processors that is shared by all of
+     * the msbuild processes that run at the same time in this Maven session,
+     * for example the cells of a configuration matrix. Each process leases no
+     * more than its share of the budget, and msbuild waits to start while
+     * every processor is leased. The processors are returned to the budget
+     * when msbuild exits. The size of the budget is the number of processors
+     * unless the <em>nvn.cpuBudget</em> system property says otherwise.
+     * </p>
      * 
      * @parameter
      */
     Integer maxCpuCount;
 
+    /**
+     * Set this parameter to false to not pass <em>/maxcpucount</em> to msbuild
+     * unless the <em>maxCpuCount</em> parameter is set.
+     * 
+     * @parameter expression="${nvn.shareCpuBudget}" default-value="true"
+     */
+    boolean shareCpuBudget;
+
     /**
      * List of extensions to ignore when the project file to build is being
      * determined.
@@ -316,7 +412,10 @@ public class MSBuildMojo extends AbstractExeMojo
     /**
      * Enables or Disables the re-use of MSBuild nodes. If true then the nodes
      * remain after the build completes and are reused by subsequent builds,
-     * otherwise the nodes do not remain after the build completes.
+     * otherwise the nodes do not remain after the build completes. Nodes are
+     * not reused by an msbuild process that starts while other msbuild
+     * processes of this session are running, because each of those processes
+     * would leave its own set of idle nodes behind.
      * 
      * @parameter
      */
@@ -336,6 +435,216 @@ public class MSBuildMojo extends AbstractExeMojo
      */
     boolean suppressPostBuildEvents;
 
+    /**
+     * <p>
+     * Skips msbuild when the project has not changed since it was last built.
+     * The project file, the files it imports, its source items, the projects
+     * it references through project references and their inputs, the
+     * referenced assemblies and the msbuild command line are fingerprinted
+     * and compared with the fingerprint stored in the build directory by the
+     * last successful build. msbuild is skipped when the fingerprints match
+     * and the binary, symbols and documentation artifacts are the ones that
+     * build produced.
+     * </p>
+     * 
+     * <p>
+     * msbuild always runs when a project has items of a type that is not
+     * known to name or not name source files, since their changes could not
+     * be detected.
+     * </p>
+     * 
+     * <p>
+     * Set this parameter to false to always run msbuild.
+     * </p>
+     * 
+     * @parameter default-value="true"
+     */
+    boolean upToDateCheck;
+
+    /**
+     * <p>
+     * The directory of a build output cache shared by the builds on this
+     * machine. The binary, symbols and documentation artifacts of a successful
+     * build are stored in the cache under the fingerprint of the project's
+     * inputs. When a later build of any workspace has the same fingerprint,
+     * the cached artifacts are restored instead of running msbuild.
+     * </p>
+     * 
+     * <p>
+     * The cache is disabled when this parameter is not set.
+     * </p>
+     * 
+     * @parameter expression="${nvn.buildCache}"
+     */
+    File buildCache;
+
+    /**
+     * The maximum size of the build output cache in megabytes. The least
+     * recently used entries are evicted when the cache grows beyond this size.
+     * 
+     * @parameter expression="${nvn.buildCacheSize}" default-value="10240"
+     */
+    int buildCacheSize;
+
+    /**
+     * <p>
+     * The URL of a build output cache shared by many build agents. The server
+     * must store the resources PUT below this URL and return them to GET and
+     * HEAD requests. When a build output cache directory is also set, it is
+     * checked first, and artifacts restored from the server are also stored in
+     * the directory.
+     * </p>
+     * 
+     * <p>
+     * The remote cache is disabled when this parameter is not set.
+     * </p>
+     * 
+     * @parameter expression="${nvn.buildCacheUrl}"
+     */
+    URL buildCacheUrl;
+
+    /**
+     * The time in milliseconds that restoring artifacts from the remote build
+     * output cache may take. When the server is slower than that the project
+     * is built instead.
+     * 
+     * @parameter expression="${nvn.buildCacheTimeout}" default-value="2000"
+     */
+    long buildCacheTimeout;
+
+    /**
+     * The time in milliseconds that storing artifacts in the remote build
+     * output cache may take. When the server is slower than that the
+     * artifacts are not stored.
+     * 
+     * @parameter expression="${nvn.buildCacheUploadTimeout}"
+     *            default-value="60000"
+     */
+    long buildCacheUploadTimeout;
+
+    /**
+     * <p>
+     * The build configurations to build, for example <em>Debug</em> and
+     * <em>Release</em>. Together with the <em>buildPlatforms</em> parameter
+     * this describes a matrix of configurations and platforms that are built
+     * by concurrent msbuild processes. The project's active configuration and
+     * platform is always built.
+     * </p>
+     * 
+     * <p>
+     * Each cell of the matrix is built into the build directory the project
+     * declares for its configuration and platform, with its own intermediate
+     * directory below it, and its artifacts are attached to the project with
+     * the classifier <em>&lt;configuration&gt;-&lt;platform&gt;</em>, for
+     * example <em>release-x64</em>.
+     * </p>
+     * 
+     * <p>
+     * A project that lists several frameworks in its TargetFrameworks
+     * property is built against each of them by concurrent msbuild processes.
+     * The project's main artifacts are built against the first framework.
+     * The artifacts built against the other frameworks are attached with the
+     * framework as their classifier, for example <em>net45</em>, or, for the
+     * other cells of the matrix, with the classifier
+     * <em>&lt;configuration&gt;-&lt;platform&gt;-&lt;framework&gt;</em>.
+     * </p>
+     * 
+     * <p>
+     * Only the active configuration is built when this parameter is not set.
+     * </p>
+     * 
+     * @parameter
+     */
+    String[] buildConfigurations;
+
+    /**
+     * The build platforms to build, for example <em>AnyCPU</em>, <em>x86</em>
+     * and <em>x64</em>. See the <em>buildConfigurations</em> parameter. Only
+     * the active platform is built when this parameter is not set.
+     * 
+     * @parameter
+     */
+    String[] buildPlatforms;
+
+    /**
+     * The maximum number of msbuild processes that build the cells of the
+     * configuration and platform matrix at the same time. All of the cells
+     * are built at the same time when this parameter is not set.
+     * 
+     * @parameter expression="${nvn.maxParallelBuilds}"
+     */
+    Integer maxParallelBuilds;
+
+    /**
+     * The assemblies the project references through its dependencies.
+     */
+    private List<File> referenceFiles = new ArrayList<File>();
+
+    /**
+     * The project files of the project references msbuild builds, that is the
+     * ones that are not refactored into explicit references.
+     */
+    private List<File> projectReferenceFiles = new ArrayList<File>();
+
+    /**
+     * The fingerprints of the inputs of the projects msbuild builds through
+     * project references, keyed by Maven session. The modules of a session
+     * that reference the same projects share them.
+     */
+    private static final Map<MavenSession, ProjectInputs> sessionInputs =
+        new WeakHashMap<MavenSession, ProjectInputs>();
+
+    /**
+     * The configurations and platforms to build. The first cell is the
+     * project's active configuration and platform.
+     */
+    private List<BuildCell> buildCells = new ArrayList<BuildCell>();
+
+    /**
+     * The processors leased for the running executions, keyed by execution.
+     */
+    private Map<Integer, CpuBudget.Lease> cpuLeases =
+        new ConcurrentHashMap<Integer, CpuBudget.Lease>();
+
+    /**
+     * The performance summaries parsed from the output of each execution.
+     */
+    private Map<Integer, PerformanceSummary> performanceSummaries =
+        new ConcurrentHashMap<Integer, PerformanceSummary>();
+
+    /**
+     * The performance summaries of the projects built in each Maven session,
+     * keyed by groupId:artifactId.
+     */
+    private static final Map<MavenSession, Map<String, PerformanceSummary>>
+        sessionSummaries =
+            new WeakHashMap<MavenSession, Map<String, PerformanceSummary>>();
+
+    /**
+     * The errors and warnings parsed from the output of each execution. Each
+     * execution has its own collector so that the executions that run at the
+     * same time, and the projects that are built at the same time, do not
+     * see each other's diagnostics.
+     */
+    private Map<Integer, DiagnosticCollector> diagnosticCollectors =
+        new ConcurrentHashMap<Integer, DiagnosticCollector>();
+
+    /**
+     * The errors and warnings reported by the projects built in each Maven
+     * session. They only deduplicate diagnostics across projects and count
+     * them; each project reports the diagnostics of its own executions.
+     */
+    private static final Map<MavenSession, DiagnosticCollector>
+        sessionDiagnostics =
+            new WeakHashMap<MavenSession, DiagnosticCollector>();
+
+    /**
+     * The codes of the inspection types reported to TeamCity in each Maven
+     * session.
+     */
+    private static final Map<MavenSession, Set<String>> inspectionTypes =
+        new WeakHashMap<MavenSession, Set<String>>();
+
     @Override
     boolean shouldExecute()
     {
@@ -352,6 +661,279 @@ public class MSBuildMojo extends AbstractExeMojo
         initReferencePathProperty();
 
         initTargets();
+
+        initBuildCells();
+    }
+
+    /**
+     * Gets the configurations and platforms to build. The first cell is the
+     * project's active configuration and platform.
+     * 
+     * @return The configurations and platforms to build.
+     */
+    List<BuildCell> getBuildCells()
+    {
+        return this.buildCells;
+    }
+
+    @Override
+    int getExecutions()
+    {
+        return this.buildCells.size();
+    }
+
+    @Override
+    int getParallelExecutions()
+    {
+        return this.maxParallelBuilds == null ? this.buildCells.size()
+            : this.maxParallelBuilds.intValue();
+    }
+
+    @Override
+    void execIfNotSkipped(int execution) throws MojoExecutionException
+    {
+        if (this.maxCpuCount != null || !this.shareCpuBudget)
+        {
+            super.execIfNotSkipped(execution);
+            return;
+        }
+
+        // The cells of the matrix that run at the same time, in each of the
+        // modules Maven builds at the same time, split the budget between
+        // them.
+        CpuBudget budget = CpuBudget.getInstance();
+        int cells =
+            Math.max(1, Math.min(getExecutions(), getParallelExecutions()))
+                * getMavenThreads();
+        int max = (budget.getSize() + cells - 1) / cells;
+
+        CpuBudget.Lease lease;
+
+        try
+        {
+            lease = budget.acquire(max);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException(
+                "Interrupted while waiting for processors",
+                e);
+        }
+
+        this.cpuLeases.put(execution, lease);
+
+        try
+        {
+            super.execIfNotSkipped(execution);
+        }
+        finally
+        {
+            this.cpuLeases.remove(execution);
+            lease.release();
+        }
+    }
+
+    /**
+     * Gets the number of modules Maven builds at the same time. Only Maven 3
+     * builds modules at the same time, when it is run with the -T option, so
+     * the number is read reflectively.
+     * 
+     * @return The number of modules Maven builds at the same time.
+     */
+    int getMavenThreads()
+    {
+        try
+        {
+            Object request =
+                super.session.getClass().getMethod("getRequest").invoke(
+                    super.session);
+            Object threads =
+                request.getClass().getMethod("getDegreeOfConcurrency").invoke(
+                    request);
+            return Math.max(1, ((Integer) threads).intValue());
+        }
+        catch (Exception e)
+        {
+            return 1;
+        }
+    }
+
+    /**
+     * Initializes the configurations and platforms to build.
+     */
+    void initBuildCells()
+    {
+        MSBuildProject mp = getMSBuildProject();
+        String abc = getBuildConfig();
+        String abp = getBuildPlatform();
+        String afw = getTargetFramework();
+
+        if (afw != null)
+        {
+            // The project's main artifacts are built against its first
+            // framework.
+            initFrameworkProperties(
+                this.properties,
+                afw,
+                new File(getBuildDir(), "obj"));
+        }
+
+        this.buildCells.add(new BuildCell(
+            mp,
+            abc,
+            abp,
+            afw,
+            null,
+            getBuildDir(),
+            getBinArtifact(),
+            getPdbArtifact(),
+            getDocArtifact(),
+            this.properties));
+
+        Set<File> buildDirs = new HashSet<File>();
+        buildDirs.add(getBuildDir().getAbsoluteFile());
+
+        String[] bcs = this.buildConfigurations;
+        String[] bps = this.buildPlatforms;
+
+        if (bcs == null || bcs.length == 0)
+        {
+            bcs = new String[]
+            {
+                abc
+            };
+        }
+
+        if (bps == null || bps.length == 0)
+        {
+            bps = new String[]
+            {
+                abp
+            };
+        }
+
+        List<String> fws = new ArrayList<String>();
+
+        if (afw == null)
+        {
+            fws.add(null);
+        }
+        else
+        {
+            fws.addAll(mp.getTargetFrameworks());
+        }
+
+        for (String bc : bcs)
+        {
+            for (String bp : bps)
+            {
+                for (String fw : fws)
+                {
+                    if (bc.equals(abc) && bp.equals(abp)
+                        && StringUtils.equals(fw, afw))
+                    {
+                        continue;
+                    }
+
+                    this.buildCells.add(newBuildCell(bc, bp, fw, buildDirs));
+                }
+            }
+        }
+
+        if (this.buildCells.size() > 1)
+        {
+            info("building %s configurations and platforms: %s", this.buildCells
+                .size(), this.buildCells);
+        }
+    }
+
+    /**
+     * Creates a cell of the configuration and platform matrix.
+     * 
+     * @param bc The build configuration.
+     * @param bp The build platform.
+     * @param fw The target framework or null if the project is built against
+     *        a single framework.
+     * @param buildDirs The build directories of the cells created so far. A
+     *        cell whose project build directory is already taken is built into
+     *        a subdirectory named after its platform.
+     * @return The cell.
+     */
+    BuildCell newBuildCell(
+        String bc,
+        String bp,
+        String fw,
+        Set<File> buildDirs)
+    {
+        MSBuildProject mp = getMSBuildProject();
+        File bd =
+            new File(super.mavenProject.getBasedir(), mp
+                .getBuildDir(bc, bp, fw)
+                .getPath()).getAbsoluteFile();
+
+        if (!buildDirs.add(bd))
+        {
+            bd = new File(bd, bp.replaceAll("\\s", ""));
+            buildDirs.add(bd);
+            debug("build directory for %s|%s is shared, using %s", bc, bp, bd);
+        }
+
+        Properties props = new Properties();
+        props.putAll(this.properties);
+        props.put("Configuration", bc);
+        props.put("Platform", bp);
+        props.put("OutputPath", getPath(bd));
+        props.put("IntermediateOutputPath", getPath(new File(bd, "obj")));
+
+        if (fw != null)
+        {
+            initFrameworkProperties(props, fw, new File(bd, "obj"));
+        }
+
+        File pdb = mp.getPdbArtifact(bc, bp, fw);
+        File doc = mp.getDocArtifact(bc, bp, fw);
+
+        String classifier;
+
+        if (fw != null && bc.equals(getBuildConfig())
+            && bp.equals(getBuildPlatform()))
+        {
+            classifier = BuildCell.getClassifier(fw);
+        }
+        else
+        {
+            classifier = BuildCell.getClassifier(bc, bp, fw);
+        }
+
+        return new BuildCell(
+            mp,
+            bc,
+            bp,
+            fw,
+            classifier,
+            bd,
+            new File(bd, mp.getBinArtifact(bc, bp, fw).getName()),
+            pdb == null ? null : new File(bd, pdb.getName()),
+            doc == null ? null : new File(bd, doc.getName()),
+            props);
+    }
+
+    /**
+     * Sets the properties that build a project against one of its target
+     * frameworks. The frameworks are built by concurrent msbuild processes,
+     * so the framework is not appended to the output paths msbuild is given
+     * and each framework is given its own intermediate directory.
+     * 
+     * @param props The properties msbuild is invoked with.
+     * @param fw The target framework.
+     * @param intDir The intermediate directory.
+     */
+    void initFrameworkProperties(Properties props, String fw, File intDir)
+    {
+        props.put(MSBuildProject.getTargetFrameworkProperty(fw), fw);
+        props.put("AppendTargetFrameworkToOutputPath", "false");
+        props.put("IntermediateOutputPath", getPath(intDir));
     }
 
     @Override
@@ -391,12 +973,14 @@ public class MSBuildMojo extends AbstractExeMojo
         cmdLineBuff.deleteCharAt(cmdLineBuff.length() - 1);
         cmdLineBuff.append(" ");
 
-        for (Object k : this.properties.keySet())
+        Properties props = this.buildCells.get(execution).properties;
+
+        for (Object k : props.keySet())
         {
             cmdLineBuff.append("/property:");
             cmdLineBuff.append(quote(String.valueOf(k)));
             cmdLineBuff.append("=");
-            String s = String.valueOf(this.properties.get(k));
+            String s = String.valueOf(props.get(k));
             cmdLineBuff.append(quote(s));
             cmdLineBuff.append(" ");
         }
@@ -429,8 +1013,18 @@ public class MSBuildMojo extends AbstractExeMojo
         {
             cmdLineBuff.append("/consoleloggerparameters:");
             cmdLineBuff.append(this.consoleLoggerParameters);
+
+            if (this.performanceSummary)
+            {
+                cmdLineBuff.append(";PerformanceSummary");
+            }
+
             cmdLineBuff.append(" ");
         }
+        else if (this.performanceSummary)
+        {
+            cmdLineBuff.append("/consoleloggerparameters:PerformanceSummary ");
+        }
 
         if (!StringUtils.isEmpty(this.verbosity))
         {
@@ -506,7 +1100,22 @@ public class MSBuildMojo extends AbstractExeMojo
             cmdLineBuff.append(" ");
         }
 
-        if (this.nodeReuse)
+        CpuBudget.Lease lease = this.cpuLeases.get(execution);
+
+        if (this.maxCpuCount != null)
+        {
+            cmdLineBuff.append("/maxcpucount:");
+            cmdLineBuff.append(this.maxCpuCount);
+            cmdLineBuff.append(" ");
+        }
+        else if (lease != null)
+        {
+            cmdLineBuff.append("/maxcpucount:");
+            cmdLineBuff.append(lease.getCount());
+            cmdLineBuff.append(" ");
+        }
+
+        if (this.nodeReuse && (lease == null || lease.isExclusive()))
         {
             cmdLineBuff.append("/nodeReuse:true");
             cmdLineBuff.append(" ");
@@ -519,7 +1128,8 @@ public class MSBuildMojo extends AbstractExeMojo
 
         if (this.tempBuildFile == null)
         {
-            cmdLineBuff.append(getPath(getMSBuildProject().getFile()));
+            cmdLineBuff.append(getPath(this.buildCells.get(execution).project
+                .getFile()));
         }
         else
         {
@@ -597,15 +1207,18 @@ public class MSBuildMojo extends AbstractExeMojo
 
         if (deps == null)
         {
-            debug("not processing project dependencies because they're null: "
-                + project.getName());
+            debug(
+                "not processing project dependencies because they're null: %s",
+                project.getName());
             return;
         }
 
         if (deps.size() == 0)
         {
-            debug("not processing project dependencies because they're zero length: "
-                + project.getName());
+            debug(
+                "not processing project dependencies because they're "
+                    + "zero length: %s",
+                project.getName());
             return;
         }
 
@@ -639,6 +1252,8 @@ public class MSBuildMojo extends AbstractExeMojo
                 continue;
             }
 
+            this.referenceFiles.add(file);
+
             if (!this.referencePaths.contains(file.getParentFile()))
             {
                 this.referencePaths.add(file.getParentFile());
@@ -651,9 +1266,21 @@ public class MSBuildMojo extends AbstractExeMojo
                         super.resolver,
                         d);
 
-                DependencyUtils.copyToAssemblyNamedFiles(file, assemblyName);
-            }
-        }
+                TraceRecorder.Span span =
+                    trace("copy", "io", "file", file.getPath());
+
+                try
+                {
+                    DependencyUtils.copyToAssemblyNamedFiles(
+                        file,
+                        assemblyName);
+                }
+                finally
+                {
+                    span.end();
+                }
+            }
+        }
     }
 
     /**
@@ -664,7 +1291,16 @@ public class MSBuildMojo extends AbstractExeMojo
      */
     void initReferencePaths() throws MojoExecutionException
     {
-        initReferencePaths(super.mavenProject);
+        TraceRecorder.Span span = trace("resolve references", "dependencies");
+
+        try
+        {
+            initReferencePaths(super.mavenProject);
+        }
+        finally
+        {
+            span.end();
+        }
     }
 
     /**
@@ -711,7 +1347,7 @@ public class MSBuildMojo extends AbstractExeMojo
 
                 String fp = getPath(f, false);
 
-                debug("added reference path " + fp);
+                debug("added reference path %s", fp);
 
                 rpsb.append(fp);
 
@@ -744,154 +1380,456 @@ public class MSBuildMojo extends AbstractExeMojo
      */
     void loadBuildFile() throws MojoExecutionException
     {
-        // If this value is true then at least one project reference
-        // has been found in the project file that is not available on
-        // the file system.
-        boolean unavailableProjectReferenceFound = false;
+        Map<String, String> projRefs =
+            getMSBuildProject().getProjectReferences();
 
-        if (getMSBuildProject().getProjectReferences().size() > 0)
+        if (projRefs.size() == 0)
         {
-            info("project file contains project references");
+            return;
+        }
 
-            for (String k : getMSBuildProject().getProjectReferences().keySet())
-            {
-                File f = new File(super.mavenProject.getBasedir(), k);
+        info("project file contains project references");
 
-                if (!f.exists())
-                {
-                    unavailableProjectReferenceFound = true;
-                    info("project reference not found: %s", k);
-                    break;
-                }
-                else if (f.getPath().endsWith("vcxproj"))
-                {
-                    unavailableProjectReferenceFound = true;
-                    info("c++ project reference found: %s", k);
-                    break;
-                }
+        // The project references that are refactored into explicit references,
+        // keyed by the project reference's Include attribute.
+        Map<String, String> refactored = new LinkedHashMap<String, String>();
+
+        for (String k : projRefs.keySet())
+        {
+            File f = new File(super.mavenProject.getBasedir(), k);
+
+            // Refactor the project reference if project references are
+            // disabled, or if the project reference does not exist on the file
+            // system, or if it is a C++ project.
+            if (!f.exists())
+            {
+                info("project reference not found: %s", k);
+            }
+            else if (f.getPath().endsWith("vcxproj"))
+            {
+                info("c++ project reference found: %s", k);
+            }
+            else if (this.projectReferencesEnabled)
+            {
+                this.projectReferenceFiles.add(f);
+                continue;
             }
 
-            if (this.projectReferencesEnabled
-                && !unavailableProjectReferenceFound)
+            info("project reference refactored: %s", k);
+            refactored.put(k, projRefs.get(k));
+        }
+
+        if (refactored.size() == 0)
+        {
+            info("using project references");
+            return;
+        }
+
+        info("refactoring project references");
+
+        File projFile = getMSBuildProject().getFile();
+        File tmpFile =
+            new File(projFile.getParentFile(), projFile.getName() + ".tmp");
+
+        try
+        {
+            if (new ProjectReferenceRewriter(refactored).rewrite(
+                projFile,
+                tmpFile))
             {
-                info("using project references");
+                this.tempBuildFile = tmpFile;
             }
+        }
+        catch (IOException e)
+        {
+            throw new MojoExecutionException("Error writing to " + tmpFile, e);
+        }
+    }
+
+    @Override
+    protected boolean skipExec(int execution)
+    {
+        if (!this.upToDateCheck && !isOutputCacheEnabled())
+        {
+            return false;
+        }
+
+        BuildCell cell = this.buildCells.get(execution);
+
+        try
+        {
+            cell.inputFingerprint = getInputFingerprint(execution);
+        }
+        catch (IOException e)
+        {
+            info("not checking whether %s is up-to-date: %s", cell, e
+                .getMessage());
+            return false;
+        }
+
+        debug("input fingerprint of %s: %s", cell, cell.inputFingerprint);
 
-            // If the projectReferencesEnabled flag is set to false or there are
-            // unavailable project references in the project file then
-            else if (!this.projectReferencesEnabled
-                || unavailableProjectReferenceFound)
+        if (this.upToDateCheck)
+        {
+            Properties stored = readFingerprintFile(cell);
+
+            if (stored != null
+                && stored.equals(getFingerprintProperties(cell)))
             {
-                info("refactoring project references");
+                info("%s is up-to-date, skipping msbuild", cell);
+                cell.upToDate = true;
+                return true;
+            }
 
-                StringBuilder buff = new StringBuilder();
-                buff.append("    <ItemGroup>\r\n");
+            // The stored fingerprint is removed so that it cannot describe the
+            // outputs of a build that fails.
+            getFingerprintFile(cell).delete();
+        }
+
+        Map<Object, OutputCache> caches = getOutputCaches();
+        List<Object> missed = new ArrayList<Object>();
 
-                for (String k : getMSBuildProject()
-                    .getProjectReferences()
-                    .keySet())
+        for (Map.Entry<Object, OutputCache> c : caches.entrySet())
+        {
+            try
+            {
+                if (c.getValue().restore(
+                    cell.inputFingerprint,
+                    getCachedOutputs(cell)))
                 {
-                    File f = new File(super.mavenProject.getBasedir(), k);
-
-                    // Refactor the project reference if project references are disabled,
-                    // or if the project reference does not exist on the file system,
-                    // or if it is a C++ project.
-                    boolean doRefactor =
-                        !this.projectReferencesEnabled || !f.exists()
-                            || f.getPath().endsWith("vcxproj");
-
-                    // If the reference does not exist or if it is a C++ project
-                    // then refactor it into an explicit reference
-                    // instead of a project reference.
-                    if (doRefactor)
-                    {
-                        String name =
-                            getMSBuildProject().getProjectReferences().get(k);
+                    info("restored artifacts of %s from build cache %s, "
+                        + "skipping msbuild", cell, c.getKey());
+                    cell.restored = true;
+                    getCacheCounter("hit").inc();
 
-                        info("project reference refactored: %s", k, name);
+                    // The caches that were checked first also get the
+                    // artifacts, so the next build finds them sooner.
+                    caches.keySet().retainAll(missed);
+                    storeInOutputCaches(cell, caches);
 
-                        buff.append(String.format(
-                            "        <Reference Include=\"%s\" />\r\n",
-                            name));
-                    }
+                    return true;
                 }
+            }
+            catch (IOException e)
+            {
+                info("error restoring artifacts from build cache %s: %s", c
+                    .getKey(), e.getMessage());
+            }
 
-                buff.append("    </ItemGroup>");
+            missed.add(c.getKey());
+        }
 
-                String explicitReferencesString = buff.toString();
-                debug("Adding reference content: " + explicitReferencesString);
+        if (!caches.isEmpty())
+        {
+            getCacheCounter("miss").inc();
+        }
 
-                @SuppressWarnings("rawtypes")
-                List buildFileLines;
+        return false;
+    }
 
-                // Read in the text from the build file.
-                try
-                {
-                    buildFileLines =
-                        FileUtils.readLines(getMSBuildProject().getFile());
-                }
-                catch (IOException e)
-                {
-                    throw new MojoExecutionException("Error reading "
-                        + getMSBuildProject().getFile(), e);
-                }
+    /**
+     * Gets the counter of build output cache lookups with a result.
+     * 
+     * @param result The result: hit or miss.
+     * @return The counter.
+     */
+    private static Metrics.Counter getCacheCounter(String result)
+    {
+        return Metrics.getInstance().counter(
+            "nvn_build_cache_lookups_total",
+            "Build output cache lookups by result",
+            "result",
+            result);
+    }
 
-                List<String> tmpBuildFileLines = new ArrayList<String>();
+    /**
+     * Gets a flag indicating whether or not a build output cache is
+     * configured.
+     * 
+     * @return A flag indicating whether or not a build output cache is
+     *         configured.
+     */
+    boolean isOutputCacheEnabled()
+    {
+        return this.buildCache != null || this.buildCacheUrl != null;
+    }
 
-                boolean foundProjRef = false;
+    /**
+     * Gets the configured build output caches, keyed by their locations, in
+     * the order they are checked. The local cache is checked before the
+     * remote one.
+     * 
+     * @return The build output caches.
+     */
+    Map<Object, OutputCache> getOutputCaches()
+    {
+        Map<Object, OutputCache> caches =
+            new LinkedHashMap<Object, OutputCache>();
 
-                for (Object o : buildFileLines)
-                {
-                    String l = (String) o;
+        if (this.buildCache != null)
+        {
+            try
+            {
+                caches.put(this.buildCache, new LocalOutputCache(
+                    this.buildCache,
+                    this.buildCacheSize * 1024L * 1024L));
+            }
+            catch (IOException e)
+            {
+                info("error opening build cache %s: %s", this.buildCache, e
+                    .getMessage());
+            }
+        }
 
-                    // If this is the last line of the project file then before
-                    // we append it go ahead and append the explicit references
-                    // section.
-                    if (l.matches("(?i)^\\s*\\</Project\\>\\s*$"))
-                    {
-                        tmpBuildFileLines.add(explicitReferencesString);
-                    }
+        if (this.buildCacheUrl != null)
+        {
+            caches.put(this.buildCacheUrl, new HttpOutputCache(
+                this.buildCacheUrl,
+                this.buildCacheTimeout,
+                this.buildCacheUploadTimeout));
+        }
 
-                    if (!projectReferencesEnabled
-                        && l.matches("(?i)^\\s*\\<ProjectReference.*?$"))
-                    {
-                        foundProjRef = true;
-                    }
+        return caches;
+    }
 
-                    if (!foundProjRef)
-                    {
-                        tmpBuildFileLines.add(l);
-                    }
+    /**
+     * Gets the artifacts that are stored in the build output cache, keyed by
+     * their names in the cache.
+     * 
+     * @param cell The configuration and platform.
+     * @return The artifacts that are stored in the build output cache.
+     */
+    Map<String, File> getCachedOutputs(BuildCell cell)
+    {
+        Map<String, File> outputs = new LinkedHashMap<String, File>();
 
-                    boolean closedProjRef = false;
+        if (cell.bin != null)
+        {
+            outputs.put("bin", cell.bin);
+        }
 
-                    if (!projectReferencesEnabled && foundProjRef)
-                    {
-                        closedProjRef =
-                            l.matches("(?i)^\\s*\\</ProjectReference\\>.*?$");
-                    }
+        if (cell.pdb != null)
+        {
+            outputs.put("pdb", cell.pdb);
+        }
 
-                    if (closedProjRef)
-                    {
-                        foundProjRef = false;
-                    }
-                }
+        if (cell.doc != null)
+        {
+            outputs.put("doc", cell.doc);
+        }
 
-                this.tempBuildFile =
-                    new File(
-                        getMSBuildProject().getFile().getParentFile(),
-                        getMSBuildProject().getFile().getName() + ".tmp");
+        return outputs;
+    }
 
-                try
-                {
-                    FileUtils.writeLines(this.tempBuildFile, tmpBuildFileLines);
-                }
-                catch (IOException e)
-                {
-                    throw new MojoExecutionException("Error writing to "
-                        + this.tempBuildFile, e);
-                }
+    /**
+     * Gets the fingerprint of the project's inputs, including the inputs of
+     * the project references msbuild builds. Paths are fingerprinted relative
+     * to the project's base directory so that the same sources produce the
+     * same fingerprint in any workspace.
+     * 
+     * @param execution The execution index.
+     * @return The fingerprint of the project's inputs.
+     * @throws IOException When an input cannot be read or when a project has
+     *         items whose types are not known to name or not name inputs.
+     */
+    String getInputFingerprint(int execution) throws IOException
+    {
+        BuildCell cell = this.buildCells.get(execution);
+        MSBuildProject mp = cell.project;
+        String bc = cell.config;
+        String bp = cell.platform;
+        File basedir = super.mavenProject.getBasedir();
+
+        Fingerprint fp = new Fingerprint();
+
+        // The number of worker nodes, whether they are reused and what the
+        // console logger prints do not change the outputs, so they are left
+        // out of the fingerprint.
+        String cmd =
+            buildCmdLineString(execution).replaceAll(
+                "/(maxcpucount|nodeReuse|consoleloggerparameters):\\S+ ",
+                "");
+
+        fp.add("command", StringUtils.replace(
+            cmd,
+            super.mavenProject.getBasedir().getPath(),
+            "${basedir}"));
+
+        if (this.tempBuildFile != null)
+        {
+            fp.add(this.tempBuildFile.getName(), this.tempBuildFile);
+        }
+
+        mp.addInputs(fp, basedir, bc, bp);
+
+        ProjectInputs refInputs = getProjectInputs();
+
+        for (File f : this.projectReferenceFiles)
+        {
+            refInputs.add(fp, basedir, f, bc, bp);
+        }
+
+        for (File f : this.referenceFiles)
+        {
+            fp.add(f.getName(), f);
+        }
+
+        return fp.getValue();
+    }
+
+    /**
+     * Gets the fingerprints of the inputs of the projects built through
+     * project references in this MOJO's Maven session.
+     * 
+     * @return The fingerprints of the inputs of the referenced projects.
+     */
+    private ProjectInputs getProjectInputs()
+    {
+        synchronized (sessionInputs)
+        {
+            ProjectInputs inputs = sessionInputs.get(super.session);
+
+            if (inputs == null)
+            {
+                inputs = new ProjectInputs();
+                sessionInputs.put(super.session, inputs);
             }
+
+            return inputs;
+        }
+    }
+
+    /**
+     * Gets the file the fingerprint of the last successful build is stored
+     * in.
+     * 
+     * @param cell The configuration and platform.
+     * @return The file the fingerprint of the last successful build is stored
+     *         in.
+     */
+    File getFingerprintFile(BuildCell cell)
+    {
+        return new File(cell.buildDir, cell.project.getFile().getName()
+            + ".fingerprint");
+    }
+
+    /**
+     * Gets the properties that describe the current state of a configuration
+     * and platform: the fingerprint of its inputs and the size and timestamp
+     * of each of its artifacts.
+     * 
+     * @param cell The configuration and platform.
+     * @return The properties that describe the current state of the cell.
+     */
+    Properties getFingerprintProperties(BuildCell cell)
+    {
+        Properties props = new Properties();
+        props.setProperty("inputs", cell.inputFingerprint);
+        props.setProperty("bin", getStamp(cell.bin));
+        props.setProperty("pdb", getStamp(cell.pdb));
+        props.setProperty("doc", getStamp(cell.doc));
+        return props;
+    }
+
+    private static String getStamp(File file)
+    {
+        if (file == null || !file.exists())
+        {
+            return "";
+        }
+
+        return String.format("%s|%s", file.length(), file.lastModified());
+    }
+
+    /**
+     * Stores the artifacts of a configuration and platform in build output
+     * caches. An error is logged but does not fail the build.
+     * 
+     * @param cell The configuration and platform.
+     * @param caches The build output caches, keyed by their locations.
+     */
+    void storeInOutputCaches(BuildCell cell, Map<Object, OutputCache> caches)
+    {
+        for (Map.Entry<Object, OutputCache> c : caches.entrySet())
+        {
+            try
+            {
+                c.getValue().store(
+                    cell.inputFingerprint,
+                    getCachedOutputs(cell));
+                debug("stored artifacts of %s in build cache %s", cell, c
+                    .getKey());
+            }
+            catch (IOException e)
+            {
+                info("error storing artifacts of %s in build cache %s: %s",
+                    cell, c.getKey(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reads the fingerprint of the last successful build.
+     * 
+     * @param cell The configuration and platform.
+     * @return The fingerprint of the last successful build or null if there
+     *         is none.
+     */
+    Properties readFingerprintFile(BuildCell cell)
+    {
+        File f = getFingerprintFile(cell);
+
+        if (!f.exists())
+        {
+            return null;
+        }
+
+        Properties props = new Properties();
+        InputStream in = null;
+
+        try
+        {
+            in = new FileInputStream(f);
+            props.load(in);
+        }
+        catch (IOException e)
+        {
+            debug("error reading %s: %s", f, e.getMessage());
+            return null;
+        }
+        finally
+        {
+            IOUtils.closeQuietly(in);
+        }
+
+        return props;
+    }
+
+    /**
+     * Stores the fingerprint of a successful build.
+     * 
+     * @param cell The configuration and platform.
+     * @throws MojoExecutionException When an error occurs.
+     */
+    void writeFingerprintFile(BuildCell cell) throws MojoExecutionException
+    {
+        File f = getFingerprintFile(cell);
+        f.getParentFile().mkdirs();
+
+        OutputStream out = null;
+
+        try
+        {
+            out = new FileOutputStream(f);
+            getFingerprintProperties(cell).store(out, null);
+        }
+        catch (IOException e)
+        {
+            throw new MojoExecutionException("Error writing to " + f, e);
+        }
+        finally
+        {
+            IOUtils.closeQuietly(out);
         }
     }
 
@@ -924,11 +1862,391 @@ public class MSBuildMojo extends AbstractExeMojo
             this.tempBuildFile.delete();
         }
 
+        if (this.reportDiagnostics)
+        {
+            reportDiagnostics();
+        }
+
+        for (BuildCell cell : this.buildCells)
+        {
+            if (executionException == null && cell.inputFingerprint != null
+                && !cell.upToDate)
+            {
+                if (isOutputCacheEnabled() && !cell.restored)
+                {
+                    storeInOutputCaches(cell, getOutputCaches());
+                }
+
+                if (this.upToDateCheck)
+                {
+                    writeFingerprintFile(cell);
+                }
+            }
+
+            if (cell.classifier != null && executionException == null)
+            {
+                attachArtifacts(cell);
+            }
+
+            publishTeamCityArtifact(cell.bin);
+            publishTeamCityArtifact(cell.pdb);
+            publishTeamCityArtifact(cell.doc);
+        }
+
         initPdbAndDocArtifacts();
 
-        publishTeamCityArtifact(getBinArtifact());
-        publishTeamCityArtifact(getPdbArtifact());
-        publishTeamCityArtifact(getDocArtifact());
+        if (this.performanceSummary)
+        {
+            writePerformanceSummary();
+        }
+    }
+
+    @Override
+    LineHandler getOutputHandler(int execution)
+    {
+        final List<LineHandler> handlers = new ArrayList<LineHandler>(2);
+
+        if (this.performanceSummary)
+        {
+            PerformanceSummary ps = new PerformanceSummary();
+            this.performanceSummaries.put(execution, ps);
+            handlers.add(ps);
+        }
+
+        if (this.reportDiagnostics)
+        {
+            DiagnosticCollector dc =
+                new DiagnosticCollector(Math.max(1, this.maxDiagnostics));
+            this.diagnosticCollectors.put(execution, dc);
+            handlers.add(dc);
+        }
+
+        if (handlers.size() < 2)
+        {
+            return handlers.isEmpty() ? null : handlers.get(0);
+        }
+
+        return new LineHandler()
+        {
+            @Override
+            public void handle(String line)
+            {
+                for (LineHandler h : handlers)
+                {
+                    h.handle(line);
+                }
+            }
+        };
+    }
+
+    /**
+     * Gets the errors and warnings reported by the projects built in this
+     * Maven session.
+     * 
+     * @return The errors and warnings.
+     */
+    DiagnosticCollector getSessionDiagnostics()
+    {
+        synchronized (sessionDiagnostics)
+        {
+            DiagnosticCollector dc = sessionDiagnostics.get(super.session);
+
+            if (dc == null)
+            {
+                dc = new DiagnosticCollector(Math.max(1, this.maxDiagnostics));
+                sessionDiagnostics.put(super.session, dc);
+            }
+
+            return dc;
+        }
+    }
+
+    /**
+     * Gets the codes of the inspection types reported to TeamCity in this
+     * Maven session.
+     * 
+     * @return The codes of the inspection types.
+     */
+    private Set<String> getInspectionTypes()
+    {
+        synchronized (inspectionTypes)
+        {
+            Set<String> types = inspectionTypes.get(super.session);
+
+            if (types == null)
+            {
+                types = new HashSet<String>();
+                inspectionTypes.put(super.session, types);
+            }
+
+            return types;
+        }
+    }
+
+    /**
+     * Summarizes the errors and warnings this project reported that were not
+     * reported before in this Maven session and reports them to TeamCity.
+     */
+    void reportDiagnostics()
+    {
+        // The executions of a matrix often report the same diagnostics, so
+        // they are merged before they are compared with the session's.
+        DiagnosticCollector project =
+            new DiagnosticCollector(Math.max(1, this.maxDiagnostics));
+        int dropped = 0;
+
+        for (int x = 0; x < getExecutions(); ++x)
+        {
+            DiagnosticCollector dc = this.diagnosticCollectors.get(x);
+
+            if (dc == null)
+            {
+                continue;
+            }
+
+            for (Diagnostic d : dc.getDiagnostics())
+            {
+                project.add(d);
+            }
+
+            dropped += dc.getDropped();
+        }
+
+        DiagnosticCollector session = getSessionDiagnostics();
+        List<Diagnostic> diagnostics = new ArrayList<Diagnostic>();
+
+        for (Diagnostic d : project.getDiagnostics())
+        {
+            if (session.add(d))
+            {
+                diagnostics.add(d);
+            }
+        }
+
+        dropped += project.getDropped();
+
+        if (diagnostics.isEmpty())
+        {
+            return;
+        }
+
+        int errors = 0;
+
+        for (Diagnostic d : diagnostics)
+        {
+            if (d.isError())
+            {
+                ++errors;
+            }
+        }
+
+        info(
+            "msbuild reported %s new error(s) and %s new warning(s)",
+            errors,
+            diagnostics.size() - errors);
+
+        for (String line : DiagnosticCollector.summarize(diagnostics))
+        {
+            info(line);
+        }
+
+        if (dropped > 0)
+        {
+            info(
+                "%s diagnostic(s) not reported because maxDiagnostics is %s",
+                dropped,
+                this.maxDiagnostics);
+        }
+
+        info(
+            "%s distinct error(s) and %s distinct warning(s) in this session",
+            session.getErrors(),
+            session.getWarnings());
+
+        if (!this.enableTeamCityIntegration)
+        {
+            return;
+        }
+
+        for (Diagnostic d : diagnostics)
+        {
+            if (d.isError())
+            {
+                info(
+                    "##teamcity[buildProblem description='%s' "
+                        + "identity='%s']",
+                    escapeTeamCity(d.toString()),
+                    String.format("%s-%08x", d.getCode(), d.toString()
+                        .hashCode()));
+                continue;
+            }
+
+            String type = d.getCode().length() == 0 ? "msbuild" : d.getCode();
+            Set<String> types = getInspectionTypes();
+
+            synchronized (types)
+            {
+                if (types.add(type))
+                {
+                    info(
+                        "##teamcity[inspectionType id='%1$s' name='%1$s' "
+                            + "category='msbuild' description='%1$s']",
+                        escapeTeamCity(type));
+                }
+            }
+
+            info(
+                "##teamcity[inspection typeId='%s' message='%s' file='%s' "
+                    + "line='%s' SEVERITY='WARNING']",
+                escapeTeamCity(type),
+                escapeTeamCity(d.getMessage()),
+                escapeTeamCity(d.getFile()),
+                d.getLine());
+        }
+    }
+
+    /**
+     * Gets the performance summaries of the projects built in this Maven
+     * session, keyed by groupId:artifactId.
+     * 
+     * @return The performance summaries.
+     */
+    private Map<String, PerformanceSummary> getSessionSummaries()
+    {
+        synchronized (sessionSummaries)
+        {
+            Map<String, PerformanceSummary> summaries =
+                sessionSummaries.get(super.session);
+
+            if (summaries == null)
+            {
+                summaries = new LinkedHashMap<String, PerformanceSummary>();
+                sessionSummaries.put(super.session, summaries);
+            }
+
+            return summaries;
+        }
+    }
+
+    /**
+     * Writes the performance summary of this project and of the session and
+     * reports the session's target and task timings to TeamCity.
+     * 
+     * @throws MojoExecutionException When an error occurs.
+     */
+    void writePerformanceSummary() throws MojoExecutionException
+    {
+        PerformanceSummary ps = new PerformanceSummary();
+
+        for (PerformanceSummary eps : this.performanceSummaries.values())
+        {
+            ps.add(eps);
+        }
+
+        if (ps.isEmpty())
+        {
+            debug("msbuild did not print a performance summary");
+            return;
+        }
+
+        String key =
+            String.format(
+                "%s:%s",
+                this.mavenProject.getGroupId(),
+                this.mavenProject.getArtifactId());
+
+        File file = new File(getBuildDir(), "msbuild-performance.json");
+        File sessionFile =
+            new File(
+                getExecutionRoot().getBuild().getDirectory(),
+                "msbuild-performance.json");
+
+        PerformanceSummary total = new PerformanceSummary();
+        String sessionJson;
+
+        Map<String, PerformanceSummary> summaries = getSessionSummaries();
+
+        synchronized (summaries)
+        {
+            summaries.put(key, ps);
+            sessionJson = PerformanceSummary.toJson(summaries);
+
+            for (PerformanceSummary sps : summaries.values())
+            {
+                total.add(sps);
+            }
+        }
+
+        try
+        {
+            FileUtils.writeStringToFile(file, ps.toJson());
+            FileUtils.writeStringToFile(sessionFile, sessionJson);
+        }
+        catch (IOException e)
+        {
+            throw new MojoExecutionException(String.format(
+                "Error writing performance summary: %s",
+                file), e);
+        }
+
+        if (!this.enableTeamCityIntegration)
+        {
+            return;
+        }
+
+        // TeamCity keeps the last value reported for a statistic, so the
+        // session's totals are reported again after each project.
+        for (PerformanceSummary.Kind k : new PerformanceSummary.Kind[]
+        {
+            PerformanceSummary.Kind.Target, PerformanceSummary.Kind.Task
+        })
+        {
+            for (PerformanceSummary.Timing t : total.getTimings(k))
+            {
+                info(
+                    "##teamcity[buildStatisticValue key='msbuild.%s.%s' "
+                        + "value='%s']",
+                    k.name().toLowerCase(),
+                    escapeTeamCity(t.getName()),
+                    t.getMillis());
+            }
+        }
+    }
+
+    /**
+     * Attaches the artifacts of a cell of the configuration and platform
+     * matrix to the project with the cell's classifier.
+     * 
+     * @param cell The configuration and platform.
+     */
+    void attachArtifacts(BuildCell cell)
+    {
+        if (cell.bin.exists())
+        {
+            this.projectHelper.attachArtifact(
+                this.mavenProject,
+                this.mavenProject.getPackaging(),
+                cell.classifier,
+                cell.bin);
+        }
+
+        if (cell.pdb != null && cell.pdb.exists())
+        {
+            this.projectHelper.attachArtifact(
+                this.mavenProject,
+                "pdb",
+                cell.classifier + "-sources",
+                cell.pdb);
+        }
+
+        if (cell.doc != null && cell.doc.exists())
+        {
+            this.projectHelper.attachArtifact(
+                this.mavenProject,
+                "xml",
+                cell.classifier + "-dotnetdoc",
+                cell.doc);
+        }
     }
 
     void initPdbAndDocArtifacts() throws MojoExecutionException
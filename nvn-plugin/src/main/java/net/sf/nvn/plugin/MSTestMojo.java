@@ -41,6 +41,7 @@ import org.apache.maven.plugin.MojoExecutionException;
  * A MOJO for testing .NET solutions and/or projects with MSTest.
  * 
  * @goal mstest
+ * @threadSafe
  * @phase test
  * @description A MOJO for testing .NET solutions and/or projects with MSTest.
  * @requiresDependencyResolution
@@ -419,7 +420,7 @@ public class MSTestMojo extends AbstractExeMojo
         if (matt.find())
         {
             String path = matt.group(1);
-            debug("Test results file at " + path);
+            debug("Test results file at %s", path);
             this.resultsFile = new File(path);
         }
     }
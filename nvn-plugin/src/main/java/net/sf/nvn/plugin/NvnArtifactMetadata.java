@@ -32,6 +32,8 @@ package net.sf.nvn.plugin;
 
 import java.io.File;
 import java.io.IOException;
+import net.sf.nvn.commons.FlightEvents;
+import net.sf.nvn.commons.Metrics;
 import org.apache.commons.io.FileUtils;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.metadata.AbstractArtifactMetadata;
@@ -142,9 +144,16 @@ public class NvnArtifactMetadata extends AbstractArtifactMetadata
                     this,
                     remoteRepository));
 
+        FlightEvents.Event fe =
+            FlightEvents.begin(
+                FlightEvents.FILE_COPY,
+                file.getPath(),
+                destination.getPath());
+
         try
         {
             FileUtils.copyFile(file, destination);
+            Metrics.BYTES_COPIED.inc(destination.length());
         }
         catch (IOException e)
         {
@@ -152,6 +161,10 @@ public class NvnArtifactMetadata extends AbstractArtifactMetadata
                 "Error copying NVN metadata file to the local repository.",
                 e);
         }
+        finally
+        {
+            fe.end();
+        }
     }
 
     @Override
@@ -0,0 +1,234 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.plugin;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * <p>
+ * The logger of an nvn MOJO. Messages are prefixed with
+ * <em>NVN-&lt;mojo&gt;:</em> and are only formatted when their level is
+ * enabled, so a debug message that is not logged costs a level check.
+ * </p>
+ * 
+ * <p>
+ * Messages may be templates with <em>%s</em> placeholders. Templates that
+ * only use <em>%s</em> and <em>%%</em> are formatted without a
+ * {@link java.util.Formatter}; other templates are given to
+ * {@link String#format(String, Object...)}. The overloads with up to three
+ * arguments do not allocate an argument array, and the arguments' toString
+ * methods are only invoked when the message is logged.
+ * </p>
+ * 
+ * @author akutz
+ * 
+ */
+final class NvnLog
+{
+    private final Log log;
+
+    private final String prefix;
+
+    /**
+     * Initializes a new instance of the NvnLog class.
+     * 
+     * @param log The Maven logger.
+     * @param mojoName The name of the MOJO.
+     */
+    NvnLog(Log log, String mojoName)
+    {
+        this.log = log;
+        this.prefix = "NVN-" + mojoName + ": ";
+    }
+
+    boolean isDebugEnabled()
+    {
+        return this.log.isDebugEnabled();
+    }
+
+    boolean isInfoEnabled()
+    {
+        return this.log.isInfoEnabled();
+    }
+
+    void debug(String message)
+    {
+        if (this.log.isDebugEnabled())
+        {
+            this.log.debug(this.prefix + message);
+        }
+    }
+
+    void debug(String template, Object arg)
+    {
+        if (this.log.isDebugEnabled())
+        {
+            this.log.debug(format(template, arg));
+        }
+    }
+
+    void debug(String template, Object arg1, Object arg2)
+    {
+        if (this.log.isDebugEnabled())
+        {
+            this.log.debug(format(template, arg1, arg2));
+        }
+    }
+
+    void debug(String template, Object arg1, Object arg2, Object arg3)
+    {
+        if (this.log.isDebugEnabled())
+        {
+            this.log.debug(format(template, arg1, arg2, arg3));
+        }
+    }
+
+    void debug(String template, Object... args)
+    {
+        if (this.log.isDebugEnabled())
+        {
+            this.log.debug(format(template, args));
+        }
+    }
+
+    void info(String message)
+    {
+        if (this.log.isInfoEnabled())
+        {
+            this.log.info(this.prefix + message);
+        }
+    }
+
+    void info(String template, Object arg)
+    {
+        if (this.log.isInfoEnabled())
+        {
+            this.log.info(format(template, arg));
+        }
+    }
+
+    void info(String template, Object arg1, Object arg2)
+    {
+        if (this.log.isInfoEnabled())
+        {
+            this.log.info(format(template, arg1, arg2));
+        }
+    }
+
+    void info(String template, Object arg1, Object arg2, Object arg3)
+    {
+        if (this.log.isInfoEnabled())
+        {
+            this.log.info(format(template, arg1, arg2, arg3));
+        }
+    }
+
+    void info(String template, Object... args)
+    {
+        if (this.log.isInfoEnabled())
+        {
+            this.log.info(format(template, args));
+        }
+    }
+
+    void error(String message)
+    {
+        if (this.log.isErrorEnabled())
+        {
+            this.log.error(this.prefix + message);
+        }
+    }
+
+    void error(String message, Throwable cause)
+    {
+        if (this.log.isErrorEnabled())
+        {
+            this.log.error(this.prefix + message, cause);
+        }
+    }
+
+    void error(String template, Object... args)
+    {
+        if (this.log.isErrorEnabled())
+        {
+            this.log.error(format(template, args));
+        }
+    }
+
+    /**
+     * Formats a message and prefixes it.
+     * 
+     * @param template The message template.
+     * @param args The arguments.
+     * @return The message.
+     */
+    String format(String template, Object... args)
+    {
+        StringBuilder buff =
+            new StringBuilder(this.prefix.length() + template.length() + 32);
+        buff.append(this.prefix);
+
+        int next = 0;
+        int len = template.length();
+
+        for (int x = 0; x < len; ++x)
+        {
+            char c = template.charAt(x);
+
+            if (c != '%')
+            {
+                buff.append(c);
+                continue;
+            }
+
+            char s = x + 1 < len ? template.charAt(x + 1) : 0;
+
+            if (s == '%')
+            {
+                buff.append('%');
+            }
+            else if (s == 's' && next < args.length)
+            {
+                buff.append(args[next++]);
+            }
+            else
+            {
+                // Flags, widths and other conversions are left to the
+                // formatter.
+                return this.prefix + String.format(template, args);
+            }
+
+            ++x;
+        }
+
+        return buff.toString();
+    }
+}
@@ -39,6 +39,7 @@ import org.apache.maven.plugin.MojoExecutionException;
  * @author akutz
  * 
  * @goal publish-teamcity-artifacts
+ * @threadSafe
  * @phase install
  * @description A MOJO for publishing a TeamCity artifact.
  */
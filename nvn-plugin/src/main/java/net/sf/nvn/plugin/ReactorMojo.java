@@ -0,0 +1,613 @@
+/*******************************************************************************
+ * Copyright (c) 2010, Schley Andrew Kutz All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * - Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ * 
+ * - Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ * 
+ * - Neither the name of the Schley Andrew Kutz nor the names of its
+ * contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+
+package net.sf.nvn.plugin;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.sf.nvn.commons.CpuBudget;
+import net.sf.nvn.commons.FlightEvents;
+import net.sf.nvn.commons.Metrics;
+import net.sf.nvn.commons.dag.DagScheduler;
+import net.sf.nvn.commons.msbuild.MSBuildProject;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * <p>
+ * A MOJO that builds the modules of the reactor concurrently. The modules form
+ * a graph whose edges are the modules' Maven dependencies, their parents and
+ * the project references of their MSBuild projects. Each module is built by
+ * its own non-recursive Maven process once the modules it depends on have been
+ * built, so modules that do not depend on each other are built at the same
+ * time.
+ * </p>
+ * 
+ * <p>
+ * When more modules are ready than there are threads, the module with the
+ * longest chain of dependent modules is built first. The processors are split
+ * between the modules that are built at the same time and each module's share
+ * is passed to its process as the <em>nvn.cpuBudget</em> system property. The
+ * time each module took is recorded and used to weigh the chains of the next
+ * build. The output of each module is logged at the info level with the
+ * module's artifactId as a prefix, so that batch mode, <em>-q</em> and log
+ * file redirection apply to it, and is also written to a log file per module.
+ * </p>
+ * 
+ * <p>
+ * This goal is an aggregator and should be invoked from the command line, for
+ * example <em>mvn nvn:reactor -Dnvn.reactor.goals=install</em>.
+ * </p>
+ * 
+ * @author akutz
+ * 
+ * @goal reactor
+ * @threadSafe
+ * @aggregator
+ * @description A MOJO that builds the modules of the reactor concurrently.
+ */
+public class ReactorMojo extends AbstractNvnMojo
+{
+    /**
+     * The goals and phases each module is built with, separated by spaces.
+     * 
+     * @parameter expression="${nvn.reactor.goals}" default-value="install"
+     */
+    String goals;
+
+    /**
+     * Additional arguments each module's Maven process is invoked with, for
+     * example <em>-P release</em>.
+     * 
+     * @parameter
+     */
+    String[] mavenArgs;
+
+    /**
+     * The number of modules that are built at the same time. Must be at least
+     * 1. Defaults to the number of processors.
+     * 
+     * @parameter expression="${nvn.reactor.threads}"
+     */
+    Integer threads;
+
+    /**
+     * The Maven executable. Defaults to the executable of the Maven
+     * installation that runs this goal.
+     * 
+     * @parameter expression="${nvn.reactor.mvn}"
+     */
+    File mavenExecutable;
+
+    /**
+     * The directory the log file of each module and the time each module took
+     * to build are written to.
+     * 
+     * @parameter expression="${nvn.reactor.logDirectory}"
+     *            default-value="${project.build.directory}/nvn-reactor"
+     */
+    File logDirectory;
+
+    @Override
+    void nvnExecute() throws MojoExecutionException
+    {
+        if (this.threads != null && this.threads.intValue() < 1)
+        {
+            throw new MojoExecutionException(String.format(
+                "nvn.reactor.threads must be at least 1 but was %s",
+                this.threads));
+        }
+
+        DagScheduler<MavenProject> dag = getModuleGraph();
+
+        int n =
+            this.threads == null ? Runtime.getRuntime().availableProcessors()
+                : this.threads.intValue();
+
+        info("building %s modules with %s threads", this.reactorProjects
+            .size(), n);
+
+        final Map<String, Long> durations =
+            new ConcurrentHashMap<String, Long>();
+        final AtomicInteger unfinished =
+            new AtomicInteger(this.reactorProjects.size());
+        final int threadCount = n;
+
+        try
+        {
+            dag.run(n, new DagScheduler.Task<MavenProject>()
+            {
+                @Override
+                public void run(MavenProject module)
+                    throws MojoExecutionException
+                {
+                    // The modules that can run at the same time split the
+                    // processors between them.
+                    CpuBudget budget = CpuBudget.getInstance();
+                    int modules = Math.min(threadCount, unfinished.get());
+                    CpuBudget.Lease lease;
+
+                    try
+                    {
+                        lease =
+                            budget.acquire((budget.getSize() + modules - 1)
+                                / modules);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                        throw new MojoExecutionException(
+                            "Interrupted while waiting for processors",
+                            e);
+                    }
+
+                    long start = System.currentTimeMillis();
+
+                    try
+                    {
+                        buildModule(module, lease.getCount());
+                    }
+                    finally
+                    {
+                        lease.release();
+                        unfinished.decrementAndGet();
+                    }
+
+                    durations.put(getKey(module), System.currentTimeMillis()
+                        - start);
+                }
+            });
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof MojoExecutionException)
+            {
+                throw (MojoExecutionException) e.getCause();
+            }
+
+            throw new MojoExecutionException("Error building the reactor", e
+                .getCause());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException(
+                "Interrupted while building the reactor",
+                e);
+        }
+        catch (IllegalStateException e)
+        {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+        finally
+        {
+            writeDurations(durations);
+        }
+    }
+
+    /**
+     * Builds the graph of the reactor's modules.
+     * 
+     * @return The graph of the reactor's modules.
+     * @throws MojoExecutionException When an MSBuild project cannot be read.
+     */
+    DagScheduler<MavenProject> getModuleGraph() throws MojoExecutionException
+    {
+        Properties lastDurations = readDurations();
+
+        DagScheduler<MavenProject> dag = new DagScheduler<MavenProject>();
+        Map<String, MavenProject> byKey = new HashMap<String, MavenProject>();
+        Map<File, MavenProject> byProjectFile =
+            new HashMap<File, MavenProject>();
+        Map<MavenProject, MSBuildProject> msbuildProjects =
+            new HashMap<MavenProject, MSBuildProject>();
+
+        for (Object o : this.reactorProjects)
+        {
+            MavenProject mp = (MavenProject) o;
+
+            // A module that has not been built before weighs as much as the
+            // slowest module of the last build.
+            String last = lastDurations.getProperty(getKey(mp));
+            dag.add(mp, last == null ? getMaxDuration(lastDurations) : Long
+                .parseLong(last));
+
+            byKey.put(getKey(mp), mp);
+
+            File pf = InitializeMojo.findMSBuildProjectFile(mp.getBasedir());
+
+            if (pf != null)
+            {
+                try
+                {
+                    byProjectFile.put(pf.getCanonicalFile(), mp);
+                    msbuildProjects.put(mp, MSBuildProject.instance(pf));
+                }
+                catch (IOException e)
+                {
+                    throw new MojoExecutionException(String.format(
+                        "Error reading MSBuild project from %s",
+                        pf), e);
+                }
+            }
+        }
+
+        for (Object o : this.reactorProjects)
+        {
+            MavenProject mp = (MavenProject) o;
+
+            if (mp.getParent() != null)
+            {
+                addDependency(dag, mp, byKey.get(getKey(mp.getParent())));
+            }
+
+            for (Object od : mp.getDependencies())
+            {
+                Dependency d = (Dependency) od;
+                addDependency(dag, mp, byKey.get(d.getGroupId() + ":"
+                    + d.getArtifactId()));
+            }
+
+            MSBuildProject msb = msbuildProjects.get(mp);
+
+            if (msb == null)
+            {
+                continue;
+            }
+
+            File dir = msb.getFile().getAbsoluteFile().getParentFile();
+
+            for (String ref : msb.getProjectReferences().keySet())
+            {
+                File f =
+                    new File(dir, ref.replace('\\', File.separatorChar));
+
+                try
+                {
+                    addDependency(dag, mp, byProjectFile.get(f
+                        .getCanonicalFile()));
+                }
+                catch (IOException e)
+                {
+                    debug("error resolving project reference %s: %s", f, e
+                        .getMessage());
+                }
+            }
+        }
+
+        for (Object o : this.reactorProjects)
+        {
+            MavenProject mp = (MavenProject) o;
+            debug("%s depends on %s", getKey(mp), dag.getDependencies(mp));
+        }
+
+        return dag;
+    }
+
+    private void addDependency(
+        DagScheduler<MavenProject> dag,
+        MavenProject module,
+        MavenProject dependency)
+    {
+        if (dependency != null && dependency != module)
+        {
+            dag.addDependency(module, dependency);
+        }
+    }
+
+    /**
+     * Builds a module with a non-recursive Maven process.
+     * 
+     * @param module The module.
+     * @param cpus The number of processors the module's msbuild processes
+     *        share.
+     * @throws MojoExecutionException When the module fails to build.
+     */
+    void buildModule(MavenProject module, int cpus)
+        throws MojoExecutionException
+    {
+        List<String> cmd = new ArrayList<String>();
+        cmd.add(getMavenExecutable().getPath());
+        cmd.add("-B");
+        cmd.add("-N");
+        cmd.add("-f");
+        cmd.add(module.getFile().getAbsolutePath());
+
+        cmd.add("-D" + CpuBudget.SIZE_PROPERTY + "=" + cpus);
+
+        if (this.session.getSettings().isOffline())
+        {
+            cmd.add("-o");
+        }
+
+        if (this.mavenArgs != null)
+        {
+            for (String s : this.mavenArgs)
+            {
+                cmd.add(s);
+            }
+        }
+
+        for (String s : StringUtils.split(this.goals))
+        {
+            cmd.add(s);
+        }
+
+        File log = new File(this.logDirectory, module.getArtifactId() + ".log");
+        log.getParentFile().mkdirs();
+
+        info("building %s: %s", getKey(module), StringUtils.join(cmd
+            .iterator(), " "));
+
+        PrintWriter out = null;
+
+        try
+        {
+            ProcessBuilder pb = new ProcessBuilder(cmd);
+            pb.directory(module.getBasedir());
+            pb.redirectErrorStream(true);
+            FlightEvents.Event fe =
+                FlightEvents.begin(FlightEvents.PROCESS_SPAWN, StringUtils
+                    .join(cmd.iterator(), " "));
+            Process p;
+
+            try
+            {
+                p = pb.start();
+            }
+            finally
+            {
+                fe.end();
+            }
+
+            Metrics.getInstance().counter(
+                "nvn_processes_spawned_total",
+                "Processes spawned by nvn",
+                "tool",
+                "mvn").inc();
+
+            out = new PrintWriter(new FileOutputStream(log));
+
+            BufferedReader in =
+                new BufferedReader(new InputStreamReader(p.getInputStream()));
+
+            try
+            {
+                String line;
+
+                while ((line = in.readLine()) != null)
+                {
+                    info("[%s] %s", module.getArtifactId(), line);
+                    out.println(line);
+                }
+            }
+            finally
+            {
+                IOUtils.closeQuietly(in);
+            }
+
+            fe = FlightEvents.begin(FlightEvents.PROCESS_WAIT, "mvn");
+            int exitCode;
+
+            try
+            {
+                exitCode = p.waitFor();
+            }
+            finally
+            {
+                fe.end();
+            }
+
+            if (exitCode != 0)
+            {
+                throw new MojoExecutionException(String.format(
+                    "%s failed with exit code %s, see %s",
+                    getKey(module),
+                    exitCode,
+                    log));
+            }
+        }
+        catch (IOException e)
+        {
+            throw new MojoExecutionException("Error building "
+                + getKey(module), e);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while building "
+                + getKey(module), e);
+        }
+        finally
+        {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * Gets the Maven executable.
+     * 
+     * @return The Maven executable.
+     */
+    File getMavenExecutable()
+    {
+        if (this.mavenExecutable != null)
+        {
+            return this.mavenExecutable;
+        }
+
+        boolean windows =
+            System.getProperty("os.name").toLowerCase().startsWith("windows");
+        String name = windows ? "mvn.bat" : "mvn";
+        String home = System.getProperty("maven.home");
+
+        return home == null ? new File(name) : new File(new File(home, "bin"),
+            name);
+    }
+
+    private File getDurationsFile()
+    {
+        return new File(this.logDirectory, "durations.properties");
+    }
+
+    /**
+     * Reads the time in milliseconds each module took to build the last time.
+     * 
+     * @return The time each module took, keyed by groupId:artifactId.
+     */
+    Properties readDurations()
+    {
+        Properties props = new Properties();
+        File f = getDurationsFile();
+
+        if (!f.exists())
+        {
+            return props;
+        }
+
+        InputStream in = null;
+
+        try
+        {
+            in = new FileInputStream(f);
+            props.load(in);
+        }
+        catch (IOException e)
+        {
+            debug("error reading %s: %s", f, e.getMessage());
+        }
+        finally
+        {
+            IOUtils.closeQuietly(in);
+        }
+
+        return props;
+    }
+
+    /**
+     * Records the time each module took to build. The modules that were not
+     * built this time keep their last duration.
+     * 
+     * @param durations The time each module took, keyed by groupId:artifactId.
+     */
+    void writeDurations(Map<String, Long> durations)
+    {
+        Properties props = readDurations();
+
+        for (Map.Entry<String, Long> e : durations.entrySet())
+        {
+            props.setProperty(e.getKey(), String.valueOf(e.getValue()));
+        }
+
+        File f = getDurationsFile();
+        f.getParentFile().mkdirs();
+        OutputStream out = null;
+
+        try
+        {
+            out = new FileOutputStream(f);
+            props.store(out, null);
+        }
+        catch (IOException e)
+        {
+            debug("error writing %s: %s", f, e.getMessage());
+        }
+        finally
+        {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+    private static long getMaxDuration(Properties durations)
+    {
+        long max = 1;
+
+        for (Object v : durations.values())
+        {
+            max = Math.max(max, Long.parseLong(String.valueOf(v)));
+        }
+
+        return max;
+    }
+
+    private static String getKey(MavenProject mp)
+    {
+        return mp.getGroupId() + ":" + mp.getArtifactId();
+    }
+
+    @Override
+    void preExecute() throws MojoExecutionException
+    {
+        // Do nothing
+    }
+
+    @Override
+    void postExecute(MojoExecutionException executionException)
+        throws MojoExecutionException
+    {
+        // Do nothing
+    }
+
+    @Override
+    String getMojoName()
+    {
+        return "reactor";
+    }
+
+    @Override
+    boolean shouldExecute() throws MojoExecutionException
+    {
+        return true;
+    }
+
+    @Override
+    boolean isProjectTypeValid()
+    {
+        return true;
+    }
+}
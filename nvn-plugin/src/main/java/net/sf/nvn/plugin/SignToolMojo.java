@@ -46,6 +46,7 @@ import org.codehaus.plexus.util.StringUtils;
  * @author akutz
  * 
  * @goal signtool
+ * @threadSafe
  * @phase package
  * @requiresDependencyResolution compile
  * @description A MOJO for running the Microsoft signing tool (signtool.exe).
@@ -484,7 +485,7 @@ public class SignToolMojo extends AbstractExeMojo
                 {
                     lightOut
                 };
-                debug("Using light out file: " + lightOut);
+                debug("Using light out file: %s", lightOut);
             }
         }
 
@@ -49,6 +49,7 @@ import org.codehaus.plexus.util.StringUtils;
  * @author akutz
  * 
  * @goal package
+ * @threadSafe
  * @phase package
  * @description A MOJO for building VisualStudio setup projects.
  */
@@ -54,6 +54,7 @@ import org.apache.maven.plugin.MojoExecutionException;
  * @author akutz
  * 
  * @goal wsdl
+ * @threadSafe
  * @phase generate-sources
  * @requiresDependencyResolution compile
  * @description A MOJO for running the Microsoft wsdl.exe utility.
@@ -48,6 +48,7 @@ import org.codehaus.plexus.util.StringUtils;
  * @author akutz
  * 
  * @goal xsd
+ * @threadSafe
  * @phase generate-sources
  * @description A MOJO for running the Microsoft xsd.exe utility.
  * @requiresDependencyResolution
@@ -377,7 +378,7 @@ public class XsdMojo extends AbstractExeMojo
         }
 
         File genOutFile = new File(fileMatcher.group(2));
-        debug("Got generated output file " + genOutFile.getAbsolutePath());
+        debug("Got generated output file %s", genOutFile.getAbsolutePath());
 
         if (this.outputFile == null && this.correctCase)
         {
@@ -435,8 +436,9 @@ public class XsdMojo extends AbstractExeMojo
 
             if (oldContent.equals(newContent))
             {
-                info("not replacing " + this.outputFile.getAbsolutePath()
-                    + " because new content is same");
+                info(
+                    "not replacing %s because new content is same",
+                    this.outputFile.getAbsolutePath());
             }
             else
             {